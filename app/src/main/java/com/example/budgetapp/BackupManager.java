@@ -6,18 +6,32 @@ import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.example.budgetapp.database.AppDatabase;
 import com.example.budgetapp.database.AssetAccount;
 import com.example.budgetapp.database.Goal;
 import com.example.budgetapp.database.RenewalItem;
 import com.example.budgetapp.database.Transaction;
+import com.example.budgetapp.database.TransactionDao;
 import com.example.budgetapp.util.AssistantConfig;
 import com.example.budgetapp.util.AutoAssetManager;
+import com.example.budgetapp.util.BudgetStore;
 import com.example.budgetapp.util.CategoryManager;
+import com.example.budgetapp.util.CharsetDetector;
+import com.example.budgetapp.util.ImportStream;
+import com.example.budgetapp.util.RowPipeline;
+import com.example.budgetapp.util.SheetRowReader;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -32,11 +46,10 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 public class BackupManager {
 
@@ -45,14 +58,43 @@ public class BackupManager {
     // ============================================================================================
     // ZIP 导出/导入 (JSON格式)
     // ============================================================================================
-    public static void exportToZip(Context context, Uri uri, List<Transaction> transactions, List<AssetAccount> assets, List<Goal> goals) throws Exception {
-        if (transactions == null) transactions = new ArrayList<>();
+    public static void exportToZip(Context context, Uri uri, List<AssetAccount> assets, List<Goal> goals) throws Exception {
+        BackupData data = buildBackupMeta(context, assets, goals);
+        TransactionDao dao = AppDatabase.getDatabase(context).transactionDao();
+
+        try (OutputStream outputStream = context.getContentResolver().openOutputStream(uri);
+             ZipOutputStream zos = new ZipOutputStream(outputStream)) {
+            ZipEntry entry = new ZipEntry(JSON_FILE_NAME);
+            zos.putNextEntry(entry);
+            writeBackupJson(zos, data, dao);
+            zos.closeEntry();
+        }
+
+    }
+
+    // ============================================================================================
+    // 备份 JSON 流式读写
+    // 账单按页从数据库游标读取并逐条写出，导入时逐条解析，
+    // 不再把整个账本拼成一个巨大的字符串，峰值内存与账本大小无关
+    // ============================================================================================
+
+    // 每页/每批账单条数
+    private static final int RECORD_CHUNK_SIZE = 500;
+
+    /**
+     * 导入时分批接收账单的回调，每批最多 RECORD_CHUNK_SIZE 条
+     */
+    public interface RecordChunkConsumer {
+        void accept(List<Transaction> chunk) throws Exception;
+    }
+
+    // 组装除账单以外的备份内容（资产、目标、分类、助手配置、偏好设置等）
+    static BackupData buildBackupMeta(Context context, List<AssetAccount> assets, List<Goal> goals) {
         if (assets == null) assets = new ArrayList<>();
         if (goals == null) goals = new ArrayList<>();
-        Gson gson = new Gson();
-        
-        BackupData data = new BackupData(transactions, assets, goals);
-        
+
+        BackupData data = new BackupData(null, assets, goals);
+
         List<String> expenseCats = CategoryManager.getExpenseCategories(context);
         List<String> incomeCats = CategoryManager.getIncomeCategories(context);
         data.expenseCategories = expenseCats;
@@ -87,7 +129,7 @@ public class BackupManager {
         configData.weekdayRate = config.getWeekdayOvertimeRate();
         configData.holidayRate = config.getHolidayOvertimeRate();
         configData.monthlyBaseSalary = config.getMonthlyBaseSalary();
-        
+
         data.assistantConfig = configData;
 
         // 【新增】保存自动续费列表
@@ -103,26 +145,134 @@ public class BackupManager {
             }
         }
         data.appPreferences = prefsMap;
+        return data;
+    }
 
-        String jsonString = gson.toJson(data);
-        try (OutputStream outputStream = context.getContentResolver().openOutputStream(uri);
-             ZipOutputStream zos = new ZipOutputStream(outputStream)) {
-            ZipEntry entry = new ZipEntry(JSON_FILE_NAME);
-            zos.putNextEntry(entry);
-            zos.write(jsonString.getBytes(StandardCharsets.UTF_8));
-            zos.closeEntry();
+    /**
+     * 把备份写成 JSON 流：先写配置类字段，最后以键集分页逐页写出 records 数组。
+     * 字段名与 BackupData 一致，旧版本按 Gson 整体解析也能读取。
+     * 注意：不会关闭传入的输出流（ZIP 条目需要由调用方 closeEntry）。
+     */
+    private static void writeBackupJson(OutputStream out, BackupData data, TransactionDao dao) throws Exception {
+        Gson gson = new Gson();
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        writer.beginObject();
+        writer.name("version").value(data.version);
+        writer.name("createTime").value(data.createTime);
+        writeJsonField(gson, writer, "assets", data.assets, new TypeToken<List<AssetAccount>>(){}.getType());
+        writeJsonField(gson, writer, "expenseCategories", data.expenseCategories, new TypeToken<List<String>>(){}.getType());
+        writeJsonField(gson, writer, "incomeCategories", data.incomeCategories, new TypeToken<List<String>>(){}.getType());
+        writeJsonField(gson, writer, "subCategoryMap", data.subCategoryMap, new TypeToken<Map<String, List<String>>>(){}.getType());
+        writeJsonField(gson, writer, "goals", data.goals, new TypeToken<List<Goal>>(){}.getType());
+        writeJsonField(gson, writer, "assistantConfig", data.assistantConfig, BackupData.AssistantConfigData.class);
+        writeJsonField(gson, writer, "autoAssetRules", data.autoAssetRules, new TypeToken<List<String>>(){}.getType());
+        writeJsonField(gson, writer, "renewalList", data.renewalList, new TypeToken<List<RenewalItem>>(){}.getType());
+        writeJsonField(gson, writer, "appPreferences", data.appPreferences, new TypeToken<Map<String, BackupData.PrefItem>>(){}.getType());
+
+        writer.name("records");
+        writer.beginArray();
+        forEachTransactionPage(dao, page -> {
+            for (Transaction t : page) {
+                gson.toJson(t, Transaction.class, writer);
+            }
+        });
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * 以 (date, id) 键集游标倒序逐页读取全部账单，每页最多 RECORD_CHUNK_SIZE 条（后台线程调用）
+     */
+    private static void forEachTransactionPage(TransactionDao dao, RecordChunkConsumer consumer) throws Exception {
+        long beforeDate = Long.MAX_VALUE;
+        int beforeId = Integer.MAX_VALUE;
+        while (true) {
+            List<Transaction> page = dao.getTransactionsPageSync(beforeDate, beforeId, RECORD_CHUNK_SIZE);
+            if (page == null || page.isEmpty()) break;
+            consumer.accept(page);
+            Transaction last = page.get(page.size() - 1);
+            beforeDate = last.date;
+            beforeId = last.id;
+            if (page.size() < RECORD_CHUNK_SIZE) break;
         }
+    }
 
+    private static void writeJsonField(Gson gson, JsonWriter writer, String name, Object value, Type type) throws Exception {
+        if (value == null) return;
+        writer.name(name);
+        gson.toJson(value, type, writer);
     }
 
+    /**
+     * 流式解析备份 JSON。
+     * consumer 为空时账单收集到 data.records 中；不为空时按批回调，data.records 返回空列表，
+     * 由调用方直接写入数据库，避免整份账单驻留内存。
+     * 注意：不会关闭传入的输入流（ZipInputStream 由调用方关闭）。
+     */
+    private static BackupData readBackupJson(InputStream in, RecordChunkConsumer consumer) throws Exception {
+        return readBackupJson(in, new BackupData(), consumer);
+    }
 
+    // 解析到给定的 data 中，consumer 回调时 records 之前的字段已经写入 data
+    private static BackupData readBackupJson(InputStream in, BackupData data, RecordChunkConsumer consumer) throws Exception {
+        Gson gson = new Gson();
+        JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "version": data.version = reader.nextInt(); break;
+                case "createTime": data.createTime = reader.nextLong(); break;
+                case "assets": data.assets = gson.fromJson(reader, new TypeToken<List<AssetAccount>>(){}.getType()); break;
+                case "expenseCategories": data.expenseCategories = gson.fromJson(reader, new TypeToken<List<String>>(){}.getType()); break;
+                case "incomeCategories": data.incomeCategories = gson.fromJson(reader, new TypeToken<List<String>>(){}.getType()); break;
+                case "subCategoryMap": data.subCategoryMap = gson.fromJson(reader, new TypeToken<Map<String, List<String>>>(){}.getType()); break;
+                case "goals": data.goals = gson.fromJson(reader, new TypeToken<List<Goal>>(){}.getType()); break;
+                case "assistantConfig": data.assistantConfig = gson.fromJson(reader, BackupData.AssistantConfigData.class); break;
+                case "autoAssetRules": data.autoAssetRules = gson.fromJson(reader, new TypeToken<List<String>>(){}.getType()); break;
+                case "renewalList": data.renewalList = gson.fromJson(reader, new TypeToken<List<RenewalItem>>(){}.getType()); break;
+                case "appPreferences": data.appPreferences = gson.fromJson(reader, new TypeToken<Map<String, BackupData.PrefItem>>(){}.getType()); break;
+                case "records": data.records = readRecords(gson, reader, consumer); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        return data;
+    }
+
+    private static List<Transaction> readRecords(Gson gson, JsonReader reader, RecordChunkConsumer consumer) throws Exception {
+        List<Transaction> records = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            records.add(gson.fromJson(reader, Transaction.class));
+            if (consumer != null && records.size() >= RECORD_CHUNK_SIZE) {
+                consumer.accept(records);
+                records = new ArrayList<>();
+            }
+        }
+        reader.endArray();
+        if (consumer != null) {
+            if (!records.isEmpty()) consumer.accept(records);
+            return new ArrayList<>();
+        }
+        return records;
+    }
 
     // ============================================================================================
     // 一木记账账单导入 (支持 xls/xlsx)
     // ============================================================================================
-    public static BackupData importFromYimu(Context context, Uri uri, List<AssetAccount> allAssets) throws Exception {
-        List<Transaction> transactions = new ArrayList<>();
-        List<AssetAccount> newAssetsToCreate = new ArrayList<>();
+    public static ImportStream importFromYimu(Context context, Uri uri, List<AssetAccount> allAssets) {
+        Context appContext = context.getApplicationContext();
+        List<AssetAccount> assets = allAssets != null ? new ArrayList<>(allAssets) : null;
+        return ImportStream.start("yimu", emitter -> readYimu(appContext, uri, assets, emitter));
+    }
+
+    private static void readYimu(Context context, Uri uri, List<AssetAccount> allAssets, ImportStream.Emitter emitter) throws Exception {
         Map<String, Integer> newAssetMap = new HashMap<>();
 
         // 获取现有的分类结构
@@ -145,11 +295,9 @@ public class BackupManager {
             }
         }
 
-        // 使用项目已有的 Apache POI 库读取 Excel
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             Workbook workbook = WorkbookFactory.create(inputStream)) {
+        // 解析线程流式读取 Excel，这里边取边转换
+        try (RowPipeline<List<String>> rows = sheetRows(context, uri)) {
 
-            Sheet sheet = workbook.getSheetAt(0); // 默认读取第一个工作表
             boolean isDataSection = false;
 
             int timeIdx = -1, typeIdx = -1, amountIdx = -1, catIdx = -1, subCatIdx = -1, accountIdx = -1, remarkIdx = -1;
@@ -157,16 +305,15 @@ public class BackupManager {
             SimpleDateFormat sdf1 = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
             SimpleDateFormat sdf2 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
 
-            for (Row row : sheet) {
-                if (row == null) continue;
-
+            List<String> row;
+            while ((row = rows.next()) != null) {
                 // 1. 寻找表头行，确定各列的索引
                 if (!isDataSection) {
-                    String firstCell = getCellText(row.getCell(0));
+                    String firstCell = cell(row, 0);
                     if ("日期".equals(firstCell) || firstCell.contains("日期")) {
                         isDataSection = true;
-                        for (int i = 0; i < row.getLastCellNum(); i++) {
-                            String header = getCellText(row.getCell(i)).trim();
+                        for (int i = 0; i < row.size(); i++) {
+                            String header = cell(row, i).trim();
                             if ("日期".equals(header)) timeIdx = i;
                             else if ("收支类型".equals(header)) typeIdx = i;
                             else if ("金额".equals(header)) amountIdx = i;
@@ -182,7 +329,7 @@ public class BackupManager {
                 // 2. 解析数据行
                 if (timeIdx == -1 || typeIdx == -1 || amountIdx == -1) continue; // 关键列缺失
 
-                String timeStr = getCellText(row.getCell(timeIdx)).trim();
+                String timeStr = cell(row, timeIdx).trim();
                 if (TextUtils.isEmpty(timeStr) || !timeStr.contains("-")) continue; // 无效时间直接跳过
 
                 Transaction t = new Transaction();
@@ -212,7 +359,7 @@ public class BackupManager {
                 String noteTimePart = noteDateFmt.format(date);
 
                 // 提取备注并拼装记录标识
-                String remarkStr = (remarkIdx != -1) ? getCellText(row.getCell(remarkIdx)).trim() : "";
+                String remarkStr = (remarkIdx != -1) ? cell(row, remarkIdx).trim() : "";
                 t.remark = "";
 
                 // 统一策略：没有备注只保留时间，有备注则加上空格和备注
@@ -223,7 +370,7 @@ public class BackupManager {
                 }
 
                 // 收支类型
-                String typeStr = (typeIdx != -1) ? getCellText(row.getCell(typeIdx)).trim() : "";
+                String typeStr = (typeIdx != -1) ? cell(row, typeIdx).trim() : "";
                 if ("收入".equals(typeStr)) {
                     t.type = 1;
                 } else {
@@ -231,13 +378,13 @@ public class BackupManager {
                 }
 
                 // 金额 (一木支出的金额可能带有负号，取绝对值)
-                String amountStr = getCellText(row.getCell(amountIdx)).replace("¥", "").replace(",", "").trim();
+                String amountStr = cell(row, amountIdx).replace("¥", "").replace(",", "").trim();
                 t.amount = Math.abs(parseDoubleSafe(amountStr));
 
                 // 类别处理
-                String category = (catIdx != -1) ? getCellText(row.getCell(catIdx)).trim() : "";
+                String category = (catIdx != -1) ? cell(row, catIdx).trim() : "";
                 if (TextUtils.isEmpty(category)) category = "其它";
-                String subCategory = (subCatIdx != -1) ? getCellText(row.getCell(subCatIdx)).trim() : "";
+                String subCategory = (subCatIdx != -1) ? cell(row, subCatIdx).trim() : "";
 
                 List<String> targetList = (t.type == 1) ? incCats : expCats;
                 if (!targetList.contains(category)) {
@@ -258,7 +405,7 @@ public class BackupManager {
                 t.subCategory = subCategory;
 
                 // 账户处理
-                String accountName = (accountIdx != -1) ? getCellText(row.getCell(accountIdx)).trim() : "";
+                String accountName = (accountIdx != -1) ? cell(row, accountIdx).trim() : "";
                 if (TextUtils.isEmpty(accountName)) {
                     accountName = "默认账户";
                 }
@@ -272,7 +419,7 @@ public class BackupManager {
                         int newId = maxAssetId;
                         AssetAccount newAsset = new AssetAccount(accountName, 0.0, 0);
                         newAsset.id = newId;
-                        newAssetsToCreate.add(newAsset);
+                        emitter.asset(newAsset);
                         newAssetMap.put(accountName, newId);
                         t.assetId = newId;
                     }
@@ -280,32 +427,29 @@ public class BackupManager {
                     t.assetId = matchedId;
                 }
 
-                transactions.add(t);
+                emitter.record(t);
             }
         }
 
-        BackupData data = new BackupData(transactions, newAssetsToCreate);
-        data.expenseCategories = expCats;
-        data.incomeCategories = incCats;
-        data.subCategoryMap = subCatMap;
-        return data;
+        saveImportedCategories(context, expCats, incCats, subCatMap);
     }
 
     // ============================================================================================
     // 小米钱包账单导入 (支持 xlsx)
     // ============================================================================================
-    public static BackupData importFromXiaomi(Context context, Uri uri, List<AssetAccount> allAssets) throws Exception {
-        List<Transaction> transactions = new ArrayList<>();
-        List<AssetAccount> newAssets = new ArrayList<>(); // 小米账单通常不带账户名，默认归入“默认账户”
+    public static ImportStream importFromXiaomi(Context context, Uri uri, List<AssetAccount> allAssets) {
+        Context appContext = context.getApplicationContext();
+        List<AssetAccount> assets = allAssets != null ? new ArrayList<>(allAssets) : null;
+        return ImportStream.start("xiaomi", emitter -> readXiaomi(appContext, uri, assets, emitter));
+    }
 
+    private static void readXiaomi(Context context, Uri uri, List<AssetAccount> allAssets, ImportStream.Emitter emitter) throws Exception {
         List<String> expCats = new ArrayList<>(CategoryManager.getExpenseCategories(context));
         List<String> incCats = new ArrayList<>(CategoryManager.getIncomeCategories(context));
         Map<String, List<String>> subCatMap = new HashMap<>();
 
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             Workbook workbook = WorkbookFactory.create(inputStream)) {
+        try (RowPipeline<List<String>> rows = sheetRows(context, uri)) {
 
-            Sheet sheet = workbook.getSheetAt(0);
             boolean isDataSection = false;
 
             // 小米时间格式示例: 2026-04-23 08:34:15
@@ -314,16 +458,15 @@ public class BackupManager {
 
             int dateIdx = -1, catIdx = -1, subCatIdx = -1, typeIdx = -1, remarkIdx = -1, amtIdx = -1;
 
-            for (Row row : sheet) {
-                if (row == null) continue;
-
+            List<String> row;
+            while ((row = rows.next()) != null) {
                 // 1. 识别表头
                 if (!isDataSection) {
-                    String firstCell = getCellText(row.getCell(0));
+                    String firstCell = cell(row, 0);
                     if (firstCell.contains("账单日期") || firstCell.contains("记账分类")) {
                         isDataSection = true;
-                        for (int i = 0; i < row.getLastCellNum(); i++) {
-                            String h = getCellText(row.getCell(i)).trim();
+                        for (int i = 0; i < row.size(); i++) {
+                            String h = cell(row, i).trim();
                             if ("账单日期".equals(h)) dateIdx = i;
                             else if ("记账分类".equals(h)) catIdx = i;
                             else if ("分类子类".equals(h)) subCatIdx = i;
@@ -338,7 +481,7 @@ public class BackupManager {
                 // 2. 解析数据行
                 if (dateIdx == -1 || typeIdx == -1 || amtIdx == -1) continue;
 
-                String dateStr = getCellText(row.getCell(dateIdx)).trim();
+                String dateStr = cell(row, dateIdx).trim();
                 if (TextUtils.isEmpty(dateStr)) continue;
 
                 Transaction t = new Transaction();
@@ -354,7 +497,7 @@ public class BackupManager {
                 }
 
                 // 提取备注并拼装记录标识
-                String remark = (remarkIdx != -1) ? getCellText(row.getCell(remarkIdx)).trim() : "";
+                String remark = (remarkIdx != -1) ? cell(row, remarkIdx).trim() : "";
                 t.remark = "";
 
                 // 统一策略：没有备注只保留时间，有备注则加上空格和备注
@@ -364,14 +507,14 @@ public class BackupManager {
                     t.note = noteSdf.format(dateObj) + " " + remark;
                 }
                 // 类型与金额
-                String typeStr = getCellText(row.getCell(typeIdx)).trim();
+                String typeStr = cell(row, typeIdx).trim();
                 t.type = "收入".equals(typeStr) ? 1 : 0;
-                t.amount = Math.abs(parseDoubleSafe(getCellText(row.getCell(amtIdx))));
+                t.amount = Math.abs(parseDoubleSafe(cell(row, amtIdx)));
 
                 // 分类与二级分类
-                String category = getCellText(row.getCell(catIdx)).trim();
+                String category = cell(row, catIdx).trim();
                 if (TextUtils.isEmpty(category)) category = "其它";
-                String subCategory = (subCatIdx != -1) ? getCellText(row.getCell(subCatIdx)).trim() : "";
+                String subCategory = (subCatIdx != -1) ? cell(row, subCatIdx).trim() : "";
 
                 List<String> targetList = (t.type == 1) ? incCats : expCats;
                 if (!targetList.contains(category)) targetList.add(category);
@@ -393,32 +536,23 @@ public class BackupManager {
                     t.assetId = allAssets.get(0).id;
                 }
 
-                transactions.add(t);
+                emitter.record(t);
             }
         }
 
-        BackupData data = new BackupData(transactions, newAssets);
-        data.expenseCategories = expCats;
-        data.incomeCategories = incCats;
-        data.subCategoryMap = subCatMap;
-        return data;
+        saveImportedCategories(context, expCats, incCats, subCatMap);
     }
     // ============================================================================================
     // 飞鸭记账账单导入 (支持 CSV)
     // ============================================================================================
-    public static BackupData importFromFeiya(Context context, Uri uri, List<AssetAccount> allAssets) throws Exception {
-        // 第一次尝试：GBK 编码
-        BackupData data = parseFeiyaCsvWithEncoding(context, uri, "GBK", allAssets);
-        // 如果解析为空，第二次尝试：UTF-8 编码
-        if (data.records == null || data.records.isEmpty()) {
-            data = parseFeiyaCsvWithEncoding(context, uri, "UTF-8", allAssets);
-        }
-        return data;
+    // 编码由 CharsetDetector 从文件开头一次识别，不再按 GBK、UTF-8 各解析一遍
+    public static ImportStream importFromFeiya(Context context, Uri uri, List<AssetAccount> allAssets) {
+        Context appContext = context.getApplicationContext();
+        List<AssetAccount> assets = allAssets != null ? new ArrayList<>(allAssets) : null;
+        return ImportStream.start("feiya", emitter -> readFeiya(appContext, uri, assets, emitter));
     }
 
-    private static BackupData parseFeiyaCsvWithEncoding(Context context, Uri uri, String charsetName, List<AssetAccount> allAssets) throws Exception {
-        List<Transaction> transactions = new ArrayList<>();
-        List<AssetAccount> newAssetsToCreate = new ArrayList<>();
+    private static void readFeiya(Context context, Uri uri, List<AssetAccount> allAssets, ImportStream.Emitter emitter) throws Exception {
         Map<String, Integer> newAssetMap = new HashMap<>();
 
         List<String> expCats = new ArrayList<>(CategoryManager.getExpenseCategories(context));
@@ -432,8 +566,7 @@ public class BackupManager {
             }
         }
 
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, charsetName))) {
+        try (RowPipeline<String> lines = csvLines(context, uri)) {
 
             String line;
             boolean isDataSection = false;
@@ -444,7 +577,7 @@ public class BackupManager {
 
             int timeIdx = -1, typeIdx = -1, catIdx = -1, subCatIdx = -1, amtIdx = -1, accIdx = -1, remarkIdx = -1;
 
-            while ((line = reader.readLine()) != null) {
+            while ((line = lines.next()) != null) {
                 if (line.startsWith("\ufeff")) line = line.substring(1);
                 if (TextUtils.isEmpty(line.trim())) continue;
 
@@ -531,7 +664,7 @@ public class BackupManager {
                         maxAssetId++;
                         AssetAccount newAsset = new AssetAccount(accountName, 0.0, 0);
                         newAsset.id = maxAssetId;
-                        newAssetsToCreate.add(newAsset);
+                        emitter.asset(newAsset);
                         newAssetMap.put(accountName, maxAssetId);
                         t.assetId = maxAssetId;
                     }
@@ -539,23 +672,23 @@ public class BackupManager {
                     t.assetId = matchedId;
                 }
 
-                transactions.add(t);
+                emitter.record(t);
             }
         }
 
-        BackupData result = new BackupData(transactions, newAssetsToCreate);
-        result.expenseCategories = expCats;
-        result.incomeCategories = incCats;
-        result.subCategoryMap = subCatMap;
-        return result;
+        saveImportedCategories(context, expCats, incCats, subCatMap);
     }
 
     // ============================================================================================
     // 咔皮记账账单导入 (支持 xlsx)
     // ============================================================================================
-    public static BackupData importFromKapi(Context context, Uri uri, List<AssetAccount> allAssets) throws Exception {
-        List<Transaction> transactions = new ArrayList<>();
-        List<AssetAccount> newAssetsToCreate = new ArrayList<>();
+    public static ImportStream importFromKapi(Context context, Uri uri, List<AssetAccount> allAssets) {
+        Context appContext = context.getApplicationContext();
+        List<AssetAccount> assets = allAssets != null ? new ArrayList<>(allAssets) : null;
+        return ImportStream.start("kapi", emitter -> readKapi(appContext, uri, assets, emitter));
+    }
+
+    private static void readKapi(Context context, Uri uri, List<AssetAccount> allAssets, ImportStream.Emitter emitter) throws Exception {
         Map<String, Integer> newAssetMap = new HashMap<>();
 
         List<String> expCats = new ArrayList<>(CategoryManager.getExpenseCategories(context));
@@ -569,10 +702,8 @@ public class BackupManager {
             }
         }
 
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             Workbook workbook = WorkbookFactory.create(inputStream)) {
+        try (RowPipeline<List<String>> rows = sheetRows(context, uri)) {
 
-            Sheet sheet = workbook.getSheetAt(0);
             boolean isDataSection = false;
 
             // 咔皮记账的日期和时间可能是分开的，需要合并解析
@@ -581,15 +712,14 @@ public class BackupManager {
 
             int dateIdx = -1, timeIdx = -1, typeIdx = -1, amountIdx = -1, catIdx = -1, subCatIdx = -1, accountIdx = -1, remarkIdx = -1;
 
-            for (Row row : sheet) {
-                if (row == null) continue;
-
+            List<String> row;
+            while ((row = rows.next()) != null) {
                 if (!isDataSection) {
-                    String firstCell = getCellText(row.getCell(0));
+                    String firstCell = cell(row, 0);
                     if (firstCell.contains("日期") || firstCell.contains("收支")) {
                         isDataSection = true;
-                        for (int i = 0; i < row.getLastCellNum(); i++) {
-                            String h = getCellText(row.getCell(i)).trim();
+                        for (int i = 0; i < row.size(); i++) {
+                            String h = cell(row, i).trim();
                             if ("日期".equals(h)) dateIdx = i;
                             else if ("时间".equals(h)) timeIdx = i;
                             else if ("类型".equals(h) || "收支类型".equals(h)) typeIdx = i;
@@ -606,19 +736,19 @@ public class BackupManager {
                 // 核心必填列
                 if (dateIdx == -1 || amountIdx == -1) continue;
 
-                String dateStr = getCellText(row.getCell(dateIdx)).trim();
+                String dateStr = cell(row, dateIdx).trim();
                 if (TextUtils.isEmpty(dateStr)) continue;
 
-                String timeStr = (timeIdx != -1) ? getCellText(row.getCell(timeIdx)).trim() : "00:00:00";
+                String timeStr = (timeIdx != -1) ? cell(row, timeIdx).trim() : "00:00:00";
 
                 Transaction t = new Transaction();
 
                 // 1. 类型映射
-                String typeStr = (typeIdx != -1) ? getCellText(row.getCell(typeIdx)).trim() : "";
+                String typeStr = (typeIdx != -1) ? cell(row, typeIdx).trim() : "";
                 t.type = "收入".equals(typeStr) ? 1 : 0;
 
                 // 2. 金额映射
-                t.amount = Math.abs(parseDoubleSafe(getCellText(row.getCell(amountIdx))));
+                t.amount = Math.abs(parseDoubleSafe(cell(row, amountIdx)));
 
                 // 3. 时间与记录标识映射
                 // 兼容带斜杠或带横杠的日期格式
@@ -650,7 +780,7 @@ public class BackupManager {
                 }
 
                 // 提取备注并拼装记录标识
-                String remark = (remarkIdx != -1) ? getCellText(row.getCell(remarkIdx)).trim() : "";
+                String remark = (remarkIdx != -1) ? cell(row, remarkIdx).trim() : "";
                 t.remark = "";
 
                 // 统一策略：没有备注只保留时间，有备注则加上空格和备注
@@ -661,9 +791,9 @@ public class BackupManager {
                 }
 
                 // 4. 分类映射
-                String category = (catIdx != -1) ? getCellText(row.getCell(catIdx)).trim() : "";
+                String category = (catIdx != -1) ? cell(row, catIdx).trim() : "";
                 if (TextUtils.isEmpty(category)) category = "其它";
-                String subCategory = (subCatIdx != -1) ? getCellText(row.getCell(subCatIdx)).trim() : "";
+                String subCategory = (subCatIdx != -1) ? cell(row, subCatIdx).trim() : "";
 
                 List<String> targetList = (t.type == 1) ? incCats : expCats;
                 if (!targetList.contains(category)) targetList.add(category);
@@ -680,7 +810,7 @@ public class BackupManager {
                 t.subCategory = subCategory;
 
                 // 5. 账户映射
-                String accountName = (accountIdx != -1) ? getCellText(row.getCell(accountIdx)).trim() : "默认账户";
+                String accountName = (accountIdx != -1) ? cell(row, accountIdx).trim() : "默认账户";
                 if (TextUtils.isEmpty(accountName)) accountName = "默认账户";
 
                 int matchedId = matchAssetId(accountName, allAssets);
@@ -691,7 +821,7 @@ public class BackupManager {
                         maxAssetId++;
                         AssetAccount newAsset = new AssetAccount(accountName, 0.0, 0);
                         newAsset.id = maxAssetId;
-                        newAssetsToCreate.add(newAsset);
+                        emitter.asset(newAsset);
                         newAssetMap.put(accountName, maxAssetId);
                         t.assetId = maxAssetId;
                     }
@@ -699,36 +829,24 @@ public class BackupManager {
                     t.assetId = matchedId;
                 }
 
-                transactions.add(t);
+                emitter.record(t);
             }
         }
 
-        BackupData data = new BackupData(transactions, newAssetsToCreate);
-        data.expenseCategories = expCats;
-        data.incomeCategories = incCats;
-        data.subCategoryMap = subCatMap;
-        return data;
+        saveImportedCategories(context, expCats, incCats, subCatMap);
     }
 
     // ============================================================================================
     // 小青账账单导入 (支持 CSV)
     // ============================================================================================
-    // 1. 公开的入口方法：负责双重编码尝试
-    public static BackupData importFromXiaoqing(Context context, Uri uri, List<AssetAccount> allAssets) throws Exception {
-        // 第一次尝试：使用 GBK (ANSI) 编码解析
-        BackupData data = parseXiaoqingCsvWithEncoding(context, uri, "GBK", allAssets);
-
-        // 如果解析出来的记录为空，说明编码可能不对，第二次尝试：使用 UTF-8
-        if (data.records == null || data.records.isEmpty()) {
-            data = parseXiaoqingCsvWithEncoding(context, uri, "UTF-8", allAssets);
-        }
-        return data;
+    // 编码由 CharsetDetector 从文件开头一次识别，不再按 GBK、UTF-8 各解析一遍
+    public static ImportStream importFromXiaoqing(Context context, Uri uri, List<AssetAccount> allAssets) {
+        Context appContext = context.getApplicationContext();
+        List<AssetAccount> assets = allAssets != null ? new ArrayList<>(allAssets) : null;
+        return ImportStream.start("xiaoqing", emitter -> readXiaoqing(appContext, uri, assets, emitter));
     }
 
-    // 2. 私有的核心解析方法：注意这里的参数列表必须包含 String charsetName
-    private static BackupData parseXiaoqingCsvWithEncoding(Context context, Uri uri, String charsetName, List<AssetAccount> allAssets) throws Exception {
-        List<Transaction> transactions = new ArrayList<>();
-        List<AssetAccount> newAssetsToCreate = new ArrayList<>();
+    private static void readXiaoqing(Context context, Uri uri, List<AssetAccount> allAssets, ImportStream.Emitter emitter) throws Exception {
         Map<String, Integer> newAssetMap = new HashMap<>();
 
         // 获取分类配置
@@ -743,9 +861,7 @@ public class BackupManager {
             }
         }
 
-        // 注意：这里的 charsetName 来源于方法参数
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, charsetName))) {
+        try (RowPipeline<String> lines = csvLines(context, uri)) {
 
             String line;
             boolean isDataSection = false;
@@ -755,7 +871,7 @@ public class BackupManager {
 
             int typeIdx = -1, amtIdx = -1, catIdx = -1, subCatIdx = -1, dateIdx = -1, remarkIdx = -1, accIdx = -1;
 
-            while ((line = reader.readLine()) != null) {
+            while ((line = lines.next()) != null) {
                 if (line.startsWith("\ufeff")) line = line.substring(1);
                 if (TextUtils.isEmpty(line.trim())) continue;
 
@@ -832,36 +948,28 @@ public class BackupManager {
                     if (newAssetMap.containsKey(accountName)) { t.assetId = newAssetMap.get(accountName); }
                     else {
                         maxAssetId++; AssetAccount na = new AssetAccount(accountName, 0.0, 0);
-                        na.id = maxAssetId; newAssetsToCreate.add(na);
+                        na.id = maxAssetId; emitter.asset(na);
                         newAssetMap.put(accountName, maxAssetId); t.assetId = maxAssetId;
                     }
                 } else { t.assetId = matchedId; }
-                transactions.add(t);
+                emitter.record(t);
             }
         }
 
-        BackupData result = new BackupData(transactions, newAssetsToCreate);
-        result.expenseCategories = expCats;
-        result.incomeCategories = incCats;
-        result.subCategoryMap = subCatMap;
-        return result;
+        saveImportedCategories(context, expCats, incCats, subCatMap);
     }
 
     // ============================================================================================
     // 蜜蜂记账账单导入 (支持 CSV)
     // ============================================================================================
-    public static BackupData importFromBeeCount(Context context, Uri uri, List<AssetAccount> allAssets) throws Exception {
-        // 先尝试 GBK 解析，失败或为空再尝试 UTF-8 编码
-        BackupData data = parseBeeCountCsvWithEncoding(context, uri, "GBK", allAssets);
-        if (data.records.isEmpty()) {
-            data = parseBeeCountCsvWithEncoding(context, uri, "UTF-8", allAssets);
-        }
-        return data;
+    // 编码由 CharsetDetector 从文件开头一次识别，不再按 GBK、UTF-8 各解析一遍
+    public static ImportStream importFromBeeCount(Context context, Uri uri, List<AssetAccount> allAssets) {
+        Context appContext = context.getApplicationContext();
+        List<AssetAccount> assets = allAssets != null ? new ArrayList<>(allAssets) : null;
+        return ImportStream.start("beecount", emitter -> readBeeCount(appContext, uri, assets, emitter));
     }
 
-    private static BackupData parseBeeCountCsvWithEncoding(Context context, Uri uri, String charsetName, List<AssetAccount> allAssets) throws Exception {
-        List<Transaction> transactions = new ArrayList<>();
-        List<AssetAccount> newAssetsToCreate = new ArrayList<>();
+    private static void readBeeCount(Context context, Uri uri, List<AssetAccount> allAssets, ImportStream.Emitter emitter) throws Exception {
         Map<String, Integer> newAssetMap = new HashMap<>();
 
         List<String> expCats = new ArrayList<>(CategoryManager.getExpenseCategories(context));
@@ -884,8 +992,7 @@ public class BackupManager {
             }
         }
 
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, charsetName))) {
+        try (RowPipeline<String> lines = csvLines(context, uri)) {
 
             String line;
             boolean isDataSection = false;
@@ -895,7 +1002,7 @@ public class BackupManager {
 
             int typeIdx = -1, catIdx = -1, subCatIdx = -1, amountIdx = -1, accountIdx = -1, remarkIdx = -1, timeIdx = -1;
 
-            while ((line = reader.readLine()) != null) {
+            while ((line = lines.next()) != null) {
                 if (line.startsWith("\ufeff")) line = line.substring(1); // 过滤 BOM
                 if (TextUtils.isEmpty(line.trim())) continue;
 
@@ -1005,7 +1112,7 @@ public class BackupManager {
                         int newId = maxAssetId;
                         AssetAccount newAsset = new AssetAccount(accountName, 0.0, 0); // 默认为普通资产类型
                         newAsset.id = newId;
-                        newAssetsToCreate.add(newAsset);
+                        emitter.asset(newAsset);
                         newAssetMap.put(accountName, newId);
                         t.assetId = newId;
                     }
@@ -1013,92 +1120,120 @@ public class BackupManager {
                     t.assetId = matchedId;
                 }
 
-                transactions.add(t);
+                emitter.record(t);
             }
         }
 
-        BackupData data = new BackupData(transactions, newAssetsToCreate);
-        data.expenseCategories = expCats;
-        data.incomeCategories = incCats;
-        data.subCategoryMap = subCatMap; // 返回带新增子分类的列表
-        return data;
+        saveImportedCategories(context, expCats, incCats, subCatMap);
+    }
+    /**
+     * 备份中除账单以外的内容解析完成后回调（在解析线程），返回需要新建的资产
+     */
+    public interface BackupMetaHandler {
+        List<AssetAccount> onMeta(BackupData meta);
     }
-    public static BackupData importFromZip(Context context, Uri uri) throws Exception {
-         try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             ZipInputStream zis = new ZipInputStream(inputStream)) {
 
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (entry.getName().equals(JSON_FILE_NAME)) {
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(zis, StandardCharsets.UTF_8));
-                    StringBuilder sb = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        sb.append(line);
-                    }
-                    Gson gson = new Gson();
-                    BackupData data = gson.fromJson(sb.toString(), BackupData.class);
-
-                    if (data.autoAssetRules != null && !data.autoAssetRules.isEmpty()) {
-                         for (String ruleStr : data.autoAssetRules) {
-                            AutoAssetManager.AssetRule rule = AutoAssetManager.AssetRule.fromString(ruleStr);
-                            if (rule != null) {
-                                AutoAssetManager.addRule(context, rule);
-                            }
+    /**
+     * 流式读取备份 ZIP：在解析线程中逐条解析账单，交给 FinanceViewModel.bulkImport 边读边写，
+     * 账单不再整体驻留内存。配置类内容（自动资产规则、助手配置、子分类、续费列表、偏好设置）
+     * 在读到账单之前恢复，随后由 onMeta 决定需要新建的资产。
+     * 备份按 BackupData 的字段顺序写出，records 总在最后，读到账单时其余字段均已解析完。
+     */
+    public static ImportStream importFromZip(Context context, Uri uri, BackupMetaHandler onMeta) {
+        Context appContext = context.getApplicationContext();
+        return ImportStream.start("zip", emitter -> {
+            try (InputStream inputStream = appContext.getContentResolver().openInputStream(uri);
+                 ZipInputStream zis = new ZipInputStream(inputStream)) {
+
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    if (!entry.getName().equals(JSON_FILE_NAME)) continue;
+                    BackupData data = new BackupData();
+                    boolean[] metaApplied = {false};
+                    readBackupJson(zis, data, chunk -> {
+                        if (!metaApplied[0]) {
+                            metaApplied[0] = true;
+                            applyBackupMeta(appContext, data, onMeta, emitter);
                         }
-                    }
+                        for (Transaction t : chunk) emitter.record(t);
+                    });
+                    if (!metaApplied[0]) applyBackupMeta(appContext, data, onMeta, emitter);
+                    return;
+                }
+            }
+            throw new Exception("无法识别的备份文件：未找到数据文件 " + JSON_FILE_NAME);
+        });
+    }
 
-                    if (data.assistantConfig != null) {
-                        restoreAssistantConfig(context, data.assistantConfig);
-                    }
+    private static void applyBackupMeta(Context context, BackupData data, BackupMetaHandler onMeta, ImportStream.Emitter emitter) {
+        restoreBackupSettings(context, data);
+        List<AssetAccount> assets = onMeta.onMeta(data);
+        if (assets != null) {
+            for (AssetAccount a : assets) emitter.asset(a);
+        }
+    }
 
-                    if (data.subCategoryMap != null) {
-                        for (Map.Entry<String, List<String>> entryMap : data.subCategoryMap.entrySet()) {
-                            CategoryManager.saveSubCategories(context, entryMap.getKey(), entryMap.getValue());
-                        }
-                    }
+    private static void restoreBackupSettings(Context context, BackupData data) {
+        if (data.autoAssetRules != null && !data.autoAssetRules.isEmpty()) {
+             for (String ruleStr : data.autoAssetRules) {
+                AutoAssetManager.AssetRule rule = AutoAssetManager.AssetRule.fromString(ruleStr);
+                if (rule != null) {
+                    AutoAssetManager.addRule(context, rule);
+                }
+            }
+        }
 
-                    // 【新增】恢复自动续费列表
-                    if (data.renewalList != null) {
-                        new AssistantConfig(context).saveRenewalList(data.renewalList);
-                    }
+        if (data.assistantConfig != null) {
+            restoreAssistantConfig(context, data.assistantConfig);
+        }
 
-                    // 【修复】按照原数据类型恢复，防止类型转换异常崩溃
-                    if (data.appPreferences != null) {
-                        SharedPreferences.Editor editor = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE).edit();
-                        for (Map.Entry<String, BackupData.PrefItem> entryMap : data.appPreferences.entrySet()) {
-                            String key = entryMap.getKey();
-                            BackupData.PrefItem item = entryMap.getValue();
-                            if (item == null || item.value == null) continue;
-                            try {
-                                switch (item.type) {
-                                    case "Boolean": editor.putBoolean(key, Boolean.parseBoolean(item.value)); break;
-                                    case "Integer": editor.putInt(key, Integer.parseInt(item.value)); break;
-                                    case "Float": editor.putFloat(key, Float.parseFloat(item.value)); break;
-                                    case "Long": editor.putLong(key, Long.parseLong(item.value)); break;
-                                    default: editor.putString(key, item.value); break;
-                                }
-                            } catch (Exception e) {
-                                Log.e("BackupManager", "恢复配置异常", e);
-                            }
-                        }
-                        editor.apply();
-                    }
+        if (data.subCategoryMap != null) {
+            for (Map.Entry<String, List<String>> entryMap : data.subCategoryMap.entrySet()) {
+                CategoryManager.saveSubCategories(context, entryMap.getKey(), entryMap.getValue());
+            }
+        }
 
-                    return data;
+        // 【新增】恢复自动续费列表
+        if (data.renewalList != null) {
+            new AssistantConfig(context).saveRenewalList(data.renewalList);
+        }
+
+        // 【修复】按照原数据类型恢复，防止类型转换异常崩溃
+        if (data.appPreferences != null) {
+            SharedPreferences.Editor editor = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE).edit();
+            for (Map.Entry<String, BackupData.PrefItem> entryMap : data.appPreferences.entrySet()) {
+                String key = entryMap.getKey();
+                BackupData.PrefItem item = entryMap.getValue();
+                if (item == null || item.value == null) continue;
+                try {
+                    switch (item.type) {
+                        case "Boolean": editor.putBoolean(key, Boolean.parseBoolean(item.value)); break;
+                        case "Integer": editor.putInt(key, Integer.parseInt(item.value)); break;
+                        case "Float": editor.putFloat(key, Float.parseFloat(item.value)); break;
+                        case "Long": editor.putLong(key, Long.parseLong(item.value)); break;
+                        default: editor.putString(key, item.value); break;
+                    }
+                } catch (Exception e) {
+                    Log.e("BackupManager", "恢复配置异常", e);
                 }
             }
+            editor.apply();
+            // 预算以 budgets 表为准，按恢复出的旧预算键重建
+            BudgetStore.onLegacyPrefsRestored(context);
         }
-        throw new Exception("无法识别的备份文件：未找到数据文件 " + JSON_FILE_NAME);
     }
 
     // ============================================================================================
     // Excel (CSV) 导出/导入
     // ============================================================================================
 
-    public static void exportToExcel(Context context, Uri uri, List<Transaction> transactions, List<AssetAccount> assets) throws Exception {
-        if (transactions == null) transactions = new ArrayList<>();
+    // ============================================================================================
+    // 表格导出：配置部分很小，账单部分按页从数据库读出、逐页写入输出流，
+    // 不再需要把全部账单和整份文本同时放在内存里（需在后台线程调用）
+    // ============================================================================================
+    public static void exportToExcel(Context context, Uri uri, List<AssetAccount> assets) throws Exception {
         if (assets == null) assets = new ArrayList<>();
+        TransactionDao dao = AppDatabase.getDatabase(context).transactionDao();
 
         Map<Integer, String> assetMap = new HashMap<>();
         for (AssetAccount asset : assets) {
@@ -1231,25 +1366,105 @@ public class BackupManager {
         csvBuilder.append("交易ID,时间,类型,分类,金额,资产账户,记录标识,备注,二级分类,币种\n");
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy年MM月dd日", Locale.CHINA);
 
-        for (Transaction t : transactions) {
-            csvBuilder.append(t.id).append(",");
-            csvBuilder.append(sdf.format(new Date(t.date))).append(",");
-            String typeStr = (t.type == 0) ? "支出" : (t.type == 1 ? "收入" : "其他");
-            csvBuilder.append(typeStr).append(",");
-            csvBuilder.append(escapeCsv(t.category)).append(",");
-            csvBuilder.append(t.amount).append(",");
-            String assetName = assetMap.get(t.assetId);
-            if (assetName == null) assetName = "未知账户";
-            csvBuilder.append(escapeCsv(assetName)).append(",");
-            csvBuilder.append(escapeCsv(t.note)).append(",");
-            csvBuilder.append(escapeCsv(t.remark)).append(",");
-            csvBuilder.append(escapeCsv(t.subCategory)).append(",");
-            String currency = (t.currencySymbol == null) ? "¥" : t.currencySymbol;
-            csvBuilder.append(escapeCsv(currency)).append("\n"); // 【新增】多币种支持
-        }
-
-        try (OutputStream outputStream = context.getContentResolver().openOutputStream(uri)) {
-            outputStream.write(csvBuilder.toString().getBytes(StandardCharsets.UTF_8));
+        try (OutputStream outputStream = context.getContentResolver().openOutputStream(uri);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            // 先写出配置部分，之后 csvBuilder 只用来拼一页账单
+            writer.append(csvBuilder);
+            csvBuilder.setLength(0);
+
+            forEachTransactionPage(dao, page -> {
+                for (Transaction t : page) {
+                    csvBuilder.append(t.id).append(",");
+                    csvBuilder.append(sdf.format(new Date(t.date))).append(",");
+                    String typeStr = (t.type == 0) ? "支出" : (t.type == 1 ? "收入" : "其他");
+                    csvBuilder.append(typeStr).append(",");
+                    csvBuilder.append(escapeCsv(t.category)).append(",");
+                    csvBuilder.append(t.amount).append(",");
+                    String assetName = assetMap.get(t.assetId);
+                    if (assetName == null) assetName = "未知账户";
+                    csvBuilder.append(escapeCsv(assetName)).append(",");
+                    csvBuilder.append(escapeCsv(t.note)).append(",");
+                    csvBuilder.append(escapeCsv(t.remark)).append(",");
+                    csvBuilder.append(escapeCsv(t.subCategory)).append(",");
+                    String currency = (t.currencySymbol == null) ? "¥" : t.currencySymbol;
+                    csvBuilder.append(escapeCsv(currency)).append("\n"); // 【新增】多币种支持
+                }
+                writer.append(csvBuilder);
+                csvBuilder.setLength(0);
+            });
+        }
+    }
+
+    // ============================================================================================
+    // 【新增】导出为真正的 xlsx 表格（仅供在 Excel/WPS 中查看，重新导入请使用 CSV）
+    // 使用 POI 的 SXSSF 流式工作簿：内存中只保留最近 XLSX_WINDOW_SIZE 行，其余行写入临时文件
+    // ============================================================================================
+    private static final int XLSX_WINDOW_SIZE = 100;
+
+    public static void exportToXlsx(Context context, Uri uri, List<AssetAccount> assets) throws Exception {
+        if (assets == null) assets = new ArrayList<>();
+        TransactionDao dao = AppDatabase.getDatabase(context).transactionDao();
+
+        Map<Integer, String> assetMap = new HashMap<>();
+        for (AssetAccount asset : assets) {
+            assetMap.put(asset.id, asset.name);
+        }
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(XLSX_WINDOW_SIZE);
+        workbook.setCompressTempFiles(true);
+        try {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
+
+            // 1. 交易记录
+            SXSSFSheet txSheet = workbook.createSheet("交易记录");
+            writeXlsxRow(txSheet.createRow(0), "交易ID", "时间", "类型", "分类", "二级分类", "金额", "币种", "资产账户", "记录标识", "备注");
+            forEachTransactionPage(dao, page -> {
+                for (Transaction t : page) {
+                    Row row = txSheet.createRow(txSheet.getLastRowNum() + 1);
+                    row.createCell(0).setCellValue(t.id);
+                    Cell dateCell = row.createCell(1);
+                    dateCell.setCellValue(new Date(t.date));
+                    dateCell.setCellStyle(dateStyle);
+                    row.createCell(2).setCellValue((t.type == 0) ? "支出" : (t.type == 1 ? "收入" : "其他"));
+                    row.createCell(3).setCellValue(t.category == null ? "" : t.category);
+                    row.createCell(4).setCellValue(t.subCategory == null ? "" : t.subCategory);
+                    row.createCell(5).setCellValue(t.amount);
+                    row.createCell(6).setCellValue(t.currencySymbol == null ? "¥" : t.currencySymbol);
+                    String assetName = assetMap.get(t.assetId);
+                    row.createCell(7).setCellValue(assetName == null ? "未知账户" : assetName);
+                    row.createCell(8).setCellValue(t.note == null ? "" : t.note);
+                    row.createCell(9).setCellValue(t.remark == null ? "" : t.remark);
+                }
+            });
+
+            // 2. 资产账户
+            SXSSFSheet assetSheet = workbook.createSheet("资产账户");
+            writeXlsxRow(assetSheet.createRow(0), "ID", "账户名称", "余额", "类型", "币种", "资产分类");
+            int r = 1;
+            for (AssetAccount asset : assets) {
+                Row row = assetSheet.createRow(r++);
+                row.createCell(0).setCellValue(asset.id);
+                row.createCell(1).setCellValue(asset.name == null ? "" : asset.name);
+                row.createCell(2).setCellValue(asset.amount);
+                row.createCell(3).setCellValue(asset.type == 1 ? "负债" : (asset.type == 2 ? "借出" : "资产"));
+                row.createCell(4).setCellValue(asset.currencySymbol == null ? "¥" : asset.currencySymbol);
+                row.createCell(5).setCellValue(asset.assetCategory == null ? "" : asset.assetCategory);
+            }
+
+            try (OutputStream outputStream = context.getContentResolver().openOutputStream(uri)) {
+                workbook.write(outputStream);
+            }
+        } finally {
+            // 删除 SXSSF 落盘的临时文件
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private static void writeXlsxRow(Row row, String... values) {
+        for (int i = 0; i < values.length; i++) {
+            row.createCell(i).setCellValue(values[i]);
         }
     }
 
@@ -1439,6 +1654,8 @@ public class BackupManager {
             }
         }
         editor.apply();
+        // 预算以 budgets 表为准，按恢复出的旧预算键重建
+        BudgetStore.onLegacyPrefsRestored(context);
         // 解析分类
         for (List<String> row : categoryRows) {
             if (row.size() < 2) continue;
@@ -1576,17 +1793,34 @@ public class BackupManager {
         return new String[]{rawCategory, ""};
     }
 
-    public static BackupData importFromWeChat(Context context, Uri uri, List<AssetAccount> allAssets) throws Exception {
-        try {
-            return importWeChatAsExcel(context, uri, allAssets);
-        } catch (Exception e) {
-            return importWeChatAsCsv(context, uri, allAssets);
-        }
+    // 先按 Excel 读取，还没有输出任何账单就失败（不是 Excel 文件）时改按 CSV 读取
+    public static ImportStream importFromWeChat(Context context, Uri uri, List<AssetAccount> allAssets) {
+        Context appContext = context.getApplicationContext();
+        List<AssetAccount> assets = allAssets != null ? new ArrayList<>(allAssets) : null;
+        return ImportStream.start("wechat", emitter -> {
+            boolean[] emitted = {false};
+            try {
+                readWeChatExcel(appContext, uri, assets, new ImportStream.Emitter() {
+                    @Override
+                    public void asset(AssetAccount asset) {
+                        emitted[0] = true;
+                        emitter.asset(asset);
+                    }
+
+                    @Override
+                    public void record(Transaction record) throws Exception {
+                        emitted[0] = true;
+                        emitter.record(record);
+                    }
+                });
+            } catch (Exception e) {
+                if (emitted[0]) throw e;
+                readWeChatCsv(appContext, uri, assets, emitter);
+            }
+        });
     }
 
-    private static BackupData importWeChatAsExcel(Context context, Uri uri, List<AssetAccount> allAssets) throws Exception {
-        List<Transaction> transactions = new ArrayList<>();
-        List<AssetAccount> newAssetsToCreate = new ArrayList<>();
+    private static void readWeChatExcel(Context context, Uri uri, List<AssetAccount> allAssets, ImportStream.Emitter emitter) throws Exception {
         Map<String, Integer> newAssetMap = new HashMap<>();
 
         // 获取并构建现有分类及子分类的数据结构
@@ -1609,25 +1843,22 @@ public class BackupManager {
             }
         }
 
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             Workbook workbook = WorkbookFactory.create(inputStream)) {
+        try (RowPipeline<List<String>> rows = sheetRows(context, uri)) {
 
-            Sheet sheet = workbook.getSheetAt(0);
             boolean isDataSection = false;
 
-            for (Row row : sheet) {
-                if (row == null) continue;
-
-                String firstColText = getCellText(row.getCell(0));
+            List<String> row;
+            while ((row = rows.next()) != null) {
+                String firstColText = cell(row, 0);
 
                 if (firstColText.contains("交易时间")) {
                     isDataSection = true;
                     continue;
                 }
 
-                if (!isDataSection || row.getLastCellNum() < 7) continue;
+                if (!isDataSection || row.size() < 7) continue;
 
-                String timeStr = getCellText(row.getCell(0));
+                String timeStr = cell(row, 0);
                 if (TextUtils.isEmpty(timeStr) || !timeStr.contains("-")) continue;
 
                 Transaction t = new Transaction();
@@ -1639,9 +1870,9 @@ public class BackupManager {
                     continue;
                 }
                 t.note = timeStr.trim();
-                t.remark = getCellText(row.getCell(2));
+                t.remark = cell(row, 2);
 
-                String typeStr = getCellText(row.getCell(4));
+                String typeStr = cell(row, 4);
                 if ("收入".equals(typeStr)) {
                     t.type = 1;
                 } else if ("支出".equals(typeStr)) {
@@ -1650,10 +1881,10 @@ public class BackupManager {
                     t.type = 0;
                 }
 
-                String amountStr = getCellText(row.getCell(5)).replace("¥", "").replace(",", "").trim();
+                String amountStr = cell(row, 5).replace("¥", "").replace(",", "").trim();
                 t.amount = parseDoubleSafe(amountStr);
 
-                String paymentMethod = getCellText(row.getCell(6)).trim();
+                String paymentMethod = cell(row, 6).trim();
                 int matchedId = matchAssetId(paymentMethod, allAssets);
                 if (matchedId == 0 && !TextUtils.isEmpty(paymentMethod) && !"/".equals(paymentMethod)) {
                     if (newAssetMap.containsKey(paymentMethod)) {
@@ -1663,7 +1894,7 @@ public class BackupManager {
                         int newId = maxAssetId;
                         AssetAccount newAsset = new AssetAccount(paymentMethod, 0.0, 0);
                         newAsset.id = newId;
-                        newAssetsToCreate.add(newAsset);
+                        emitter.asset(newAsset);
                         newAssetMap.put(paymentMethod, newId);
                         t.assetId = newId;
                     }
@@ -1672,43 +1903,19 @@ public class BackupManager {
                 }
 
                 // 【修改】获取微信的交易类型(第2列, 索引1)并匹配
-                String rawCategory = getCellText(row.getCell(1)).trim();
+                String rawCategory = cell(row, 1).trim();
                 String[] matchedCat = matchOrCreateCategory(rawCategory, t.type, expCats, incCats, subCatMap);
                 t.category = matchedCat[0];
                 t.subCategory = matchedCat[1];
 
-                transactions.add(t);
+                emitter.record(t);
             }
         }
-        BackupData data = new BackupData(transactions, newAssetsToCreate);
-        data.expenseCategories = expCats;
-        data.incomeCategories = incCats;
-        return data;
-    }
-
-    // 辅助方法：安全获取 Excel 单元格内容
-    private static String getCellText(Cell cell) {
-        if (cell == null) return "";
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue().trim();
-            case NUMERIC:
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(cell.getDateCellValue());
-                }
-                // 返回纯数字，避免科学计数法导致的解析问题
-                return String.valueOf(cell.getNumericCellValue());
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            default:
-                return "";
-        }
+        saveImportedCategories(context, expCats, incCats, null);
     }
 
     // 回退使用的原生 CSV 解析方法
-    private static BackupData importWeChatAsCsv(Context context, Uri uri, List<AssetAccount> allAssets) throws Exception {
-        List<Transaction> transactions = new ArrayList<>();
-        List<AssetAccount> newAssetsToCreate = new ArrayList<>();
+    private static void readWeChatCsv(Context context, Uri uri, List<AssetAccount> allAssets, ImportStream.Emitter emitter) throws Exception {
         Map<String, Integer> newAssetMap = new HashMap<>();
 
         List<String> expCats = new ArrayList<>(CategoryManager.getExpenseCategories(context));
@@ -1730,14 +1937,13 @@ public class BackupManager {
             }
         }
 
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+        try (RowPipeline<String> lines = csvLines(context, uri)) {
 
             String line;
             boolean isDataSection = false;
             SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
 
-            while ((line = reader.readLine()) != null) {
+            while ((line = lines.next()) != null) {
                 if (line.startsWith("\ufeff")) line = line.substring(1);
                 if (TextUtils.isEmpty(line.trim())) continue;
 
@@ -1780,7 +1986,7 @@ public class BackupManager {
                         int newId = maxAssetId;
                         AssetAccount newAsset = new AssetAccount(paymentMethod, 0.0, 0);
                         newAsset.id = newId;
-                        newAssetsToCreate.add(newAsset);
+                        emitter.asset(newAsset);
                         newAssetMap.put(paymentMethod, newId);
                         t.assetId = newId;
                     }
@@ -1794,13 +2000,10 @@ public class BackupManager {
                 t.category = matchedCat[0];
                 t.subCategory = matchedCat[1];
 
-                transactions.add(t);
+                emitter.record(t);
             }
         }
-        BackupData data = new BackupData(transactions, newAssetsToCreate);
-        data.expenseCategories = expCats;
-        data.incomeCategories = incCats;
-        return data;
+        saveImportedCategories(context, expCats, incCats, null);
     }
     // 辅助方法：通过支付方式文本匹配当前项目中的资产ID
     private static int matchAssetId(String paymentMethod, List<AssetAccount> allAssets) {
@@ -1820,19 +2023,16 @@ public class BackupManager {
     }
 
     // ============================================================================================
-    // 支付宝账单导入 (支持 CSV, 动态列索引与双重编码尝试)
+    // 支付宝账单导入 (支持 CSV, 动态列索引与编码自动识别)
     // ============================================================================================
-    public static BackupData importFromAlipay(Context context, Uri uri, List<AssetAccount> allAssets) throws Exception {
-        BackupData data = parseAlipayCsvWithEncoding(context, uri, "GBK", allAssets);
-        if (data.records.isEmpty()) {
-            data = parseAlipayCsvWithEncoding(context, uri, "UTF-8", allAssets);
-        }
-        return data;
+    // 编码由 CharsetDetector 从文件开头一次识别，不再按 GBK、UTF-8 各解析一遍
+    public static ImportStream importFromAlipay(Context context, Uri uri, List<AssetAccount> allAssets) {
+        Context appContext = context.getApplicationContext();
+        List<AssetAccount> assets = allAssets != null ? new ArrayList<>(allAssets) : null;
+        return ImportStream.start("alipay", emitter -> readAlipay(appContext, uri, assets, emitter));
     }
 
-    private static BackupData parseAlipayCsvWithEncoding(Context context, Uri uri, String charsetName, List<AssetAccount> allAssets) throws Exception {
-        List<Transaction> transactions = new ArrayList<>();
-        List<AssetAccount> newAssetsToCreate = new ArrayList<>();
+    private static void readAlipay(Context context, Uri uri, List<AssetAccount> allAssets, ImportStream.Emitter emitter) throws Exception {
         Map<String, Integer> newAssetMap = new HashMap<>();
 
         List<String> expCats = new ArrayList<>(CategoryManager.getExpenseCategories(context));
@@ -1854,8 +2054,7 @@ public class BackupManager {
             }
         }
 
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, charsetName))) {
+        try (RowPipeline<String> lines = csvLines(context, uri)) {
 
             String line;
             boolean isDataSection = false;
@@ -1864,7 +2063,7 @@ public class BackupManager {
             // 新增 tradeCatIdx 用于定位“交易分类”列
             int timeIdx = -1, typeIdx = -1, amountIdx = -1, descIdx = -1, paymentIdx = -1, tradeCatIdx = -1;
 
-            while ((line = reader.readLine()) != null) {
+            while ((line = lines.next()) != null) {
                 if (line.startsWith("\ufeff")) line = line.substring(1);
                 if (TextUtils.isEmpty(line.trim())) continue;
 
@@ -1931,7 +2130,7 @@ public class BackupManager {
                         int newId = maxAssetId;
                         AssetAccount newAsset = new AssetAccount(paymentMethod, 0.0, 0);
                         newAsset.id = newId;
-                        newAssetsToCreate.add(newAsset);
+                        emitter.asset(newAsset);
                         newAssetMap.put(paymentMethod, newId);
                         t.assetId = newId;
                     }
@@ -1945,13 +2144,10 @@ public class BackupManager {
                 t.category = matchedCat[0];
                 t.subCategory = matchedCat[1];
 
-                transactions.add(t);
+                emitter.record(t);
             }
         }
-        BackupData data = new BackupData(transactions, newAssetsToCreate);
-        data.expenseCategories = expCats;
-        data.incomeCategories = incCats;
-        return data;
+        saveImportedCategories(context, expCats, incCats, null);
     }
     // ... (rest of the helper methods: restoreAssistantConfig, joinSet, splitSet, parseCsvLine, parseDoubleSafe, escapeCsv remain unchanged) ...
     private static void restoreAssistantConfig(Context context, BackupData.AssistantConfigData cd) {
@@ -2019,6 +2215,41 @@ public class BackupManager {
     private static double parseDoubleSafe(String val) {
         try { return Double.parseDouble(val); } catch (Exception e) { return 0.0; }
     }
+
+    // 【新增】解析线程流式读取 Excel 第一个工作表，每行为按列对齐的单元格文本
+    private static RowPipeline<List<String>> sheetRows(Context context, Uri uri) {
+        return RowPipeline.start("sheet", sink -> SheetRowReader.read(context, uri, sink));
+    }
+
+    // 【新增】解析线程按识别出的编码逐行读取 CSV
+    private static RowPipeline<String> csvLines(Context context, Uri uri) {
+        return RowPipeline.start("csv", sink -> {
+            try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
+                 BufferedReader reader = CharsetDetector.openReader(inputStream)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    sink.accept(line);
+                }
+            }
+        });
+    }
+
+    // 安全获取一行中某列的文本，列不存在时为空串
+    private static String cell(List<String> row, int index) {
+        return (index >= 0 && index < row.size()) ? row.get(index) : "";
+    }
+
+    // 【新增】第三方账单读完后保存其中新出现的分类（在解析线程调用）
+    private static void saveImportedCategories(Context context, List<String> expCats, List<String> incCats,
+                                               Map<String, List<String>> subCatMap) {
+        if (expCats != null && !expCats.isEmpty()) CategoryManager.saveExpenseCategories(context, expCats);
+        if (incCats != null && !incCats.isEmpty()) CategoryManager.saveIncomeCategories(context, incCats);
+        if (subCatMap != null) {
+            for (Map.Entry<String, List<String>> entry : subCatMap.entrySet()) {
+                CategoryManager.saveSubCategories(context, entry.getKey(), entry.getValue());
+            }
+        }
+    }
     
     private static String escapeCsv(String value) {
         if (value == null) return "";
@@ -2032,61 +2263,12 @@ public class BackupManager {
     // ============================================================================================
     // WebDAV 备份上传
     // ============================================================================================
-    public static void uploadToWebDAV(Context context, String webdavUrl, String username, String password, List<Transaction> transactions, List<AssetAccount> assets, List<Goal> goals) throws Exception {
-        if (transactions == null) transactions = new ArrayList<>();
-        if (assets == null) assets = new ArrayList<>();
-        if (goals == null) goals = new ArrayList<>();
-        Gson gson = new Gson();
-        BackupData data = new BackupData(transactions, assets, goals);
-
-        List<String> expenseCats = CategoryManager.getExpenseCategories(context);
-        List<String> incomeCats = CategoryManager.getIncomeCategories(context);
-        data.expenseCategories = expenseCats;
-        data.incomeCategories = incomeCats;
-
-        Map<String, List<String>> subMap = new HashMap<>();
-        List<String> allCats = new ArrayList<>(expenseCats);
-        allCats.addAll(incomeCats);
-        for (String parent : allCats) {
-            List<String> subs = CategoryManager.getSubCategories(context, parent);
-            if (subs != null && !subs.isEmpty()) {
-                subMap.put(parent, subs);
-            }
-        }
-        data.subCategoryMap = subMap;
-
-        List<AutoAssetManager.AssetRule> rules = AutoAssetManager.getRules(context);
-        List<String> ruleStrings = new ArrayList<>();
-        for (AutoAssetManager.AssetRule rule : rules) {
-            ruleStrings.add(rule.toString());
-        }
-        data.autoAssetRules = ruleStrings;
-
-        AssistantConfig config = new AssistantConfig(context);
-        BackupData.AssistantConfigData configData = new BackupData.AssistantConfigData();
-        configData.enableAutoTrack = config.isEnabled();
-        configData.enableAssets = config.isAssetsEnabled();
-        configData.defaultAssetId = config.getDefaultAssetId();
-        configData.expenseKeywords = config.getExpenseKeywords();
-        configData.incomeKeywords = config.getIncomeKeywords();
-        configData.weekdayRate = config.getWeekdayOvertimeRate();
-        configData.holidayRate = config.getHolidayOvertimeRate();
-        configData.monthlyBaseSalary = config.getMonthlyBaseSalary();
-
-        data.assistantConfig = configData;
-        data.renewalList = config.getRenewalList();
-
-        SharedPreferences prefs = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
-        Map<String, BackupData.PrefItem> prefsMap = new HashMap<>();
-        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
-            if (entry.getValue() != null) {
-                String type = entry.getValue().getClass().getSimpleName();
-                prefsMap.put(entry.getKey(), new BackupData.PrefItem(type, String.valueOf(entry.getValue())));
-            }
-        }
-        data.appPreferences = prefsMap;
-
-        String jsonString = gson.toJson(data);
+    /**
+     * 上传完整快照，返回快照的 createTime（增量同步清单用它来确认增量段属于哪个快照）
+     */
+    public static long uploadToWebDAV(Context context, String webdavUrl, String username, String password, List<AssetAccount> assets, List<Goal> goals) throws Exception {
+        BackupData data = buildBackupMeta(context, assets, goals);
+        TransactionDao dao = AppDatabase.getDatabase(context).transactionDao();
 
         // 1. 构建目录 URL 和 Basic 认证
         String dirUrlStr = webdavUrl;
@@ -2128,7 +2310,7 @@ public class BackupManager {
              ZipOutputStream zos = new ZipOutputStream(out)) {
             ZipEntry entry = new ZipEntry(JSON_FILE_NAME);
             zos.putNextEntry(entry);
-            zos.write(jsonString.getBytes(StandardCharsets.UTF_8));
+            writeBackupJson(zos, data, dao);
             zos.closeEntry();
         }
 
@@ -2141,12 +2323,16 @@ public class BackupManager {
         } else if (responseCode < 200 || responseCode >= 300) {
             throw new Exception("服务器返回错误状态码: " + responseCode + " - " + conn.getResponseMessage());
         }
+        return data.createTime;
     }
 
     // ============================================================================================
     // WebDAV 备份下载与同步
     // ============================================================================================
-    public static BackupData downloadFromWebDAV(Context context, String webdavUrl, String username, String password) throws Exception {
+    /**
+     * 把 WebDAV 上的备份快照下载到本地缓存目录的临时文件（只做网络传输，不解析、不碰数据库），调用方用完后删除
+     */
+    public static java.io.File downloadSnapshotFromWebDAV(Context context, String webdavUrl, String username, String password) throws Exception {
         String targetUrl = webdavUrl;
         if (!targetUrl.endsWith("/")) targetUrl += "/";
         targetUrl += "budget_backup.zip"; // 下载固定的备份文件名
@@ -2170,81 +2356,99 @@ public class BackupManager {
             throw new Exception("服务器返回错误状态码: " + responseCode + " - " + conn.getResponseMessage());
         }
 
-        // 3. 将网络流转为 ZIP 流并解析内部的 JSON 文件
+        // 3. 原样保存到临时文件
+        java.io.File file = java.io.File.createTempFile("webdav_snapshot", ".zip", context.getCacheDir());
         try (InputStream inputStream = conn.getInputStream();
+             OutputStream out = new java.io.FileOutputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = inputStream.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } catch (Exception e) {
+            file.delete();
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * 流式解析本地的备份 ZIP，账单按批交给 consumer，不在内存中保留整份账单；不恢复任何配置
+     */
+    public static BackupData readBackupFile(java.io.File file, RecordChunkConsumer consumer) throws Exception {
+        try (InputStream inputStream = new java.io.FileInputStream(file);
              ZipInputStream zis = new ZipInputStream(inputStream)) {
 
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
                 if (entry.getName().equals(JSON_FILE_NAME)) {
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(zis, StandardCharsets.UTF_8));
-                    StringBuilder sb = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        sb.append(line);
-                    }
-                    Gson gson = new Gson();
-                    BackupData data = gson.fromJson(sb.toString(), BackupData.class);
+                    return readBackupJson(zis, consumer);
+                }
+            }
+        }
+        throw new Exception("备份文件中未找到有效的数据。");
+    }
 
-                    // --- 开始恢复应用配置 ---
-                    // 【新增】恢复一级支出分类
-                    if (data.expenseCategories != null && !data.expenseCategories.isEmpty()) {
-                        CategoryManager.saveExpenseCategories(context, data.expenseCategories);
-                    }
+    /**
+     * 把备份中的分类、自动资产规则、助手配置、自动续费和偏好设置写回本地
+     * （WebDAV 快照与增量段共用）
+     */
+    public static void restoreSettings(Context context, BackupData data) {
+        // 【新增】恢复一级支出分类
+        if (data.expenseCategories != null && !data.expenseCategories.isEmpty()) {
+            CategoryManager.saveExpenseCategories(context, data.expenseCategories);
+        }
 
-                    // 【新增】恢复一级收入分类
-                    if (data.incomeCategories != null && !data.incomeCategories.isEmpty()) {
-                        CategoryManager.saveIncomeCategories(context, data.incomeCategories);
-                    }
+        // 【新增】恢复一级收入分类
+        if (data.incomeCategories != null && !data.incomeCategories.isEmpty()) {
+            CategoryManager.saveIncomeCategories(context, data.incomeCategories);
+        }
 
-                    if (data.autoAssetRules != null && !data.autoAssetRules.isEmpty()) {
-                        for (String ruleStr : data.autoAssetRules) {
-                            AutoAssetManager.AssetRule rule = AutoAssetManager.AssetRule.fromString(ruleStr);
-                            if (rule != null) {
-                                AutoAssetManager.addRule(context, rule);
-                            }
-                        }
-                    }
+        if (data.autoAssetRules != null && !data.autoAssetRules.isEmpty()) {
+            for (String ruleStr : data.autoAssetRules) {
+                AutoAssetManager.AssetRule rule = AutoAssetManager.AssetRule.fromString(ruleStr);
+                if (rule != null) {
+                    AutoAssetManager.addRule(context, rule);
+                }
+            }
+        }
 
-                    if (data.assistantConfig != null) {
-                        restoreAssistantConfig(context, data.assistantConfig);
-                    }
+        if (data.assistantConfig != null) {
+            restoreAssistantConfig(context, data.assistantConfig);
+        }
 
-                    if (data.subCategoryMap != null) {
-                        for (Map.Entry<String, List<String>> entryMap : data.subCategoryMap.entrySet()) {
-                            CategoryManager.saveSubCategories(context, entryMap.getKey(), entryMap.getValue());
-                        }
-                    }
+        if (data.subCategoryMap != null) {
+            for (Map.Entry<String, List<String>> entryMap : data.subCategoryMap.entrySet()) {
+                CategoryManager.saveSubCategories(context, entryMap.getKey(), entryMap.getValue());
+            }
+        }
 
-                    if (data.renewalList != null) {
-                        new AssistantConfig(context).saveRenewalList(data.renewalList);
-                    }
+        if (data.renewalList != null) {
+            new AssistantConfig(context).saveRenewalList(data.renewalList);
+        }
 
-                    if (data.appPreferences != null) {
-                        SharedPreferences.Editor editor = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE).edit();
-                        for (Map.Entry<String, BackupData.PrefItem> entryMap : data.appPreferences.entrySet()) {
-                            String key = entryMap.getKey();
-                            BackupData.PrefItem item = entryMap.getValue();
-                            if (item == null || item.value == null) continue;
-                            try {
-                                switch (item.type) {
-                                    case "Boolean": editor.putBoolean(key, Boolean.parseBoolean(item.value)); break;
-                                    case "Integer": editor.putInt(key, Integer.parseInt(item.value)); break;
-                                    case "Float": editor.putFloat(key, Float.parseFloat(item.value)); break;
-                                    case "Long": editor.putLong(key, Long.parseLong(item.value)); break;
-                                    default: editor.putString(key, item.value); break;
-                                }
-                            } catch (Exception e) {
-                                Log.e("BackupManager", "恢复配置异常", e);
-                            }
-                        }
-                        editor.apply();
+        if (data.appPreferences != null) {
+            SharedPreferences.Editor editor = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE).edit();
+            for (Map.Entry<String, BackupData.PrefItem> entryMap : data.appPreferences.entrySet()) {
+                String key = entryMap.getKey();
+                BackupData.PrefItem item = entryMap.getValue();
+                if (item == null || item.value == null) continue;
+                try {
+                    switch (item.type) {
+                        case "Boolean": editor.putBoolean(key, Boolean.parseBoolean(item.value)); break;
+                        case "Integer": editor.putInt(key, Integer.parseInt(item.value)); break;
+                        case "Float": editor.putFloat(key, Float.parseFloat(item.value)); break;
+                        case "Long": editor.putLong(key, Long.parseLong(item.value)); break;
+                        default: editor.putString(key, item.value); break;
                     }
-                    return data; // 返回解析后的数据供数据库操作
+                } catch (Exception e) {
+                    Log.e("BackupManager", "恢复配置异常", e);
                 }
             }
+            editor.apply();
+            // 预算以 budgets 表为准，按恢复出的旧预算键重建
+            BudgetStore.onLegacyPrefsRestored(context);
         }
-        throw new Exception("备份文件中未找到有效的数据。");
     }
 
     // ============================================================================================
@@ -2253,49 +2457,12 @@ public class BackupManager {
     
     /**
      * 触发 WebDAV 自动上传（如果已启用自动同步）
-     * 此方法会在后台线程执行，不会阻塞主线程
+     * 只登记一次待上传的变更，由 WebDavUploadScheduler 防抖合并后在唯一的后台线程中执行，
+     * 连续记多笔账也只会产生一次上传
      * 
      * @param context 上下文
      */
     public static void triggerAutoUploadIfEnabled(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences("webdav_prefs", Context.MODE_PRIVATE);
-        boolean autoSyncEnabled = prefs.getBoolean("webdav_auto_sync", false);
-        
-        if (!autoSyncEnabled) {
-            return; // 自动同步未启用，直接返回
-        }
-        
-        String url = prefs.getString("webdav_url", "");
-        String username = prefs.getString("webdav_username", "");
-        String password = prefs.getString("webdav_password", "");
-        
-        if (url.isEmpty() || username.isEmpty() || password.isEmpty()) {
-            return; // 配置不完整，直接返回
-        }
-        
-        // 在后台线程执行上传
-        new Thread(() -> {
-            try {
-                com.example.budgetapp.database.AppDatabase db = com.example.budgetapp.database.AppDatabase.getDatabase(context);
-                
-                // 获取需要备份的数据
-                List<com.example.budgetapp.database.Transaction> transactions = db.transactionDao().getAllTransactionsSync();
-                List<com.example.budgetapp.database.AssetAccount> assets = db.assetAccountDao().getAllAssetsSync();
-                List<com.example.budgetapp.database.Goal> goals = db.goalDao().getAllGoalsSync();
-                
-                // 执行上传
-                uploadToWebDAV(context, url, username, password, transactions, assets, goals);
-                
-                // 保存备份时间
-                prefs.edit()
-                        .putLong("webdav_last_backup_time", System.currentTimeMillis())
-                        .apply();
-                
-                Log.d("BackupManager", "WebDAV 自动上传成功");
-            } catch (Exception e) {
-                Log.e("BackupManager", "WebDAV 自动上传失败: " + e.getMessage(), e);
-                // 静默失败，不打扰用户
-            }
-        }).start();
+        WebDavUploadScheduler.requestUpload(context);
     }
 }
@@ -33,11 +33,12 @@ import androidx.navigation.fragment.NavHostFragment;
 import androidx.navigation.ui.NavigationUI;
 
 import com.example.budgetapp.database.AssetAccount;
-import com.example.budgetapp.database.Transaction;
 import com.example.budgetapp.widget.TodaySummaryWidget;
 import com.google.android.accessibility.selecttospeak.SelectToSpeakService;
+import com.example.budgetapp.ui.ImportProgressDialog;
 import com.example.budgetapp.ui.SettingsActivity;
 import com.example.budgetapp.util.AssistantConfig;
+import com.example.budgetapp.util.ImportStream;
 import com.example.budgetapp.viewmodel.FinanceViewModel;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
@@ -49,7 +50,6 @@ import androidx.activity.OnBackPressedCallback;
 public class MainActivity extends AppCompatActivity {
 
     private FinanceViewModel financeViewModel;
-    private List<Transaction> allTransactions = new ArrayList<>();
     private List<AssetAccount> allAssets = new ArrayList<>();
 
 
@@ -65,8 +65,8 @@ public class MainActivity extends AppCompatActivity {
                             com.example.budgetapp.database.AppDatabase db = com.example.budgetapp.database.AppDatabase.getDatabase(getApplicationContext());
                             List<com.example.budgetapp.database.Goal> allGoals = db.goalDao().getAllGoalsSync();
 
-                            // 导出时加上 allGoals 参数
-                            BackupManager.exportToZip(MainActivity.this, uri, allTransactions, allAssets, allGoals);
+                            // 账单由 BackupManager 分页流式写出，不再一次性加载整张表
+                            BackupManager.exportToZip(MainActivity.this, uri, allAssets, allGoals);
 
                             runOnUiThread(() -> Toast.makeText(MainActivity.this, "导出成功", Toast.LENGTH_SHORT).show());
                         } catch (Exception e) {
@@ -83,42 +83,17 @@ public class MainActivity extends AppCompatActivity {
             new ActivityResultContracts.OpenDocument(),
             uri -> {
                 if (uri != null) {
-                    try {
-                        BackupData data = BackupManager.importFromZip(this, uri);
-                        
-                        int recordCount = 0;
-                        int assetCount = 0;
-
-                        if (data.records != null && !data.records.isEmpty()) {
-                            for (Transaction t : data.records) {
-                                Transaction newT = t; 
-                                newT.id = 0; 
-                                financeViewModel.addTransaction(newT);
-                            }
-                            recordCount = data.records.size();
-                        }
-
-                        if (data.assets != null && !data.assets.isEmpty()) {
-                            for (AssetAccount a : data.assets) {
-                                AssetAccount newA = a;
-                                newA.id = 0; 
-                                financeViewModel.addAsset(newA);
-                            }
-                            assetCount = data.assets.size();
-                        }
-
-                        if (recordCount > 0 || assetCount > 0) {
+                    // 解析线程边读边交给写线程分批写入，账单与资产在一个事务里完成，结束后只刷新一次小组件、只触发一次同步
+                    ImportStream stream = BackupManager.importFromZip(this, uri, meta -> meta.assets);
+                    ImportProgressDialog.show(this, financeViewModel.bulkImport(stream, false, false), result -> {
+                        if (result.imported() > 0 || result.assets > 0) {
                             Toast.makeText(this, 
-                                String.format("成功导入: %d条账单, %d个资产", recordCount, assetCount), 
+                                String.format("成功导入: %d条账单, %d个资产", result.imported(), result.assets), 
                                 Toast.LENGTH_LONG).show();
                         } else {
                             Toast.makeText(this, "备份文件中未发现数据", Toast.LENGTH_SHORT).show();
                         }
-
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "导入失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                    }, "导入失败");
                 }
             }
     );
@@ -155,10 +130,6 @@ public class MainActivity extends AppCompatActivity {
 
         financeViewModel = new ViewModelProvider(this).get(FinanceViewModel.class);
         
-        financeViewModel.getAllTransactions().observe(this, transactions -> {
-            this.allTransactions = transactions;
-        });
-
         financeViewModel.getAllAssets().observe(this, assets -> {
             this.allAssets = assets;
         });
@@ -16,10 +16,30 @@ public class MyApplication extends Application {
     // 全局静态变量，记录当前是否已经解锁过
     public static boolean isUnlocked = false;
 
+    private static final String KEY_SUMMARY_ZONE = "daily_summary_zone";
+
     @Override
     public void onCreate() {
         super.onCreate();
 
+        // 上次进程结束前如有未完成的 WebDAV 自动上传，继续补传
+        WebDavUploadScheduler.resumePending(this);
+
+        // 数据变更通知：兜底监听未经 DataChangeFeed.write 的写入，小组件按本月范围订阅；
+        // 变更日志只保留 WebDAV 增量同步还需要的部分
+        com.example.budgetapp.database.DataChangeFeed.setJournalRetention(() -> WebDavSyncManager.journalRetainAfter(this));
+        com.example.budgetapp.database.DataChangeFeed.start(this);
+        com.example.budgetapp.widget.WidgetDataCache.start(this);
+
+        // 汇总表按写入时的本地时区分日期桶：启动时和系统时区变化时核对，时区变了就整体重建
+        rebuildDailySummaryIfZoneChanged();
+        registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                rebuildDailySummaryIfZoneChanged();
+            }
+        }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+
         // 1. 监听系统锁屏广播（一旦屏幕熄灭，就将状态改为未解锁）
         IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_OFF);
         registerReceiver(new BroadcastReceiver() {
@@ -66,7 +86,7 @@ public class MyApplication extends Application {
         });
     
         // 检查是否有活期理财资产，自动安排每日计息闹钟
-        com.example.budgetapp.database.AppDatabase.databaseWriteExecutor.execute(() -> {
+        com.example.budgetapp.database.AppDatabase.databaseReadExecutor.execute(() -> {
             try {
                 java.util.List<com.example.budgetapp.database.AssetAccount> deposits =
                         com.example.budgetapp.database.AppDatabase.getDatabase(this).assetAccountDao().getCurrentDepositAssetsSync();
@@ -82,4 +102,24 @@ public class MyApplication extends Application {
             }
         });
 }
-}
\ No newline at end of file
+
+    // 记录汇总表日期桶所用的时区；首次运行只记录，不重建
+    private void rebuildDailySummaryIfZoneChanged() {
+        String zone = java.time.ZoneId.systemDefault().getId();
+        SharedPreferences prefs = getSharedPreferences("app_prefs", MODE_PRIVATE);
+        String bucketZone = prefs.getString(KEY_SUMMARY_ZONE, null);
+        if (zone.equals(bucketZone)) return;
+        com.example.budgetapp.database.AppDatabase.databaseWriteExecutor.execute(() -> {
+            try {
+                if (bucketZone != null) {
+                    com.example.budgetapp.database.AppDatabase.getDatabase(this).rebuildDailySummary();
+                    // 重建不经过 sync_journal，所有按日期缓存的页面和小组件都要重新加载
+                    com.example.budgetapp.database.DataChangeFeed.publish(com.example.budgetapp.database.DataChange.ALL);
+                }
+                prefs.edit().putString(KEY_SUMMARY_ZONE, zone).apply();
+            } catch (Exception e) {
+                android.util.Log.e("MyApplication", "时区变化后重建汇总表失败", e);
+            }
+        });
+    }
+}
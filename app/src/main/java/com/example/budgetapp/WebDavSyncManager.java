@@ -0,0 +1,477 @@
+package com.example.budgetapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.budgetapp.database.AppDatabase;
+import com.example.budgetapp.database.AssetAccount;
+import com.example.budgetapp.database.DataChangeFeed;
+import com.example.budgetapp.database.Goal;
+import com.example.budgetapp.database.SyncJournalDao;
+import com.example.budgetapp.database.Transaction;
+import com.example.budgetapp.database.TransactionDao;
+import com.example.budgetapp.util.AssetLedger;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * WebDAV 增量同步
+ * 远端目录结构：
+ *   budget_backup.zip       完整快照（与手动备份格式一致）
+ *   budget_delta_xxx.zip    增量段：自上次确认同步以来变更过的账单 + 当前的资产/目标/配置
+ *   sync_manifest.json      清单：当前快照的 createTime 与按顺序排列的增量段
+ * 本地通过 sync_journal 表的 seq 记录修改序号，上传成功后把已确认的 seq 存入 webdav_prefs，由 DataChangeFeed 清理日志；
+ * 未开启自动同步时日志在发布变更后即被清理（见 journalRetainAfter）。
+ * 清单的读写使用 ETag / If-Match，别的设备抢先改了清单时放弃追加，改为重新上传一份快照；
+ * 上传快照时同样带 If-Match（远端还没有清单时带 If-None-Match: *），清单被抢先修改时重新上传，最多 SNAPSHOT_ATTEMPTS 次。
+ * 本机的上传方法互斥执行，手动上传与自动上传不会同时写远端文件。
+ */
+public class WebDavSyncManager {
+
+    private static final String TAG = "WebDavSyncManager";
+
+    private static final String MANIFEST_FILE_NAME = "sync_manifest.json";
+    private static final String DELTA_FILE_PREFIX = "budget_delta_";
+    private static final String DELTA_JSON_NAME = "delta_data.json";
+
+    // 增量段累计到这么多个时合并成新快照
+    private static final int SNAPSHOT_EVERY_SEGMENTS = 20;
+    // 单次变更超过这么多条（例如批量导入）时直接传快照更划算
+    private static final int MAX_DELTA_CHANGES = 2000;
+    // 上传快照时清单被其他设备抢先修改，最多重新上传的次数
+    private static final int SNAPSHOT_ATTEMPTS = 3;
+    // IN (...) 查询每批的 id 数，低于 SQLite 默认的 999 个变量上限
+    private static final int ID_BATCH_SIZE = 500;
+
+    private static final String PREFS_NAME = "webdav_prefs";
+    private static final String KEY_SYNC_SEQ = "webdav_sync_seq";
+    private static final String KEY_SYNC_TARGET = "webdav_sync_target";
+    // 与 WebdavSettingsActivity 的自动同步开关同一个键
+    private static final String KEY_AUTO_SYNC = "webdav_auto_sync";
+
+    public static class Manifest {
+        public int version = 1;
+        // 对应快照 BackupData.createTime，恢复时用来判断增量段是否属于当前快照
+        public long snapshotCreateTime;
+        public List<Segment> segments = new ArrayList<>();
+    }
+
+    public static class Segment {
+        public String name;
+        public long fromSeq;
+        public long toSeq;
+        public long createTime;
+    }
+
+    public static class DeltaData {
+        public long createTime;
+        // 资产、目标、分类与配置体量很小，每个增量段都携带完整的一份
+        public BackupData state;
+        public List<Transaction> upserts = new ArrayList<>();
+        public List<Integer> deletedIds = new ArrayList<>();
+    }
+
+    private static class RemoteFile {
+        String body;
+        String etag;
+    }
+
+    // ============================================================================================
+    // 上传
+    // ============================================================================================
+
+    /**
+     * 自动同步入口：只上传上次确认之后的变更；首次同步、目标地址变更、增量段过多或变更过大时改传完整快照
+     */
+    public static synchronized void syncIncremental(Context context, String webdavUrl, String username, String password) throws Exception {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        AppDatabase db = AppDatabase.getDatabase(context);
+        SyncJournalDao journal = db.syncJournalDao();
+
+        long ackedSeq = prefs.getLong(KEY_SYNC_SEQ, -1);
+        long maxSeq = orZero(journal.getMaxSeqSync());
+        if (ackedSeq < 0 || !webdavUrl.equals(prefs.getString(KEY_SYNC_TARGET, ""))) {
+            uploadSnapshot(context, webdavUrl, username, password);
+            return;
+        }
+        if (maxSeq <= ackedSeq) {
+            return; // 没有新的变更
+        }
+
+        String dirUrl = dirUrl(webdavUrl);
+        RemoteFile manifestFile = get(dirUrl + MANIFEST_FILE_NAME, username, password);
+        Manifest manifest = manifestFile != null ? new Gson().fromJson(manifestFile.body, Manifest.class) : null;
+        if (manifest == null || manifest.segments == null
+                || manifest.segments.size() >= SNAPSHOT_EVERY_SEGMENTS
+                || journal.countChangesSync(ackedSeq, maxSeq) > MAX_DELTA_CHANGES) {
+            uploadSnapshot(context, webdavUrl, username, password);
+            return;
+        }
+
+        // 1. 上传增量段
+        DeltaData delta = buildDelta(context, db, ackedSeq, maxSeq);
+        Segment segment = new Segment();
+        segment.name = DELTA_FILE_PREFIX + delta.createTime + "_" + (ackedSeq + 1) + "_" + maxSeq + ".zip";
+        segment.fromSeq = ackedSeq + 1;
+        segment.toSeq = maxSeq;
+        segment.createTime = delta.createTime;
+        putDelta(dirUrl + segment.name, username, password, delta);
+
+        // 2. 带 If-Match 更新清单，期间如有其他设备改过清单则改传快照
+        manifest.segments.add(segment);
+        int code = putManifest(dirUrl, username, password, manifest, manifestFile);
+        if (code == 412) {
+            Log.w(TAG, "同步清单已被其他设备修改，改为上传完整快照");
+            delete(dirUrl + segment.name, username, password);
+            uploadSnapshot(context, webdavUrl, username, password);
+            return;
+        }
+        checkResponse(code);
+
+        markSynced(context, webdavUrl, maxSeq);
+    }
+
+    /**
+     * 上传完整快照并重置同步清单，旧的增量段随后清理
+     */
+    public static synchronized void uploadSnapshot(Context context, String webdavUrl, String username, String password) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            if (tryUploadSnapshot(context, webdavUrl, username, password)) return;
+            if (attempt >= SNAPSHOT_ATTEMPTS) {
+                throw new Exception("同步清单被其他设备反复修改，稍后重试");
+            }
+            Log.w(TAG, "同步清单已被其他设备修改，重新上传完整快照");
+        }
+    }
+
+    // 清单在读出之后被其他设备修改（412）时返回 false，由调用方重新上传
+    private static boolean tryUploadSnapshot(Context context, String webdavUrl, String username, String password) throws Exception {
+        AppDatabase db = AppDatabase.getDatabase(context);
+        String dirUrl = dirUrl(webdavUrl);
+        // 先读清单取得 ETag，再传快照：期间其他设备写过清单时，下面的条件写入会失败
+        RemoteFile oldManifestFile = get(dirUrl + MANIFEST_FILE_NAME, username, password);
+
+        // 先记下序号再读数据：上传期间产生的新变更会落在下一次增量里（按 id 覆盖，重复应用无副作用）
+        long seq = orZero(db.syncJournalDao().getMaxSeqSync());
+        List<AssetAccount> assets = db.assetAccountDao().getAllAssetsSync();
+        List<Goal> goals = db.goalDao().getAllGoalsSync();
+
+        long createTime = BackupManager.uploadToWebDAV(context, webdavUrl, username, password, assets, goals);
+
+        Manifest manifest = new Manifest();
+        manifest.snapshotCreateTime = createTime;
+        int code = putManifest(dirUrl, username, password, manifest, oldManifestFile);
+        if (code == 412) return false;
+        checkResponse(code);
+
+        markSynced(context, webdavUrl, seq);
+
+        // 清理旧的增量段（尽力而为，失败不影响同步结果）
+        if (oldManifestFile != null) {
+            Manifest oldManifest = new Gson().fromJson(oldManifestFile.body, Manifest.class);
+            if (oldManifest != null && oldManifest.segments != null) {
+                for (Segment old : oldManifest.segments) {
+                    delete(dirUrl + old.name, username, password);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 记录本地已与远端一致的序号；已确认的日志由 DataChangeFeed 在写线程按 journalRetainAfter 清理
+     */
+    public static void markSynced(Context context, String webdavUrl, long seq) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putLong(KEY_SYNC_SEQ, seq)
+                .putString(KEY_SYNC_TARGET, webdavUrl)
+                .apply();
+        DataChangeFeed.pruneJournal(context);
+    }
+
+    /**
+     * 日志保留下界（DataChangeFeed 在写线程调用）：开启自动同步且同步过时，保留上次确认之后的日志留给下一次增量；
+     * 否则日志没有用处，全部清理，此前记录的同步序号随之作废，下次自动同步改传完整快照
+     */
+    public static long journalRetainAfter(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long ackedSeq = prefs.getLong(KEY_SYNC_SEQ, -1);
+        if (prefs.getBoolean(KEY_AUTO_SYNC, false) && ackedSeq >= 0) {
+            return ackedSeq;
+        }
+        if (ackedSeq >= 0) {
+            prefs.edit().remove(KEY_SYNC_SEQ).apply();
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * 从远端恢复后调用：本地数据即为远端最新状态，把当前全部日志视为已确认
+     */
+    public static void markSynced(Context context, String webdavUrl) {
+        markSynced(context, webdavUrl, orZero(AppDatabase.getDatabase(context).syncJournalDao().getMaxSeqSync()));
+    }
+
+    private static DeltaData buildDelta(Context context, AppDatabase db, long afterSeq, long toSeq) {
+        TransactionDao dao = db.transactionDao();
+        DeltaData delta = new DeltaData();
+        delta.createTime = System.currentTimeMillis();
+        delta.state = BackupManager.buildBackupMeta(context, db.assetAccountDao().getAllAssetsSync(), db.goalDao().getAllGoalsSync());
+
+        // 变更过的 id 中，仍然存在的按当前内容覆盖，已不存在的即为删除
+        List<Integer> changedIds = db.syncJournalDao().getChangedRowIdsSync("transactions", afterSeq, toSeq);
+        for (int i = 0; i < changedIds.size(); i += ID_BATCH_SIZE) {
+            List<Integer> batch = changedIds.subList(i, Math.min(i + ID_BATCH_SIZE, changedIds.size()));
+            List<Transaction> rows = dao.getTransactionsByIdsSync(batch);
+            Set<Integer> present = new HashSet<>();
+            for (Transaction t : rows) {
+                present.add(t.id);
+            }
+            delta.upserts.addAll(rows);
+            for (Integer id : batch) {
+                if (!present.contains(id)) delta.deletedIds.add(id);
+            }
+        }
+        return delta;
+    }
+
+    // ============================================================================================
+    // 恢复
+    // ============================================================================================
+
+    /**
+     * 远端清单及其列出的全部增量段，恢复前先取回，写事务里不再访问网络
+     */
+    public static class RemoteDeltas {
+        public final long snapshotCreateTime;
+        public final List<DeltaData> deltas;
+
+        RemoteDeltas(long snapshotCreateTime, List<DeltaData> deltas) {
+            this.snapshotCreateTime = snapshotCreateTime;
+            this.deltas = deltas;
+        }
+    }
+
+    /**
+     * 下载并解析清单中的全部增量段（每段最多 MAX_DELTA_CHANGES 条变更，段数不超过 SNAPSHOT_EVERY_SEGMENTS），没有清单时返回 null
+     */
+    public static RemoteDeltas fetchRemoteDeltas(String webdavUrl, String username, String password) throws Exception {
+        String dirUrl = dirUrl(webdavUrl);
+        RemoteFile manifestFile = get(dirUrl + MANIFEST_FILE_NAME, username, password);
+        if (manifestFile == null) return null;
+        Manifest manifest = new Gson().fromJson(manifestFile.body, Manifest.class);
+        if (manifest == null || manifest.segments == null) return null;
+
+        List<DeltaData> deltas = new ArrayList<>();
+        for (Segment segment : manifest.segments) {
+            DeltaData delta = getDelta(dirUrl + segment.name, username, password);
+            if (delta == null) {
+                throw new Exception("增量数据缺失: " + segment.name);
+            }
+            deltas.add(delta);
+        }
+        return new RemoteDeltas(manifest.snapshotCreateTime, deltas);
+    }
+
+    /**
+     * 在快照恢复之后按顺序应用属于该快照的增量段，需在调用方的数据库事务中执行
+     *
+     * @param snapshot 刚恢复的快照，用 createTime 与清单核对
+     * @return 最后一个增量段携带的分类与配置，调用方在事务提交后用 BackupManager.restoreSettings 写回；没有适用的增量段时为 null
+     */
+    public static BackupData applyRemoteDeltas(AppDatabase db, RemoteDeltas remote, BackupData snapshot) {
+        // 快照被旧版本覆盖过时，清单里的增量段已不再适用
+        if (remote == null || remote.snapshotCreateTime != snapshot.createTime) return null;
+
+        TransactionDao dao = db.transactionDao();
+        BackupData lastState = null;
+        for (DeltaData delta : remote.deltas) {
+            applyUpserts(dao, delta.upserts);
+            for (int i = 0; i < delta.deletedIds.size(); i += ID_BATCH_SIZE) {
+                dao.deleteByIds(delta.deletedIds.subList(i, Math.min(i + ID_BATCH_SIZE, delta.deletedIds.size())));
+            }
+            if (delta.state != null) lastState = delta.state;
+        }
+
+        if (lastState == null) return null;
+        // 资产与目标以最后一个增量段为准整体替换；资产经 AssetLedger 替换，余额与流水保持一致
+        AssetLedger.replaceAll(db, lastState.assets);
+        db.goalDao().deleteAll();
+        if (lastState.goals != null && !lastState.goals.isEmpty()) {
+            db.goalDao().insertAll(lastState.goals);
+        }
+        return lastState;
+    }
+
+    // 不使用 REPLACE：REPLACE 的隐式删除不会触发 daily_summary 的删除触发器
+    private static void applyUpserts(TransactionDao dao, List<Transaction> upserts) {
+        if (upserts == null || upserts.isEmpty()) return;
+        for (int i = 0; i < upserts.size(); i += ID_BATCH_SIZE) {
+            List<Transaction> batch = upserts.subList(i, Math.min(i + ID_BATCH_SIZE, upserts.size()));
+            List<Integer> ids = new ArrayList<>();
+            for (Transaction t : batch) {
+                ids.add(t.id);
+            }
+            Set<Integer> existing = new HashSet<>();
+            for (Transaction t : dao.getTransactionsByIdsSync(ids)) {
+                existing.add(t.id);
+            }
+            List<Transaction> toUpdate = new ArrayList<>();
+            List<Transaction> toInsert = new ArrayList<>();
+            for (Transaction t : batch) {
+                if (existing.contains(t.id)) toUpdate.add(t);
+                else toInsert.add(t);
+            }
+            if (!toUpdate.isEmpty()) dao.updateAll(toUpdate);
+            if (!toInsert.isEmpty()) dao.insertAll(toInsert);
+        }
+    }
+
+    // ============================================================================================
+    // WebDAV 请求辅助方法
+    // ============================================================================================
+
+    private static String dirUrl(String webdavUrl) {
+        return webdavUrl.endsWith("/") ? webdavUrl : webdavUrl + "/";
+    }
+
+    private static long orZero(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    private static java.net.HttpURLConnection open(String urlStr, String method, String username, String password) throws Exception {
+        java.net.HttpURLConnection conn = (java.net.HttpURLConnection) new java.net.URL(urlStr).openConnection();
+        conn.setRequestMethod(method);
+        String auth = username + ":" + password;
+        String encodedAuth = android.util.Base64.encodeToString(auth.getBytes(StandardCharsets.UTF_8), android.util.Base64.NO_WRAP);
+        conn.setRequestProperty("Authorization", "Basic " + encodedAuth);
+        conn.setConnectTimeout(15000);
+        conn.setReadTimeout(30000);
+        return conn;
+    }
+
+    // 文件不存在时返回 null
+    private static RemoteFile get(String urlStr, String username, String password) throws Exception {
+        java.net.HttpURLConnection conn = open(urlStr, "GET", username, password);
+        try {
+            int code = conn.getResponseCode();
+            if (code == 404) return null;
+            checkResponse(code);
+            RemoteFile file = new RemoteFile();
+            file.etag = conn.getHeaderField("ETag");
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+                StringBuilder sb = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    sb.append(line);
+                }
+                file.body = sb.toString();
+            }
+            return file;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    // 按读出时的状态条件写入清单：读出时有 ETag 则 If-Match，读出时不存在则 If-None-Match: *；返回响应码
+    private static int putManifest(String dirUrl, String username, String password, Manifest manifest, RemoteFile previous) throws Exception {
+        byte[] body = new Gson().toJson(manifest).getBytes(StandardCharsets.UTF_8);
+        if (previous == null) {
+            return put(dirUrl + MANIFEST_FILE_NAME, username, password, body, "application/json", "If-None-Match", "*");
+        }
+        return put(dirUrl + MANIFEST_FILE_NAME, username, password, body, "application/json", "If-Match", previous.etag);
+    }
+
+    // 返回响应码；conditionValue 为空时不做并发校验
+    private static int put(String urlStr, String username, String password, byte[] body, String contentType,
+                           String conditionHeader, String conditionValue) throws Exception {
+        java.net.HttpURLConnection conn = open(urlStr, "PUT", username, password);
+        try {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", contentType);
+            if (conditionValue != null) conn.setRequestProperty(conditionHeader, conditionValue);
+            conn.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(body);
+            }
+            return conn.getResponseCode();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static void putDelta(String urlStr, String username, String password, DeltaData delta) throws Exception {
+        java.net.HttpURLConnection conn = open(urlStr, "PUT", username, password);
+        try {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/zip");
+            conn.setChunkedStreamingMode(0);
+            try (OutputStream out = conn.getOutputStream();
+                 ZipOutputStream zos = new ZipOutputStream(out)) {
+                zos.putNextEntry(new ZipEntry(DELTA_JSON_NAME));
+                JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(zos, StandardCharsets.UTF_8)));
+                new Gson().toJson(delta, DeltaData.class, writer);
+                writer.flush();
+                zos.closeEntry();
+            }
+            checkResponse(conn.getResponseCode());
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static DeltaData getDelta(String urlStr, String username, String password) throws Exception {
+        java.net.HttpURLConnection conn = open(urlStr, "GET", username, password);
+        try {
+            int code = conn.getResponseCode();
+            if (code == 404) return null;
+            checkResponse(code);
+            try (InputStream in = conn.getInputStream();
+                 ZipInputStream zis = new ZipInputStream(in)) {
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    if (entry.getName().equals(DELTA_JSON_NAME)) {
+                        return new Gson().fromJson(new InputStreamReader(zis, StandardCharsets.UTF_8), DeltaData.class);
+                    }
+                }
+            }
+            return null;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static void delete(String urlStr, String username, String password) {
+        try {
+            java.net.HttpURLConnection conn = open(urlStr, "DELETE", username, password);
+            conn.getResponseCode();
+            conn.disconnect();
+        } catch (Exception e) {
+            Log.w(TAG, "删除远端文件失败: " + urlStr);
+        }
+    }
+
+    private static void checkResponse(int responseCode) throws Exception {
+        if (responseCode == 401) {
+            throw new Exception("账号或密码(授权码)错误，服务器拒绝访问 (401)。");
+        } else if (responseCode < 200 || responseCode >= 300) {
+            throw new Exception("服务器返回错误状态码: " + responseCode);
+        }
+    }
+}
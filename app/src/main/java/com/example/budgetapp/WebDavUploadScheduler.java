@@ -0,0 +1,172 @@
+package com.example.budgetapp;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.util.Log;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebDAV 自动上传调度器
+ * 所有写入路径（ViewModel、无障碍记账、快捷记账、理财收益等）只负责登记“有待上传的变更”，
+ * 由唯一的后台线程在防抖窗口结束后合并执行一次上传：
+ * - 防抖：窗口期内的多次请求合并成一次；持续写入时最多等待 MAX_WAIT_MS，不会被无限推迟
+ * - 单线程：同一时间最多只有一个上传在进行，不会对远端文件并发写入
+ * - 失败退避：失败后按 30 秒起步翻倍重试，最长 30 分钟
+ * - 条件：可配置仅在非计费网络 / 充电时上传，不满足时稍后再检查
+ * - 持久化：待上传标记保存在 webdav_prefs，进程被杀后下次启动会继续补传
+ */
+public class WebDavUploadScheduler {
+
+    private static final String TAG = "WebDavUploadScheduler";
+
+    private static final long DEBOUNCE_MS = 10_000;
+    // 从第一个待上传请求算起的最长等待时间
+    private static final long MAX_WAIT_MS = 60_000;
+    private static final long INITIAL_BACKOFF_MS = 30_000;
+    private static final long MAX_BACKOFF_MS = 30 * 60_000;
+    private static final long CONSTRAINT_RECHECK_MS = 15 * 60_000;
+
+    private static final String PREFS_NAME = "webdav_prefs";
+    private static final String KEY_AUTO_SYNC = "webdav_auto_sync";
+    private static final String KEY_PENDING = "webdav_upload_pending";
+    public static final String KEY_UNMETERED_ONLY = "webdav_sync_unmetered_only";
+    public static final String KEY_CHARGING_ONLY = "webdav_sync_charging_only";
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+    private static ScheduledFuture<?> scheduledRun;
+    // 每登记一次请求加一，上传结束时据此判断期间是否又有新的变更
+    private static long requestVersion = 0;
+    // 本轮第一个尚未上传的请求登记的时间，0 表示没有
+    private static long firstPendingAt = 0;
+    private static long backoffMs = 0;
+    // 退避期间不允许早于该时间执行
+    private static long notBeforeMillis = 0;
+
+    /**
+     * 登记一次待上传的变更（可在任意线程调用，开销只是写一个标记）
+     */
+    public static void requestUpload(Context context) {
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!prefs.getBoolean(KEY_AUTO_SYNC, false)) {
+            return; // 自动同步未启用，直接返回
+        }
+        synchronized (WebDavUploadScheduler.class) {
+            requestVersion++;
+            if (!prefs.getBoolean(KEY_PENDING, false)) {
+                prefs.edit().putBoolean(KEY_PENDING, true).apply();
+            }
+            long now = System.currentTimeMillis();
+            if (firstPendingAt == 0) {
+                firstPendingAt = now;
+            }
+            schedule(appContext, Math.max(0, Math.min(DEBOUNCE_MS, firstPendingAt + MAX_WAIT_MS - now)));
+        }
+    }
+
+    /**
+     * 应用启动时调用：上次进程结束前还有未完成的上传则继续
+     */
+    public static void resumePending(Context context) {
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (prefs.getBoolean(KEY_PENDING, false)) {
+            synchronized (WebDavUploadScheduler.class) {
+                schedule(appContext, DEBOUNCE_MS);
+            }
+        }
+    }
+
+    // 需持有类锁调用；新的请求会顶替尚未开始的那一次，但不会早于退避时间
+    private static void schedule(Context appContext, long delayMs) {
+        long earliest = Math.max(0, notBeforeMillis - System.currentTimeMillis());
+        long delay = Math.max(delayMs, earliest);
+        if (scheduledRun != null) {
+            scheduledRun.cancel(false);
+        }
+        scheduledRun = EXECUTOR.schedule(() -> runUpload(appContext), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void runUpload(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String url = prefs.getString("webdav_url", "");
+        String username = prefs.getString("webdav_username", "");
+        String password = prefs.getString("webdav_password", "");
+
+        if (!prefs.getBoolean(KEY_AUTO_SYNC, false) || url.isEmpty() || username.isEmpty() || password.isEmpty()) {
+            prefs.edit().putBoolean(KEY_PENDING, false).apply(); // 已关闭自动同步或配置不完整，放弃本次
+            return;
+        }
+
+        if (!constraintsMet(context, prefs)) {
+            synchronized (WebDavUploadScheduler.class) {
+                schedule(context, CONSTRAINT_RECHECK_MS);
+            }
+            return;
+        }
+
+        long version;
+        synchronized (WebDavUploadScheduler.class) {
+            version = requestVersion;
+            // 之后的请求属于下一轮，重新计算最长等待时间
+            firstPendingAt = 0;
+        }
+
+        try {
+            // 增量同步：只上传上次确认之后的变更段，必要时才合并为完整快照
+            WebDavSyncManager.syncIncremental(context, url, username, password);
+
+            synchronized (WebDavUploadScheduler.class) {
+                backoffMs = 0;
+                notBeforeMillis = 0;
+                SharedPreferences.Editor editor = prefs.edit()
+                        .putLong("webdav_last_backup_time", System.currentTimeMillis());
+                // 上传期间没有新的请求才清除待上传标记，否则等已排队的下一次
+                if (requestVersion == version) {
+                    editor.putBoolean(KEY_PENDING, false);
+                }
+                editor.apply();
+            }
+            Log.d(TAG, "WebDAV 自动上传成功");
+        } catch (Exception e) {
+            Log.e(TAG, "WebDAV 自动上传失败: " + e.getMessage(), e);
+            // 静默失败，按指数退避重试
+            synchronized (WebDavUploadScheduler.class) {
+                backoffMs = backoffMs == 0 ? INITIAL_BACKOFF_MS : Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+                notBeforeMillis = System.currentTimeMillis() + backoffMs;
+                schedule(context, backoffMs);
+            }
+        }
+    }
+
+    private static boolean constraintsMet(Context context, SharedPreferences prefs) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm != null) {
+            NetworkInfo info = cm.getActiveNetworkInfo();
+            if (info == null || !info.isConnected()) {
+                return false; // 没有网络
+            }
+            if (prefs.getBoolean(KEY_UNMETERED_ONLY, false) && cm.isActiveNetworkMetered()) {
+                return false;
+            }
+        }
+        if (prefs.getBoolean(KEY_CHARGING_ONLY, false)) {
+            Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            int plugged = battery != null ? battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) : 0;
+            if (plugged == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,16 +1,18 @@
 package com.example.budgetapp.database;
 
 import android.content.Context;
+import android.database.Cursor;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.migration.Migration;
 import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
 import androidx.annotation.NonNull;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
-@Database(entities = {Transaction.class, AssetAccount.class, Goal.class}, version = 24, exportSchema = false)
+@Database(entities = {Transaction.class, AssetAccount.class, Goal.class, DailySummary.class, SyncJournal.class, TransactionFts.class, TransactionFtsPending.class, BudgetCheckpoint.class, Budget.class, AssetMovement.class}, version = 34, exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
 
     public abstract TransactionDao transactionDao();
@@ -18,9 +20,24 @@ public abstract class AppDatabase extends RoomDatabase {
 
     public abstract GoalDao goalDao();
 
+    public abstract DailySummaryDao dailySummaryDao();
+
+    public abstract SyncJournalDao syncJournalDao();
+
+    public abstract TransactionFtsDao transactionFtsDao();
+
+    public abstract BudgetCheckpointDao budgetCheckpointDao();
+
+    public abstract BudgetDao budgetDao();
+
+    public abstract AssetMovementDao assetMovementDao();
+
     private static volatile AppDatabase INSTANCE;
-    private static final int NUMBER_OF_THREADS = 4;
-    public static final ExecutorService databaseWriteExecutor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+    // 写操作：单写者命令队列，按提交顺序执行；只有 executeMergeable 提交的纯数据库写入会合并进一个事务
+    public static final DbWriteQueue databaseWriteExecutor = new DbWriteQueue();
+    // 只读查询：独立线程池，大小按 CPU 核数（WAL 模式下读不阻塞写，也不占用写线程）
+    private static final int NUMBER_OF_READ_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static final ExecutorService databaseReadExecutor = Executors.newFixedThreadPool(NUMBER_OF_READ_THREADS);
 
     // ... 保持之前的 MIGRATION
     static final Migration MIGRATION_2_3 = new Migration(2, 3) {
@@ -184,6 +201,376 @@ public abstract class AppDatabase extends RoomDatabase {
         }
     };
 
+    // 【新增】24 -> 25 的迁移逻辑：新建按天预聚合的 daily_summary 表，挂上同步触发器并一次性重建历史汇总
+    static final Migration MIGRATION_24_25 = new Migration(24, 25) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `daily_summary` (" +
+                    "`dayStart` INTEGER NOT NULL, " +
+                    "`type` INTEGER NOT NULL, " +
+                    "`category` TEXT NOT NULL, " +
+                    "`currencySymbol` TEXT NOT NULL, " +
+                    "`amount` REAL NOT NULL, " +
+                    "`txCount` INTEGER NOT NULL, " +
+                    "`budgetAmount` REAL NOT NULL, " +
+                    "`overtimeHours` REAL NOT NULL, " +
+                    "PRIMARY KEY(`dayStart`, `type`, `category`, `currencySymbol`))");
+            createDailySummaryTriggers(database);
+            rebuildDailySummary(database);
+        }
+    };
+
+    // ================= daily_summary 汇总表维护 =================
+    // 所有写入 transactions 的路径（ViewModel、无障碍服务、快捷记账、备份导入、分类改名）
+    // 都由触发器在同一个数据库事务里同步更新汇总，不会出现漏记。
+
+    // 日期桶：把毫秒时间戳换算为当天本地 00:00 的毫秒时间戳
+    private static String dayBucketSql(String row) {
+        return "(CAST(strftime('%s', " + row + ".date / 1000, 'unixepoch', 'localtime', 'start of day', 'utc') AS INTEGER) * 1000)";
+    }
+
+    // 加班时长：从备注 "时长: X小时" 中截取数字（CAST 会自动忽略前导空格和数字后面的文字）
+    // overtimeColumn 为 true 时（33 版本起）改为读取写入时解析好的 overtimeHours 列（见 TransactionOvertime）；
+    // 分类改名等直接执行 SQL 的路径不会重算该列，这里仍按类型和分类过滤
+    private static String overtimeHoursSql(String row, boolean overtimeColumn) {
+        if (overtimeColumn) {
+            return "(CASE WHEN " + row + ".type = 1 AND " + row + ".category = '加班' " +
+                    "THEN " + row + ".overtimeHours ELSE 0 END)";
+        }
+        return "(CASE WHEN " + row + ".type = 1 AND " + row + ".category = '加班' AND instr(" + row + ".note, '时长:') > 0 " +
+                "THEN CAST(substr(" + row + ".note, instr(" + row + ".note, '时长:') + 3) AS REAL) ELSE 0 END)";
+    }
+
+    private static String budgetAmountSql(String row) {
+        return "(CASE WHEN " + row + ".excludeFromBudget THEN 0 ELSE " + row + ".amount END)";
+    }
+
+    // 汇总表的 category / currencySymbol 为 NOT NULL 主键列，明细中为 NULL 的分类按 '' 归桶。
+    // 因此汇总口径下无分类的账单满足 category != '资产互转'，会计入收支合计；
+    // 直接查 transactions 时 NULL != '资产互转' 为 NULL 会被漏掉，这类账单本就是普通收支，以汇总口径为准
+    private static String summaryKeySql(String row) {
+        return "dayStart = " + dayBucketSql(row) +
+                " AND type = " + row + ".type" +
+                " AND category = IFNULL(" + row + ".category, '')" +
+                " AND currencySymbol = IFNULL(" + row + ".currencySymbol, '')";
+    }
+
+    // 把一行账单加进（sign = "+"）或移出（sign = "-"）汇总
+    private static String applySummarySql(String row, String sign, boolean overtimeColumn) {
+        String sql = "";
+        if ("+".equals(sign)) {
+            sql += "INSERT OR IGNORE INTO daily_summary (dayStart, type, category, currencySymbol, amount, txCount, budgetAmount, overtimeHours) " +
+                    "VALUES (" + dayBucketSql(row) + ", " + row + ".type, IFNULL(" + row + ".category, ''), IFNULL(" + row + ".currencySymbol, ''), 0, 0, 0, 0); ";
+        }
+        sql += "UPDATE daily_summary SET " +
+                "amount = amount " + sign + " " + row + ".amount, " +
+                "txCount = txCount " + sign + " 1, " +
+                "budgetAmount = budgetAmount " + sign + " " + budgetAmountSql(row) + ", " +
+                "overtimeHours = overtimeHours " + sign + " " + overtimeHoursSql(row, overtimeColumn) + " " +
+                "WHERE " + summaryKeySql(row) + "; ";
+        if ("-".equals(sign)) {
+            sql += "DELETE FROM daily_summary WHERE txCount <= 0 AND " + summaryKeySql(row) + "; ";
+        }
+        return sql;
+    }
+
+    // 25 ~ 32 版本的汇总触发器：transactions 还没有 overtimeHours 列，从备注解析加班时长
+    static void createDailySummaryTriggers(SupportSQLiteDatabase db) {
+        createDailySummaryTriggers(db, false);
+    }
+
+    static void createDailySummaryTriggers(SupportSQLiteDatabase db, boolean overtimeColumn) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_daily_summary_insert` AFTER INSERT ON `transactions` BEGIN " +
+                applySummarySql("NEW", "+", overtimeColumn) + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_daily_summary_delete` AFTER DELETE ON `transactions` BEGIN " +
+                applySummarySql("OLD", "-", overtimeColumn) + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_daily_summary_update` AFTER UPDATE ON `transactions` BEGIN " +
+                applySummarySql("OLD", "-", overtimeColumn) + applySummarySql("NEW", "+", overtimeColumn) + "END");
+    }
+
+    // 只重算汇总表本身，迁移中也会调用，不能依赖之后版本才有的表
+    static void rebuildDailySummary(SupportSQLiteDatabase db) {
+        rebuildDailySummary(db, false);
+    }
+
+    static void rebuildDailySummary(SupportSQLiteDatabase db, boolean overtimeColumn) {
+        db.execSQL("DELETE FROM daily_summary");
+        db.execSQL("INSERT INTO daily_summary (dayStart, type, category, currencySymbol, amount, txCount, budgetAmount, overtimeHours) " +
+                "SELECT " + dayBucketSql("t") + ", t.type, IFNULL(t.category, ''), IFNULL(t.currencySymbol, ''), " +
+                "SUM(t.amount), COUNT(*), SUM(" + budgetAmountSql("t") + "), SUM(" + overtimeHoursSql("t", overtimeColumn) + ") " +
+                "FROM transactions t GROUP BY 1, 2, 3, 4");
+    }
+
+    /**
+     * 从账单明细全量重建汇总表（例如系统时区变化导致日期桶错位时）
+     */
+    public void rebuildDailySummary() {
+        runInTransaction(() -> {
+            SupportSQLiteDatabase db = getOpenHelper().getWritableDatabase();
+            rebuildDailySummary(db, true);
+            // 日期桶可能整体平移，预算台账检查点一并作废
+            db.execSQL("DELETE FROM budget_checkpoints");
+        });
+    }
+
+    // 【新增】25 -> 26 的迁移逻辑：新建 sync_journal 变更日志表，供 WebDAV 增量同步使用
+    static final Migration MIGRATION_25_26 = new Migration(25, 26) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_journal` (" +
+                    "`seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`tableName` TEXT NOT NULL, " +
+                    "`rowId` INTEGER NOT NULL, " +
+                    "`op` INTEGER NOT NULL, " +
+                    "`changedAt` INTEGER NOT NULL)");
+            createSyncJournalTriggers(database);
+        }
+    };
+
+    // ================= sync_journal 变更日志维护 =================
+    private static final String[] JOURNALED_TABLES = {"transactions", "asset_accounts", "goals"};
+
+    private static String journalInsertSql(String table, String row, int op) {
+        return "INSERT INTO sync_journal (tableName, rowId, op, changedAt) VALUES ('" + table + "', " + row + ".id, " + op + ", " +
+                "CAST(strftime('%s', 'now') AS INTEGER) * 1000); ";
+    }
+
+    static void createSyncJournalTriggers(SupportSQLiteDatabase db) {
+        for (String table : JOURNALED_TABLES) {
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_sync_journal_" + table + "_insert` AFTER INSERT ON `" + table + "` BEGIN " +
+                    journalInsertSql(table, "NEW", SyncJournal.OP_UPSERT) + "END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_sync_journal_" + table + "_update` AFTER UPDATE ON `" + table + "` BEGIN " +
+                    journalInsertSql(table, "NEW", SyncJournal.OP_UPSERT) + "END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_sync_journal_" + table + "_delete` AFTER DELETE ON `" + table + "` BEGIN " +
+                    journalInsertSql(table, "OLD", SyncJournal.OP_DELETE) + "END");
+        }
+    }
+
+    // 【新增】26 -> 27 的迁移逻辑：账单全文索引（FTS4）及待更新队列，已有账单全部进入队列等待后台建索引
+    static final Migration MIGRATION_26_27 = new Migration(26, 27) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `transactions_fts` USING FTS4(" +
+                    "`note` TEXT, `remark` TEXT, `category` TEXT, `subCategory` TEXT, `targetObject` TEXT)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `transactions_fts_pending` (" +
+                    "`rowId` INTEGER NOT NULL, PRIMARY KEY(`rowId`))");
+            database.execSQL("INSERT INTO transactions_fts_pending (rowId) SELECT id FROM transactions");
+            createTransactionFtsTriggers(database);
+        }
+    };
+
+    // 【新增】27 -> 28 的迁移逻辑：热点查询的组合 / 覆盖索引，单列 type 索引选择性太低，由组合索引取代
+    static final Migration MIGRATION_27_28 = new Migration(27, 28) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP INDEX IF EXISTS `index_transactions_type`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_transactions_date_type_category_amount` ON `transactions` (`date`, `type`, `category`, `amount`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_transactions_type_category_date` ON `transactions` (`type`, `category`, `date`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_transactions_assetId_date` ON `transactions` (`assetId`, `date`)");
+            database.execSQL("ANALYZE transactions");
+        }
+    };
+
+    // 【新增】28 -> 29 的迁移逻辑：预算结余台账的月度检查点
+    static final Migration MIGRATION_28_29 = new Migration(28, 29) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `budget_checkpoints` (" +
+                    "`monthStart` INTEGER NOT NULL, " +
+                    "`ledger` TEXT NOT NULL, " +
+                    "`origin` INTEGER NOT NULL, " +
+                    "`budget` REAL NOT NULL, " +
+                    "`expense` REAL NOT NULL, " +
+                    "`cumulativeEnd` REAL NOT NULL, " +
+                    "`maxCumulative` REAL NOT NULL, " +
+                    "PRIMARY KEY(`monthStart`, `ledger`))");
+            createBudgetCheckpointTriggers(database);
+        }
+    };
+
+    // 【新增】29 -> 30 的迁移逻辑：预算配置表（旧的 SharedPreferences 预算由 BudgetStore 首次加载时导入）
+    static final Migration MIGRATION_29_30 = new Migration(29, 30) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `budgets` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`period` INTEGER NOT NULL, " +
+                    "`category` TEXT NOT NULL, " +
+                    "`amount` REAL NOT NULL, " +
+                    "`effectiveFrom` INTEGER NOT NULL)");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_budgets_period_category_effectiveFrom` " +
+                    "ON `budgets` (`period`, `category`, `effectiveFrom`)");
+        }
+    };
+
+    static final Migration MIGRATION_30_31 = new Migration(30, 31) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `asset_movements` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`assetId` INTEGER NOT NULL, " +
+                    "`delta` REAL NOT NULL, " +
+                    "`txId` INTEGER NOT NULL, " +
+                    "`reason` TEXT NOT NULL, " +
+                    "`createdAt` INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_asset_movements_assetId` ON `asset_movements` (`assetId`)");
+            // 现有余额作为每个资产的期初流水，之后的变化都在此基础上追加
+            database.execSQL("INSERT INTO asset_movements (assetId, delta, txId, reason, createdAt) " +
+                    "SELECT id, amount, 0, 'opening', updateTime FROM asset_accounts WHERE amount != 0");
+        }
+    };
+
+    // 【新增】31 -> 32 的迁移逻辑：账单内容指纹列及索引，已有账单在迁移中一次算好
+    static final Migration MIGRATION_31_32 = new Migration(31, 32) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `transactions` ADD COLUMN `fingerprint` INTEGER");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_transactions_fingerprint` ON `transactions` (`fingerprint`)");
+            backfillFingerprints(database);
+        }
+    };
+
+    // 回填只写指纹列，不应产生汇总、同步日志和预算检查点的变化，期间先摘掉 transactions 上的 UPDATE 触发器
+    // 此时还没有 overtimeHours 列，汇总触发器按 32 版本的口径（从备注解析加班时长）重建
+    private static void backfillFingerprints(SupportSQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS `trg_daily_summary_update`");
+        db.execSQL("DROP TRIGGER IF EXISTS `trg_sync_journal_transactions_update`");
+        db.execSQL("DROP TRIGGER IF EXISTS `trg_budget_checkpoint_update`");
+        writeFingerprints(db, "1");
+        createDailySummaryTriggers(db);
+        createSyncJournalTriggers(db);
+        createBudgetCheckpointTriggers(db);
+    }
+
+    // 按当前口径重算满足 where 条件的账单指纹（调用方负责先摘掉 UPDATE 触发器）
+    private static void writeFingerprints(SupportSQLiteDatabase db, String where) {
+        try (SupportSQLiteStatement update = db.compileStatement("UPDATE transactions SET fingerprint = ? WHERE id = ?");
+             Cursor c = db.query("SELECT id, date, type, amount, category, subCategory, note, remark FROM transactions WHERE " + where + " ORDER BY id")) {
+            while (c.moveToNext()) {
+                update.bindLong(1, TransactionFingerprint.of(c.getLong(1), c.getInt(2), c.getDouble(3),
+                        c.getString(4), c.getString(5), c.getString(6), c.getString(7)));
+                update.bindLong(2, c.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } catch (java.io.IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 【新增】32 -> 33 的迁移逻辑：加班时长与加班类型列，已有加班账单的备注在迁移中解析一次
+    // 汇总触发器改为读取 overtimeHours 列，先摘掉三个汇总触发器再加列；与回填指纹相同，回填期间也摘掉其余 UPDATE 触发器，
+    // 回填后重建触发器，并按新的口径整体重算汇总表
+    static final Migration MIGRATION_32_33 = new Migration(32, 33) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP TRIGGER IF EXISTS `trg_daily_summary_insert`");
+            database.execSQL("DROP TRIGGER IF EXISTS `trg_daily_summary_delete`");
+            database.execSQL("DROP TRIGGER IF EXISTS `trg_daily_summary_update`");
+            database.execSQL("DROP TRIGGER IF EXISTS `trg_sync_journal_transactions_update`");
+            database.execSQL("DROP TRIGGER IF EXISTS `trg_budget_checkpoint_update`");
+            database.execSQL("ALTER TABLE `transactions` ADD COLUMN `overtimeHours` REAL NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE `transactions` ADD COLUMN `overtimeKind` INTEGER NOT NULL DEFAULT 0");
+            backfillOvertime(database);
+            createDailySummaryTriggers(database, true);
+            createSyncJournalTriggers(database);
+            createBudgetCheckpointTriggers(database);
+            rebuildDailySummary(database, true);
+        }
+    };
+
+    private static void backfillOvertime(SupportSQLiteDatabase db) {
+        try (SupportSQLiteStatement update = db.compileStatement("UPDATE transactions SET overtimeHours = ?, overtimeKind = ? WHERE id = ?");
+             Cursor c = db.query("SELECT id, date, note FROM transactions WHERE type = 1 AND category = '" + TransactionOvertime.CATEGORY + "'")) {
+            while (c.moveToNext()) {
+                update.bindDouble(1, TransactionOvertime.parseHours(c.getString(2)));
+                update.bindLong(2, TransactionOvertime.kindOf(c.getLong(1)));
+                update.bindLong(3, c.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } catch (java.io.IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 【新增】33 -> 34 的迁移逻辑：指纹改为区分 null 与空字符串，文本字段含 null 的账单按新口径重算指纹
+    // 与回填指纹相同，期间摘掉 transactions 上的 UPDATE 触发器，之后按当前版本重建
+    static final Migration MIGRATION_33_34 = new Migration(33, 34) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("DROP TRIGGER IF EXISTS `trg_daily_summary_update`");
+            database.execSQL("DROP TRIGGER IF EXISTS `trg_sync_journal_transactions_update`");
+            database.execSQL("DROP TRIGGER IF EXISTS `trg_budget_checkpoint_update`");
+            writeFingerprints(database, "category IS NULL OR subCategory IS NULL OR note IS NULL OR remark IS NULL");
+            createDailySummaryTriggers(database, true);
+            createSyncJournalTriggers(database);
+            createBudgetCheckpointTriggers(database);
+        }
+    };
+
+    // ================= 预算台账检查点维护 =================
+    // 账单所在月份 1 号本地 00:00 的毫秒时间戳，与 BudgetLedger 中的月份划分一致
+    private static String monthBucketSql(String row) {
+        return "(CAST(strftime('%s', " + row + ".date / 1000, 'unixepoch', 'localtime', 'start of month', 'utc') AS INTEGER) * 1000)";
+    }
+
+    // 支出账单变化时，该月及之后的累计结余都不再成立
+    static void createBudgetCheckpointTriggers(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_budget_checkpoint_insert` AFTER INSERT ON `transactions` " +
+                "WHEN NEW.type = 0 BEGIN " +
+                "DELETE FROM budget_checkpoints WHERE monthStart >= " + monthBucketSql("NEW") + "; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_budget_checkpoint_delete` AFTER DELETE ON `transactions` " +
+                "WHEN OLD.type = 0 BEGIN " +
+                "DELETE FROM budget_checkpoints WHERE monthStart >= " + monthBucketSql("OLD") + "; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_budget_checkpoint_update` AFTER UPDATE ON `transactions` " +
+                "WHEN OLD.type = 0 OR NEW.type = 0 BEGIN " +
+                "DELETE FROM budget_checkpoints WHERE monthStart >= MIN(" + monthBucketSql("OLD") + ", " + monthBucketSql("NEW") + "); END");
+    }
+
+    // ================= 全文索引维护 =================
+    // 只把变更的行 id 放进待更新队列（词元由 TransactionSearchIndex 在 Java 中生成）；
+    // 用 NOT EXISTS 而不是 INSERT OR IGNORE，因为外层 Room 语句的 OR ABORT 会覆盖触发器里的冲突策略
+    private static final String FTS_ENQUEUE_SQL = "INSERT INTO transactions_fts_pending (rowId) SELECT NEW.id " +
+            "WHERE NOT EXISTS (SELECT 1 FROM transactions_fts_pending WHERE rowId = NEW.id); ";
+
+    static void createTransactionFtsTriggers(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_transactions_fts_insert` AFTER INSERT ON `transactions` BEGIN " +
+                FTS_ENQUEUE_SQL + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_transactions_fts_update` " +
+                "AFTER UPDATE OF note, remark, category, subCategory, targetObject ON `transactions` BEGIN " +
+                FTS_ENQUEUE_SQL + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `trg_transactions_fts_delete` AFTER DELETE ON `transactions` BEGIN " +
+                "DELETE FROM transactions_fts WHERE rowid = OLD.id; " +
+                "DELETE FROM transactions_fts_pending WHERE rowId = OLD.id; END");
+    }
+
+    // 全新安装（或破坏性迁移重建）时 Room 只会建表，触发器需要在这里补上
+    // 汇总表、同步日志、全文索引、预算检查点的全部触发器
+    private static void createTriggers(SupportSQLiteDatabase db) {
+        createDailySummaryTriggers(db, true);
+        createSyncJournalTriggers(db);
+        createTransactionFtsTriggers(db);
+        createBudgetCheckpointTriggers(db);
+    }
+
+    private static final RoomDatabase.Callback DAILY_SUMMARY_CALLBACK = new RoomDatabase.Callback() {
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            createTriggers(db);
+        }
+
+        @Override
+        public void onDestructiveMigration(@NonNull SupportSQLiteDatabase db) {
+            // 破坏性迁移由 Room 直接删表重建，不会回调 onCreate，触发器需要在这里补建
+            createTriggers(db);
+        }
+
+        @Override
+        public void onOpen(@NonNull SupportSQLiteDatabase db) {
+            // 触发器均为 IF NOT EXISTS，已存在时不做任何事；兜底任何没有建出触发器的路径
+            createTriggers(db);
+        }
+    };
+
     public static AppDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
@@ -199,10 +586,16 @@ public abstract class AppDatabase extends RoomDatabase {
                                     MIGRATION_14_15, MIGRATION_15_16, MIGRATION_16_17,
                                     MIGRATION_17_18, MIGRATION_18_19, MIGRATION_19_20,
                                     MIGRATION_20_21, MIGRATION_21_22, MIGRATION_22_23,
-                                    MIGRATION_23_24
+                                    MIGRATION_23_24, MIGRATION_24_25, MIGRATION_25_26,
+                                    MIGRATION_26_27, MIGRATION_27_28, MIGRATION_28_29,
+                                    MIGRATION_29_30,
+                                    MIGRATION_30_31, MIGRATION_31_32, MIGRATION_32_33,
+                                    MIGRATION_33_34
                             )
+                            .addCallback(DAILY_SUMMARY_CALLBACK)
                             .fallbackToDestructiveMigration()
                             .build();
+                    databaseWriteExecutor.attach(INSTANCE);
                 }
             }
         }
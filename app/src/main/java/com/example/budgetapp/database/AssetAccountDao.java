@@ -5,7 +5,6 @@ import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
-import androidx.room.Update;
 import java.util.List;
 
 @Dao
@@ -13,11 +12,43 @@ public interface AssetAccountDao {
     @Insert
     void insert(AssetAccount account);
 
+    // 【新增】插入并返回自增 id，供批量导入时把账单引用的临时资产 id 映射到真实 id
+    @Insert
+    long insertAndGetId(AssetAccount account);
+
+    // 【新增】按汇总后的变化量一次性调整余额
+    @Query("UPDATE asset_accounts SET amount = amount + :delta WHERE id = :id")
+    void adjustBalance(int id, double delta);
+
+    // 【新增】按变化量调整余额，结果不低于 0（负债还清、借出收回时使用）
+    @Query("UPDATE asset_accounts SET amount = MAX(0, amount + :delta) WHERE id = :id")
+    void adjustBalanceAtLeastZero(int id, double delta);
+
+    // 【新增】余额足够时才扣减，返回 1 表示已扣减
+    @Query("UPDATE asset_accounts SET amount = amount - :amount WHERE id = :id AND amount >= :amount")
+    int deductIfSufficient(int id, double amount);
+
+    @Query("SELECT amount FROM asset_accounts WHERE id = :id")
+    Double getBalanceSync(int id);
+
+    @Query("UPDATE asset_accounts SET updateTime = :time WHERE id = :id")
+    void touch(int id, long time);
+
     @Delete
     void delete(AssetAccount account);
 
-    @Update
-    void update(AssetAccount account);
+    // 【新增】编辑资产时只写余额以外的列，余额变化由 AssetLedger 按差额另行调整
+    @Query("UPDATE asset_accounts SET name = :name, type = :type, updateTime = :updateTime, currencySymbol = :currencySymbol, " +
+            "isIncludedInTotal = :isIncludedInTotal, colorType = :colorType, customColorHex = :customColorHex, svgIcon = :svgIcon, " +
+            "assetCategory = :assetCategory, isFixedTerm = :isFixedTerm, durationMonths = :durationMonths, interestRate = :interestRate, " +
+            "expectedReturn = :expectedReturn, depositDate = :depositDate, isCompoundInterest = :isCompoundInterest, " +
+            "totalInstallments = :totalInstallments, installmentAmount = :installmentAmount, paidInstallments = :paidInstallments " +
+            "WHERE id = :id")
+    void updateDetails(int id, String name, int type, long updateTime, String currencySymbol,
+                       boolean isIncludedInTotal, int colorType, String customColorHex, String svgIcon,
+                       String assetCategory, boolean isFixedTerm, int durationMonths, double interestRate,
+                       double expectedReturn, long depositDate, boolean isCompoundInterest,
+                       int totalInstallments, double installmentAmount, String paidInstallments);
 
     @Query("SELECT * FROM asset_accounts ORDER BY updateTime DESC")
     LiveData<List<AssetAccount>> getAllAssets();
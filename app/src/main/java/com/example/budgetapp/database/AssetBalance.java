@@ -0,0 +1,9 @@
+package com.example.budgetapp.database;
+
+/**
+ * 按资产汇总的金额：asset_movements 中某个资产全部流水之和
+ */
+public class AssetBalance {
+    public int assetId;
+    public double amount;
+}
@@ -0,0 +1,28 @@
+package com.example.budgetapp.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * 资产余额流水（只追加）：每次余额变化记一行变化量
+ * 某个资产的全部 delta 之和应等于 asset_accounts.amount，AssetLedger 会定期核对并补差。
+ * 写入统一经过 AssetLedger，不要直接改 AssetAccount.amount 再整行 update。
+ */
+@Entity(tableName = "asset_movements",
+        indices = {@Index("assetId")})
+public class AssetMovement {
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+
+    public int assetId;
+    // 余额变化量（负债账户为欠款的变化量）
+    public double delta;
+    // 引起变化的账单 id，没有对应账单时为 0
+    public int txId;
+    // 变化原因，取值见 AssetLedger.REASON_*
+    @NonNull
+    public String reason = "";
+    public long createdAt;
+}
@@ -0,0 +1,27 @@
+package com.example.budgetapp.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface AssetMovementDao {
+    @Insert
+    void insert(AssetMovement movement);
+
+    // 每个资产按流水汇总的余额
+    @Query("SELECT assetId, SUM(delta) AS amount FROM asset_movements GROUP BY assetId")
+    List<AssetBalance> getLedgerBalancesSync();
+
+    @Query("SELECT * FROM asset_movements WHERE assetId = :assetId ORDER BY id")
+    List<AssetMovement> getMovementsSync(int assetId);
+
+    @Query("DELETE FROM asset_movements WHERE assetId = :assetId")
+    void deleteByAsset(int assetId);
+
+    // 资产被删除（或备份恢复时整表替换）后残留的流水
+    @Query("DELETE FROM asset_movements WHERE assetId NOT IN (SELECT id FROM asset_accounts)")
+    int deleteOrphans();
+}
@@ -0,0 +1,10 @@
+package com.example.budgetapp.database;
+
+/**
+ * 统计页趋势图使用的聚合结果：某个时间桶（月份/日期/星期）内某一类型的金额合计
+ */
+public class BucketAmount {
+    public int bucket;
+    public int type;
+    public double amount;
+}
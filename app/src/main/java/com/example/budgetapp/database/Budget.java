@@ -0,0 +1,34 @@
+package com.example.budgetapp.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * 预算配置：每月默认总预算、指定月份的总预算、各分类的月预算
+ * 读写统一经过 BudgetStore（带内存缓存），不要直接读 SharedPreferences 里的旧键。
+ */
+@Entity(tableName = "budgets",
+        indices = {@Index(value = {"period", "category", "effectiveFrom"}, unique = true)})
+public class Budget {
+    // 每月通用：没有单独设置的月份都使用它（effectiveFrom 为 0）
+    public static final int PERIOD_MONTHLY = 0;
+    // 只对 effectiveFrom 指定的那一个月生效，优先于通用预算
+    public static final int PERIOD_SINGLE_MONTH = 1;
+
+    @PrimaryKey(autoGenerate = true)
+    public int id;
+
+    public int period;
+    // 分类名称，空字符串表示总预算
+    @NonNull
+    public String category = "";
+    public double amount;
+    // 生效月份，格式为 年*100+月（如 202610），与时区无关；通用预算为 0
+    public long effectiveFrom;
+
+    public static long monthKey(int year, int month) {
+        return year * 100L + month;
+    }
+}
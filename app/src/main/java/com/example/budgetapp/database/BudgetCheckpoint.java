@@ -0,0 +1,30 @@
+package com.example.budgetapp.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+
+/**
+ * 预算结余台账的月度检查点：某个已结束月份的预算、支出以及截至月末的累计结余
+ * 由 BudgetLedger 计算后写入；transactions 上的触发器在账单变化时删除该月及之后的检查点，
+ * 下次计算只需从最早失效的月份往后重算，之前的月份直接复用。
+ */
+@Entity(tableName = "budget_checkpoints",
+        primaryKeys = {"monthStart", "ledger"})
+public class BudgetCheckpoint {
+    // 当月 1 号本地时间 00:00 的毫秒时间戳
+    public long monthStart;
+    // 台账名称（存储目标资金池 / 预算历史，两者的支出口径不同）
+    @NonNull
+    public String ledger = "";
+    // 台账起算月 1 号的时间戳，起算月变化后旧检查点全部作废
+    public long origin;
+
+    // 当月使用的预算，与当前设置不一致时该检查点作废
+    public double budget;
+    // 当月支出合计
+    public double expense;
+    // 从起算日到月末的累计结余（每日预算 - 当日支出）
+    public double cumulativeEnd;
+    // 当月内每日累计结余的最大值，用于跳过整月查找“资金池何时够用”
+    public double maxCumulative;
+}
@@ -0,0 +1,25 @@
+package com.example.budgetapp.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface BudgetCheckpointDao {
+
+    @Query("SELECT * FROM budget_checkpoints WHERE ledger = :ledger ORDER BY monthStart")
+    List<BudgetCheckpoint> getCheckpointsSync(String ledger);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertAll(List<BudgetCheckpoint> checkpoints);
+
+    // 某月及之后的检查点作废
+    @Query("DELETE FROM budget_checkpoints WHERE ledger = :ledger AND monthStart >= :monthStart")
+    void deleteFrom(String ledger, long monthStart);
+
+    @Query("DELETE FROM budget_checkpoints WHERE ledger = :ledger")
+    void deleteLedger(String ledger);
+}
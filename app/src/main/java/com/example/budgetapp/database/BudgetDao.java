@@ -0,0 +1,29 @@
+package com.example.budgetapp.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface BudgetDao {
+
+    @Query("SELECT * FROM budgets")
+    List<Budget> getAllSync();
+
+    // 总预算：通用预算 + [fromMonth, toMonth] 内单独设置的月份（月份格式见 Budget.effectiveFrom）
+    @Query("SELECT * FROM budgets WHERE category = '' AND (period = 0 OR (period = 1 AND effectiveFrom BETWEEN :fromMonth AND :toMonth))")
+    List<Budget> getTotalBudgetsInRangeSync(long fromMonth, long toMonth);
+
+    // 同一 (period, category, effectiveFrom) 只保留一条，重复写入即覆盖
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(Budget budget);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertAll(List<Budget> budgets);
+
+    @Query("DELETE FROM budgets")
+    void deleteAll();
+}
@@ -0,0 +1,10 @@
+package com.example.budgetapp.database;
+
+/**
+ * 统计页饼图使用的聚合结果：某一类型下某个分类的金额合计
+ */
+public class CategoryAmount {
+    public int type;
+    public String category;
+    public double amount;
+}
@@ -0,0 +1,30 @@
+package com.example.budgetapp.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+
+/**
+ * 按天预聚合的汇总表：日期桶 × 类型 × 分类 × 币种 → 金额合计、笔数、加班时长
+ * 由 transactions 表上的触发器在每次写入时同步维护（见 AppDatabase），
+ * 日历、统计、小组件只需读取 O(天数) 行，而不必扫描全部账单。
+ */
+@Entity(tableName = "daily_summary",
+        primaryKeys = {"dayStart", "type", "category", "currencySymbol"})
+public class DailySummary {
+    // 当天本地时间 00:00 的毫秒时间戳
+    public long dayStart;
+    public int type; // 0支出, 1收入, 2转账, 3负债, 4借出
+    @NonNull
+    public String category = "";
+    @NonNull
+    public String currencySymbol = "";
+
+    // 当天该分组的金额合计
+    public double amount;
+    // 当天该分组的账单笔数
+    public int txCount;
+    // 计入预算的金额合计（排除 excludeFromBudget 的账单）
+    public double budgetAmount;
+    // 加班时长合计（取自账单的 overtimeHours 列，写入时已从备注解析好）
+    public double overtimeHours;
+}
@@ -0,0 +1,84 @@
+package com.example.budgetapp.database;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * 按天预聚合汇总表的查询接口。
+ * 注意：汇总以“天”为粒度，start/end 按当天 00:00 的时间戳比较，
+ * 调用方传入的 start 应为某天的零点，end 可以是当天任意时刻。
+ * 明细中分类为 NULL 的账单在汇总表里归入 ''，会计入 category != '资产互转' 的合计（见 AppDatabase.summaryKeySql）。
+ */
+@Dao
+public interface DailySummaryDao {
+
+    // 日历/统计使用：获取时间段内每天的分组汇总
+    @Query("SELECT * FROM daily_summary WHERE dayStart >= :start AND dayStart <= :end ORDER BY dayStart")
+    List<DailySummary> getSummariesByRangeSync(long start, long end);
+
+    // 收入或支出总和（排除资产互转），与 TransactionDao.getTotalAmountByTypeSync 口径一致
+    @Query("SELECT SUM(amount) FROM daily_summary WHERE dayStart >= :start AND dayStart <= :end AND type = :type AND category != '资产互转'")
+    Double getTotalAmountByTypeSync(long start, long end, int type);
+
+    @Query("SELECT SUM(amount) FROM daily_summary WHERE dayStart >= :start AND dayStart <= :end AND type = :type AND category != '资产互转'")
+    LiveData<Double> getTotalAmountByTypeLive(long start, long end, int type);
+
+    // 加班总收入
+    @Query("SELECT SUM(amount) FROM daily_summary WHERE dayStart >= :start AND dayStart <= :end AND type = 1 AND category = '加班'")
+    Double getOvertimeTotalAmountSync(long start, long end);
+
+    @Query("SELECT SUM(amount) FROM daily_summary WHERE dayStart >= :start AND dayStart <= :end AND type = 1 AND category = '加班'")
+    LiveData<Double> getOvertimeTotalAmountLive(long start, long end);
+
+    // 加班总时长
+    @Query("SELECT SUM(overtimeHours) FROM daily_summary WHERE dayStart >= :start AND dayStart <= :end AND type = 1 AND category = '加班'")
+    Double getOvertimeHoursSync(long start, long end);
+
+    // 统计页趋势图：按时间桶聚合收支，bucketFormat 为 strftime 格式（'%m' 月份、'%d' 日期、'%w' 星期，0 表示周日）
+    // 口径与原统计页一致：支出取全部 type = 0，收入排除加班
+    @Query("SELECT CAST(strftime(:bucketFormat, dayStart / 1000, 'unixepoch', 'localtime') AS INTEGER) AS bucket, type, SUM(amount) AS amount " +
+            "FROM daily_summary WHERE dayStart >= :start AND dayStart <= :end " +
+            "AND (type = 0 OR (type = 1 AND category != '加班')) " +
+            "GROUP BY bucket, type")
+    List<BucketAmount> getBucketAmountsSync(long start, long end, String bucketFormat);
+
+    // 统计页饼图：按分类聚合收支，口径同上
+    @Query("SELECT type, category, SUM(amount) AS amount " +
+            "FROM daily_summary WHERE dayStart >= :start AND dayStart <= :end " +
+            "AND (type = 0 OR (type = 1 AND category != '加班')) " +
+            "GROUP BY type, category")
+    List<CategoryAmount> getCategoryAmountsSync(long start, long end);
+
+    // 预算台账：每天计入预算的支出（排除资产互转和不计入预算的账单）
+    @Query("SELECT dayStart, SUM(budgetAmount) AS amount FROM daily_summary " +
+            "WHERE dayStart >= :start AND dayStart <= :end AND type = 0 AND category != '资产互转' GROUP BY dayStart")
+    List<DayAmount> getBudgetExpenseByDaySync(long start, long end);
+
+    // 预算历史：每天的全部支出
+    @Query("SELECT dayStart, SUM(amount) AS amount FROM daily_summary " +
+            "WHERE dayStart >= :start AND dayStart <= :end AND type = 0 GROUP BY dayStart")
+    List<DayAmount> getExpenseByDaySync(long start, long end);
+
+    // 年视图：每天的收支净额（收入为正、支出为负，排除资产互转），汇总表本身按本地日期分桶，一年最多 366 行
+    @Query("SELECT dayStart, TOTAL(CASE WHEN type = 1 THEN amount ELSE -amount END) AS amount FROM daily_summary " +
+            "WHERE dayStart >= :start AND dayStart <= :end AND type IN (0, 1) AND category != '资产互转' " +
+            "GROUP BY dayStart ORDER BY dayStart")
+    List<DayAmount> getNetAmountByDaySync(long start, long end);
+
+    // 桌面小组件：一次扫描本月的汇总行，同时得到今日/本月收支和本月加班（口径与上面的单项查询一致）
+    @Query("SELECT " +
+            "TOTAL(CASE WHEN dayStart >= :todayStart AND dayStart <= :todayEnd AND type = 1 AND category != '资产互转' THEN amount END) AS todayIncome, " +
+            "TOTAL(CASE WHEN dayStart >= :todayStart AND dayStart <= :todayEnd AND type = 0 AND category != '资产互转' THEN amount END) AS todayExpense, " +
+            "TOTAL(CASE WHEN type = 1 AND category != '资产互转' THEN amount END) AS monthIncome, " +
+            "TOTAL(CASE WHEN type = 0 AND category != '资产互转' THEN amount END) AS monthExpense, " +
+            "TOTAL(CASE WHEN type = 1 AND category = '加班' THEN amount END) AS overtimeAmount, " +
+            "TOTAL(CASE WHEN type = 1 AND category = '加班' THEN overtimeHours END) AS overtimeHours " +
+            "FROM daily_summary WHERE dayStart >= :monthStart AND dayStart <= :monthEnd")
+    WidgetTotals getWidgetTotalsSync(long monthStart, long monthEnd, long todayStart, long todayEnd);
+
+    @Query("DELETE FROM daily_summary")
+    void deleteAll();
+}
@@ -0,0 +1,142 @@
+package com.example.budgetapp.database;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 一次数据写入影响到的范围：账单日期区间、资产 id、分类
+ * 由 DataChangeFeed 在写事务提交后发布，订阅方据此判断自己显示的数据是否需要重新加载。
+ * isAll() 为 true 表示范围未知（批量导入、恢复备份、分类改名等），所有订阅方都应刷新。
+ */
+public final class DataChange {
+
+    public static final DataChange ALL = new DataChange(true, Long.MIN_VALUE, Long.MAX_VALUE,
+            Collections.emptySet(), Collections.emptySet());
+
+    private final boolean all;
+    // 受影响账单的最早、最晚时间；没有账单变化时 minDate > maxDate
+    public final long minDate;
+    public final long maxDate;
+    public final Set<Integer> assetIds;
+    public final Set<String> categories;
+
+    private DataChange(boolean all, long minDate, long maxDate, Set<Integer> assetIds, Set<String> categories) {
+        this.all = all;
+        this.minDate = minDate;
+        this.maxDate = maxDate;
+        this.assetIds = assetIds;
+        this.categories = categories;
+    }
+
+    public boolean isAll() {
+        return all;
+    }
+
+    public boolean isEmpty() {
+        return !all && minDate > maxDate && assetIds.isEmpty() && categories.isEmpty();
+    }
+
+    /**
+     * 是否有账单发生变化
+     */
+    public boolean touchesTransactions() {
+        return all || minDate <= maxDate;
+    }
+
+    /**
+     * 是否有账单落在 [start, end] 内（变化前或变化后）
+     */
+    public boolean intersects(long start, long end) {
+        return all || (minDate <= end && maxDate >= start);
+    }
+
+    public boolean touchesAsset(int assetId) {
+        return all || assetIds.contains(assetId);
+    }
+
+    public boolean touchesCategory(String category) {
+        return all || categories.contains(category);
+    }
+
+    /**
+     * 合并两次变化（订阅方来不及处理时把多次通知合成一次）
+     */
+    public DataChange merge(DataChange other) {
+        if (all || other.all) return ALL;
+        return new Builder().add(this).add(other).build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private boolean all;
+        private long minDate = Long.MAX_VALUE;
+        private long maxDate = Long.MIN_VALUE;
+        private final Set<Integer> assetIds = new HashSet<>();
+        private final Set<String> categories = new HashSet<>();
+        // 调用方已说明其旧值的账单 id（修改前 / 删除前）
+        private final Set<Integer> describedIds = new HashSet<>();
+
+        /**
+         * 记入一笔账单的日期、己方资产和分类；修改或删除账单时应传入修改前 / 删除前的内容
+         */
+        public Builder transaction(Transaction t) {
+            if (t == null) return this;
+            date(t.date);
+            if (t.assetId != 0) assetIds.add(t.assetId);
+            if (t.category != null) categories.add(t.category);
+            if (t.id != 0) describedIds.add(t.id);
+            return this;
+        }
+
+        public Builder date(long date) {
+            if (date < minDate) minDate = date;
+            if (date > maxDate) maxDate = date;
+            return this;
+        }
+
+        public Builder asset(int assetId) {
+            assetIds.add(assetId);
+            return this;
+        }
+
+        public Builder category(String category) {
+            categories.add(category);
+            return this;
+        }
+
+        public Builder all() {
+            all = true;
+            return this;
+        }
+
+        boolean isAll() {
+            return all;
+        }
+
+        boolean describes(int transactionId) {
+            return describedIds.contains(transactionId);
+        }
+
+        Builder add(DataChange change) {
+            if (change.all) return all();
+            if (change.minDate <= change.maxDate) {
+                date(change.minDate);
+                date(change.maxDate);
+            }
+            assetIds.addAll(change.assetIds);
+            categories.addAll(change.categories);
+            return this;
+        }
+
+        public DataChange build() {
+            if (all) return ALL;
+            return new DataChange(false, minDate, maxDate,
+                    Collections.unmodifiableSet(new HashSet<>(assetIds)),
+                    Collections.unmodifiableSet(new HashSet<>(categories)));
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.budgetapp.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据变更通知
+ * 原先任何一次写入 transactions 都会让表上所有 Room LiveData 整体重新查询，再刷新全部小组件。
+ * 现在写入经 write() 执行：事务内对照 sync_journal 中本次新增的日志，推算出涉及的账单日期、分类和资产，
+ * 提交后发布一个 DataChange，订阅方（FinanceViewModel 的按范围加载、小组件缓存）只在与自己显示的范围相交时刷新。
+ * <p>
+ * 没有经过 write() 的写入（恢复备份、WebDAV 同步、分类改名、计息等）由 sync_journal 的失效通知兜底：
+ * 发现不属于任何一次 write() 的账单日志时发布 DataChange.ALL。
+ * 兜底检查完成后按 JournalRetention 清理同步用不到的日志，未开启 WebDAV 同步时日志不会无限增长。
+ */
+public final class DataChangeFeed {
+
+    public interface Listener {
+        /**
+         * 在写线程中回调，只应做轻量的判断和排队
+         */
+        void onDataChanged(DataChange change);
+    }
+
+    /**
+     * 日志的保留策略：序号不大于 retainAfter() 的日志在兜底检查之后即可清理
+     */
+    public interface JournalRetention {
+        /**
+         * 在写线程中调用；返回 Long.MAX_VALUE 表示检查过的日志都不再需要
+         */
+        long retainAfter();
+    }
+
+    private static final String TAG = "DataChangeFeed";
+
+    private static final String TABLE_TRANSACTIONS = "transactions";
+    private static final String TABLE_ASSETS = "asset_accounts";
+    // 一次写入涉及的日志超过该数量时不再逐条推算，按范围未知处理；兜底检查也按这个大小分页读取
+    private static final int LOOKUP_LIMIT = 500;
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // 每发布一次加一，暂停订阅的一方据此判断期间是否有过变化
+    private static final AtomicLong version = new AtomicLong();
+    // 已由 write() 发布过的日志序号区间 (after, to]，以 after 为键
+    private static final TreeMap<Long, Long> claimed = new TreeMap<>();
+    // 兜底检查已经看过的最大日志序号，只在写线程访问；-1 表示尚未初始化
+    private static long checkedSeq = -1;
+    private static final AtomicBoolean checkQueued = new AtomicBoolean(false);
+    // 未设置时保留全部日志
+    private static volatile JournalRetention retention;
+    // 已清理到的日志序号，只在写线程访问
+    private static long prunedSeq = 0;
+    private static boolean started = false;
+
+    private DataChangeFeed() {
+    }
+
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 设置日志保留策略（Application 启动时、start 之前调用）
+     */
+    public static void setJournalRetention(JournalRetention journalRetention) {
+        retention = journalRetention;
+    }
+
+    public static long version() {
+        return version.get();
+    }
+
+    /**
+     * 开始兜底监听（Application 启动时调用一次）
+     */
+    public static void start(Context context) {
+        synchronized (DataChangeFeed.class) {
+            if (started) return;
+            started = true;
+        }
+        AppDatabase db = AppDatabase.getDatabase(context.getApplicationContext());
+        // 启动前的日志不再通知；排在队列里，早于之后的任何一次检查执行
+        AppDatabase.databaseWriteExecutor.execute(() -> checkedSeq = maxSeq(db));
+        db.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("sync_journal") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                scheduleCheck(db);
+            }
+        });
+    }
+
+    /**
+     * 在一个事务中执行 writes，提交后发布它影响的范围（在写线程中调用）
+     *
+     * @param change 修改、删除账单时需写入其修改前 / 删除前的内容（DataChange.Builder.transaction）；
+     *               新增或修改后的账单、资产余额的变化从日志中推算，不必填写
+     */
+    public static void write(AppDatabase db, DataChange.Builder change, Runnable writes) {
+        long[] range = new long[2];
+        db.runInTransaction(() -> {
+            range[0] = maxSeq(db);
+            writes.run();
+            range[1] = maxSeq(db);
+            describe(db, change, range[0], range[1]);
+        });
+        DataChange built = change.build();
+        // 提交后才登记：合并事务回滚时回调一并丢弃，重放时重新登记
+        AppDatabase.databaseWriteExecutor.afterCommit(() -> {
+            if (range[1] > range[0]) {
+                synchronized (claimed) {
+                    claimed.put(range[0], range[1]);
+                }
+            }
+            publish(built);
+        });
+    }
+
+    /**
+     * 直接发布一次变化（写入方自己清楚影响范围时使用）
+     */
+    public static void publish(DataChange change) {
+        if (change.isEmpty()) return;
+        version.incrementAndGet();
+        for (Listener listener : listeners) {
+            try {
+                listener.onDataChanged(change);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "变更通知回调失败", e);
+            }
+        }
+    }
+
+    // 按本次写入新增的日志补全变化范围
+    private static void describe(AppDatabase db, DataChange.Builder change, long after, long to) {
+        if (to <= after || change.isAll()) return;
+        List<SyncJournal> entries = db.syncJournalDao().getChangesSync(after, to, LOOKUP_LIMIT + 1);
+        if (entries.size() > LOOKUP_LIMIT) {
+            change.all();
+            return;
+        }
+        Set<Integer> upserted = new LinkedHashSet<>();
+        for (SyncJournal entry : entries) {
+            if (TABLE_ASSETS.equals(entry.tableName)) {
+                change.asset(entry.rowId);
+            } else if (TABLE_TRANSACTIONS.equals(entry.tableName)) {
+                if (entry.op == SyncJournal.OP_UPSERT) {
+                    upserted.add(entry.rowId);
+                } else if (!change.describes(entry.rowId)) {
+                    // 删除的账单已查不到内容，调用方又没有说明，只能按范围未知处理
+                    change.all();
+                    return;
+                }
+            }
+        }
+        if (!upserted.isEmpty()) {
+            for (Transaction t : db.transactionDao().getTransactionsByIdsSync(new ArrayList<>(upserted))) {
+                change.transaction(t);
+            }
+        }
+    }
+
+    private static void scheduleCheck(AppDatabase db) {
+        if (!checkQueued.compareAndSet(false, true)) return;
+        // 单独排在写队列里：此前的写入都已提交并登记完毕，不会把它们误判为未知写入
+        AppDatabase.databaseWriteExecutor.execute(() -> {
+            checkQueued.set(false);
+            try {
+                checkUnclaimed(db);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "检查变更日志失败", e);
+            }
+        });
+    }
+
+    private static void checkUnclaimed(AppDatabase db) {
+        if (checkedSeq < 0) return;
+        long to = maxSeq(db);
+        if (to <= checkedSeq) return;
+        DataChange.Builder unknown = DataChange.builder();
+        long from = checkedSeq;
+        while (from < to && !unknown.isAll()) {
+            List<SyncJournal> entries = db.syncJournalDao().getChangesSync(from, to, LOOKUP_LIMIT);
+            if (entries.isEmpty()) break;
+            for (SyncJournal entry : entries) {
+                if (isClaimed(entry.seq)) continue;
+                if (TABLE_TRANSACTIONS.equals(entry.tableName)) {
+                    unknown.all();
+                    break;
+                } else if (TABLE_ASSETS.equals(entry.tableName)) {
+                    unknown.asset(entry.rowId);
+                }
+                // goals 的变化没有订阅方，忽略
+            }
+            from = entries.get(entries.size() - 1).seq;
+        }
+        checkedSeq = to;
+        synchronized (claimed) {
+            claimed.headMap(to).entrySet().removeIf(e -> e.getValue() <= to);
+        }
+        publish(unknown.build());
+        prune(db, to);
+    }
+
+    /**
+     * 保留策略的下界变化后（例如同步确认了新的序号）调用：在写线程中清理已检查过、不再需要的日志
+     */
+    public static void pruneJournal(Context context) {
+        AppDatabase db = AppDatabase.getDatabase(context.getApplicationContext());
+        AppDatabase.databaseWriteExecutor.execute(() -> {
+            // 尚未检查过的日志还要用来判断有没有未经 write() 的写入，只清理检查过的部分
+            if (checkedSeq < 0) return;
+            try {
+                prune(db, checkedSeq);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "清理变更日志失败", e);
+            }
+        });
+    }
+
+    // 日志检查、发布完之后，同步不再需要的部分即可丢弃；最新的一条始终保留，使 MAX(seq) 仍指向最新序号
+    private static void prune(AppDatabase db, long to) {
+        JournalRetention policy = retention;
+        if (policy == null) return;
+        long upTo = Math.min(to - 1, policy.retainAfter());
+        if (upTo <= prunedSeq) return;
+        db.syncJournalDao().pruneUpTo(upTo);
+        prunedSeq = upTo;
+    }
+
+    private static boolean isClaimed(long seq) {
+        synchronized (claimed) {
+            Map.Entry<Long, Long> range = claimed.floorEntry(seq - 1);
+            return range != null && range.getValue() >= seq;
+        }
+    }
+
+    private static long maxSeq(AppDatabase db) {
+        Long seq = db.syncJournalDao().getMaxSeqSync();
+        return seq != null ? seq : 0;
+    }
+}
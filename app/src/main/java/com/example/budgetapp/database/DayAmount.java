@@ -0,0 +1,9 @@
+package com.example.budgetapp.database;
+
+/**
+ * 按天聚合的金额：dayStart 为当天本地时间 00:00 的毫秒时间戳
+ */
+public class DayAmount {
+    public long dayStart;
+    public double amount;
+}
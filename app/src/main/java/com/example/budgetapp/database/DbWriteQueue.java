@@ -0,0 +1,252 @@
+package com.example.budgetapp.database;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 数据库单写者命令队列
+ * 原先读写共用 4 线程的线程池，多个写操作同时争抢 SQLite 的写锁，先提交的也可能后执行。
+ * 现在所有写操作由一个写线程按提交顺序执行。通过 executeMergeable 提交的纯数据库写入，取出一条后顺带取走
+ * 紧随其后、同样可合并的写操作（最多 MAX_BATCH 条），放进同一个 runInTransaction 中执行，
+ * 无障碍记账、快捷记账和界面操作短时间内连续写入时只提交一次事务。
+ * <p>
+ * 合并事务中任意一条抛出异常时整个事务回滚，再逐条在各自的事务中重放，互不影响。
+ * 因此可合并的写操作只能写数据库：不能吞掉异常（内层事务失败会使外层事务在结束时静默回滚，连带同批的其他写入），
+ * 不能有数据库之外的副作用（回滚后重放会执行两次）；自动同步、切回主线程等副作用作为 afterCommit 参数传入，
+ * 在事务提交后执行一次。其余写操作（execute）一律单独执行，不与其他写操作合并。
+ * 事务提交后才能做的事（如刷新小组件缓存）也可在写操作中通过 afterCommit 登记。
+ */
+public final class DbWriteQueue implements Executor {
+
+    private static final String TAG = "DbWriteQueue";
+
+    // 一个事务最多合并的写操作数，避免长事务拖住读线程的检查点
+    private static final int MAX_BATCH = 32;
+    // 排队超过该时长时打印一次指标
+    private static final long SLOW_WAIT_MS = 500;
+
+    private static final class Command {
+        final Runnable task;
+        // 只有可合并的写操作才有，提交后执行一次
+        final Runnable afterCommit;
+        final boolean mergeable;
+        final long enqueuedAt;
+
+        Command(Runnable task, Runnable afterCommit, boolean mergeable) {
+            this.task = task;
+            this.afterCommit = afterCommit;
+            this.mergeable = mergeable;
+            this.enqueuedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * 队列指标快照
+     */
+    public static final class Metrics {
+        public final int pending;      // 当前排队数
+        public final int maxPending;   // 最大排队数
+        public final long commands;    // 已执行的写操作数
+        public final long transactions; // 已执行的批次数（合并事务或单独执行）
+        public final long replays;     // 合并事务失败后逐条重放的次数
+        public final long avgWaitMs;   // 每批第一条的平均排队时长
+        public final long maxWaitMs;
+        public final long avgRunMs;    // 每批的平均执行时长
+        public final long maxRunMs;
+
+        Metrics(int pending, int maxPending, long commands, long transactions, long replays,
+                long avgWaitMs, long maxWaitMs, long avgRunMs, long maxRunMs) {
+            this.pending = pending;
+            this.maxPending = maxPending;
+            this.commands = commands;
+            this.transactions = transactions;
+            this.replays = replays;
+            this.avgWaitMs = avgWaitMs;
+            this.maxWaitMs = maxWaitMs;
+            this.avgRunMs = avgRunMs;
+            this.maxRunMs = maxRunMs;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "pending=" + pending + "/" + maxPending
+                    + " commands=" + commands + " transactions=" + transactions + " replays=" + replays
+                    + " wait=" + avgWaitMs + "/" + maxWaitMs + "ms"
+                    + " run=" + avgRunMs + "/" + maxRunMs + "ms";
+        }
+    }
+
+    private final LinkedBlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile AppDatabase database;
+    // 当前合并事务中登记的提交后回调，只在写线程访问；不在合并事务中时为 null
+    private List<Runnable> pendingAfterCommit;
+
+    // 指标，由 this 保护
+    private int maxPending;
+    private long commands;
+    private long transactions;
+    private long replays;
+    private long totalWaitMs;
+    private long maxWaitMs;
+    private long totalRunMs;
+    private long maxRunMs;
+
+    DbWriteQueue() {
+        writer = new Thread(this::loop, "db-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 数据库建好后由 AppDatabase 调用；此前提交的写操作逐条执行，不合并
+     */
+    void attach(AppDatabase db) {
+        database = db;
+    }
+
+    /**
+     * 提交一个写操作，按顺序单独执行，不与其他写操作合并
+     * 任务可以有数据库之外的副作用，也可以自己管理事务、捕获异常（批量导入、全文索引追赶、余额核对等）
+     */
+    @Override
+    public void execute(@NonNull Runnable task) {
+        enqueue(new Command(task, null, false));
+    }
+
+    /**
+     * 提交一个可合并的写操作
+     *
+     * @param dbWrites    只写数据库，不捕获异常，不修改调用方持有的对象；可能因同批回滚而执行两次
+     * @param afterCommit 事务提交后在写线程执行一次（自动同步、通知界面等），可为 null
+     */
+    public void executeMergeable(@NonNull Runnable dbWrites, Runnable afterCommit) {
+        enqueue(new Command(dbWrites, afterCommit, true));
+    }
+
+    /**
+     * 在写线程的合并事务中调用时，推迟到事务提交后执行（事务回滚则丢弃，重放时会重新登记）；
+     * 其他情况下立即执行
+     */
+    public void afterCommit(@NonNull Runnable action) {
+        if (Thread.currentThread() == writer && pendingAfterCommit != null) {
+            pendingAfterCommit.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    public synchronized Metrics metrics() {
+        long n = Math.max(transactions, 1);
+        return new Metrics(queue.size(), maxPending, commands, transactions, replays,
+                totalWaitMs / n, maxWaitMs, totalRunMs / n, maxRunMs);
+    }
+
+    private void enqueue(Command command) {
+        queue.add(command);
+        int depth = queue.size();
+        synchronized (this) {
+            if (depth > maxPending) maxPending = depth;
+        }
+    }
+
+    private void loop() {
+        List<Command> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            Command first = batch.get(0);
+            if (first.mergeable) {
+                // 只有写线程取队列，peek 到的就是随后 poll 出的那条
+                Command next;
+                while (batch.size() < MAX_BATCH && (next = queue.peek()) != null && next.mergeable) {
+                    batch.add(queue.poll());
+                }
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            boolean replayed = false;
+            AppDatabase db = database;
+            if (batch.size() == 1 || db == null) {
+                for (Command c : batch) runAlone(db, c);
+            } else if (!runBatch(db, batch)) {
+                replayed = true;
+                for (Command c : batch) runAlone(db, c);
+            }
+            record(batch.size(), start - first.enqueuedAt, SystemClock.elapsedRealtime() - start, replayed);
+            batch.clear();
+        }
+    }
+
+    private boolean runBatch(AppDatabase db, List<Command> batch) {
+        List<Runnable> afterCommit = new ArrayList<>();
+        pendingAfterCommit = afterCommit;
+        try {
+            db.runInTransaction(() -> {
+                for (Command c : batch) {
+                    c.task.run();
+                    if (c.afterCommit != null) afterCommit.add(c.afterCommit);
+                }
+            });
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                Log.w(TAG, "合并事务失败，逐条重放 " + batch.size() + " 个写操作", e);
+            } else {
+                Log.e(TAG, "写操作失败，已回滚", e);
+            }
+            return false;
+        } finally {
+            pendingAfterCommit = null;
+        }
+        for (Runnable action : afterCommit) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "事务提交后的回调失败", e);
+            }
+        }
+        return true;
+    }
+
+    // 单独执行：异常只记日志，写线程继续处理后面的操作
+    // 可合并的写操作仍放在自己的事务中执行，提交后才执行它的 afterCommit
+    private void runAlone(AppDatabase db, Command command) {
+        if (command.mergeable && db != null) {
+            runBatch(db, Collections.singletonList(command));
+            return;
+        }
+        try {
+            command.task.run();
+            if (command.afterCommit != null) command.afterCommit.run();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "写操作失败", e);
+        }
+    }
+
+    private void record(int size, long waitMs, long runMs, boolean replayed) {
+        synchronized (this) {
+            commands += size;
+            transactions++;
+            if (replayed) replays++;
+            totalWaitMs += waitMs;
+            totalRunMs += runMs;
+            if (waitMs > maxWaitMs) maxWaitMs = waitMs;
+            if (runMs > maxRunMs) maxRunMs = runMs;
+        }
+        if (waitMs >= SLOW_WAIT_MS) {
+            Log.w(TAG, "写操作排队 " + waitMs + "ms（本批 " + size + " 条）: " + metrics());
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.budgetapp.database;
+
+/**
+ * 按加班类型（TransactionOvertime.KIND_*）聚合的加班笔数、时长与加班费
+ */
+public class OvertimeTotals {
+    public int kind;
+    public int count;
+    public double hours;
+    public double amount;
+}
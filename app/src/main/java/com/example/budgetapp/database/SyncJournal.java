@@ -0,0 +1,26 @@
+package com.example.budgetapp.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * 变更日志：transactions / asset_accounts / goals 的每一次写入都会由触发器追加一行，
+ * seq 单调递增，作为 WebDAV 增量同步的修改序号（见 WebDavSyncManager）。
+ */
+@Entity(tableName = "sync_journal")
+public class SyncJournal {
+    public static final int OP_UPSERT = 0;
+    public static final int OP_DELETE = 1;
+
+    @PrimaryKey(autoGenerate = true)
+    public long seq;
+
+    // 发生变更的表名
+    @NonNull
+    public String tableName = "";
+    // 变更行的 id
+    public int rowId;
+    public int op; // 0 新增/修改, 1 删除
+    public long changedAt;
+}
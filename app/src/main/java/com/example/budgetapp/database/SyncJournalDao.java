@@ -0,0 +1,29 @@
+package com.example.budgetapp.database;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface SyncJournalDao {
+
+    @Query("SELECT MAX(seq) FROM sync_journal")
+    Long getMaxSeqSync();
+
+    // (afterSeq, toSeq] 区间内的变更条数，用于判断增量是否已经大到不如直接传快照
+    @Query("SELECT COUNT(*) FROM sync_journal WHERE seq > :afterSeq AND seq <= :toSeq")
+    int countChangesSync(long afterSeq, long toSeq);
+
+    // (afterSeq, toSeq] 区间内某张表发生过变更的行 id（同一行多次修改只返回一次）
+    @Query("SELECT DISTINCT rowId FROM sync_journal WHERE tableName = :tableName AND seq > :afterSeq AND seq <= :toSeq")
+    List<Integer> getChangedRowIdsSync(String tableName, long afterSeq, long toSeq);
+
+    // (afterSeq, toSeq] 区间内按序号排列的前 limit 条日志，供 DataChangeFeed 推算写入影响的范围
+    @Query("SELECT * FROM sync_journal WHERE seq > :afterSeq AND seq <= :toSeq ORDER BY seq LIMIT :limit")
+    List<SyncJournal> getChangesSync(long afterSeq, long toSeq, int limit);
+
+    // 已确认同步的日志可以丢弃
+    @Query("DELETE FROM sync_journal WHERE seq <= :seq")
+    void pruneUpTo(long seq);
+}
@@ -6,11 +6,19 @@ import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 // 【优化】添加 indices 索引，极大提升查询和过滤速度
+// 组合索引对应热点查询的 “时间范围 + 类型 + 分类” 过滤（见 MIGRATION_27_28 与单元测试 QueryPlanTest）
 @Entity(tableName = "transactions",
         indices = {
                 @Index("date"),
-                @Index("type"),
-                @Index("category")
+                @Index("category"),
+                // 按时间段汇总收支 / 年视图：覆盖索引，无需回表
+                @Index({"date", "type", "category", "amount"}),
+                // 加班等固定类型 + 分类的时间段查询
+                @Index({"type", "category", "date"}),
+                // 按资产查账单
+                @Index({"assetId", "date"}),
+                // 导入查重：按内容指纹查已有账单
+                @Index("fingerprint")
         })
 public class Transaction {
     @PrimaryKey(autoGenerate = true)
@@ -34,6 +42,29 @@ public class Transaction {
     @androidx.room.ColumnInfo(defaultValue = "0")
     public boolean excludeFromBudget;
 
+    // 【新增】加班时长（小时）与加班类型（TransactionOvertime.KIND_*），非加班账单均为 0
+    // 由 TransactionDao 在插入/更新时从备注和日期推算（见 TransactionOvertime.fill），加班统计直接 SUM / GROUP BY
+    @androidx.room.ColumnInfo(defaultValue = "0")
+    public double overtimeHours;
+
+    @androidx.room.ColumnInfo(defaultValue = "0")
+    public int overtimeKind;
+
+    // 【新增】内容指纹（见 TransactionFingerprint），供导入查重走索引
+    // Room 写入时通过 getFingerprint 取值，总是按当前内容重新计算，任何插入/更新路径都不会写入过期指纹；
+    // 分类批量改名等直接执行 SQL 的路径会把它置为 NULL
+    // transient：Gson 备份不写出该字段（恢复时由内容重新计算），Room 仍按 @ColumnInfo 映射为列
+    @androidx.room.ColumnInfo(name = "fingerprint")
+    private transient Long fingerprint;
+
+    public Long getFingerprint() {
+        return TransactionFingerprint.of(this);
+    }
+
+    public void setFingerprint(Long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
     public Transaction() {
     }
 
@@ -11,14 +11,42 @@ import java.util.List;
 
 @Dao
 public interface TransactionDao {
+    // 插入/更新统一经过下面几个默认方法：写入前按备注和日期填好加班时长与类型，备注只在写入时解析一次
+    default long insert(Transaction transaction) {
+        TransactionOvertime.fill(transaction);
+        return insertRow(transaction);
+    }
+
+    default void update(Transaction transaction) {
+        TransactionOvertime.fill(transaction);
+        updateRow(transaction);
+    }
+
+    default void insertAll(List<Transaction> transactions) {
+        for (Transaction t : transactions) TransactionOvertime.fill(t);
+        insertRows(transactions);
+    }
+
+    default int updateAll(List<Transaction> transactions) {
+        for (Transaction t : transactions) TransactionOvertime.fill(t);
+        return updateRows(transactions);
+    }
+
+    // 以下四个只供上面的默认方法调用
     @Insert
-    void insert(Transaction transaction);
+    long insertRow(Transaction transaction);
 
-    @Delete
-    void delete(Transaction transaction);
+    @Update
+    void updateRow(Transaction transaction);
+
+    @Insert
+    void insertRows(List<Transaction> transactions);
 
     @Update
-    void update(Transaction transaction);
+    int updateRows(List<Transaction> transactions);
+
+    @Delete
+    void delete(Transaction transaction);
 
     @Query("SELECT * FROM transactions ORDER BY date DESC")
     LiveData<List<Transaction>> getAllTransactions();
@@ -26,29 +54,71 @@ public interface TransactionDao {
     @Query("SELECT * FROM transactions")
     List<Transaction> getAllTransactionsSync();
 
-    @Insert
-    void insertAll(List<Transaction> transactions);
+    // 【新增】键集分页：以 (date, id) 为游标倒序取下一页，首页传 Long.MAX_VALUE / Integer.MAX_VALUE
+    // 每次只读取一页，内存占用只与页大小有关，与账本总量无关
+    @Query("SELECT * FROM transactions WHERE date < :beforeDate OR (date = :beforeDate AND id < :beforeId) ORDER BY date DESC, id DESC LIMIT :pageSize")
+    List<Transaction> getTransactionsPageSync(long beforeDate, int beforeId, int pageSize);
+
+    // 【新增】导入查重：按内容指纹批量查候选账单（走 fingerprint 索引），参数个数需小于 999
+    // 只查 id 不大于 maxId 的账单，即导入开始前已有的账单
+    @Query("SELECT * FROM transactions WHERE fingerprint IN (:fingerprints) AND id <= :maxId")
+    List<Transaction> getByFingerprintsSync(List<Long> fingerprints, int maxId);
+
+    // 指纹为空的账单（分类改名后）按日期查候选
+    @Query("SELECT * FROM transactions WHERE fingerprint IS NULL AND date IN (:dates) AND id <= :maxId")
+    List<Transaction> getUnfingerprintedByDatesSync(List<Long> dates, int maxId);
+
+    // 当前最大的账单 id，没有账单时为 0
+    @Query("SELECT IFNULL(MAX(id), 0) FROM transactions")
+    int getMaxIdSync();
+
+    // 【新增】关于页统计：账单总数与最早一笔账单时间，无需加载整张表
+    @Query("SELECT COUNT(*) FROM transactions")
+    LiveData<Integer> getTransactionCountLive();
+
+    @Query("SELECT MIN(date) FROM transactions")
+    LiveData<Long> getEarliestTransactionDateLive();
 
     @Query("DELETE FROM transactions")
     void deleteAll();
 
+    // 【新增】增量同步：按 id 批量读取 / 更新 / 删除（IN 列表请控制在 SQLite 变量上限以内）
+    @Query("SELECT * FROM transactions WHERE id IN (:ids)")
+    List<Transaction> getTransactionsByIdsSync(List<Integer> ids);
+
+    @Query("DELETE FROM transactions WHERE id IN (:ids)")
+    void deleteByIds(List<Integer> ids);
+
     // 【新增】小组件使用：同步查询指定时间段加班总收入
     @Query("SELECT SUM(amount) FROM transactions WHERE date >= :start AND date <= :end AND type = 1 AND category = '加班'")
     Double getOvertimeTotalAmountSync(long start, long end);
 
-    // 【新增】小组件使用：同步查询指定时间段所有加班记录（用于计算时长）
-    @Query("SELECT * FROM transactions WHERE date >= :start AND date <= :end AND type = 1 AND category = '加班'")
-    List<Transaction> getOvertimeTransactionsSync(long start, long end);
+    // 【新增】加班统计：按工作日 / 节假日分组的笔数、时长与加班费，走 (type, category, date) 索引，不再加载整行解析备注
+    @Query("SELECT overtimeKind AS kind, COUNT(*) AS count, TOTAL(overtimeHours) AS hours, TOTAL(amount) AS amount " +
+            "FROM transactions WHERE type = 1 AND category = '加班' AND date >= :start AND date <= :end GROUP BY overtimeKind")
+    List<OvertimeTotals> getOvertimeTotalsByKindSync(long start, long end);
 
     @Query("SELECT * FROM transactions WHERE date >= :start AND date <= :end")
     List<Transaction> getTransactionsByRange(long start, long end);
 
     // 【新增】批量修改一级分类名称（历史账单同步）
-    @Query("UPDATE transactions SET category = :newCategory WHERE category = :oldCategory")
-    void updateCategoryName(String oldCategory, String newCategory);
+    // 内容变了，指纹置空（查重时按日期兜底）
+    @Query("UPDATE transactions SET category = :newCategory, fingerprint = NULL WHERE category = :oldCategory")
+    void updateTransactionCategoryName(String oldCategory, String newCategory);
+
+    // 分类预算跟随改名；新名称已有预算时以改名前的为准
+    @Query("UPDATE OR REPLACE budgets SET category = :newCategory WHERE category = :oldCategory")
+    void updateBudgetCategoryName(String oldCategory, String newCategory);
+
+    // 一级分类改名：历史账单与分类预算在同一个事务里更新
+    @androidx.room.Transaction
+    default void updateCategoryName(String oldCategory, String newCategory) {
+        updateTransactionCategoryName(oldCategory, newCategory);
+        updateBudgetCategoryName(oldCategory, newCategory);
+    }
 
     // 【新增】批量修改二级分类名称（历史账单同步）
-    @Query("UPDATE transactions SET subCategory = :newSubCategory WHERE category = :parentCategory AND subCategory = :oldSubCategory")
+    @Query("UPDATE transactions SET subCategory = :newSubCategory, fingerprint = NULL WHERE category = :parentCategory AND subCategory = :oldSubCategory")
     void updateSubCategoryName(String parentCategory, String oldSubCategory, String newSubCategory);
 
 
@@ -56,21 +126,36 @@ public interface TransactionDao {
     // ================= 以下为新增的高性能优化查询 =================
 
     // 1. 按需查询：只获取指定时间段内的账单（用于首页日历按月加载）
+    // 由 FinanceViewModel 按 DataChangeFeed 的变更通知重新查询，不再用 Room LiveData 随任意写入整体刷新
     @Query("SELECT * FROM transactions WHERE date >= :start AND date <= :end ORDER BY date DESC")
-    LiveData<List<Transaction>> getTransactionsByRangeLive(long start, long end);
+    List<Transaction> getTransactionsByRangeDescSync(long start, long end);
 
     // 2. 高级过滤：用于明细页 (DetailsFragment) 的高级筛选，null 表示该条件不限制
-    // 使用普通的 LiveData<List<Transaction>> 返回类型，并加上金额筛选条件和资产筛选
+    // 关键字 / 备注检索走全文索引 transactions_fts（keywordMatch / assetMatch 由 TransactionSearchIndex.toMatchQuery 生成），
+    // 关键字同时匹配分类、二级分类、备注和负债/借出对象；
+    // 仍在待更新队列中的账单索引可能过期，改用 LIKE 直接比对原文
     @Query("SELECT t.* FROM transactions t " +
-            "LEFT JOIN asset_accounts a ON t.assetId = a.id " +
             "WHERE t.date BETWEEN :startDate AND :endDate " +
             "AND (:type IS NULL OR t.type = :type) " +
             "AND (:minAmount IS NULL OR t.amount >= :minAmount) " +
             "AND (:maxAmount IS NULL OR t.amount <= :maxAmount) " +
-            "AND (:keyword IS NULL OR t.category LIKE '%' || :keyword || '%' OR t.subCategory LIKE '%' || :keyword || '%' OR t.note LIKE '%' || :keyword || '%') " +
-            "AND (:assetName IS NULL OR a.name LIKE '%' || :assetName || '%' OR t.remark LIKE '%' || :assetName || '%') " +
+            "AND (:keyword IS NULL " +
+            "  OR (t.id NOT IN (SELECT rowId FROM transactions_fts_pending) AND t.id IN (" +
+            "      SELECT rowid FROM transactions_fts WHERE category MATCH :keywordMatch " +
+            "      UNION SELECT rowid FROM transactions_fts WHERE subCategory MATCH :keywordMatch " +
+            "      UNION SELECT rowid FROM transactions_fts WHERE note MATCH :keywordMatch " +
+            "      UNION SELECT rowid FROM transactions_fts WHERE targetObject MATCH :keywordMatch)) " +
+            "  OR (t.id IN (SELECT rowId FROM transactions_fts_pending) " +
+            "      AND (t.category LIKE '%' || :keyword || '%' OR t.subCategory LIKE '%' || :keyword || '%' OR t.note LIKE '%' || :keyword || '%' " +
+            "           OR t.targetObject LIKE '%' || :keyword || '%'))) " +
+            "AND (:assetName IS NULL " +
+            "  OR t.assetId IN (SELECT id FROM asset_accounts WHERE name LIKE '%' || :assetName || '%') " +
+            "  OR (t.id NOT IN (SELECT rowId FROM transactions_fts_pending) AND t.id IN (" +
+            "      SELECT rowid FROM transactions_fts WHERE remark MATCH :assetMatch)) " +
+            "  OR (t.id IN (SELECT rowId FROM transactions_fts_pending) AND t.remark LIKE '%' || :assetName || '%')) " +
             "ORDER BY t.date DESC")
-    LiveData<List<Transaction>> getFilteredTransactions(long startDate, long endDate, Integer type, Float minAmount, Float maxAmount, String keyword, String assetName);
+    List<Transaction> getFilteredTransactionsSync(long startDate, long endDate, Integer type, Float minAmount, Float maxAmount,
+                                                  String keyword, String keywordMatch, String assetName, String assetMatch);
 
     // 【新增】供桌面小组件使用：同步聚合查询指定时间的收入或支出总和
     @Query("SELECT SUM(amount) FROM transactions WHERE date >= :start AND date <= :end AND type = :type AND category != '资产互转'")
@@ -85,19 +170,4 @@ public interface TransactionDao {
     @Query("SELECT SUM(amount) FROM transactions WHERE date >= :start AND date <= :end AND type = 1 AND category = '加班'")
     LiveData<Double> getOvertimeTotalAmountLive(long start, long end);
 
-    // 【新增】年视图专用的轻量级查询：只取3个字段，直接排除互转和转账，速度提升 10 倍以上
-    @Query("SELECT date, type, amount FROM transactions WHERE date >= :start AND date <= :end AND type IN (0, 1) AND category != '资产互转'")
-    List<TransactionMinimal> getMinimalTransactionsSync(long start, long end);
-
-    /**
-     * 【优化】年视图专用：查询指定年份内，哪些月份存在记账记录
-     * 返回 1 到 12 的整数列表
-     * date / 1000 是因为数据库存的是毫秒，strftime 需要秒
-     */
-    @Query("SELECT DISTINCT CAST(strftime('%m', date / 1000, 'unixepoch', 'localtime') AS INTEGER) " +
-            "FROM transactions " +
-            "WHERE date >= :start AND date <= :end " +
-            "AND type IN (0, 1) AND category != '资产互转'")
-    List<Integer> getMonthsWithDataSync(long start, long end);
-
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.example.budgetapp.database;
+
+import java.util.Objects;
+
+/**
+ * 账单内容指纹：时间、类型、金额（按分取整）、分类、二级分类、记录标识、备注的 64 位 FNV-1a 哈希
+ * 文本字段按 Objects.equals 口径比较（null 与空字符串不同），存在 transactions.fingerprint 列上并建索引，
+ * 查重时按指纹查候选，再用 sameContent 排除哈希碰撞。
+ */
+public final class TransactionFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private TransactionFingerprint() {
+    }
+
+    public static long of(Transaction t) {
+        return of(t.date, t.type, t.amount, t.category, t.subCategory, t.note, t.remark);
+    }
+
+    public static long of(long date, int type, double amount, String category, String subCategory, String note, String remark) {
+        long h = FNV_OFFSET;
+        h = mix(h, date);
+        h = mix(h, type);
+        h = mix(h, cents(amount));
+        h = mix(h, category);
+        h = mix(h, subCategory);
+        h = mix(h, note);
+        h = mix(h, remark);
+        return h;
+    }
+
+    /**
+     * 两笔账单的查重字段是否完全一致
+     */
+    public static boolean sameContent(Transaction a, Transaction b) {
+        return a.date == b.date
+                && a.type == b.type
+                && cents(a.amount) == cents(b.amount)
+                && Objects.equals(a.category, b.category)
+                && Objects.equals(a.subCategory, b.subCategory)
+                && Objects.equals(a.note, b.note)
+                && Objects.equals(a.remark, b.remark);
+    }
+
+    private static long cents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    private static long mix(long h, long value) {
+        for (int i = 0; i < 64; i += 8) {
+            h ^= (value >>> i) & 0xFF;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    // 先混入长度再混入字符，避免相邻字段拼接后产生歧义；null 记为长度 -1，与空字符串区分
+    private static long mix(long h, String value) {
+        if (value == null) return mix(h, -1L);
+        h = mix(h, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            h ^= c & 0xFF;
+            h *= FNV_PRIME;
+            h ^= c >>> 8;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+}
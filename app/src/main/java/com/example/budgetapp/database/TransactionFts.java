@@ -0,0 +1,25 @@
+package com.example.budgetapp.database;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.PrimaryKey;
+
+/**
+ * 账单全文索引（FTS4 虚拟表），rowid 与 transactions.id 一一对应。
+ * 各列存放的不是原文，而是 TransactionSearchIndex 生成的二元组(bigram)词元，
+ * 这样中文也能做任意子串检索，不依赖分词器。
+ */
+@Fts4
+@Entity(tableName = "transactions_fts")
+public class TransactionFts {
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    public int rowid;
+
+    public String note;
+    public String remark;
+    public String category;
+    public String subCategory;
+    public String targetObject;
+}
@@ -0,0 +1,26 @@
+package com.example.budgetapp.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface TransactionFtsDao {
+
+    @Query("SELECT EXISTS(SELECT 1 FROM transactions_fts_pending)")
+    boolean hasPendingSync();
+
+    @Query("SELECT rowId FROM transactions_fts_pending LIMIT :limit")
+    List<Integer> getPendingIdsSync(int limit);
+
+    @Query("DELETE FROM transactions_fts_pending WHERE rowId IN (:ids)")
+    void deletePending(List<Integer> ids);
+
+    @Query("DELETE FROM transactions_fts WHERE rowid IN (:ids)")
+    void deleteIndexRows(List<Integer> ids);
+
+    @Insert
+    void insertIndexRows(List<TransactionFts> rows);
+}
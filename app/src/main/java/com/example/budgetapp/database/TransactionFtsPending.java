@@ -0,0 +1,15 @@
+package com.example.budgetapp.database;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * 全文索引待更新队列：transactions 新增或文字列修改时由触发器写入行 id，
+ * 在 TransactionSearchIndex.catchUp 中批量生成词元后移除。
+ * 查询时仍在队列中的账单直接用 LIKE 比对原文，因此索引稍有滞后也不影响结果。
+ */
+@Entity(tableName = "transactions_fts_pending")
+public class TransactionFtsPending {
+    @PrimaryKey
+    public int rowId;
+}
@@ -0,0 +1,64 @@
+package com.example.budgetapp.database;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 加班账单的时长与类型
+ * 加班记录的时长只写在备注里（"时长: X小时, 时薪: Y"），原先统计页、日历、小组件各自用正则逐条解析。
+ * 现在 TransactionDao 在每次写入时调用 fill 解析一次，存进 transactions.overtimeHours / overtimeKind 两列，
+ * 统计直接对这两列 SUM / GROUP BY。工作日 / 节假日按本地日期的星期区分，与加班记录对话框的默认时薪口径一致。
+ */
+public final class TransactionOvertime {
+
+    public static final String CATEGORY = "加班";
+
+    public static final int KIND_NONE = 0;     // 非加班账单
+    public static final int KIND_WEEKDAY = 1;  // 工作日加班
+    public static final int KIND_HOLIDAY = 2;  // 周六、周日加班
+
+    private static final Pattern HOURS_PATTERN = Pattern.compile("时长:\\s*([0-9.]+)\\s*小时");
+
+    private TransactionOvertime() {
+    }
+
+    public static boolean isOvertime(int type, String category) {
+        return type == 1 && CATEGORY.equals(category);
+    }
+
+    /**
+     * 按当前内容填写 overtimeHours / overtimeKind（非加班账单两列都为 0）
+     */
+    public static void fill(Transaction t) {
+        if (t == null) return;
+        if (isOvertime(t.type, t.category)) {
+            t.overtimeHours = parseHours(t.note);
+            t.overtimeKind = kindOf(t.date);
+        } else {
+            t.overtimeHours = 0;
+            t.overtimeKind = KIND_NONE;
+        }
+    }
+
+    /**
+     * 从备注 "时长: X小时" 中解析时长，没有或无法解析时为 0
+     */
+    public static double parseHours(String note) {
+        if (note == null) return 0;
+        Matcher m = HOURS_PATTERN.matcher(note);
+        if (!m.find()) return 0;
+        try {
+            return Double.parseDouble(m.group(1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public static int kindOf(long date) {
+        DayOfWeek day = Instant.ofEpochMilli(date).atZone(ZoneId.systemDefault()).getDayOfWeek();
+        return (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY) ? KIND_HOLIDAY : KIND_WEEKDAY;
+    }
+}
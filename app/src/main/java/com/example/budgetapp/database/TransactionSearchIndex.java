@@ -0,0 +1,114 @@
+package com.example.budgetapp.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 账单全文检索的词元生成与索引追赶
+ * SQLite 自带的分词器不会切分连续的中文，所以这里不用分词器，而是把文字转成重叠的二元组：
+ * "咖啡豆" -> [咖啡][啡豆][豆␀]，每个二元组编码成 8 位十六进制，作为一个普通 ASCII 词元存入 FTS。
+ * 查询 "咖啡" 时生成短语 "[咖啡]"，查询 "咖啡豆" 时生成相邻短语 "[咖啡] [啡豆]"，
+ * 短语匹配要求词元连续出现，结果与 LIKE '%关键字%' 完全一致；单个字用前缀查询 "[咖*]"。
+ */
+public class TransactionSearchIndex {
+
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * 把一列文字转换为以空格分隔的二元组词元
+     */
+    static String toTokens(String text) {
+        if (text == null || text.isEmpty()) return "";
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(lower.length() * 9);
+        for (int i = 0; i < lower.length(); i++) {
+            char next = i + 1 < lower.length() ? lower.charAt(i + 1) : 0;
+            if (i > 0) sb.append(' ');
+            appendHex(sb, lower.charAt(i));
+            appendHex(sb, next);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 去掉首尾空白后的检索关键字；为空或只有空白时返回 null，表示不按该条件过滤
+     */
+    public static String normalizeKeyword(String keyword) {
+        if (keyword == null) return null;
+        String trimmed = keyword.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    /**
+     * 把用户输入的关键字转换为 FTS MATCH 表达式；关键字为空或只有空白时返回 null
+     */
+    public static String toMatchQuery(String keyword) {
+        keyword = normalizeKeyword(keyword);
+        if (keyword == null) return null;
+        String lower = keyword.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder();
+        if (lower.length() == 1) {
+            appendHex(sb, lower.charAt(0));
+            return sb.append('*').toString();
+        }
+        sb.append('"');
+        for (int i = 0; i + 1 < lower.length(); i++) {
+            if (i > 0) sb.append(' ');
+            appendHex(sb, lower.charAt(i));
+            appendHex(sb, lower.charAt(i + 1));
+        }
+        return sb.append('"').toString();
+    }
+
+    private static void appendHex(StringBuilder sb, char c) {
+        String hex = Integer.toHexString(c);
+        for (int i = hex.length(); i < 4; i++) sb.append('0');
+        sb.append(hex);
+    }
+
+    /**
+     * 待更新队列不为空时，在写队列中单独执行一次 catchUp；队列是否为空在读线程池中判断，
+     * 索引已是最新时不占用写线程
+     */
+    public static void catchUpIfPending(AppDatabase db) {
+        AppDatabase.databaseReadExecutor.execute(() -> {
+            if (!db.transactionFtsDao().hasPendingSync()) return;
+            AppDatabase.databaseWriteExecutor.execute(() -> catchUp(db));
+        });
+    }
+
+    /**
+     * 处理待更新队列，直到索引追上 transactions 表（可在任意后台线程调用）
+     * @return 本次重建索引的账单数
+     */
+    public static int catchUp(AppDatabase db) {
+        TransactionFtsDao ftsDao = db.transactionFtsDao();
+        TransactionDao transactionDao = db.transactionDao();
+        int total = 0;
+        while (true) {
+            int processed = db.runInTransaction(() -> {
+                List<Integer> ids = ftsDao.getPendingIdsSync(BATCH_SIZE);
+                if (ids.isEmpty()) return 0;
+
+                List<TransactionFts> rows = new ArrayList<>(ids.size());
+                for (Transaction t : transactionDao.getTransactionsByIdsSync(ids)) {
+                    TransactionFts row = new TransactionFts();
+                    row.rowid = t.id;
+                    row.note = toTokens(t.note);
+                    row.remark = toTokens(t.remark);
+                    row.category = toTokens(t.category);
+                    row.subCategory = toTokens(t.subCategory);
+                    row.targetObject = toTokens(t.targetObject);
+                    rows.add(row);
+                }
+                ftsDao.deleteIndexRows(ids);
+                ftsDao.insertIndexRows(rows);
+                ftsDao.deletePending(ids);
+                return ids.size();
+            });
+            if (processed == 0) return total;
+            total += processed;
+        }
+    }
+}
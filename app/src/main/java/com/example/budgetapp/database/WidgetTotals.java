@@ -0,0 +1,13 @@
+package com.example.budgetapp.database;
+
+/**
+ * 桌面小组件使用的聚合结果：今日/本月收支与本月加班，一次查询得到
+ */
+public class WidgetTotals {
+    public double todayIncome;
+    public double todayExpense;
+    public double monthIncome;
+    public double monthExpense;
+    public double overtimeAmount;
+    public double overtimeHours;
+}
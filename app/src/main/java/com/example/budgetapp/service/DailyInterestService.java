@@ -13,6 +13,7 @@ import com.example.budgetapp.database.AssetAccount;
 import com.example.budgetapp.database.AssetAccountDao;
 import com.example.budgetapp.database.Transaction;
 import com.example.budgetapp.database.TransactionDao;
+import com.example.budgetapp.util.AssetLedger;
 
 import java.util.Calendar;
 import java.util.List;
@@ -74,8 +75,8 @@ public class DailyInterestService extends BroadcastReceiver {
                 currentPrincipal += dayInterest;
             }
 
-            asset.amount = Math.round(currentPrincipal * 100.0) / 100.0;
-            assetDao.update(asset);
+            // 利息作为增量计入余额，不整行写回，避免覆盖同时发生的其他记账
+            double interestDelta = Math.round(currentPrincipal * 100.0) / 100.0 - asset.amount;
 
             Transaction transaction = new Transaction(
                     System.currentTimeMillis(),
@@ -87,7 +88,10 @@ public class DailyInterestService extends BroadcastReceiver {
             transaction.assetId = asset.id;
             transaction.excludeFromBudget = true;
             transaction.subCategory = "";
-            transactionDao.insert(transaction);
+            database.runInTransaction(() -> {
+                int txId = (int) transactionDao.insert(transaction);
+                AssetLedger.move(database, asset.id, interestDelta, txId, AssetLedger.REASON_INTEREST);
+            });
 
             prefs.edit().putLong(KEY_LAST_DATE_PREFIX + asset.id, todayStart).apply();
             anyUpdated = true;
@@ -41,9 +41,12 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.budgetapp.R;
 import com.example.budgetapp.database.AppDatabase;
 import com.example.budgetapp.database.AssetAccount;
+import com.example.budgetapp.database.DataChange;
+import com.example.budgetapp.database.DataChangeFeed;
 import com.example.budgetapp.database.Transaction;
 import com.example.budgetapp.ui.CategoryAdapter;
 import com.example.budgetapp.ui.PhotoActionActivity;
+import com.example.budgetapp.util.AssetLedger;
 import com.example.budgetapp.util.AssistantConfig;
 import com.example.budgetapp.util.CategoryManager;
 import com.google.android.material.chip.Chip;
@@ -319,7 +322,7 @@ public class QuickAddTileService extends TileService {
                 spAsset.setAdapter(adapter);
                 com.example.budgetapp.util.AssetSpinnerAdapter.limitDropDownHeight(spAsset);
 
-                AppDatabase.databaseWriteExecutor.execute(() -> {
+                AppDatabase.databaseReadExecutor.execute(() -> {
                     // 【修改】同时加载资产(0)和负债(1)
                     List<AssetAccount> assets = AppDatabase.getDatabase(this).assetAccountDao().getAssetsByTypeSync(0);
                     List<AssetAccount> liabilities = AppDatabase.getDatabase(this).assetAccountDao().getAssetsByTypeSync(1);
@@ -593,7 +596,8 @@ public class QuickAddTileService extends TileService {
     }
 
     private void saveToDatabase(double amount, int type, String category, String subCategory, String note, String remark, int assetId, String currencySymbol, String photoPath, String targetObject, int liabilityLoanType, boolean excludeFromBudget) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
+        // 纯数据库写入，可与其他记账写操作合并进同一事务；自动同步在提交后触发
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
             AppDatabase db = AppDatabase.getDatabase(getApplicationContext());
 
             Transaction t = new Transaction();
@@ -611,72 +615,51 @@ public class QuickAddTileService extends TileService {
 
             t.excludeFromBudget = excludeFromBudget;
 
-            db.transactionDao().insert(t);
-
-            // 1. 同步影响【对方资产】（负债/借出对象）
-            if (targetObject != null && !targetObject.isEmpty() && liabilityLoanType != -1) {
-                // 负债借入或借出：增加对应账户金额
-                List<AssetAccount> targets = db.assetAccountDao().getAssetsByTypeSync(liabilityLoanType);
-                AssetAccount existingTarget = null;
-                if (targets != null) {
-                    for (AssetAccount a : targets) {
-                        if (a.name.equals(targetObject)) {
-                            existingTarget = a;
-                            break;
-                        }
+            // 账单与双方资产余额在同一事务中写入，余额只做增量更新；提交后经变更通知刷新小组件和页面
+            DataChangeFeed.write(db, DataChange.builder(), () -> {
+                int txId = (int) db.transactionDao().insert(t);
+
+                // 1. 同步影响【对方资产】（负债/借出对象）
+                if (targetObject != null && !targetObject.isEmpty() && liabilityLoanType != -1) {
+                    // 负债借入或借出：增加对应账户金额
+                    AssetAccount existingTarget = db.assetAccountDao().getAssetByNameAndType(targetObject, liabilityLoanType);
+                    if (existingTarget != null) {
+                        // 无论负债还是借出，账户总额都增加
+                        AssetLedger.move(db, existingTarget.id, amount, txId, AssetLedger.REASON_COUNTERPARTY);
+                    } else {
+                        AssetLedger.open(db, new AssetAccount(targetObject, amount, liabilityLoanType));
                     }
-                }
-                if (existingTarget != null) {
-                    existingTarget.amount += amount; // 无论负债还是借出，账户总额都增加
-                    db.assetAccountDao().update(existingTarget);
-                } else {
-                    AssetAccount newTarget = new AssetAccount(targetObject, 0, liabilityLoanType);
-                    newTarget.amount = amount;
-                    db.assetAccountDao().insert(newTarget);
-                }
-            } else if (type == 0 && remark != null && !remark.isEmpty()) {
-                // 支出还款：检查备注是否匹配负债账户名称
-                AssetAccount liabilityAccount = db.assetAccountDao().getAssetByNameAndType(remark, 1);
-                if (liabilityAccount != null) {
-                    liabilityAccount.amount -= amount;
-                    if (liabilityAccount.amount <= 0) {
-                        liabilityAccount.amount = 0;
+                } else if (type == 0 && remark != null && !remark.isEmpty()) {
+                    // 支出还款：检查备注是否匹配负债账户名称（还清后保留为0）
+                    AssetAccount liabilityAccount = db.assetAccountDao().getAssetByNameAndType(remark, 1);
+                    if (liabilityAccount != null) {
+                        AssetLedger.moveAtLeastZero(db, liabilityAccount.id, -amount, txId, AssetLedger.REASON_COUNTERPARTY);
                     }
-                    db.assetAccountDao().update(liabilityAccount);
-                }
-            } else if (type == 1 && remark != null && !remark.isEmpty()) {
-                // 收入收款：检查备注是否匹配借出账户名称
-                AssetAccount lentAccount = db.assetAccountDao().getAssetByNameAndType(remark, 2);
-                if (lentAccount != null) {
-                    lentAccount.amount -= amount;
-                    if (lentAccount.amount <= 0) {
-                        lentAccount.amount = 0;
+                } else if (type == 1 && remark != null && !remark.isEmpty()) {
+                    // 收入收款：检查备注是否匹配借出账户名称（收回后保留为0）
+                    AssetAccount lentAccount = db.assetAccountDao().getAssetByNameAndType(remark, 2);
+                    if (lentAccount != null) {
+                        AssetLedger.moveAtLeastZero(db, lentAccount.id, -amount, txId, AssetLedger.REASON_COUNTERPARTY);
                     }
-                    db.assetAccountDao().update(lentAccount);
                 }
-            }
 
-            // 2. 同步影响【己方资产】（使用的支付/收款账户）
-            if (assetId != 0) {
-                AssetAccount asset = db.assetAccountDao().getAssetByIdSync(assetId);
-                if (asset != null) {
-                    if (asset.type == 0) {
-                        if (type == 1) asset.amount += amount;
-                        else asset.amount -= amount;
-                    } else if (asset.type == 1 || asset.type == 2) {
-                        if (type == 1) asset.amount -= amount;
-                        else asset.amount += amount;
+                // 2. 同步影响【己方资产】（使用的支付/收款账户）
+                if (assetId != 0) {
+                    AssetAccount asset = db.assetAccountDao().getAssetByIdSync(assetId);
+                    if (asset != null) {
+                        double delta = 0;
+                        if (asset.type == 0) {
+                            delta = (type == 1) ? amount : -amount;
+                        } else if (asset.type == 1 || asset.type == 2) {
+                            delta = (type == 1) ? -amount : amount;
+                        }
+                        AssetLedger.move(db, asset.id, delta, txId, AssetLedger.REASON_TRANSACTION);
                     }
-                    db.assetAccountDao().update(asset);
                 }
-            }
-
-            // 👇👇👇 一键刷新所有桌面小组件 👇👇👇
-            com.example.budgetapp.widget.WidgetUtils.updateAllWidgets(getApplicationContext());
-            
+            });
+        }, () -> {
             // 触发 WebDAV 自动同步
             com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplicationContext());
-
-        }); // 这里是 execute 的结尾大括号
+        }); // 这里是 executeMergeable 的结尾大括号
     }
 }
\ No newline at end of file
@@ -11,12 +11,11 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowCompat;
 import androidx.core.view.WindowInsetsCompat;
+import androidx.lifecycle.LiveData;
 import androidx.lifecycle.ViewModelProvider;
 import com.example.budgetapp.R;
-import com.example.budgetapp.database.Transaction;
 import com.example.budgetapp.viewmodel.FinanceViewModel;
 import java.util.Calendar;
-import java.util.List;
 
 public class AboutActivity extends AppCompatActivity {
 
@@ -68,7 +67,11 @@ public class AboutActivity extends AppCompatActivity {
 
         // 初始化 ViewModel 并观察数据
         financeViewModel = new ViewModelProvider(this).get(FinanceViewModel.class);
-        financeViewModel.getAllTransactions().observe(this, this::updateStatistics);
+        // 只查询账单总数和最早时间，不再加载整张账单表
+        LiveData<Integer> countLive = financeViewModel.getTransactionCount();
+        LiveData<Long> earliestLive = financeViewModel.getEarliestTransactionDate();
+        countLive.observe(this, count -> updateStatistics(count, earliestLive.getValue()));
+        earliestLive.observe(this, earliest -> updateStatistics(countLive.getValue(), earliest));
 
         // 按钮跳转逻辑
         findViewById(R.id.btn_user_notice).setOnClickListener(v -> 
@@ -81,22 +84,12 @@ public class AboutActivity extends AppCompatActivity {
             startActivity(new Intent(this, DonateActivity.class)));
     }
 
-    private void updateStatistics(List<Transaction> transactions) {
-        if (transactions == null || transactions.isEmpty()) {
+    private void updateStatistics(Integer count, Long earliestDate) {
+        if (count == null || count == 0 || earliestDate == null) {
             tvStatsInfo.setText("开始记下你的第一笔账单吧");
             return;
         }
 
-        int count = transactions.size();
-        long earliestDate = Long.MAX_VALUE;
-
-        // 寻找最早的一笔账单时间
-        for (Transaction t : transactions) {
-            if (t.date < earliestDate) {
-                earliestDate = t.date;
-            }
-        }
-
         // 计算天数
         long days = calculateDays(earliestDate);
         
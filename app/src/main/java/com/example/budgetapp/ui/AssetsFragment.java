@@ -1237,6 +1237,8 @@ private String formatMultiCurrency(Map<String, Double> map) {
 
             String symbol = isCurrencyEnabled ? btnCurrency.getText().toString() : "¥";
 
+            // 打开对话框时读到的余额，保存时只按与它的差额调整
+            double loadedAmount = (existing == null) ? 0 : existing.amount;
             AssetAccount accountToSave = (existing == null) ? new AssetAccount(name, amount, finalType) : existing;
             accountToSave.name = name;
             accountToSave.amount = amount;
@@ -1293,7 +1295,7 @@ private String formatMultiCurrency(Map<String, Double> map) {
             }
 
             if (existing == null) viewModel.addAsset(accountToSave);
-            else viewModel.updateAsset(accountToSave);
+            else viewModel.updateAsset(accountToSave, loadedAmount);
 
             
             // 如果是活期理财，自动安排每日计息
@@ -129,7 +129,7 @@ public class AutoAssetActivity extends AppCompatActivity {
             cachedApps.add(new AppItem(entry.getKey(), entry.getValue()));
         }
 
-        AppDatabase.databaseWriteExecutor.execute(() -> {
+        AppDatabase.databaseReadExecutor.execute(() -> {
             // 【修改】同时查询资产(0)和负债(1)
             List<AssetAccount> assets = AppDatabase.getDatabase(this).assetAccountDao().getAssetsByTypeSync(0);
             List<AssetAccount> liabilities = AppDatabase.getDatabase(this).assetAccountDao().getAssetsByTypeSync(1);
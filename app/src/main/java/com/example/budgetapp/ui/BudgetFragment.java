@@ -31,6 +31,7 @@ import com.example.budgetapp.R;
 import com.example.budgetapp.database.Goal;
 import com.example.budgetapp.database.Transaction;
 import com.example.budgetapp.util.CategoryManager;
+import com.example.budgetapp.util.BudgetStore;
 import com.example.budgetapp.viewmodel.FinanceViewModel;
 import com.google.android.material.tabs.TabLayout;
 import com.google.android.material.tabs.TabLayoutMediator;
@@ -53,6 +54,10 @@ public class BudgetFragment extends Fragment {
     private boolean isDetailedEnabled = false;
 
     private double currentMonthSurplus = 0;
+
+    // 预算窗口内（最早目标/预算起始月 ~ 本月底）的账单流，不再观察整张账单表
+    private androidx.lifecycle.LiveData<List<Transaction>> budgetWindowLive;
+    private long budgetWindowStart = -1;
     
     // FAB 滚动隐藏相关
     private LinearLayout fabContainer;
@@ -137,17 +142,50 @@ public class BudgetFragment extends Fragment {
             viewPager.post(() -> attachScrollListeners(0));
         }
 
-        viewModel.getAllTransactions().observe(getViewLifecycleOwner(), transactions -> {
+        observeBudgetWindow();
+        observeDataChanges();
+
+        viewModel.getAllGoals().observe(getViewLifecycleOwner(), goals -> {
+            if (goals != null) {
+                goalAdapter.setGoals(goals);
+            }
+        });
+
+        return view;
+    }
+
+    /**
+     * 订阅本月账单（表头 / 分类预算）；目标资金池改由预算台账按天汇总计算，不再需要加载历史账单
+     */
+    private void observeBudgetWindow() {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = LocalDate.now();
+        long start = today.withDayOfMonth(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        if (budgetWindowLive != null && start == budgetWindowStart) return;
+        if (budgetWindowLive != null) {
+            budgetWindowLive.removeObservers(getViewLifecycleOwner());
+        }
+        budgetWindowStart = start;
+        long end = today.withDayOfMonth(today.lengthOfMonth()).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+        budgetWindowLive = viewModel.getTransactionsByRange(start, end);
+        budgetWindowLive.observe(getViewLifecycleOwner(), transactions -> {
             calculateMonthHeader(transactions);
-            goalAdapter.setTransactions(transactions);
             if (isDetailedEnabled) calculateDetailedBudgets(transactions);
         });
+    }
 
-        viewModel.getAllGoals().observe(getViewLifecycleOwner(), goals -> {
-            if (goals != null) goalAdapter.setGoals(goals);
+    /**
+     * 资金池按全部历史结余分配，任意月份的账单变化都要重新计算（本月窗口只在本月有变化时刷新）
+     */
+    private void observeDataChanges() {
+        viewModel.getDataChanges().observe(getViewLifecycleOwner(), change -> {
+            if (change != null && change.touchesTransactions()) goalAdapter.refreshSurplus();
         });
+    }
 
-        return view;
+    @Nullable
+    private List<Transaction> getBudgetWindowTransactions() {
+        return budgetWindowLive != null ? budgetWindowLive.getValue() : null;
     }
 
     /**
@@ -269,7 +307,6 @@ public class BudgetFragment extends Fragment {
      */
     private void calculateDetailedBudgets(List<Transaction> transactions) {
         if (getContext() == null) return;
-        SharedPreferences prefs = requireContext().getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
         List<CategoryBudgetModel> list = new ArrayList<>();
 
         LocalDate today = LocalDate.now();
@@ -279,7 +316,7 @@ public class BudgetFragment extends Fragment {
 
         List<String> expenseCategories = CategoryManager.getExpenseCategories(requireContext());
         for (String cat : expenseCategories) {
-            float limit = prefs.getFloat("budget_cat_" + cat, 0f);
+            float limit = BudgetStore.getCategoryBudget(requireContext(), cat);
             if (limit > 0) {
                 double spent = 0;
                 for (Transaction t : transactions) {
@@ -347,14 +384,14 @@ public class BudgetFragment extends Fragment {
                 float newLimit = Float.parseFloat(etBudget.getText().toString());
                 if (newLimit < 0) throw new Exception();
 
-                SharedPreferences prefs = requireContext().getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
-                // 保存分类预算：使用与 calculateDetailedBudgets 一致的 Key
-                prefs.edit().putFloat("budget_cat_" + item.name, newLimit).apply();
+                // 保存分类预算（写入预算表，calculateDetailedBudgets 从同一缓存读取）
+                BudgetStore.setCategoryBudget(requireContext(), item.name, newLimit);
 
                 // 刷新数据
-                if (viewModel.getAllTransactions().getValue() != null) {
-                    calculateMonthHeader(viewModel.getAllTransactions().getValue());
-                    calculateDetailedBudgets(viewModel.getAllTransactions().getValue());
+                List<Transaction> windowTransactions = getBudgetWindowTransactions();
+                if (windowTransactions != null) {
+                    calculateMonthHeader(windowTransactions);
+                    calculateDetailedBudgets(windowTransactions);
                 }
 
                 dialog.dismiss();
@@ -439,16 +476,7 @@ public class BudgetFragment extends Fragment {
         float monthlyBudget = 0;
 
         // 获取当月总预算
-        if (isDetailedEnabled) {
-            List<String> expenseCategories = CategoryManager.getExpenseCategories(requireContext());
-            for (String cat : expenseCategories) {
-                monthlyBudget += prefs.getFloat("budget_cat_" + cat, 0f);
-            }
-        } else {
-            float defaultBudget = prefs.getFloat("monthly_budget", 0f);
-            String monthKey = "budget_" + today.getYear() + "_" + today.getMonthValue();
-            monthlyBudget = prefs.getFloat(monthKey, defaultBudget);
-        }
+        monthlyBudget = BudgetStore.getEffectiveMonthBudget(requireContext(), today.getYear(), today.getMonthValue(), isDetailedEnabled);
 
         if (monthlyBudget > 0 && prefs.getLong("budget_start_time", 0) == 0) {
             prefs.edit().putLong("budget_start_time", System.currentTimeMillis()).apply();
@@ -519,22 +547,21 @@ public class BudgetFragment extends Fragment {
         tvTitle.setText("设置 " + today.getYear() + "年" + today.getMonthValue() + "月 预算");
 
         SharedPreferences prefs = requireContext().getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
-        float defaultBudget = prefs.getFloat("monthly_budget", 0f);
-        String monthKey = "budget_" + today.getYear() + "_" + today.getMonthValue();
-        float currentMonthBudget = prefs.getFloat(monthKey, defaultBudget);
+        float currentMonthBudget = BudgetStore.getMonthBudget(requireContext(), today.getYear(), today.getMonthValue());
         etBudget.setText(currentMonthBudget > 0 ? String.valueOf(currentMonthBudget) : "");
 
         view.findViewById(R.id.btn_save).setOnClickListener(v -> {
             try {
                 float newBudget = Float.parseFloat(etBudget.getText().toString());
-                prefs.edit().putFloat(monthKey, newBudget).apply();
+                BudgetStore.setMonthBudget(requireContext(), today.getYear(), today.getMonthValue(), newBudget);
                 if (prefs.getLong("budget_start_time", 0) == 0) {
                     prefs.edit().putLong("budget_start_time", System.currentTimeMillis()).apply();
                 }
-                if (viewModel.getAllTransactions().getValue() != null) {
-                    calculateMonthHeader(viewModel.getAllTransactions().getValue());
-                    goalAdapter.setTransactions(viewModel.getAllTransactions().getValue());
+                List<Transaction> windowTransactions = getBudgetWindowTransactions();
+                if (windowTransactions != null) {
+                    calculateMonthHeader(windowTransactions);
                 }
+                goalAdapter.refreshSurplus();
                 dialog.dismiss();
             } catch (Exception e) {
                 Toast.makeText(getContext(), "请输入有效的金额", Toast.LENGTH_SHORT).show();
@@ -649,99 +676,34 @@ public class BudgetFragment extends Fragment {
 
     private class GoalAdapter extends RecyclerView.Adapter<GoalAdapter.GoalViewHolder> {
         private List<Goal> goals = new ArrayList<>();
-        private List<Transaction> allTransactions = new ArrayList<>();
         private java.util.Map<Integer, Double> surplusAllocationMap = new java.util.HashMap<>();
+        private androidx.lifecycle.LiveData<java.util.Map<Integer, Double>> surplusLive;
 
         public void setGoals(List<Goal> goals) {
             List<Goal> activeGoals = new ArrayList<>();
             for (Goal g : goals) if (!g.isFinished) activeGoals.add(g);
             this.goals = activeGoals;
-            calculateAndDistributeSurplus();
-            notifyDataSetChanged();
-        }
-
-        public void setTransactions(List<Transaction> list) {
-            this.allTransactions = list;
-            calculateAndDistributeSurplus();
+            refreshSurplus();
             notifyDataSetChanged();
         }
 
-        private void calculateAndDistributeSurplus() {
-            surplusAllocationMap.clear();
-            if (goals.isEmpty()) return;
-            for (Goal g : goals) surplusAllocationMap.put(g.id, 0.0);
-
-            List<Goal> sortedGoals = new ArrayList<>(goals);
-            sortedGoals.sort((g1, g2) -> {
-                if (g1.isPriority && !g2.isPriority) return -1;
-                if (!g1.isPriority && g2.isPriority) return 1;
-                return Long.compare(g1.createdAt, g2.createdAt);
-            });
-
-            SharedPreferences prefs = requireContext().getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
-            float defaultBudget = prefs.getFloat("monthly_budget", 0f);
-
-            long earliestGoal = Long.MAX_VALUE;
-            for (Goal g : goals) {
-                if (g.createdAt < earliestGoal) earliestGoal = g.createdAt;
+        /**
+         * 在后台重新分配资金池（预算台账只重算账单发生变化的月份），完成后刷新卡片
+         */
+        public void refreshSurplus() {
+            if (surplusLive != null) {
+                surplusLive.removeObservers(getViewLifecycleOwner());
             }
-            long startTs = prefs.getLong("budget_start_time", earliestGoal);
-            LocalDate start = java.time.Instant.ofEpochMilli(startTs).atZone(ZoneId.systemDefault()).toLocalDate();
-            start = start.withDayOfMonth(1);
-
-            LocalDate today = LocalDate.now();
-            if (!start.isBefore(today)) return;
-
-            double pool = 0;
-
-            for (LocalDate d = start; d.isBefore(today); d = d.plusDays(1)) {
-                String key = "budget_" + d.getYear() + "_" + d.getMonthValue();
-                float monthBudget = prefs.getFloat(key, defaultBudget);
-                double dailyBudget = (monthBudget > 0) ? ((double) monthBudget / d.lengthOfMonth()) : 0;
-
-                double expenseToday = 0;
-                long startOfDay = d.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-                long endOfDay = d.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-                for (Transaction t : allTransactions) {
-                    // 【修改点】：增加不计入预算和资产互转的过滤
-                    boolean isTransfer = "资产互转".equals(t.category);
-                    if (t.date >= startOfDay && t.date < endOfDay && t.type == 0 && !isTransfer && !t.excludeFromBudget) {
-                        expenseToday += t.amount;
-                    }
-                }
-
-                boolean hasActiveGoal = false;
-                for (Goal g : sortedGoals) {
-                    if (g.isFinished) continue;
-                    LocalDate createDate = java.time.Instant.ofEpochMilli(g.createdAt).atZone(ZoneId.systemDefault()).toLocalDate();
-                    if (!d.isBefore(createDate)) {
-                        hasActiveGoal = true;
-                        break;
-                    }
-                }
-
-                if (hasActiveGoal) {
-                    pool += (dailyBudget - expenseToday);
-                    if (pool > 0) {
-                        for (Goal g : sortedGoals) {
-                            if (g.isFinished) continue;
-                            LocalDate createDate = java.time.Instant.ofEpochMilli(g.createdAt).atZone(ZoneId.systemDefault()).toLocalDate();
-                            if (d.isBefore(createDate)) continue;
-
-                            double allocated = surplusAllocationMap.get(g.id);
-                            double needed = g.targetAmount - g.savedAmount - allocated;
-                            if (needed > 0) {
-                                double take = Math.min(pool, needed);
-                                surplusAllocationMap.put(g.id, allocated + take);
-                                pool -= take;
-                            }
-                            if (pool <= 0) break;
-                        }
-                    }
-                } else {
-                    pool = 0;
-                }
+            if (goals.isEmpty()) {
+                surplusAllocationMap = new java.util.HashMap<>();
+                return;
             }
+            surplusLive = viewModel.loadGoalSurplus(new ArrayList<>(goals));
+            surplusLive.observe(getViewLifecycleOwner(), allocation -> {
+                if (allocation == null) return;
+                surplusAllocationMap = allocation;
+                notifyDataSetChanged();
+            });
         }
 
         @NonNull @Override
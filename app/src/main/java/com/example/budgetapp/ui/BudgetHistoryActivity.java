@@ -9,7 +9,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
-import com.example.budgetapp.util.CategoryManager;
+import com.example.budgetapp.util.BudgetLedger;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
@@ -18,13 +18,13 @@ import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowCompat;
 import androidx.core.view.WindowInsetsCompat;
+import androidx.lifecycle.LiveData;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.budgetapp.R;
 import com.example.budgetapp.database.Goal;
-import com.example.budgetapp.database.Transaction;
 import com.example.budgetapp.viewmodel.FinanceViewModel;
 
 import java.time.Instant;
@@ -41,6 +41,7 @@ public class BudgetHistoryActivity extends AppCompatActivity {
     private TimelineAdapter adapter;
 
     private FinanceViewModel viewModel; // 【新增】全局 ViewModel 变量
+    private LiveData<BudgetLedger.History> historyLive;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -62,33 +63,17 @@ public class BudgetHistoryActivity extends AppCompatActivity {
         // 【修改这里】：将原本的局部变量改为全局变量
         viewModel = new ViewModelProvider(this).get(FinanceViewModel.class);
 
-        viewModel.getAllTransactions().observe(this, transactions -> {
-            viewModel.getAllGoals().observe(this, goals -> {
-                generateTimeline(transactions != null ? transactions : new ArrayList<>(),
-                        goals != null ? goals : new ArrayList<>());
-            });
+        // 只需观察目标；每日支出由预算台账从按天汇总表读取，不再加载整张账单表
+        viewModel.getAllGoals().observe(this, goals -> {
+            generateTimeline(goals != null ? goals : new ArrayList<>());
         });
     }
 
     /**
-     * 核心算法：情景重现，推演历史记录
-     */
-    /**
-     * 核心算法：情景重现，推演历史记录
+     * 核心算法：情景重现，推演历史记录（由 BudgetLedger 在后台完成，这里只负责组装时间轴）
      */
-    private void generateTimeline(List<Transaction> transactions, List<Goal> goals) {
+    private void generateTimeline(List<Goal> goals) {
         SharedPreferences prefs = getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
-        float defaultBudget = prefs.getFloat("monthly_budget", 0f);
-
-        // 【修复2】：同步 BudgetFragment 中的详细分类预算总额逻辑
-        boolean isDetailedEnabled = prefs.getBoolean("is_detailed_budget_enabled", false);
-        float detailedTotalBudget = 0f;
-        if (isDetailedEnabled) {
-            List<String> expenseCategories = CategoryManager.getExpenseCategories(this);
-            for (String cat : expenseCategories) {
-                detailedTotalBudget += prefs.getFloat("budget_cat_" + cat, 0f);
-            }
-        }
 
         // 1. 获取首次开启预算的记录时间
         long startTs = prefs.getLong("budget_start_time", 0);
@@ -104,122 +89,32 @@ public class BudgetHistoryActivity extends AppCompatActivity {
         LocalDate earliestDate = Instant.ofEpochMilli(startTs).atZone(ZoneId.systemDefault()).toLocalDate();
         earliestDate = earliestDate.withDayOfMonth(1);
 
-        List<TimelineItem> timeline = new ArrayList<>();
-        List<Goal> pendingGoals = new ArrayList<>(goals);
-
-        // 按优先级和时间排序
-        pendingGoals.sort((g1, g2) -> {
-            if (g1.isPriority && !g2.isPriority) return -1;
-            if (!g1.isPriority && g2.isPriority) return 1;
-            return Long.compare(g1.createdAt, g2.createdAt);
-        });
-
-        double pool = 0;
-        LocalDate today = LocalDate.now();
-
         // 如果起点晚于今天，说明数据异常，直接返回
-        if (earliestDate.isAfter(today)) return;
+        if (earliestDate.isAfter(LocalDate.now())) return;
 
-        YearMonth currentProcessingMonth = YearMonth.from(earliestDate);
-        double currentMonthExpense = 0;
-
-        // 【修复2】：根据是否开启详细模式，读取正确的当月预算
-        float activeMonthBudget;
-        if (isDetailedEnabled) {
-            activeMonthBudget = detailedTotalBudget;
-        } else {
-            activeMonthBudget = prefs.getFloat("budget_" + currentProcessingMonth.getYear() + "_" + currentProcessingMonth.getMonthValue(), defaultBudget);
+        if (historyLive != null) {
+            historyLive.removeObservers(this);
         }
+        historyLive = viewModel.loadBudgetHistory(new ArrayList<>(goals), earliestDate);
+        historyLive.observe(this, history -> {
+            if (history != null) showTimeline(history);
+        });
+    }
 
-        for (LocalDate d = earliestDate; !d.isAfter(today); d = d.plusDays(1)) {
-            YearMonth ym = YearMonth.from(d);
-
-            // 跨月结算逻辑
-            if (!ym.equals(currentProcessingMonth)) {
-                double surplus = activeMonthBudget - currentMonthExpense;
-                LocalDate lastDayOfPrevMonth = currentProcessingMonth.atEndOfMonth();
-                long ts = lastDayOfPrevMonth.atTime(23, 59, 59).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-                timeline.add(new MonthItem(ts, currentProcessingMonth.getYear(), currentProcessingMonth.getMonthValue(), surplus));
-
-                // 进入新月份，重新读取新月份的独立预算
-                currentProcessingMonth = ym;
-                if (isDetailedEnabled) {
-                    activeMonthBudget = detailedTotalBudget;
-                } else {
-                    activeMonthBudget = prefs.getFloat("budget_" + ym.getYear() + "_" + ym.getMonthValue(), defaultBudget);
-                }
-                currentMonthExpense = 0;
-            }
-
-            double dailyBudget = (activeMonthBudget > 0) ? ((double) activeMonthBudget / d.lengthOfMonth()) : 0;
-            double expenseToday = 0;
-            long startOfDay = d.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-            long endOfDay = d.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-
-            for (Transaction t : transactions) {
-                if (t.date >= startOfDay && t.date < endOfDay && t.type == 0) {
-                    expenseToday += t.amount;
-                }
-            }
-
-            currentMonthExpense += expenseToday;
-
-            // 判断这一天是否存在尚未完成的目标
-            boolean hasActiveGoal = false;
-            for (Goal g : pendingGoals) {
-                LocalDate createDate = Instant.ofEpochMilli(g.createdAt).atZone(ZoneId.systemDefault()).toLocalDate();
-                if (!d.isBefore(createDate)) {
-                    hasActiveGoal = true;
-                    break;
-                }
-            }
-
-            // 只有存在激活目标时，才把当天的净余存入资金池
-            if (hasActiveGoal) {
-                pool += (dailyBudget - expenseToday);
-            } else {
-                pool = 0; // 防止历史结余变成死水，瞬间填满未来的新目标
-            }
-
-            // 检查目标是否达成
-            java.util.Iterator<Goal> it = pendingGoals.iterator();
-            while (it.hasNext()) {
-                Goal g = it.next();
-                LocalDate goalCreateDate = Instant.ofEpochMilli(g.createdAt).atZone(ZoneId.systemDefault()).toLocalDate();
-                if (d.isBefore(goalCreateDate)) continue;
-
-                // 劫持手动完成的目标
-                if (g.isFinished) {
-                    LocalDate finishDate = Instant.ofEpochMilli(g.finishedDate).atZone(ZoneId.systemDefault()).toLocalDate();
-                    if (!d.isBefore(finishDate)) { // 当推演到用户点击完成的那一天
-                        long ts = d.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-                        timeline.add(new GoalItem(ts, g.name, d, g));
-                        it.remove();
-                        continue; // 手动完成的不消耗资金池
-                    }
-                }
+    private void showTimeline(BudgetLedger.History history) {
+        List<TimelineItem> timeline = new ArrayList<>();
+        ZoneId zone = ZoneId.systemDefault();
 
-                // 计算是否自动达标
-                double needed = Math.max(0, g.targetAmount - g.savedAmount);
-                if (needed <= 0) {
-                    // 仅靠基础资金就完成了
-                    long ts = d.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-                    timeline.add(new GoalItem(ts, g.name, d, g));
-                    it.remove();
-                } else if (pool >= needed) {
-                    // 资金池填满了目标
-                    pool -= needed;
-                    long ts = d.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-                    timeline.add(new GoalItem(ts, g.name, d, g));
-                    it.remove();
-                } else {
-                    break; // 资金不够填目前的最高优目标，停止当天的顺延分配
-                }
-            }
+        // 只展示已经结束的月份：当月必须等到进入次月1号才会生成 MonthItem 进入历史
+        for (BudgetLedger.MonthTotal month : history.months) {
+            YearMonth ym = month.month;
+            long ts = ym.atEndOfMonth().atTime(23, 59, 59).atZone(zone).toInstant().toEpochMilli();
+            timeline.add(new MonthItem(ts, ym.getYear(), ym.getMonthValue(), month.budget - month.expense));
+        }
+        for (BudgetLedger.GoalAchievement achievement : history.achievements) {
+            long ts = achievement.date.atTime(12, 0).atZone(zone).toInstant().toEpochMilli();
+            timeline.add(new GoalItem(ts, achievement.goal.name, achievement.date, achievement.goal));
         }
-
-        // 【修复1】：已删除原先“强行添加当前进行中月份的结余”的代码逻辑。
-        // 现在当月必须等到进入次月1号触发 (!ym.equals(currentProcessingMonth)) 才会生成 MonthItem 进入历史。
 
         // 按时间正序排列（最早的在最上面，符合阅读习惯）
         Collections.sort(timeline, (a, b) -> Long.compare(a.getTimestamp(), b.getTimestamp()));
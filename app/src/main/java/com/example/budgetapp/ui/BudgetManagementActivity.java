@@ -22,6 +22,7 @@ import androidx.core.view.WindowCompat;
 import androidx.core.view.WindowInsetsCompat;
 
 import com.example.budgetapp.R;
+import com.example.budgetapp.util.BudgetStore;
 import com.example.budgetapp.util.CategoryManager;
 
 import java.time.YearMonth;
@@ -77,14 +78,14 @@ public class BudgetManagementActivity extends AppCompatActivity {
         boolean isBudgetEnabled = prefs.getBoolean("is_budget_enabled", false);
         boolean isDetailedEnabled = prefs.getBoolean("is_detailed_budget_enabled", false);
         boolean isBillCardReplace = prefs.getBoolean("bill_card_replace_budget", false);
-        float monthlyBudget = prefs.getFloat("monthly_budget", 0f);
+        float monthlyBudget = BudgetStore.getMonthlyBudget(this);
 
         switchBudget.setChecked(isBudgetEnabled);
         switchDetailedBudget.setChecked(isDetailedEnabled);
         switchBillCardReplace.setChecked(isBillCardReplace);
 
         // 构建动态视图
-        buildDetailedInputs(prefs);
+        buildDetailedInputs();
         updateUI(isBudgetEnabled, isDetailedEnabled);
 
         if (monthlyBudget > 0) {
@@ -121,7 +122,7 @@ public class BudgetManagementActivity extends AppCompatActivity {
             }
         });
 
-        btnSaveBudget.setOnClickListener(v -> saveSettings(prefs));
+        btnSaveBudget.setOnClickListener(v -> saveSettings());
     }
 
     private void updateUI(boolean isBudgetEnabled, boolean isDetailedEnabled) {
@@ -136,7 +137,7 @@ public class BudgetManagementActivity extends AppCompatActivity {
     /**
      * 生成详细预算输入列表
      */
-    private void buildDetailedInputs(SharedPreferences prefs) {
+    private void buildDetailedInputs() {
         // 清空容器和旧数据，防止重复生成
         llDetailedBudgetContainer.removeAllViews();
         categoryInputs.clear();
@@ -154,7 +155,7 @@ public class BudgetManagementActivity extends AppCompatActivity {
             EditText etAmount = row.findViewById(R.id.et_cat_budget);
 
             tvName.setText(cat);
-            float catBudget = prefs.getFloat("budget_cat_" + cat, 0f);
+            float catBudget = BudgetStore.getCategoryBudget(this, cat);
             if (catBudget > 0) etAmount.setText(String.valueOf(catBudget));
 
             etAmount.addTextChangedListener(new TextWatcher() {
@@ -186,7 +187,7 @@ public class BudgetManagementActivity extends AppCompatActivity {
         tvDailyBudgetHint.setText(String.format("当月平均每日预算: %.2f", daily));
     }
 
-    private void saveSettings(SharedPreferences prefs) {
+    private void saveSettings() {
         float totalBudget = 0;
         if (switchDetailedBudget.isChecked()) {
             // 开启详细模式：遍历保存各个分类，并加总
@@ -195,17 +196,17 @@ public class BudgetManagementActivity extends AppCompatActivity {
                 try {
                     val = Float.parseFloat(holder.editText.getText().toString());
                 } catch (Exception ignored) {}
-                prefs.edit().putFloat("budget_cat_" + holder.categoryName, val).apply();
+                BudgetStore.setCategoryBudget(this, holder.categoryName, val);
                 totalBudget += val;
             }
-            prefs.edit().putFloat("monthly_budget", totalBudget).apply();
+            BudgetStore.setMonthlyBudget(this, totalBudget);
             Toast.makeText(this, "详细分类预算已保存\n月总额更新为: " + totalBudget, Toast.LENGTH_SHORT).show();
             finish();
         } else {
             // 普通模式：直接保存总额
             try {
                 totalBudget = Float.parseFloat(etMonthlyBudget.getText().toString());
-                prefs.edit().putFloat("monthly_budget", totalBudget).apply();
+                BudgetStore.setMonthlyBudget(this, totalBudget);
                 Toast.makeText(this, "全局预算设置已保存", Toast.LENGTH_SHORT).show();
                 finish();
             } catch (NumberFormatException e) {
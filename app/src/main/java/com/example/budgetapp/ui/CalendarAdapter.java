@@ -25,6 +25,7 @@ import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class CalendarAdapter extends RecyclerView.Adapter<CalendarAdapter.ViewHolder> {
@@ -40,6 +41,23 @@ public class CalendarAdapter extends RecyclerView.Adapter<CalendarAdapter.ViewHo
     private boolean isBudgetEnabled = false;
     private float monthlyBudget = 0f;
 
+    // ================= 按格子预聚合的数据（updateData 时一次性计算，绑定时 O(1) 读取） =================
+    // 下标与 days 列表一致；dayStartMillis 多一位作为最后一天的结束边界
+    private long[] dayStartMillis = new long[0];
+    private double[] dayBalance = new double[0];        // 模式0：结余
+    private double[] dayIncome = new double[0];         // 模式1：收入（不含加班）
+    private double[] dayExpense = new double[0];        // 模式2：支出（同时用于预算色块）
+    private double[] dayOvertimePay = new double[0];    // 模式3：加班工资
+    private double[] dayOvertimeHours = new double[0];  // 模式4：加班工时
+    private boolean[] dayIsRenewal = new boolean[0];
+    // 农历/节日文字按月缓存，只在日历网格变化时重新计算
+    private String[] lunarLabels = new String[0];
+    private long lunarGridStartEpochDay = Long.MIN_VALUE;
+    private int lunarGridSize = -1;
+    // 主题模式在一次数据刷新内只读取一次
+    private Boolean customBgCache = null;
+    private LocalDate today = LocalDate.now();
+
     // 增加一个公开方法用于接收配置
     public void setBudgetConfig(boolean enabled, float budget) {
         this.isBudgetEnabled = enabled;
@@ -60,6 +78,7 @@ public class CalendarAdapter extends RecyclerView.Adapter<CalendarAdapter.ViewHo
      */
     public void setRenewalItems(List<RenewalItem> items) {
         this.renewalItems = items != null ? items : new ArrayList<>();
+        buildRenewalIndex();
         notifyDataSetChanged();
     }
 
@@ -75,9 +94,151 @@ public class CalendarAdapter extends RecyclerView.Adapter<CalendarAdapter.ViewHo
     public void updateData(List<LocalDate> days, List<Transaction> transactions) {
         this.days = days;
         this.transactions = transactions;
+        this.today = LocalDate.now();
+        this.customBgCache = null;
+        buildDayIndex();
+        buildRenewalIndex();
+        buildLunarLabels();
         notifyDataSetChanged();
     }
 
+    /**
+     * 单次遍历本月账单，把金额累加进每个格子对应的数组槽位
+     */
+    private void buildDayIndex() {
+        int n = days.size();
+        dayStartMillis = new long[n + 1];
+        dayBalance = new double[n];
+        dayIncome = new double[n];
+        dayExpense = new double[n];
+        dayOvertimePay = new double[n];
+        dayOvertimeHours = new double[n];
+
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate first = null;
+        for (LocalDate d : days) {
+            if (d != null) { first = d; break; }
+        }
+        if (first == null) return;
+        // 网格是连续的日期，空位只会出现在开头之前，这里按位置推算每格的起始时间
+        int firstIndex = days.indexOf(first);
+        LocalDate gridStart = first.minusDays(firstIndex);
+        for (int i = 0; i <= n; i++) {
+            dayStartMillis[i] = gridStart.plusDays(i).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+        if (transactions == null) return;
+
+        for (Transaction t : transactions) {
+            if (t.date < dayStartMillis[0] || t.date >= dayStartMillis[n]) continue;
+
+            // 🌟 核心拦截：如果是资产互转，直接跳过，不参与日历下方任何数字的计算
+            boolean isTransfer = (t.type == 2) || "资产互转".equals(t.category);
+            if (isTransfer) continue;
+
+            int pos = Arrays.binarySearch(dayStartMillis, t.date);
+            if (pos < 0) pos = -pos - 2; // 落在 [start[i], start[i+1]) 区间内
+            if (pos < 0 || pos >= n || days.get(pos) == null) continue;
+
+            if (t.type == 0) {
+                dayExpense[pos] += t.amount;
+                dayBalance[pos] -= t.amount;
+            } else if (t.type == 1) {
+                if ("加班".equals(t.category)) {
+                    dayOvertimePay[pos] += t.amount;
+                    // 时长已在写入时从备注解析好
+                    dayOvertimeHours[pos] += t.overtimeHours;
+                } else {
+                    dayIncome[pos] += t.amount;
+                    dayBalance[pos] += t.amount;
+                }
+            }
+        }
+    }
+
+    private void buildRenewalIndex() {
+        dayIsRenewal = new boolean[days.size()];
+        for (int i = 0; i < days.size(); i++) {
+            LocalDate date = days.get(i);
+            if (date == null) continue;
+            for (RenewalItem item : renewalItems) {
+                // 【关键修改】：调用新增的统一判断方法
+                if (isRenewalDate(item, date)) {
+                    dayIsRenewal[i] = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算网格内每天的农历/节日文字，同一个网格只算一次
+     */
+    private void buildLunarLabels() {
+        LocalDate first = null;
+        for (LocalDate d : days) {
+            if (d != null) { first = d; break; }
+        }
+        long startEpochDay = first != null ? first.toEpochDay() : Long.MIN_VALUE;
+        if (startEpochDay == lunarGridStartEpochDay && days.size() == lunarGridSize) return;
+
+        lunarGridStartEpochDay = startEpochDay;
+        lunarGridSize = days.size();
+        lunarLabels = new String[days.size()];
+        for (int i = 0; i < days.size(); i++) {
+            LocalDate date = days.get(i);
+            lunarLabels[i] = date != null ? computeLunarLabel(date) : "";
+        }
+    }
+
+    private String computeLunarLabel(LocalDate date) {
+        String netText = "";
+        try {
+            com.nlf.calendar.Solar solar = com.nlf.calendar.Solar.fromYmd(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+            com.nlf.calendar.Lunar lunar = solar.getLunar();
+
+            String festival = "";
+
+            // 依次优先级：农历节日 -> 阳历节日 -> 节气
+            if (lunar.getFestivals() != null && !lunar.getFestivals().isEmpty()) {
+                festival = lunar.getFestivals().get(0);
+            } else if (solar.getFestivals() != null && !solar.getFestivals().isEmpty()) {
+                festival = solar.getFestivals().get(0);
+            } else if (lunar.getJieQi() != null && !lunar.getJieQi().isEmpty()) {
+                festival = lunar.getJieQi();
+            }
+
+            // 确定显示的文字
+            if (festival != null && !festival.isEmpty()) {
+                netText = festival;
+            } else {
+                if (lunar.getDay() == 1) {
+                    netText = lunar.getMonthInChinese() + "月";
+                } else {
+                    netText = lunar.getDayInChinese();
+                }
+            }
+
+            // ==========================================
+            // 新增逻辑：限制农历/节假日最多显示三个字，超出显示"..."
+            // ==========================================
+            if (netText.length() > 3) {
+                netText = netText.substring(0, 3) + "...";
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return netText;
+    }
+
+    // 检查是否是自定义背景模式（每次数据刷新后只读取一次 SharedPreferences）
+    private boolean isCustomBg(Context context) {
+        if (customBgCache == null) {
+            SharedPreferences prefs = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
+            customBgCache = prefs.getInt("theme_mode", -1) == 3;
+        }
+        return customBgCache;
+    }
+
     public void setSelectedDate(LocalDate date) {
         this.selectedDate = date;
         notifyDataSetChanged();
@@ -149,60 +310,28 @@ public class CalendarAdapter extends RecyclerView.Adapter<CalendarAdapter.ViewHo
             defaultDayColor = colorSecondaryText;
         }
 
-        // 2. 统计金额及颜色处理
-        double dailySum = 0;
+        // 2. 统计金额及颜色处理：直接读取 updateData 时预聚合好的数组
+        double dailySum;
         double dailyHours = 0; // 新增：统计每日工时
-        double dailyExpenseForBudget = 0; // <--- 1. 新增这行，定义每日支出变量
-        long start = date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long end = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-
-        for (Transaction t : transactions) {
-            if (t.date >= start && t.date < end) {
-
-                // 🌟 核心拦截：如果是资产互转，直接跳过，不参与日历下方任何数字的计算
-                boolean isTransfer = (t.type == 2) || "资产互转".equals(t.category);
-                if (isTransfer) {
-                    continue;
-                }
-
-                // <--- 2. 新增这块：只要是支出(type==0)，就累加到预算统计里 --->
-                if (t.type == 0) {
-                    dailyExpenseForBudget += t.amount;
-                }
-
-                switch (filterMode) {
-                    case 0: // 结余
-                        if (t.type == 1) {
-                            if (!"加班".equals(t.category)) dailySum += t.amount;
-                        } else if (t.type == 0) { // 🌟 严格限制只有真正的支出才减去金额
-                            dailySum -= t.amount;
-                        }
-                        break;
-                    case 1: // 收入
-                        if (t.type == 1 && !"加班".equals(t.category)) dailySum += t.amount;
-                        break;
-                    case 2: // 支出
-                        if (t.type == 0) dailySum += t.amount;
-                        break;
-                    case 3: // 加班工资
-                        if (t.type == 1 && "加班".equals(t.category)) dailySum += t.amount;
-                        break;
-                    case 4: // 加班工时
-                        if (t.type == 1 && "加班".equals(t.category)) {
-                            if (t.note != null) {
-                                java.util.regex.Matcher m = java.util.regex.Pattern.compile("时长:\\s*([0-9.]+)\\s*小时").matcher(t.note);
-                                if (m.find()) {
-                                    try {
-                                        dailyHours += Double.parseDouble(m.group(1));
-                                    } catch (NumberFormatException ignored) {}
-                                }
-                            }
-                            // 赋值 dailySum 让底部判断有数据
-                            dailySum += t.amount;
-                        }
-                        break;
-                }
-            }
+        double dailyExpenseForBudget = dayExpense[position];
+        switch (filterMode) {
+            case 1: // 收入
+                dailySum = dayIncome[position];
+                break;
+            case 2: // 支出
+                dailySum = dayExpense[position];
+                break;
+            case 3: // 加班工资
+                dailySum = dayOvertimePay[position];
+                break;
+            case 4: // 加班工时
+                dailyHours = dayOvertimeHours[position];
+                // 赋值 dailySum 让底部判断有数据
+                dailySum = dayOvertimePay[position];
+                break;
+            default: // 结余
+                dailySum = dayBalance[position];
+                break;
         }
 
         int defaultNetColor = 0;
@@ -225,49 +354,13 @@ public class CalendarAdapter extends RecyclerView.Adapter<CalendarAdapter.ViewHo
                 }
             }
         } else {
-            // === 无收支数据，显示农历或节假日 ===
-            try {
-                com.nlf.calendar.Solar solar = com.nlf.calendar.Solar.fromYmd(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
-                com.nlf.calendar.Lunar lunar = solar.getLunar();
-
-                String festival = "";
-
-                // 依次优先级：农历节日 -> 阳历节日 -> 节气
-                if (lunar.getFestivals() != null && !lunar.getFestivals().isEmpty()) {
-                    festival = lunar.getFestivals().get(0);
-                } else if (solar.getFestivals() != null && !solar.getFestivals().isEmpty()) {
-                    festival = solar.getFestivals().get(0);
-                } else if (lunar.getJieQi() != null && !lunar.getJieQi().isEmpty()) {
-                    festival = lunar.getJieQi();
-                }
-
-                // 确定显示的文字
-                if (festival != null && !festival.isEmpty()) {
-                    netText = festival;
-                } else {
-                    if (lunar.getDay() == 1) {
-                        netText = lunar.getMonthInChinese() + "月";
-                    } else {
-                        netText = lunar.getDayInChinese();
-                    }
-                }
-
-                // ==========================================
-                // 新增逻辑：限制农历/节假日最多显示三个字，超出显示"..."
-                // ==========================================
-                if (netText.length() > 3) {
-                    netText = netText.substring(0, 3) + "...";
-                }
-
-                // 【修改这里】：动态获取系统当前模式下的颜色 (日间#666666，夜间#6b6d6d)
-                defaultNetColor = context.getColor(R.color.calendar_lunar_text);
-
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+            // === 无收支数据，显示按月缓存的农历或节假日 ===
+            netText = position < lunarLabels.length ? lunarLabels[position] : "";
+            // 【修改这里】：动态获取系统当前模式下的颜色 (日间#666666，夜间#6b6d6d)
+            defaultNetColor = context.getColor(R.color.calendar_lunar_text);
         }
         // 3. 样式应用逻辑核心
-        boolean isToday = date.equals(LocalDate.now());
+        boolean isToday = date.equals(today);
         boolean isSelected = date.equals(selectedDate);
 
         // --- 在判断背景色之前，先保存 View 原本的 Padding ---
@@ -277,24 +370,16 @@ public class CalendarAdapter extends RecyclerView.Adapter<CalendarAdapter.ViewHo
         int padRight = holder.itemView.getPaddingRight();
         int padBottom = holder.itemView.getPaddingBottom();
 
-        // --- 核心优化：检测多项自动续费日期 (支持自定义) ---
-        boolean isRenewalDay = false;
-        for (RenewalItem item : renewalItems) {
-            // 【关键修改】：调用新增的统一判断方法
-            if (isRenewalDate(item, date)) {
-                isRenewalDay = true;
-                break;
-            }
-        }
+        // --- 核心优化：多项自动续费日期 (支持自定义) 已在 updateData 时预先标记 ---
+        boolean isRenewalDay = position < dayIsRenewal.length && dayIsRenewal[position];
 
         // 检查是否是自定义背景模式
-        SharedPreferences prefs = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
-        boolean isCustomBg = prefs.getInt("theme_mode", -1) == 3;
+        boolean isCustomBg = isCustomBg(context);
 
         if (isSelected) {
             // [选中状态]：应用动画
             boolean wasToday = isToday;
-            boolean wasBudget = isBudgetEnabled && monthlyBudget > 0 && isCurrentMonth && !date.isAfter(LocalDate.now());
+            boolean wasBudget = isBudgetEnabled && monthlyBudget > 0 && isCurrentMonth && !date.isAfter(today);
             double dailyBudget = dailyBudget(date);
             applySelectedDateAnimation(holder, themeColor, defaultDayColor, wasToday, wasBudget, dailyExpenseForBudget, dailyBudget, isCurrentMonth);
             holder.tvNet.setTextColor(defaultNetColor);
@@ -323,7 +408,7 @@ public class CalendarAdapter extends RecyclerView.Adapter<CalendarAdapter.ViewHo
             holder.tvDay.setTextColor(defaultDayColor);
             holder.itemView.setSelected(false);
 
-        } else if (isBudgetEnabled && monthlyBudget > 0 && isCurrentMonth && !date.isAfter(LocalDate.now())) {
+        } else if (isBudgetEnabled && monthlyBudget > 0 && isCurrentMonth && !date.isAfter(today)) {
             // [预算状态]
             int daysInMonth = date.lengthOfMonth();
             double dailyBudget = monthlyBudget / daysInMonth;
@@ -509,8 +594,7 @@ public class CalendarAdapter extends RecyclerView.Adapter<CalendarAdapter.ViewHo
         final int startBgAlpha; // 记录原始透明度
         
         // 检查是否是自定义背景模式
-        SharedPreferences prefs = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
-        boolean isCustomBg = prefs.getInt("theme_mode", -1) == 3;
+        boolean isCustomBg = isCustomBg(context);
         
         if (wasToday) {
             // 今天的蓝色背景
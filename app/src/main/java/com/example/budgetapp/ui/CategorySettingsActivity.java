@@ -20,6 +20,7 @@ import androidx.core.view.WindowInsetsCompat;
 
 import com.example.budgetapp.R;
 import com.example.budgetapp.database.AppDatabase;
+import com.example.budgetapp.util.BudgetStore;
 import com.example.budgetapp.util.CategoryManager;
 import com.google.android.material.chip.Chip;
 import com.google.android.material.chip.ChipGroup;
@@ -191,7 +192,9 @@ public class CategorySettingsActivity extends AppCompatActivity {
                             // 【修复报错】此处将 getInstance 改为了 getDatabase
                             AppDatabase db = AppDatabase.getDatabase(getApplicationContext());
                             if (db != null && db.transactionDao() != null) {
+                                // 账单和分类预算在同一事务中改名
                                 db.transactionDao().updateCategoryName(oldCategory, newCategory);
+                                BudgetStore.onCategoryRenamed(getApplicationContext(), oldCategory, newCategory);
                             }
                         }).start();
 
@@ -68,7 +68,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import android.widget.NumberPicker;
 import android.text.Editable;
@@ -80,12 +79,13 @@ public class DetailsFragment extends Fragment {
     private RecyclerView recyclerView;
     private TextView tvStatisticsSummary;
     private DetailsAdapter adapter;
-    private List<Transaction> allTransactions = new ArrayList<>();
     private List<AssetAccount> assetList = new ArrayList<>();
     private TextView tvDateRange;
 
     // 🌟 修改点：使用常规的 List 替代 PagingData
     private androidx.lifecycle.LiveData<List<Transaction>> currentFilteredDataLive;
+    // 单日详情弹窗只订阅当天的账单
+    private androidx.lifecycle.LiveData<List<Transaction>> currentDayDataLive;
 
     private GestureDetector gestureDetector;
     private LocalDate selectedDate = LocalDate.now();
@@ -1969,6 +1969,10 @@ public class DetailsFragment extends Fragment {
             currentDetailAdapter = null;
             currentDetailDialog = null;
             currentDetailSummaryTextView = null;
+            if (currentDayDataLive != null) {
+                currentDayDataLive.removeObservers(getViewLifecycleOwner());
+                currentDayDataLive = null;
+            }
         });
         dialog.show();
     }
@@ -2008,16 +2012,16 @@ public class DetailsFragment extends Fragment {
     private void updateDetailDialogData(LocalDate date) {
         if (currentDetailAdapter == null) return;
         
-        // 从ViewModel获取所有交易记录
-        viewModel.getAllTransactions().observe(getViewLifecycleOwner(), allTransactions -> {
-            List<Transaction> dayList = new ArrayList<>();
-            if (allTransactions != null) {
-                long start = date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-                long end = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-                dayList = allTransactions.stream()
-                        .filter(t -> t.date >= start && t.date < end)
-                        .collect(Collectors.toList());
-            }
+        // 只订阅当天范围的账单，替换掉上一次的订阅，避免重复观察
+        if (currentDayDataLive != null) {
+            currentDayDataLive.removeObservers(getViewLifecycleOwner());
+        }
+        long dayStart = date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long dayEnd = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1;
+        currentDayDataLive = viewModel.getTransactionsByRange(dayStart, dayEnd);
+        currentDayDataLive.observe(getViewLifecycleOwner(), dayTransactions -> {
+            if (currentDetailAdapter == null) return;
+            List<Transaction> dayList = dayTransactions != null ? new ArrayList<>(dayTransactions) : new ArrayList<>();
 
             // 添加自动续费预览
             List<com.example.budgetapp.database.RenewalItem> renewals = assistantConfig.getRenewalList();
@@ -0,0 +1,79 @@
+package com.example.budgetapp.ui;
+
+import android.app.AlertDialog;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.LiveData;
+
+import com.example.budgetapp.viewmodel.FinanceViewModel;
+
+/**
+ * 批量导入进度弹窗：观察 FinanceViewModel.bulkImport 返回的进度，结束后自动关闭
+ */
+public class ImportProgressDialog {
+
+    /**
+     * 导入成功的回调，result 中带有实际写入数与查重跳过数
+     */
+    public interface OnImported {
+        void onImported(FinanceViewModel.ImportProgress result);
+    }
+
+    /**
+     * @param onSuccess 导入成功后在主线程执行（通常用于弹出结果提示）
+     * @param failPrefix 失败提示的前缀，例如 "导入失败"
+     */
+    public static void show(AppCompatActivity activity, LiveData<FinanceViewModel.ImportProgress> progress,
+                            Runnable onSuccess, String failPrefix) {
+        show(activity, progress, onSuccess != null ? result -> onSuccess.run() : null, failPrefix);
+    }
+
+    public static void show(AppCompatActivity activity, LiveData<FinanceViewModel.ImportProgress> progress,
+                            OnImported onSuccess, String failPrefix) {
+        int padding = (int) (24 * activity.getResources().getDisplayMetrics().density);
+        LinearLayout layout = new LinearLayout(activity);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.setPadding(padding, padding, padding, padding / 2);
+
+        TextView tvMessage = new TextView(activity);
+        tvMessage.setText("正在导入...");
+        layout.addView(tvMessage);
+
+        ProgressBar progressBar = new ProgressBar(activity, null, android.R.attr.progressBarStyleHorizontal);
+        progressBar.setMax(100);
+        layout.addView(progressBar);
+
+        AlertDialog dialog = new AlertDialog.Builder(activity)
+                .setTitle("导入数据")
+                .setView(layout)
+                .setCancelable(false)
+                .create();
+        dialog.show();
+
+        progress.observe(activity, p -> {
+            if (p == null) return;
+            if (!p.finished) {
+                if (p.total > 0) {
+                    tvMessage.setText(String.format("正在导入 %d / %d 条账单", p.done, p.total));
+                    progressBar.setProgress((int) (p.done * 100L / p.total));
+                } else {
+                    // 流式导入事先不知道总数，只显示已导入条数
+                    tvMessage.setText(String.format("正在导入 %d 条账单", p.done));
+                    progressBar.setIndeterminate(true);
+                }
+                return;
+            }
+            progress.removeObservers(activity);
+            if (dialog.isShowing()) dialog.dismiss();
+            if (p.error != null) {
+                Toast.makeText(activity, failPrefix + ": " + p.error, Toast.LENGTH_LONG).show();
+            } else if (onSuccess != null) {
+                onSuccess.onImported(p);
+            }
+        });
+    }
+}
@@ -168,6 +168,7 @@ public class InstallmentDetailActivity extends AppCompatActivity {
         if (account == null) return;
 
         List<Integer> paidList = account.getPaidInstallmentsList();
+        double loadedAmount = account.amount;
 
         if (paidList.contains(period)) {
             // 已还 -> 未还
@@ -181,7 +182,7 @@ public class InstallmentDetailActivity extends AppCompatActivity {
         account.amount = account.getRemainingAmount(); // 更新剩余金额
 
         // 保存到数据库
-        viewModel.updateAsset(account);
+        viewModel.updateAsset(account, loadedAmount);
 
         // 触发自动同步
         BackupManager.triggerAutoUploadIfEnabled(this);
@@ -314,6 +315,7 @@ public class InstallmentDetailActivity extends AppCompatActivity {
                 }
 
                 // 更新数据
+                double loadedAmount = account.amount;
                 account.name = name;
                 account.totalInstallments = newTotalInstallments;
                 account.installmentAmount = newInstallmentAmount;
@@ -321,7 +323,7 @@ public class InstallmentDetailActivity extends AppCompatActivity {
                 account.updateTime = System.currentTimeMillis();
 
                 // 保存到数据库
-                viewModel.updateAsset(account);
+                viewModel.updateAsset(account, loadedAmount);
 
                 // 触发自动同步
                 BackupManager.triggerAutoUploadIfEnabled(this);
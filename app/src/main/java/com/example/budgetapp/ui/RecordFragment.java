@@ -36,6 +36,8 @@ import android.widget.Toast;
 
 import com.example.budgetapp.ai.AiConfig;
 import com.example.budgetapp.database.AppDatabase;
+import com.example.budgetapp.database.DataChange;
+import com.example.budgetapp.database.DataChangeFeed;
 import com.example.budgetapp.database.RenewalItem;
 import com.google.android.material.chip.Chip;
 import com.google.android.material.chip.ChipGroup;
@@ -57,8 +59,10 @@ import androidx.viewpager2.widget.ViewPager2;
 import com.example.budgetapp.R;
 import com.example.budgetapp.database.AssetAccount;
 import com.example.budgetapp.database.Transaction;
+import com.example.budgetapp.util.AssetLedger;
 import com.example.budgetapp.util.AssistantConfig;
 import com.example.budgetapp.util.CategoryManager;
+import com.example.budgetapp.util.BudgetStore;
 import com.example.budgetapp.viewmodel.FinanceViewModel;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
@@ -246,22 +250,38 @@ public class RecordFragment extends Fragment {
     }
 
     private void fetchDataForCurrentMonth() {
-        LocalDate firstDay = currentMonth.atDay(1);
-        int offset = firstDay.getDayOfWeek().getValue() - 1;
-        LocalDate startOfGrid = firstDay.minusDays(offset);
-        LocalDate endOfGrid = currentMonth.atEndOfMonth().plusDays(14); // 留点缓冲天数
-
-        long startMillis = startOfGrid.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long endMillis = endOfGrid.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1;
+        long[] range = gridRange(currentMonth);
+        long startMillis = range[0];
+        long endMillis = range[1];
 
         // 如果时间范围发生变化，才通知 ViewModel 去数据库查询
         if (currentStartMillis != startMillis || currentEndMillis != endMillis) {
             currentStartMillis = startMillis;
             currentEndMillis = endMillis;
             viewModel.setDateRange(startMillis, endMillis);
+
+            // 【新增】后台预取前后相邻月份，左右切换时直接从缓存显示
+            long[] prev = gridRange(currentMonth.minusMonths(1));
+            long[] next = gridRange(currentMonth.plusMonths(1));
+            viewModel.prefetchDateRange(prev[0], prev[1]);
+            viewModel.prefetchDateRange(next[0], next[1]);
         }
     }
 
+    /**
+     * 某个月份日历网格对应的查询范围：从第一周的周一开始，到月末后两周（留点缓冲天数）
+     */
+    private static long[] gridRange(YearMonth month) {
+        LocalDate firstDay = month.atDay(1);
+        int offset = firstDay.getDayOfWeek().getValue() - 1;
+        LocalDate startOfGrid = firstDay.minusDays(offset);
+        LocalDate endOfGrid = month.atEndOfMonth().plusDays(14);
+        return new long[]{
+                startOfGrid.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                endOfGrid.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1
+        };
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -506,19 +526,9 @@ public class RecordFragment extends Fragment {
         boolean finalBudgetEnabled = isBudgetEnabled && isEffectiveMonth;
 
         // --- 2. 核心修改：统一预算获取逻辑 ---
-        float monthlyBudget = 0;
-        if (isDetailedEnabled) {
-            // 如果开启了详细预算，月总预算等于各个分类预算之和
-            List<String> expenseCategories = CategoryManager.getExpenseCategories(requireContext());
-            for (String cat : expenseCategories) {
-                monthlyBudget += prefs.getFloat("budget_cat_" + cat, 0f);
-            }
-        } else {
-            // 普通模式：读取当月独立设置的预算
-            String monthKey = "budget_" + currentMonth.getYear() + "_" + currentMonth.getMonthValue();
-            float defaultBudget = prefs.getFloat("monthly_budget", 0f);
-            monthlyBudget = prefs.getFloat(monthKey, defaultBudget);
-        }
+        // 详细预算模式下为各分类预算之和，否则为当月独立设置的预算（均来自预算表缓存）
+        float monthlyBudget = BudgetStore.getEffectiveMonthBudget(requireContext(),
+                currentMonth.getYear(), currentMonth.getMonthValue(), isDetailedEnabled);
         // ------------------------------------
 
         // 检查是否应该显示预算卡片
@@ -947,26 +957,30 @@ public class RecordFragment extends Fragment {
         Transaction t = new Transaction(timestamp, 0, "自动续费", amount, object, "系统自动扣费");
         t.assetId = assetId != -1 ? assetId : 0;
 
-        viewModel.addTransaction(t);
-
-        if (t.assetId != 0) {
-            viewModel.getAllAssets().observe(getViewLifecycleOwner(), assets -> {
-                if (assets != null) {
-                    for (AssetAccount a : assets) {
-                        if (a.id == t.assetId) {
-                            if (a.type == 0) {
-                                a.amount -= amount;
-                            } else if (a.type == 1 || a.type == 2) { // 【修改这里】兼容借出
-                                a.amount += amount;
-                            }
-                            viewModel.updateAsset(a);
-                            break;
-                        }
+        // 按资产 id 在写线程中扣款，与账单在同一事务提交；普通资产余额不足时本次不扣款也不记账
+        android.content.Context appContext = requireContext().getApplicationContext();
+        AppDatabase db = AppDatabase.getDatabase(appContext);
+        AppDatabase.databaseWriteExecutor.execute(() -> {
+            final boolean[] processed = {false};
+            DataChangeFeed.write(db, DataChange.builder(), () -> {
+                if (t.assetId != 0) {
+                    AssetAccount asset = db.assetAccountDao().getAssetByIdSync(t.assetId);
+                    if (asset != null && asset.type == 0) {
+                        if (!AssetLedger.deductIfSufficient(db, t.assetId, amount, AssetLedger.REASON_RENEWAL)) return;
+                    } else if (asset != null && (asset.type == 1 || asset.type == 2)) { // 【修改这里】兼容借出
+                        AssetLedger.move(db, t.assetId, amount, 0, AssetLedger.REASON_RENEWAL);
                     }
                 }
+                db.transactionDao().insert(t);
+                processed[0] = true;
             });
-        }
-        Toast.makeText(getContext(), "已自动扣除: " + object, Toast.LENGTH_SHORT).show();
+            String message = processed[0] ? "已自动扣除: " + object : "余额不足，未能自动扣除: " + object;
+            new android.os.Handler(android.os.Looper.getMainLooper()).post(() ->
+                    Toast.makeText(appContext, message, Toast.LENGTH_SHORT).show());
+            if (processed[0]) {
+                com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(appContext);
+            }
+        });
     }
 
     private void showCustomDatePicker() {
@@ -1171,15 +1185,8 @@ public class RecordFragment extends Fragment {
                 } else if (t.type == 1) {
                     if ("加班".equals(t.category)) {
                         totalOvertimeAmount += t.amount;
-                        // 提取工时数据
-                        if (t.note != null) {
-                            Matcher m = Pattern.compile("时长:\\s*([0-9.]+)\\s*小时").matcher(t.note);
-                            if (m.find()) {
-                                try {
-                                    totalOvertimeHours += Double.parseDouble(m.group(1));
-                                } catch (NumberFormatException ignored) {}
-                            }
-                        }
+                        // 工时已在写入时从备注解析好
+                        totalOvertimeHours += t.overtimeHours;
                     } else {
                         totalIncome += t.amount;
                     }
@@ -2051,41 +2058,22 @@ public class RecordFragment extends Fragment {
                     final String finalTargetObj = targetObj;
                     final int finalType = type;
 
-                    AppDatabase.databaseWriteExecutor.execute(() -> {
-                        AppDatabase db = AppDatabase.getDatabase(getContext());
-                        db.runInTransaction(() -> {
+                    AppDatabase db = AppDatabase.getDatabase(requireContext());
+                    // 纯数据库写入，可与其他写操作合并进同一事务
+                    AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
+                        // 提交后经变更通知刷新本月列表和小组件，不再手动触发
+                        DataChangeFeed.write(db, DataChange.builder(), () -> {
                             // a. 插入流水
-                            db.transactionDao().insert(t);
+                            int txId = (int) db.transactionDao().insert(t);
+                            long now = System.currentTimeMillis();
 
-                            // b. 更新原资产金额 (例如：微信/支付宝)
+                            // b. 更新原资产金额 (例如：微信/支付宝)，按资产类型和交易类型做增量更新
                             if (finalAssetId != 0) {
                                 AssetAccount originalAsset = db.assetAccountDao().getAssetByIdSync(finalAssetId);
                                 if (originalAsset != null) {
-                                    // 根据资产类型和交易类型决定余额变化
-                                    if (originalAsset.type == 0) {
-                                        // 普通资产(0)：支出/借出减少，收入/借入增加
-                                        if (finalType == 0 || finalType == 4) {
-                                            originalAsset.amount -= amount;
-                                        } else if (finalType == 1 || finalType == 3) {
-                                            originalAsset.amount += amount;
-                                        }
-                                    } else if (originalAsset.type == 1) {
-                                        // 负债资产(1)：支出增加负债，收入减少负债（还债）
-                                        if (finalType == 0 || finalType == 4) {
-                                            originalAsset.amount += amount;
-                                        } else if (finalType == 1 || finalType == 3) {
-                                            originalAsset.amount -= amount;
-                                        }
-                                    } else if (originalAsset.type == 2) {
-                                        // 借出资产(2)：支出增加借出，收入减少借出（对方还钱）
-                                        if (finalType == 0 || finalType == 4) {
-                                            originalAsset.amount += amount;
-                                        } else if (finalType == 1 || finalType == 3) {
-                                            originalAsset.amount -= amount;
-                                        }
-                                    }
-                                    originalAsset.updateTime = System.currentTimeMillis();
-                                    db.assetAccountDao().update(originalAsset);
+                                    AssetLedger.move(db, originalAsset.id, AssetLedger.balanceDelta(originalAsset.type, t),
+                                            txId, AssetLedger.REASON_TRANSACTION);
+                                    db.assetAccountDao().touch(originalAsset.id, now);
                                 }
                             }
 
@@ -2098,52 +2086,30 @@ public class RecordFragment extends Fragment {
                                 if (targetAccount == null) {
                                     // 该对象尚未建立资产账户，自动创建
                                     targetAccount = new AssetAccount(finalTargetObj, amount, targetAssetType);
-                                    targetAccount.updateTime = System.currentTimeMillis();
-                                    db.assetAccountDao().insert(targetAccount);
+                                    targetAccount.updateTime = now;
+                                    AssetLedger.open(db, targetAccount);
                                 } else {
                                     // 对象已存在，直接累加欠款/借出金额
-                                    targetAccount.amount += amount;
-                                    targetAccount.updateTime = System.currentTimeMillis();
-                                    db.assetAccountDao().update(targetAccount);
+                                    AssetLedger.move(db, targetAccount.id, amount, txId, AssetLedger.REASON_COUNTERPARTY);
+                                    db.assetAccountDao().touch(targetAccount.id, now);
                                 }
                             } else if (finalType == 0 && !userRemark.isEmpty()) {
-                                // 支出还款：检查备注是否匹配负债账户名称
+                                // 支出还款：检查备注是否匹配负债账户名称（还清后保留为0）
                                 AssetAccount liabilityAccount = db.assetAccountDao().getAssetByNameAndType(userRemark, 1);
                                 if (liabilityAccount != null) {
-                                    liabilityAccount.amount -= amount;
-                                    if (liabilityAccount.amount <= 0) {
-                                        liabilityAccount.amount = 0;
-                                    }
-                                    liabilityAccount.updateTime = System.currentTimeMillis();
-                                    db.assetAccountDao().update(liabilityAccount);
+                                    AssetLedger.moveAtLeastZero(db, liabilityAccount.id, -amount, txId, AssetLedger.REASON_COUNTERPARTY);
+                                    db.assetAccountDao().touch(liabilityAccount.id, now);
                                 }
                             } else if (finalType == 1 && !userRemark.isEmpty()) {
-                                // 收入收款：检查备注是否匹配借出账户名称
+                                // 收入收款：检查备注是否匹配借出账户名称（收回后保留为0）
                                 AssetAccount lentAccount = db.assetAccountDao().getAssetByNameAndType(userRemark, 2);
                                 if (lentAccount != null) {
-                                    lentAccount.amount -= amount;
-                                    if (lentAccount.amount <= 0) {
-                                        lentAccount.amount = 0;
-                                    }
-                                    lentAccount.updateTime = System.currentTimeMillis();
-                                    db.assetAccountDao().update(lentAccount);
+                                    AssetLedger.moveAtLeastZero(db, lentAccount.id, -amount, txId, AssetLedger.REASON_COUNTERPARTY);
+                                    db.assetAccountDao().touch(lentAccount.id, now);
                                 }
                             }
                         });
-
-                        // 通知ViewModel刷新UI
-                        if (getActivity() != null) {
-                            getActivity().runOnUiThread(() -> {
-                                viewModel.setDateRange(currentStartMillis, currentEndMillis); // 触发列表刷新
-                            });
-
-                            // 👇👇👇 一键刷新所有桌面小组件 👇👇👇
-                            if (getContext() != null) {
-                                com.example.budgetapp.widget.WidgetUtils.updateAllWidgets(getContext());
-                            }
-                            // 👆👆👆 新增结束 👆👆👆
-                        }
-                    });
+                    }, null);
 
                 } else {
                     // [修改模式原有逻辑]
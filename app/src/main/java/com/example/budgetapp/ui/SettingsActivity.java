@@ -1,6 +1,7 @@
 package com.example.budgetapp.ui;
 
 import android.app.AlertDialog;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
@@ -10,7 +11,6 @@ import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.Map;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
@@ -30,6 +30,7 @@ import com.example.budgetapp.database.Transaction;
 import com.example.budgetapp.util.AssistantConfig;
 import com.example.budgetapp.util.CategoryManager;
 import com.example.budgetapp.util.ExternalImportHelper;
+import com.example.budgetapp.util.ImportStream;
 import com.example.budgetapp.viewmodel.FinanceViewModel;
 
 import java.io.BufferedReader;
@@ -46,7 +47,6 @@ import java.util.Objects;
 public class SettingsActivity extends AppCompatActivity {
 
     private FinanceViewModel financeViewModel;
-    private List<Transaction> allTransactions = new ArrayList<>();
     private List<AssetAccount> allAssets = new ArrayList<>();
     private SwitchCompat switchMinimalist;
 
@@ -90,57 +90,8 @@ public class SettingsActivity extends AppCompatActivity {
     private final ActivityResultLauncher<String[]> importFeiyaLauncher = registerForActivityResult(
             new ActivityResultContracts.OpenDocument(),
             uri -> {
-                if (uri != null) {
-                    try {
-                        if (financeViewModel == null) return;
-
-                        BackupData data = BackupManager.importFromFeiya(this, uri, allAssets);
-                        int recordCount = 0;
-                        int assetCount = 0;
-
-                        // 导入资产
-                        List<AssetAccount> currentAssets = new ArrayList<>(allAssets);
-                        if (data.assets != null) {
-                            for (AssetAccount a : data.assets) {
-                                if (!isDuplicateAsset(a, currentAssets)) {
-                                    a.id = 0;
-                                    financeViewModel.addAsset(a);
-                                    currentAssets.add(a);
-                                    assetCount++;
-                                }
-                            }
-                        }
-
-                        // 同步分类配置
-                        if (data.expenseCategories != null) CategoryManager.saveExpenseCategories(this, data.expenseCategories);
-                        if (data.incomeCategories != null) CategoryManager.saveIncomeCategories(this, data.incomeCategories);
-                        if (data.subCategoryMap != null) {
-                            for (Map.Entry<String, List<String>> entry : data.subCategoryMap.entrySet()) {
-                                CategoryManager.saveSubCategories(this, entry.getKey(), entry.getValue());
-                            }
-                        }
-
-                        // 导入账单记录
-                        List<Transaction> currentTxs = new ArrayList<>(allTransactions);
-                        if (data.records != null) {
-                            for (Transaction t : data.records) {
-                                if (!isDuplicateTransaction(t, currentTxs)) {
-                                    t.id = 0;
-                                    financeViewModel.addTransaction(t);
-                                    currentTxs.add(t);
-                                    recordCount++;
-                                }
-                            }
-                        }
-
-                        String msg = "成功从飞鸭记账导入 " + recordCount + " 条账单";
-                        if (assetCount > 0) msg += "\n创建了 " + assetCount + " 个新资产账户";
-                        Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
-
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "飞鸭记账导入失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                if (uri != null && financeViewModel != null) {
+                    processImportedData(BackupManager.importFromFeiya(this, uri, allAssets), "飞鸭记账", "飞鸭记账导入失败");
                 }
             }
     );
@@ -149,34 +100,15 @@ public class SettingsActivity extends AppCompatActivity {
     private final ActivityResultLauncher<String[]> importKapiLauncher = registerForActivityResult(
             new ActivityResultContracts.OpenDocument(),
             uri -> {
-                if (uri != null) {
-                    try {
-                        if (financeViewModel == null) return;
-                        BackupData data = BackupManager.importFromKapi(this, uri, allAssets);
-                        processImportedData(data, "咔皮记账");
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "咔皮记账导入失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                if (uri != null && financeViewModel != null) {
+                    processImportedData(BackupManager.importFromKapi(this, uri, allAssets), "咔皮记账", "咔皮记账导入失败");
                 }
             }
     );
 
-    private boolean isDuplicateTransaction(Transaction newTx, List<Transaction> existingList) {
-        if (existingList == null || existingList.isEmpty()) return false;
-        for (Transaction ext : existingList) {
-            // 时间、类型、金额、分类、备注完全一致视为重复
-            if (ext.date == newTx.date &&
-                    ext.type == newTx.type &&
-                    Math.abs(ext.amount - newTx.amount) < 0.01 &&
-                    Objects.equals(ext.category, newTx.category) &&
-                    Objects.equals(ext.subCategory, newTx.subCategory) &&
-                    Objects.equals(ext.note, newTx.note) &&
-                    Objects.equals(ext.remark, newTx.remark)) {
-                return true;
-            }
-        }
-        return false;
+    // 查重结果提示：跳过了多少条与已有账单相同的记录
+    private static String duplicateNote(FinanceViewModel.ImportProgress result) {
+        return result.duplicates > 0 ? "\n已跳过 " + result.duplicates + " 条重复账单" : "";
     }
     // --- 查重辅助方法 结束 ---
 
@@ -190,8 +122,8 @@ public class SettingsActivity extends AppCompatActivity {
                             com.example.budgetapp.database.AppDatabase db = com.example.budgetapp.database.AppDatabase.getDatabase(getApplicationContext());
                             List<com.example.budgetapp.database.Goal> allGoals = db.goalDao().getAllGoalsSync();
 
-                            // 导出时加上 allGoals 参数
-                            BackupManager.exportToZip(SettingsActivity.this, uri, allTransactions, allAssets, allGoals);
+                            // 账单由 BackupManager 分页流式写出
+                            BackupManager.exportToZip(SettingsActivity.this, uri, allAssets, allGoals);
 
                             runOnUiThread(() -> Toast.makeText(SettingsActivity.this, "导出成功", Toast.LENGTH_SHORT).show());
                         } catch (Exception e) {
@@ -206,82 +138,44 @@ public class SettingsActivity extends AppCompatActivity {
     private final ActivityResultLauncher<String[]> importBeeCountLauncher = registerForActivityResult(
             new ActivityResultContracts.OpenDocument(),
             uri -> {
-                if (uri != null) {
-                    try {
-                        BackupData data = BackupManager.importFromBeeCount(this, uri, allAssets);
-
-                        int recordCount = 0;
-                        int newAssetCount = 0;
-
-                        // 添加资产
-                        List<AssetAccount> currentAssets = new ArrayList<>(allAssets);
-                        if (data.assets != null && !data.assets.isEmpty()) {
-                            for (AssetAccount a : data.assets) {
-                                if (!isDuplicateAsset(a, currentAssets)) {
-                                    a.id = 0;
-                                    financeViewModel.addAsset(a);
-                                    currentAssets.add(a);
-                                    newAssetCount++;
-                                }
-                            }
-                        }
-
-                        // 保存更新后的一级分类
-                        if (data.expenseCategories != null && !data.expenseCategories.isEmpty()) {
-                            CategoryManager.saveExpenseCategories(this, data.expenseCategories);
-                        }
-                        if (data.incomeCategories != null && !data.incomeCategories.isEmpty()) {
-                            CategoryManager.saveIncomeCategories(this, data.incomeCategories);
-                        }
-                        // 保存更新后的二级分类（如果没有则自动生成后会存储到这里）
-                        if (data.subCategoryMap != null && !data.subCategoryMap.isEmpty()) {
-                            for (Map.Entry<String, List<String>> entry : data.subCategoryMap.entrySet()) {
-                                CategoryManager.saveSubCategories(this, entry.getKey(), entry.getValue());
-                            }
-                        }
-
-                        // 添加账单记录
-                        List<Transaction> currentTransactions = new ArrayList<>(allTransactions);
-                        if (data.records != null && !data.records.isEmpty()) {
-                            for (Transaction t : data.records) {
-                                if (!isDuplicateTransaction(t, currentTransactions)) {
-                                    t.id = 0;
-                                    financeViewModel.addTransaction(t);
-                                    currentTransactions.add(t);
-                                    recordCount++;
-                                }
-                            }
-                        }
-
-                        if (recordCount > 0) {
-                            String msg = "成功从蜜蜂记账导入 " + recordCount + " 条账单 (已过滤重复)";
-                            if (newAssetCount > 0) {
-                                msg += "\n自动创建了 " + newAssetCount + " 个新资产账户";
-                            }
-                            Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
-                        } else {
-                            Toast.makeText(this, "所有账单均已存在，或未找到有效数据", Toast.LENGTH_LONG).show();
-                        }
-
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "蜜蜂记账导入失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                if (uri != null && financeViewModel != null) {
+                    processImportedData(BackupManager.importFromBeeCount(this, uri, allAssets), "蜜蜂记账", "蜜蜂记账导入失败");
                 }
             }
     );
 
+    // 账单由 BackupManager 从数据库分页读出、边读边写，放在子线程执行
     private final ActivityResultLauncher<String> exportExcelLauncher = registerForActivityResult(
             new ActivityResultContracts.CreateDocument("text/csv"),
             uri -> {
                 if (uri != null) {
-                    try {
-                        BackupManager.exportToExcel(this, uri, allTransactions, allAssets);
-                        Toast.makeText(this, "Excel 导出成功", Toast.LENGTH_SHORT).show();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "导出失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                    new Thread(() -> {
+                        try {
+                            BackupManager.exportToExcel(SettingsActivity.this, uri, allAssets);
+                            runOnUiThread(() -> Toast.makeText(SettingsActivity.this, "Excel 导出成功", Toast.LENGTH_SHORT).show());
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            runOnUiThread(() -> Toast.makeText(SettingsActivity.this, "导出失败: " + e.getMessage(), Toast.LENGTH_LONG).show());
+                        }
+                    }).start();
+                }
+            }
+    );
+
+    // 【新增】导出 xlsx 表格
+    private final ActivityResultLauncher<String> exportXlsxLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+            uri -> {
+                if (uri != null) {
+                    new Thread(() -> {
+                        try {
+                            BackupManager.exportToXlsx(SettingsActivity.this, uri, allAssets);
+                            runOnUiThread(() -> Toast.makeText(SettingsActivity.this, "Excel 导出成功", Toast.LENGTH_SHORT).show());
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            runOnUiThread(() -> Toast.makeText(SettingsActivity.this, "导出失败: " + e.getMessage(), Toast.LENGTH_LONG).show());
+                        }
+                    }).start();
                 }
             }
     );
@@ -290,47 +184,32 @@ public class SettingsActivity extends AppCompatActivity {
             new ActivityResultContracts.OpenDocument(),
             uri -> {
                 if (uri != null) {
-                    try {
-                        BackupData data = BackupManager.importFromZip(this, uri);
-                        int recordCount = 0;
-                        int assetCount = 0;
-
-                        List<AssetAccount> currentAssets = new ArrayList<>(allAssets);
-                        if (data.assets != null && !data.assets.isEmpty()) {
-                            for (AssetAccount a : data.assets) {
+                    List<AssetAccount> currentAssets = new ArrayList<>(allAssets);
+                    Context appContext = getApplicationContext();
+                    ImportStream stream = BackupManager.importFromZip(this, uri, meta -> {
+                        // 在解析线程执行：跳过已有的同名同类型资产，恢复分类列表
+                        List<AssetAccount> newAssets = new ArrayList<>();
+                        if (meta.assets != null) {
+                            for (AssetAccount a : meta.assets) {
                                 if (!isDuplicateAsset(a, currentAssets)) {
-                                    a.id = 0;
-                                    financeViewModel.addAsset(a);
+                                    newAssets.add(a);
                                     currentAssets.add(a);
-                                    assetCount++;
                                 }
                             }
                         }
-
-                        if (data.expenseCategories != null && !data.expenseCategories.isEmpty()) {
-                            CategoryManager.saveExpenseCategories(this, data.expenseCategories);
-                        }
-                        if (data.incomeCategories != null && !data.incomeCategories.isEmpty()) {
-                            CategoryManager.saveIncomeCategories(this, data.incomeCategories);
+                        if (meta.expenseCategories != null && !meta.expenseCategories.isEmpty()) {
+                            CategoryManager.saveExpenseCategories(appContext, meta.expenseCategories);
                         }
-
-                        List<Transaction> currentTransactions = new ArrayList<>(allTransactions);
-                        if (data.records != null && !data.records.isEmpty()) {
-                            for (Transaction t : data.records) {
-                                if (!isDuplicateTransaction(t, currentTransactions)) {
-                                    t.id = 0;
-                                    financeViewModel.addTransaction(t);
-                                    currentTransactions.add(t);
-                                    recordCount++;
-                                }
-                            }
+                        if (meta.incomeCategories != null && !meta.incomeCategories.isEmpty()) {
+                            CategoryManager.saveIncomeCategories(appContext, meta.incomeCategories);
                         }
+                        return newAssets;
+                    });
 
-                        Toast.makeText(this, String.format("成功导入: %d条账单, %d个资产 (已过滤重复)", recordCount, assetCount), Toast.LENGTH_LONG).show();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "导入失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                    // 账单边解析边分批写入，查重由 bulkImport 在写事务中按内容指纹完成
+                    ImportProgressDialog.show(this, financeViewModel.bulkImport(stream, false, true), result -> {
+                        Toast.makeText(this, String.format("成功导入: %d条账单, %d个资产", result.imported(), result.assets) + duplicateNote(result), Toast.LENGTH_LONG).show();
+                    }, "导入失败");
                 }
             }
     );
@@ -341,17 +220,15 @@ public class SettingsActivity extends AppCompatActivity {
                 if (uri != null) {
                     try {
                         BackupData data = BackupManager.importFromExcel(this, uri);
-                        int recordCount = 0;
-                        int assetCount = 0;
+                        List<Transaction> newRecords = new ArrayList<>();
+                        List<AssetAccount> newAssets = new ArrayList<>();
 
                         List<AssetAccount> currentAssets = new ArrayList<>(allAssets);
                         if (data.assets != null && !data.assets.isEmpty()) {
                             for (AssetAccount a : data.assets) {
                                 if (!isDuplicateAsset(a, currentAssets)) {
-                                    a.id = 0;
-                                    financeViewModel.addAsset(a);
+                                    newAssets.add(a);
                                     currentAssets.add(a);
-                                    assetCount++;
                                 }
                             }
                         }
@@ -363,19 +240,12 @@ public class SettingsActivity extends AppCompatActivity {
                             CategoryManager.saveIncomeCategories(this, data.incomeCategories);
                         }
 
-                        List<Transaction> currentTransactions = new ArrayList<>(allTransactions);
-                        if (data.records != null && !data.records.isEmpty()) {
-                            for (Transaction t : data.records) {
-                                if (!isDuplicateTransaction(t, currentTransactions)) {
-                                    t.id = 0;
-                                    financeViewModel.addTransaction(t);
-                                    currentTransactions.add(t);
-                                    recordCount++;
-                                }
-                            }
-                        }
+                        // 查重由 bulkImport 在写事务中按内容指纹完成
+                        if (data.records != null) newRecords.addAll(data.records);
 
-                        Toast.makeText(this, String.format("Excel导入成功: %d条账单, %d个资产 (已过滤重复)", recordCount, assetCount), Toast.LENGTH_LONG).show();
+                        ImportProgressDialog.show(this, financeViewModel.bulkImport(newAssets, newRecords, false, true), result -> {
+                            Toast.makeText(this, String.format("Excel导入成功: %d条账单, %d个资产", result.imported(), newAssets.size()) + duplicateNote(result), Toast.LENGTH_LONG).show();
+                        }, "Excel导入失败");
                     } catch (Exception e) {
                         e.printStackTrace();
                         Toast.makeText(this, "Excel导入失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
@@ -403,17 +273,9 @@ public class SettingsActivity extends AppCompatActivity {
                         List<Transaction> externalTransactions = ExternalImportHelper.parseExternalData(jsonContent);
 
                         if (!externalTransactions.isEmpty()) {
-                            int recordCount = 0;
-                            List<Transaction> currentTransactions = new ArrayList<>(allTransactions);
-                            for (Transaction t : externalTransactions) {
-                                if (!isDuplicateTransaction(t, currentTransactions)) {
-                                    t.id = 0;
-                                    financeViewModel.addTransaction(t);
-                                    currentTransactions.add(t);
-                                    recordCount++;
-                                }
-                            }
-                            Toast.makeText(this, "成功导入 " + recordCount + " 条外部数据 (已过滤重复)", Toast.LENGTH_SHORT).show();
+                            ImportProgressDialog.show(this, financeViewModel.bulkImport(null, externalTransactions, true, true), result -> {
+                                Toast.makeText(this, "成功导入 " + result.imported() + " 条外部数据" + duplicateNote(result), Toast.LENGTH_SHORT).show();
+                            }, "外部导入失败");
                         } else {
                             Toast.makeText(this, "未解析到有效数据，请检查文件格式", Toast.LENGTH_LONG).show();
                         }
@@ -444,7 +306,6 @@ public class SettingsActivity extends AppCompatActivity {
         });
 
         financeViewModel = new ViewModelProvider(this).get(FinanceViewModel.class);
-        financeViewModel.getAllTransactions().observe(this, list -> allTransactions = list);
         financeViewModel.getAllAssets().observe(this, list -> allAssets = list);
 
         findViewById(R.id.btn_category_setting).setOnClickListener(v -> startActivity(new Intent(this, CategorySettingsActivity.class)));
@@ -515,66 +376,8 @@ public class SettingsActivity extends AppCompatActivity {
     private final ActivityResultLauncher<String[]> importYimuLauncher = registerForActivityResult(
             new ActivityResultContracts.OpenDocument(),
             uri -> {
-                if (uri != null) {
-                    try {
-                        BackupData data = BackupManager.importFromYimu(this, uri, allAssets);
-
-                        int recordCount = 0;
-                        int newAssetCount = 0;
-
-                        // 1. 添加并保存资产
-                        List<AssetAccount> currentAssets = new ArrayList<>(allAssets);
-                        if (data.assets != null && !data.assets.isEmpty()) {
-                            for (AssetAccount a : data.assets) {
-                                if (!isDuplicateAsset(a, currentAssets)) {
-                                    a.id = 0;
-                                    financeViewModel.addAsset(a);
-                                    currentAssets.add(a);
-                                    newAssetCount++;
-                                }
-                            }
-                        }
-
-                        // 2. 保存更新后的分类
-                        if (data.expenseCategories != null && !data.expenseCategories.isEmpty()) {
-                            CategoryManager.saveExpenseCategories(this, data.expenseCategories);
-                        }
-                        if (data.incomeCategories != null && !data.incomeCategories.isEmpty()) {
-                            CategoryManager.saveIncomeCategories(this, data.incomeCategories);
-                        }
-                        if (data.subCategoryMap != null && !data.subCategoryMap.isEmpty()) {
-                            for (Map.Entry<String, List<String>> entry : data.subCategoryMap.entrySet()) {
-                                CategoryManager.saveSubCategories(this, entry.getKey(), entry.getValue());
-                            }
-                        }
-
-                        // 3. 添加账单记录
-                        List<Transaction> currentTransactions = new ArrayList<>(allTransactions);
-                        if (data.records != null && !data.records.isEmpty()) {
-                            for (Transaction t : data.records) {
-                                if (!isDuplicateTransaction(t, currentTransactions)) {
-                                    t.id = 0;
-                                    financeViewModel.addTransaction(t);
-                                    currentTransactions.add(t);
-                                    recordCount++;
-                                }
-                            }
-                        }
-
-                        if (recordCount > 0) {
-                            String msg = "成功从一木记账导入 " + recordCount + " 条账单 (已过滤重复)";
-                            if (newAssetCount > 0) {
-                                msg += "\n自动创建了 " + newAssetCount + " 个新资产账户";
-                            }
-                            Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
-                        } else {
-                            Toast.makeText(this, "所有账单均已存在，或未找到有效数据", Toast.LENGTH_LONG).show();
-                        }
-
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "一木记账导入失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                if (uri != null && financeViewModel != null) {
+                    processImportedData(BackupManager.importFromYimu(this, uri, allAssets), "一木记账", "一木记账导入失败");
                 }
             }
     );
@@ -613,54 +416,8 @@ public class SettingsActivity extends AppCompatActivity {
     private final ActivityResultLauncher<String[]> importXiaoqingLauncher = registerForActivityResult(
             new ActivityResultContracts.OpenDocument(),
             uri -> {
-                if (uri != null) {
-                    try {
-                        // 防止 Activity 恢复时 ViewModel 尚未准备好，增加简单判空
-                        if (financeViewModel == null) return;
-
-                        BackupData data = BackupManager.importFromXiaoqing(this, uri, allAssets);
-                        int recordCount = 0;
-                        int assetCount = 0;
-
-                        // 导入资产
-                        List<AssetAccount> currentAssets = new ArrayList<>(allAssets);
-                        if (data.assets != null) {
-                            for (AssetAccount a : data.assets) {
-                                if (!isDuplicateAsset(a, currentAssets)) {
-                                    a.id = 0;
-                                    financeViewModel.addAsset(a);
-                                    currentAssets.add(a);
-                                    assetCount++;
-                                }
-                            }
-                        }
-
-                        // 同步分类
-                        if (data.expenseCategories != null) CategoryManager.saveExpenseCategories(this, data.expenseCategories);
-                        if (data.incomeCategories != null) CategoryManager.saveIncomeCategories(this, data.incomeCategories);
-                        if (data.subCategoryMap != null) {
-                            for (Map.Entry<String, List<String>> entry : data.subCategoryMap.entrySet()) {
-                                CategoryManager.saveSubCategories(this, entry.getKey(), entry.getValue());
-                            }
-                        }
-
-                        // 导入账单
-                        List<Transaction> currentTxs = new ArrayList<>(allTransactions);
-                        if (data.records != null) {
-                            for (Transaction t : data.records) {
-                                if (!isDuplicateTransaction(t, currentTxs)) {
-                                    t.id = 0;
-                                    financeViewModel.addTransaction(t);
-                                    currentTxs.add(t);
-                                    recordCount++;
-                                }
-                            }
-                        }
-                        Toast.makeText(this, "小青账导入完成: " + recordCount + "条账单", Toast.LENGTH_SHORT).show();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "导入失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                if (uri != null && financeViewModel != null) {
+                    processImportedData(BackupManager.importFromXiaoqing(this, uri, allAssets), "小青账", "导入失败");
                 }
             }
     );
@@ -669,134 +426,35 @@ public class SettingsActivity extends AppCompatActivity {
     private final ActivityResultLauncher<String[]> importXiaomiLauncher = registerForActivityResult(
             new ActivityResultContracts.OpenDocument(),
             uri -> {
-                if (uri != null) {
-                    try {
-                        if (financeViewModel == null) return;
-                        BackupData data = BackupManager.importFromXiaomi(this, uri, allAssets);
-
-                        // 复用现有的处理逻辑
-                        processImportedData(data, "小米钱包");
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "小米钱包导入失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                if (uri != null && financeViewModel != null) {
+                    processImportedData(BackupManager.importFromXiaomi(this, uri, allAssets), "小米钱包", "小米钱包导入失败");
                 }
             }
     );
 
     /**
-     * 统一处理导入后的数据保存逻辑（资产、分类、账单），避免代码重复
+     * 统一处理第三方账单导入：账单边解析边分批写入，新出现的资产和分类由解析线程登记 / 保存
      */
-    private void processImportedData(BackupData data, String sourceName) {
-        int recordCount = 0;
-        int newAssetCount = 0;
-
-        // 1. 处理资产新增
-        List<AssetAccount> currentAssets = new ArrayList<>(allAssets);
-        if (data.assets != null && !data.assets.isEmpty()) {
-            for (AssetAccount a : data.assets) {
-                if (!isDuplicateAsset(a, currentAssets)) {
-                    a.id = 0; // 设为0以便数据库自动生成主键
-                    financeViewModel.addAsset(a);
-                    currentAssets.add(a);
-                    newAssetCount++;
+    private void processImportedData(ImportStream stream, String sourceName, String errorTitle) {
+        // 查重由 bulkImport 在写事务中按内容指纹完成
+        ImportProgressDialog.show(this, financeViewModel.bulkImport(stream, true, true), result -> {
+            if (result.imported() > 0) {
+                String msg = "成功从" + sourceName + "导入 " + result.imported() + " 条新账单" + duplicateNote(result);
+                if (result.assets > 0) {
+                    msg += "\n自动创建了 " + result.assets + " 个新资产账户";
                 }
+                Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
+            } else {
+                Toast.makeText(this, "所有账单均已存在，或未找到有效数据", Toast.LENGTH_LONG).show();
             }
-        }
-
-        // 2. 保存分类更新
-        if (data.expenseCategories != null && !data.expenseCategories.isEmpty()) {
-            CategoryManager.saveExpenseCategories(this, data.expenseCategories);
-        }
-        if (data.incomeCategories != null && !data.incomeCategories.isEmpty()) {
-            CategoryManager.saveIncomeCategories(this, data.incomeCategories);
-        }
-        if (data.subCategoryMap != null && !data.subCategoryMap.isEmpty()) {
-            for (Map.Entry<String, List<String>> entry : data.subCategoryMap.entrySet()) {
-                CategoryManager.saveSubCategories(this, entry.getKey(), entry.getValue());
-            }
-        }
-
-        // 3. 添加交易记录 (过滤重复)
-        List<Transaction> currentTxs = new ArrayList<>(allTransactions);
-        if (data.records != null && !data.records.isEmpty()) {
-            for (Transaction t : data.records) {
-                if (!isDuplicateTransaction(t, currentTxs)) {
-                    t.id = 0; // 设为0以便数据库自动生成主键
-                    financeViewModel.addTransaction(t);
-                    currentTxs.add(t);
-                    recordCount++;
-                }
-            }
-        }
-
-        // 4. 显示结果提示
-        if (recordCount > 0) {
-            String msg = "成功从" + sourceName + "导入 " + recordCount + " 条新账单";
-            if (newAssetCount > 0) {
-                msg += "\n自动创建了 " + newAssetCount + " 个新资产账户";
-            }
-            Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
-        } else {
-            Toast.makeText(this, "所有账单均已存在，或未找到有效数据", Toast.LENGTH_LONG).show();
-        }
+        }, errorTitle);
     }
 
     private final ActivityResultLauncher<String[]> importWeChatLauncher = registerForActivityResult(
             new ActivityResultContracts.OpenDocument(),
             uri -> {
-                if (uri != null) {
-                    try {
-                        BackupData data = BackupManager.importFromWeChat(this, uri, allAssets);
-
-                        int recordCount = 0;
-                        int newAssetCount = 0;
-
-                        List<AssetAccount> currentAssets = new ArrayList<>(allAssets);
-                        if (data.assets != null && !data.assets.isEmpty()) {
-                            for (AssetAccount a : data.assets) {
-                                if (!isDuplicateAsset(a, currentAssets)) {
-                                    a.id = 0;
-                                    financeViewModel.addAsset(a);
-                                    currentAssets.add(a);
-                                    newAssetCount++;
-                                }
-                            }
-                        }
-
-                        if (data.expenseCategories != null && !data.expenseCategories.isEmpty()) {
-                            CategoryManager.saveExpenseCategories(this, data.expenseCategories);
-                        }
-                        if (data.incomeCategories != null && !data.incomeCategories.isEmpty()) {
-                            CategoryManager.saveIncomeCategories(this, data.incomeCategories);
-                        }
-
-                        List<Transaction> currentTransactions = new ArrayList<>(allTransactions);
-                        if (data.records != null && !data.records.isEmpty()) {
-                            for (Transaction t : data.records) {
-                                if (!isDuplicateTransaction(t, currentTransactions)) {
-                                    t.id = 0;
-                                    financeViewModel.addTransaction(t);
-                                    currentTransactions.add(t);
-                                    recordCount++;
-                                }
-                            }
-                        }
-
-                        if (recordCount > 0) {
-                            String msg = "成功导入 " + recordCount + " 条账单 (已过滤重复)";
-                            if (newAssetCount > 0) {
-                                msg += "\n自动创建了 " + newAssetCount + " 个新资产账户";
-                            }
-                            Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
-                        } else {
-                            Toast.makeText(this, "所有账单均已存在，或未找到有效数据", Toast.LENGTH_LONG).show();
-                        }
-
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "微信导入失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                if (uri != null && financeViewModel != null) {
+                    processImportedData(BackupManager.importFromWeChat(this, uri, allAssets), "微信", "微信导入失败");
                 }
             }
     );
@@ -804,58 +462,8 @@ public class SettingsActivity extends AppCompatActivity {
     private final ActivityResultLauncher<String[]> importAlipayLauncher = registerForActivityResult(
             new ActivityResultContracts.OpenDocument(),
             uri -> {
-                if (uri != null) {
-                    try {
-                        BackupData data = BackupManager.importFromAlipay(this, uri, allAssets);
-
-                        int recordCount = 0;
-                        int newAssetCount = 0;
-
-                        List<AssetAccount> currentAssets = new ArrayList<>(allAssets);
-                        if (data.assets != null && !data.assets.isEmpty()) {
-                            for (AssetAccount a : data.assets) {
-                                if (!isDuplicateAsset(a, currentAssets)) {
-                                    a.id = 0;
-                                    financeViewModel.addAsset(a);
-                                    currentAssets.add(a);
-                                    newAssetCount++;
-                                }
-                            }
-                        }
-
-                        if (data.expenseCategories != null && !data.expenseCategories.isEmpty()) {
-                            CategoryManager.saveExpenseCategories(this, data.expenseCategories);
-                        }
-                        if (data.incomeCategories != null && !data.incomeCategories.isEmpty()) {
-                            CategoryManager.saveIncomeCategories(this, data.incomeCategories);
-                        }
-
-                        List<Transaction> currentTransactions = new ArrayList<>(allTransactions);
-                        if (data.records != null && !data.records.isEmpty()) {
-                            for (Transaction t : data.records) {
-                                if (!isDuplicateTransaction(t, currentTransactions)) {
-                                    t.id = 0;
-                                    financeViewModel.addTransaction(t);
-                                    currentTransactions.add(t);
-                                    recordCount++;
-                                }
-                            }
-                        }
-
-                        if (recordCount > 0) {
-                            String msg = "成功从支付宝导入 " + recordCount + " 条账单 (已过滤重复)";
-                            if (newAssetCount > 0) {
-                                msg += "\n自动创建了 " + newAssetCount + " 个新资产账户";
-                            }
-                            Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
-                        } else {
-                            Toast.makeText(this, "所有账单均已存在，或未找到有效数据", Toast.LENGTH_LONG).show();
-                        }
-
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(this, "支付宝导入失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
+                if (uri != null && financeViewModel != null) {
+                    processImportedData(BackupManager.importFromAlipay(this, uri, allAssets), "支付宝", "支付宝导入失败");
                 }
             }
     );
@@ -938,9 +546,19 @@ public class SettingsActivity extends AppCompatActivity {
         view.findViewById(R.id.tv_export_excel).setOnClickListener(v -> {
             SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
             String timeStr = sdf.format(new Date());
-            String fileName = "Tally_账单_" + timeStr + ".csv";
-            exportExcelLauncher.launch(fileName);
             dialog.dismiss();
+            // 【新增】CSV 可重新导入；xlsx 仅含账单和资产，方便在表格软件中查看
+            String[] options = {"CSV（可重新导入）", "Excel 表格（xlsx）"};
+            new AlertDialog.Builder(this)
+                    .setTitle("选择导出格式")
+                    .setItems(options, (d, which) -> {
+                        if (which == 0) {
+                            exportExcelLauncher.launch("Tally_账单_" + timeStr + ".csv");
+                        } else {
+                            exportXlsxLauncher.launch("Tally_账单_" + timeStr + ".xlsx");
+                        }
+                    })
+                    .show();
         });
 
         view.findViewById(R.id.tv_import_xiaoqing).setOnClickListener(v -> {
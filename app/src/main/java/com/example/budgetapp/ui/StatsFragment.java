@@ -42,7 +42,9 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.budgetapp.R;
 import com.example.budgetapp.database.AssetAccount;
+import com.example.budgetapp.database.OvertimeTotals;
 import com.example.budgetapp.database.Transaction;
+import com.example.budgetapp.database.TransactionOvertime;
 import com.example.budgetapp.util.AssistantConfig;
 import com.example.budgetapp.util.CategoryManager;
 import com.example.budgetapp.viewmodel.FinanceViewModel;
@@ -108,7 +110,13 @@ public class StatsFragment extends Fragment {
     private int touchSlop;
     private int currentMode = 2; // 0=Year, 1=Month, 2=Week
     private LocalDate selectedDate = LocalDate.now();
-    private List<Transaction> allTransactions = new ArrayList<>();
+    // 当前统计范围（年/月/周）内的账单，只订阅可见范围而不是整张表
+    private List<Transaction> scopeTransactions = new ArrayList<>();
+    private androidx.lifecycle.LiveData<List<Transaction>> scopeTransactionsLive;
+    private long scopeStartMillis = -1;
+    private long scopeEndMillis = -1;
+    // 当前统计范围的图表聚合结果（每次重新聚合时替换，旧结果不再绘制）
+    private androidx.lifecycle.LiveData<FinanceViewModel.StatsChartData> statsChartLive;
     private List<AssetAccount> assetList = new ArrayList<>();
     private CustomMarkerView markerView;
     private LinearLayout cardSummary;
@@ -137,19 +145,12 @@ public class StatsFragment extends Fragment {
         setupLineChart();
         setupPieCharts();
         viewModel = new ViewModelProvider(requireActivity()).get(FinanceViewModel.class);
-        viewModel.getAllTransactions().observe(getViewLifecycleOwner(), list -> {
-            this.allTransactions = list;
-            refreshData();
-            // 新增：如果详细分类列表弹窗正在显示，即时刷新它
-            if (currentCategoryDetailDialog != null && currentCategoryDetailDialog.isShowing()) {
-                updateCategoryDetailDialogData();
-            }
-        });
         viewModel.getAllAssets().observe(getViewLifecycleOwner(), assets -> {
             this.assetList = assets;
         });
         setupListeners(view);
         updateDateRangeDisplay();
+        refreshData();
         return view;
     }
 
@@ -179,7 +180,7 @@ public class StatsFragment extends Fragment {
 
     // 【修改】showCategoryDetailDialog 方法
     private void showCategoryDetailDialog(String category, int type) {
-        if (allTransactions == null) return;
+        if (scopeTransactions == null) return;
 
         // 记录状态以便后续即时刷新
         currentDetailCategory = category;
@@ -257,7 +258,7 @@ public class StatsFragment extends Fragment {
 
     // 新增：提取的实时刷新数据和二级分类胶囊方法
     private void updateCategoryDetailDialogData() {
-        if (currentCategoryDetailAdapter == null || allTransactions == null) return;
+        if (currentCategoryDetailAdapter == null || scopeTransactions == null) return;
         long startMillis;
         long endMillis;
         ZoneId zone = ZoneId.systemDefault();
@@ -279,7 +280,7 @@ public class StatsFragment extends Fragment {
 
         Map<String, Double> categorySums = new HashMap<>();
         double totalScopeAmount = 0;
-        for (Transaction t : allTransactions) {
+        for (Transaction t : scopeTransactions) {
             if (t.date >= startMillis && t.date < endMillis && t.type == currentDetailType) {
                 if (currentDetailType == 1 && "加班".equals(t.category)) continue;
                 categorySums.put(t.category, categorySums.getOrDefault(t.category, 0.0) + t.amount);
@@ -289,7 +290,7 @@ public class StatsFragment extends Fragment {
         double threshold = totalScopeAmount * 0.05;
 
         List<Transaction> baseList = new ArrayList<>();
-        for (Transaction t : allTransactions) {
+        for (Transaction t : scopeTransactions) {
             if (t.date >= startMillis && t.date < endMillis && t.type == currentDetailType) {
                 if (currentDetailType == 1 && "加班".equals(t.category)) continue;
 
@@ -1253,69 +1254,92 @@ public class StatsFragment extends Fragment {
     }
 
     private void refreshData() {
-        if (allTransactions == null) return;
-        if (currentMode == 0) processYearlyData();
-        else if (currentMode == 1) processMonthlyData();
-        else processWeeklyData();
-    }
-
-    private void processYearlyData() {
-        int year = selectedDate.getYear();
-        aggregateData(t -> {
-            LocalDate date = Instant.ofEpochMilli(t.date).atZone(ZoneId.systemDefault()).toLocalDate();
-            return date.getYear() == year ? date.getMonthValue() : -1;
-        }, 12, "月", null);
+        long[] range = getScopeRange();
+        if (scopeTransactionsLive == null || range[0] != scopeStartMillis || range[1] != scopeEndMillis) {
+            // 统计范围变化：切换到新范围的数据流，数据到达后再绘制
+            observeScope(range);
+            return;
+        }
+        renderScopeData();
     }
 
-    private void processMonthlyData() {
-        int year = selectedDate.getYear();
-        int month = selectedDate.getMonthValue();
-        int daysInMonth = selectedDate.lengthOfMonth();
-        aggregateData(t -> {
-            LocalDate date = Instant.ofEpochMilli(t.date).atZone(ZoneId.systemDefault()).toLocalDate();
-            return (date.getYear() == year && date.getMonthValue() == month) ? date.getDayOfMonth() : -1;
-        }, daysInMonth, "日", null);
+    /**
+     * 当前模式（年/月/周）对应的时间范围 [start, end]
+     */
+    private long[] getScopeRange() {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate start;
+        LocalDate endExclusive;
+        if (currentMode == 0) {
+            start = LocalDate.of(selectedDate.getYear(), 1, 1);
+            endExclusive = start.plusYears(1);
+        } else if (currentMode == 1) {
+            start = selectedDate.withDayOfMonth(1);
+            endExclusive = start.plusMonths(1);
+        } else {
+            start = selectedDate.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            endExclusive = start.plusWeeks(1);
+        }
+        return new long[]{
+                start.atStartOfDay(zone).toInstant().toEpochMilli(),
+                endExclusive.atStartOfDay(zone).toInstant().toEpochMilli() - 1
+        };
     }
 
-    private void processWeeklyData() {
-        LocalDate startOfWeek = selectedDate.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
-        LocalDate endOfWeek = selectedDate.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
-        aggregateData(t -> {
-            LocalDate date = Instant.ofEpochMilli(t.date).atZone(ZoneId.systemDefault()).toLocalDate();
-            if (!date.isBefore(startOfWeek) && !date.isAfter(endOfWeek)) {
-                return date.getDayOfWeek().getValue();
+    private void observeScope(long[] range) {
+        if (scopeTransactionsLive != null) {
+            scopeTransactionsLive.removeObservers(getViewLifecycleOwner());
+        }
+        scopeStartMillis = range[0];
+        scopeEndMillis = range[1];
+        scopeTransactionsLive = viewModel.getTransactionsByRange(range[0], range[1]);
+        scopeTransactionsLive.observe(getViewLifecycleOwner(), list -> {
+            this.scopeTransactions = list != null ? list : new ArrayList<>();
+            renderScopeData();
+            // 新增：如果详细分类列表弹窗正在显示，即时刷新它
+            if (currentCategoryDetailDialog != null && currentCategoryDetailDialog.isShowing()) {
+                updateCategoryDetailDialogData();
             }
-            return -1;
-        }, 7, "", new String[]{"", "周一", "周二", "周三", "周四", "周五", "周六", "周日"});
+        });
     }
 
-    interface IndexExtractor { int getIndex(Transaction t); }
-
-    private void aggregateData(IndexExtractor extractor, int maxX, String suffix, String[] customLabels) {
-        Map<Integer, Double> incomeMap = new HashMap<>();
-        Map<Integer, Double> expenseMap = new HashMap<>();
-        Map<String, Double> expensePieCats = new HashMap<>();
-        Map<String, Double> incomePieCats = new HashMap<>();
-
-        for (Transaction t : allTransactions) {
-            int index = extractor.getIndex(t);
-            if (index != -1) {
-                if (t.type == 1) { // 收入
-                    if (!"加班".equals(t.category)) {
-                        incomeMap.put(index, incomeMap.getOrDefault(index, 0.0) + t.amount);
-                        incomePieCats.put(t.category, incomePieCats.getOrDefault(t.category, 0.0) + t.amount);
-                    }
-                } else if (t.type == 0) { // 🌟 严格限制只有 type == 0 才是支出，完美隔离 type == 2
-                    expenseMap.put(index, expenseMap.getOrDefault(index, 0.0) + t.amount);
-                    expensePieCats.put(t.category, expensePieCats.getOrDefault(t.category, 0.0) + t.amount);
-                }
-            }
+    private void renderScopeData() {
+        if (scopeTransactions == null) return;
+        // 图表在后台用 SQL 按时间桶 / 分类聚合，数据量与账单总数无关
+        final String bucketFormat;
+        final int maxX;
+        final String suffix;
+        final String[] customLabels;
+        if (currentMode == 0) {
+            bucketFormat = "%m";
+            maxX = 12;
+            suffix = "月";
+            customLabels = null;
+        } else if (currentMode == 1) {
+            bucketFormat = "%d";
+            maxX = selectedDate.lengthOfMonth();
+            suffix = "日";
+            customLabels = null;
+        } else {
+            bucketFormat = "%w";
+            maxX = 7;
+            suffix = "";
+            customLabels = new String[]{"", "周一", "周二", "周三", "周四", "周五", "周六", "周日"};
         }
-        updateCharts(incomeMap, expenseMap, expensePieCats, incomePieCats, maxX, suffix, customLabels);
+        if (statsChartLive != null) {
+            statsChartLive.removeObservers(getViewLifecycleOwner());
+        }
+        statsChartLive = viewModel.loadStatsChartData(scopeStartMillis, scopeEndMillis, bucketFormat);
+        statsChartLive.observe(getViewLifecycleOwner(), data -> {
+            if (data == null) return;
+            updateCharts(data.incomeByBucket, data.expenseByBucket, data.expenseByCategory, data.incomeByCategory,
+                    data.overtimeByKind, maxX, suffix, customLabels);
+        });
     }
 
     private void updateCharts(Map<Integer, Double> incomeMap, Map<Integer, Double> expenseMap,
                               Map<String, Double> expensePieMap, Map<String, Double> incomePieMap,
+                              Map<Integer, OvertimeTotals> overtimeByKind,
                               int maxX, String suffix, String[] customLabels) {
 
         boolean hasTrendData = !incomeMap.isEmpty() || !expenseMap.isEmpty();
@@ -1397,7 +1421,7 @@ public class StatsFragment extends Fragment {
 
         double totalExpense = 0;
         for (Double val : expensePieMap.values()) totalExpense += val;
-        updateSummarySection(expensePieMap, totalExpense, incomePieMap, totalIncome); // 新调用，把收入数据也传进去
+        updateSummarySection(expensePieMap, totalExpense, incomePieMap, totalIncome, overtimeByKind); // 新调用，把收入数据也传进去
     }
 
     private void updateSinglePieChart(PieChart chart, Map<String, Double> pieMap) {
@@ -1472,7 +1496,8 @@ public class StatsFragment extends Fragment {
     }
 
     // 更新方法签名，增加 incomePieMap 和 totalIncomeAmount 两个参数
-    private void updateSummarySection(Map<String, Double> pieMap, double totalAmount, Map<String, Double> incomePieMap, double totalIncomeAmount) {
+    private void updateSummarySection(Map<String, Double> pieMap, double totalAmount, Map<String, Double> incomePieMap, double totalIncomeAmount,
+                                      Map<Integer, OvertimeTotals> overtimeByKind) {
         String scopeStr;
         if (currentMode == 0) scopeStr = "本年";
         else if (currentMode == 1) scopeStr = "本月";
@@ -1492,7 +1517,7 @@ public class StatsFragment extends Fragment {
             endOfPeriod = selectedDate.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
         }
 
-        boolean hasOvertime = checkHasOvertime(startOfPeriod, endOfPeriod);
+        boolean hasOvertime = !overtimeByKind.isEmpty();
         boolean hasExpense = !pieMap.isEmpty() && totalAmount > 0;
         boolean hasIncome = !incomePieMap.isEmpty() && totalIncomeAmount > 0; // 检查是否有收入
 
@@ -1672,56 +1697,21 @@ public class StatsFragment extends Fragment {
 
         // --- 原有的加班逻辑（保持不变）---
         if (hasOvertime) {
-            calculateAndShowOvertime(startOfPeriod, endOfPeriod, scopeStr);
-        }
-    }
-    private boolean checkHasOvertime(LocalDate start, LocalDate end) {
-        long startMillis = start.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long endMillis = end.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        for (Transaction t : allTransactions) {
-            if (t.date >= startMillis && t.date < endMillis && t.type == 1 && "加班".equals(t.category)) {
-                return true;
-            }
+            showOvertime(overtimeByKind, scopeStr);
         }
-        return false;
     }
-
-    private void calculateAndShowOvertime(LocalDate start, LocalDate end, String scopeStr) {
-        long startMillis = start.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-        long endMillis = end.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
-
+    // 加班统计已在后台按工作日 / 节假日 GROUP BY 汇总好
+    private void showOvertime(Map<Integer, OvertimeTotals> overtimeByKind, String scopeStr) {
         double totalOvertimeHours = 0;
-        double weekdayOvertimeHours = 0;
-        double holidayOvertimeHours = 0;
         double totalOvertimeIncome = 0;
-
-        Pattern pattern = Pattern.compile("时长:\\s*([0-9.]+)\\s*小时");
-
-        for (Transaction t : allTransactions) {
-            if (t.date >= startMillis && t.date < endMillis && t.type == 1 && "加班".equals(t.category)) {
-                totalOvertimeIncome += t.amount;
-
-                if (t.note != null) {
-                    Matcher matcher = pattern.matcher(t.note);
-                    if (matcher.find()) {
-                        try {
-                            double hours = Double.parseDouble(matcher.group(1));
-                            totalOvertimeHours += hours;
-
-                            LocalDate transDate = Instant.ofEpochMilli(t.date).atZone(ZoneId.systemDefault()).toLocalDate();
-                            DayOfWeek dayOfWeek = transDate.getDayOfWeek();
-                            if (dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY) {
-                                holidayOvertimeHours += hours;
-                            } else {
-                                weekdayOvertimeHours += hours;
-                            }
-                        } catch (NumberFormatException e) {
-                            // ignore error
-                        }
-                    }
-                }
-            }
+        for (OvertimeTotals row : overtimeByKind.values()) {
+            totalOvertimeHours += row.hours;
+            totalOvertimeIncome += row.amount;
         }
+        OvertimeTotals weekday = overtimeByKind.get(TransactionOvertime.KIND_WEEKDAY);
+        OvertimeTotals holiday = overtimeByKind.get(TransactionOvertime.KIND_HOLIDAY);
+        double weekdayOvertimeHours = weekday != null ? weekday.hours : 0;
+        double holidayOvertimeHours = holiday != null ? holiday.hours : 0;
 
         SpannableStringBuilder ssb = new SpannableStringBuilder();
         int redColor = ContextCompat.getColor(requireContext(), R.color.income_red);
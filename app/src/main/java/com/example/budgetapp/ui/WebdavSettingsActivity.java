@@ -18,7 +18,6 @@ import com.example.budgetapp.R;
 import com.example.budgetapp.database.Transaction;
 import com.google.android.material.textfield.TextInputEditText;
 
-import java.util.List;
 
 public class WebdavSettingsActivity extends AppCompatActivity {
 
@@ -26,6 +25,8 @@ public class WebdavSettingsActivity extends AppCompatActivity {
     private android.widget.EditText etUsername;
     private android.widget.EditText etPassword;
     private androidx.appcompat.widget.SwitchCompat switchAutoSync;
+    private androidx.appcompat.widget.SwitchCompat switchUnmeteredOnly;
+    private androidx.appcompat.widget.SwitchCompat switchChargingOnly;
     private android.widget.TextView tvLastBackupTime;
 
     private static final String PREF_NAME = "webdav_prefs";
@@ -34,6 +35,8 @@ public class WebdavSettingsActivity extends AppCompatActivity {
     private static final String KEY_PASSWORD = "webdav_password";
     private static final String KEY_AUTO_SYNC = "webdav_auto_sync";
     private static final String KEY_LAST_BACKUP_TIME = "webdav_last_backup_time";
+    private static final String KEY_UNMETERED_ONLY = com.example.budgetapp.WebDavUploadScheduler.KEY_UNMETERED_ONLY;
+    private static final String KEY_CHARGING_ONLY = com.example.budgetapp.WebDavUploadScheduler.KEY_CHARGING_ONLY;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -58,6 +61,8 @@ public class WebdavSettingsActivity extends AppCompatActivity {
         etUsername = findViewById(R.id.et_webdav_username);
         etPassword = findViewById(R.id.et_webdav_password);
         switchAutoSync = findViewById(R.id.switch_auto_sync);
+        switchUnmeteredOnly = findViewById(R.id.switch_sync_unmetered_only);
+        switchChargingOnly = findViewById(R.id.switch_sync_charging_only);
         tvLastBackupTime = findViewById(R.id.tv_last_backup_time);
 
         Button btnSave = findViewById(R.id.btn_save_webdav);
@@ -91,16 +96,8 @@ public class WebdavSettingsActivity extends AppCompatActivity {
             // 开启子线程进行数据库读取与网络请求
             new Thread(() -> {
                 try {
-                    com.example.budgetapp.database.AppDatabase db = com.example.budgetapp.database.AppDatabase.getDatabase(getApplicationContext());
-
-                    // 获取需要备份的数据
-                    List<com.example.budgetapp.database.Transaction> transactions = db.transactionDao().getAllTransactionsSync();
-                    List<com.example.budgetapp.database.AssetAccount> assets = db.assetAccountDao().getAllAssetsSync();
-                    // 【新增】获取存钱目标
-                    List<com.example.budgetapp.database.Goal> goals = db.goalDao().getAllGoalsSync();
-
-                    // 【修改】把 goals 传进去
-                    com.example.budgetapp.BackupManager.uploadToWebDAV(this, url, user, pass, transactions, assets, goals);
+                    // 手动上传始终传完整快照（账单分页流式写出），并重置增量同步清单
+                    com.example.budgetapp.WebDavSyncManager.uploadSnapshot(this, url, user, pass);
 
                     // 成功后切回主线程更新 UI
                     runOnUiThread(() -> {
@@ -142,44 +139,49 @@ public class WebdavSettingsActivity extends AppCompatActivity {
                         String pass = etPassword.getText().toString().trim();
 
                         new Thread(() -> {
+                            java.io.File snapshotFile = null;
                             try {
-                                // 1. 下载并解析 WebDAV 上的备份文件
-                                com.example.budgetapp.BackupData data = com.example.budgetapp.BackupManager.downloadFromWebDAV(this, url, user, pass);
-
-                                // 2. 执行数据库覆盖操作
                                 com.example.budgetapp.database.AppDatabase db = com.example.budgetapp.database.AppDatabase.getDatabase(getApplicationContext());
 
-                                db.runInTransaction(() -> {
-                                    // 1. 清理旧数据
+                                // 1. 先完成全部网络请求：快照原样存为本地临时文件，增量段下载并解析在内存中，
+                                //    数据库事务里不再有任何网络 I/O
+                                snapshotFile = com.example.budgetapp.BackupManager.downloadSnapshotFromWebDAV(this, url, user, pass);
+                                com.example.budgetapp.WebDavSyncManager.RemoteDeltas remote =
+                                        com.example.budgetapp.WebDavSyncManager.fetchRemoteDeltas(url, user, pass);
+
+                                // 2. 覆盖本地数据：账单从本地文件按批流式写入，不在内存中保留整份账单；
+                                //    任一步失败都会整体回滚，本地数据保持不变
+                                java.io.File file = snapshotFile;
+                                com.example.budgetapp.BackupData[] restored = new com.example.budgetapp.BackupData[2];
+                                db.runInTransaction((java.util.concurrent.Callable<Void>) () -> {
+                                    // 清理旧数据
                                     db.transactionDao().deleteAll();
                                     db.goalDao().deleteAll(); // 清理旧目标
 
-                                    // 清理旧资产
-                                    java.util.List<com.example.budgetapp.database.AssetAccount> oldAssets = db.assetAccountDao().getAllAssetsSync();
-                                    if (oldAssets != null) {
-                                        for (com.example.budgetapp.database.AssetAccount oldAsset : oldAssets) {
-                                            db.assetAccountDao().delete(oldAsset);
-                                        }
-                                    }
+                                    com.example.budgetapp.BackupData data = com.example.budgetapp.BackupManager.readBackupFile(
+                                            file, chunk -> db.transactionDao().insertAll(chunk));
 
-                                    // 2. 插入新数据
-                                    if (data.records != null && !data.records.isEmpty()) {
-                                        db.transactionDao().insertAll(data.records);
-                                    }
-
-                                    if (data.assets != null && !data.assets.isEmpty()) {
-                                        for (com.example.budgetapp.database.AssetAccount asset : data.assets) {
-                                            db.assetAccountDao().insert(asset);
-                                        }
-                                    }
+                                    // 用快照里的资产替换旧资产（经资产台账，余额与流水保持一致）
+                                    com.example.budgetapp.util.AssetLedger.replaceAll(db, data.assets);
 
                                     // 恢复新目标
                                     if (data.goals != null && !data.goals.isEmpty()) {
                                         db.goalDao().insertAll(data.goals);
                                     }
+
+                                    // 依次应用快照之后的增量段
+                                    restored[0] = data;
+                                    restored[1] = com.example.budgetapp.WebDavSyncManager.applyRemoteDeltas(db, remote, data);
+                                    return null;
                                 });
 
-                                // 3. 成功后切回主线程更新 UI
+                                // 3. 提交后恢复配置：先按快照，再以最后一个增量段覆盖
+                                com.example.budgetapp.BackupManager.restoreSettings(this, restored[0]);
+                                if (restored[1] != null) com.example.budgetapp.BackupManager.restoreSettings(this, restored[1]);
+                                // 本地已与远端一致，之后的自动同步从这里开始计增量
+                                com.example.budgetapp.WebDavSyncManager.markSynced(this, url);
+
+                                // 4. 成功后切回主线程更新 UI
                                 runOnUiThread(() -> {
                                     Toast.makeText(this, "✅ 数据同步成功！请重新启动应用使设置生效。", Toast.LENGTH_LONG).show();
                                     btnSync.setEnabled(true);
@@ -193,6 +195,8 @@ public class WebdavSettingsActivity extends AppCompatActivity {
                                     btnSync.setEnabled(true);
                                     btnSync.setText("同步数据");
                                 });
+                            } finally {
+                                if (snapshotFile != null) snapshotFile.delete();
                             }
                         }).start();
                     })
@@ -214,6 +218,8 @@ public class WebdavSettingsActivity extends AppCompatActivity {
         etUsername.setText(prefs.getString(KEY_USERNAME, ""));
         etPassword.setText(prefs.getString(KEY_PASSWORD, ""));
         switchAutoSync.setChecked(prefs.getBoolean(KEY_AUTO_SYNC, false));
+        switchUnmeteredOnly.setChecked(prefs.getBoolean(KEY_UNMETERED_ONLY, false));
+        switchChargingOnly.setChecked(prefs.getBoolean(KEY_CHARGING_ONLY, false));
     }
 
     private void saveWebdavConfig() {
@@ -232,6 +238,8 @@ public class WebdavSettingsActivity extends AppCompatActivity {
                 .putString(KEY_USERNAME, username)
                 .putString(KEY_PASSWORD, password)
                 .putBoolean(KEY_AUTO_SYNC, switchAutoSync.isChecked())
+                .putBoolean(KEY_UNMETERED_ONLY, switchUnmeteredOnly.isChecked())
+                .putBoolean(KEY_CHARGING_ONLY, switchChargingOnly.isChecked())
                 .apply();
 
         Toast.makeText(this, "WebDAV 配置已保存", Toast.LENGTH_SHORT).show();
@@ -17,18 +17,9 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.budgetapp.R;
-import com.example.budgetapp.database.AppDatabase;
-import com.example.budgetapp.database.TransactionDao;
 
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.LocalTime;
-import java.time.ZoneId;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class YearCalendarActivity extends AppCompatActivity {
 
@@ -45,9 +36,6 @@ public class YearCalendarActivity extends AppCompatActivity {
     private int touchSlop;
     private boolean isAnimating = false;
 
-    // 单线程池，专门用于后台去数据库捞数据
-    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -177,47 +165,16 @@ public class YearCalendarActivity extends AppCompatActivity {
     }
 
     private void loadData(int direction, int targetYear) {
-        dbExecutor.execute(() -> {
-            // 获取时间范围
-            ZoneId zoneId = ZoneId.systemDefault();
-            long start = LocalDate.of(targetYear, 1, 1).atStartOfDay(zoneId).toInstant().toEpochMilli();
-            long end = LocalDate.of(targetYear, 12, 31).atTime(LocalTime.MAX).atZone(zoneId).toInstant().toEpochMilli();
-
-            // 🌟 调用新的优化 SQL，只拿有数据的月份列表 (如 [1, 3, 10] 表示 1,3,10月有账单)
-            List<Integer> monthsWithData = AppDatabase.getDatabase(this).transactionDao().getMonthsWithDataSync(start, end);
-
-            if (!isFinishing() && !isDestroyed()) {
-                runOnUiThread(() -> renderData(direction, targetYear, monthsWithData));
-            }
+        // 🌟 年度统计走共享缓存：滑回看过的年份时直接命中，不再查库
+        YearStatsCache.load(this, targetYear, stats -> {
+            if (isFinishing() || isDestroyed()) return;
+            renderData(direction, targetYear, stats.monthsWithData);
+            // 停在这一年后预取前后各一年，继续滑动时也能直接命中
+            YearStatsCache.prefetch(this, targetYear - 1);
+            YearStatsCache.prefetch(this, targetYear + 1);
         });
     }
 
-    // 使用轻量级对象查询，极大降低内存占用
-    private Map<Integer, Map<Integer, Double>> fetchYearStatsFromDb(int year) {
-        ZoneId zoneId = ZoneId.systemDefault();
-        long start = LocalDate.of(year, 1, 1).atStartOfDay(zoneId).toInstant().toEpochMilli();
-        long end = LocalDate.of(year, 12, 31).atTime(LocalTime.MAX).atZone(zoneId).toInstant().toEpochMilli();
-
-        TransactionDao dao = AppDatabase.getDatabase(this).transactionDao();
-        List<com.example.budgetapp.database.TransactionMinimal> transactions = dao.getMinimalTransactionsSync(start, end);
-
-        Map<Integer, Map<Integer, Double>> stats = new HashMap<>();
-        for (com.example.budgetapp.database.TransactionMinimal t : transactions) {
-            LocalDate date = Instant.ofEpochMilli(t.date).atZone(zoneId).toLocalDate();
-            int month = date.getMonthValue();
-            int day = date.getDayOfMonth();
-
-            if (!stats.containsKey(month)) {
-                stats.put(month, new HashMap<>());
-            }
-            Map<Integer, Double> monthMap = stats.get(month);
-
-            double amount = (t.type == 1) ? t.amount : -t.amount;
-            monthMap.put(day, monthMap.getOrDefault(day, 0.0) + amount);
-        }
-        return stats;
-    }
-
     // 将数据渲染并推入屏幕的 UI 动画逻辑
     private void renderData(int direction, int year, List<Integer> monthsWithData) {
         YearCalendarAdapter adapter = new YearCalendarAdapter(year, monthsWithData, viewPool);
@@ -250,16 +207,4 @@ public class YearCalendarActivity extends AppCompatActivity {
             isAnimating = false;
         }
     }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        // Activity 销毁时释放线程池资源
-        if (!dbExecutor.isShutdown()) {
-            // 🌟 核心修复：绝对不能使用 shutdownNow() 强制中断！
-            // 强制中断正在读取 Room 数据库的线程会直接锁死整个数据库连接，导致退回主页后死锁。
-            // 改用 shutdown()，允许正在查询的任务正常跑完，但不再接受新任务。
-            dbExecutor.shutdown();
-        }
-    }
 }
\ No newline at end of file
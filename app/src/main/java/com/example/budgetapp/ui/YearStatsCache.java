@@ -0,0 +1,186 @@
+package com.example.budgetapp.ui;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.budgetapp.database.AppDatabase;
+import com.example.budgetapp.database.DataChange;
+import com.example.budgetapp.database.DataChangeFeed;
+import com.example.budgetapp.database.DayAmount;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 年视图（YearCalendarActivity）的按年统计缓存
+ * 原先每次切换年份都要重新查询整年的账单再在 Java 里逐条分桶；
+ * 现在一年只查一次按天汇总的净额（最多 366 行），结果按年份放进 LRU，来回滑动直接命中，
+ * 相邻年份可在停下后提前预取。变更通知与某一年相交时丢弃该年的缓存。
+ */
+final class YearStatsCache {
+
+    interface Callback {
+        /**
+         * 在主线程回调；查询失败时收到该年的空结果（不放入缓存，下次重新查询）
+         */
+        void onLoaded(YearStats stats);
+    }
+
+    /**
+     * 一年的统计结果，创建后不再修改
+     */
+    static final class YearStats {
+        final int year;
+        // 有收支记录的月份（1-12，升序）
+        final List<Integer> monthsWithData;
+        // 月份 -> 日期 -> 当天收支净额（收入为正、支出为负）
+        final Map<Integer, Map<Integer, Double>> dayNet;
+
+        YearStats(int year, List<Integer> monthsWithData, Map<Integer, Map<Integer, Double>> dayNet) {
+            this.year = year;
+            this.monthsWithData = monthsWithData;
+            this.dayNet = dayNet;
+        }
+    }
+
+    private static final String TAG = "YearStatsCache";
+
+    // 缓存的年数：足够覆盖来回滑动十来年
+    private static final int CAPACITY = 12;
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final LinkedHashMap<Integer, YearStats> entries =
+            new LinkedHashMap<Integer, YearStats>(CAPACITY + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, YearStats> eldest) {
+                    return size() > CAPACITY;
+                }
+            };
+    // 正在查询的年份及等待结果的回调，避免同一年重复排队
+    private static final Map<Integer, List<Callback>> loading = new HashMap<>();
+    // 查询期间有过与该年相交的写入的年份，结果不放入缓存
+    private static final Set<Integer> staleLoads = new HashSet<>();
+    private static boolean listening = false;
+
+    private YearStatsCache() {
+    }
+
+    /**
+     * 取一年的统计：缓存命中时立即回调，否则在读线程池查询后回调
+     */
+    static void load(Context context, int year, Callback callback) {
+        YearStats cached = request(context, year, callback);
+        if (cached != null) callback.onLoaded(cached);
+    }
+
+    /**
+     * 缓存中没有该年时提前查询一次
+     */
+    static void prefetch(Context context, int year) {
+        request(context, year, null);
+    }
+
+    // 命中时返回缓存；否则登记回调，必要时发起查询
+    private static YearStats request(Context context, int year, Callback callback) {
+        Context appContext = context.getApplicationContext();
+        synchronized (YearStatsCache.class) {
+            listen();
+            YearStats cached = entries.get(year);
+            if (cached != null) return cached;
+            List<Callback> waiting = loading.get(year);
+            if (waiting != null) {
+                if (callback != null) waiting.add(callback);
+                return null;
+            }
+            waiting = new ArrayList<>();
+            if (callback != null) waiting.add(callback);
+            loading.put(year, waiting);
+        }
+        AppDatabase.databaseReadExecutor.execute(() -> {
+            YearStats stats = null;
+            try {
+                stats = query(appContext, year);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "查询 " + year + " 年统计失败", e);
+            }
+            List<Callback> waiting;
+            synchronized (YearStatsCache.class) {
+                waiting = loading.remove(year);
+                boolean stale = staleLoads.remove(year);
+                if (stats != null && !stale) entries.put(year, stats);
+            }
+            if (waiting != null && !waiting.isEmpty()) {
+                YearStats result = stats != null ? stats : empty(year);
+                mainHandler.post(() -> {
+                    for (Callback c : waiting) c.onLoaded(result);
+                });
+            }
+        });
+        return null;
+    }
+
+    // 变更通知在写线程回调：丢弃与变化相交的年份，正在查询的相交年份标记为过期
+    private static void listen() {
+        if (listening) return;
+        listening = true;
+        DataChangeFeed.addListener(YearStatsCache::onDataChanged);
+    }
+
+    private static synchronized void onDataChanged(DataChange change) {
+        if (!change.touchesTransactions()) return;
+        ZoneId zoneId = ZoneId.systemDefault();
+        Iterator<Integer> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            long[] range = yearRange(it.next(), zoneId);
+            if (change.intersects(range[0], range[1])) it.remove();
+        }
+        for (Integer year : loading.keySet()) {
+            long[] range = yearRange(year, zoneId);
+            if (change.intersects(range[0], range[1])) staleLoads.add(year);
+        }
+    }
+
+    private static YearStats empty(int year) {
+        return new YearStats(year, Collections.emptyList(), Collections.emptyMap());
+    }
+
+    private static YearStats query(Context context, int year) {
+        ZoneId zoneId = ZoneId.systemDefault();
+        long[] range = yearRange(year, zoneId);
+        List<DayAmount> days = AppDatabase.getDatabase(context).dailySummaryDao()
+                .getNetAmountByDaySync(range[0], range[1]);
+
+        Map<Integer, Map<Integer, Double>> dayNet = new TreeMap<>();
+        for (DayAmount d : days) {
+            LocalDate date = Instant.ofEpochMilli(d.dayStart).atZone(zoneId).toLocalDate();
+            Map<Integer, Double> monthMap = dayNet.get(date.getMonthValue());
+            if (monthMap == null) {
+                monthMap = new HashMap<>();
+                dayNet.put(date.getMonthValue(), monthMap);
+            }
+            monthMap.merge(date.getDayOfMonth(), d.amount, Double::sum);
+        }
+        List<Integer> months = Collections.unmodifiableList(new ArrayList<>(dayNet.keySet()));
+        return new YearStats(year, months, Collections.unmodifiableMap(dayNet));
+    }
+
+    private static long[] yearRange(int year, ZoneId zoneId) {
+        long start = LocalDate.of(year, 1, 1).atStartOfDay(zoneId).toInstant().toEpochMilli();
+        long end = LocalDate.of(year, 12, 31).atTime(LocalTime.MAX).atZone(zoneId).toInstant().toEpochMilli();
+        return new long[]{start, end};
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.budgetapp.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.budgetapp.database.AppDatabase;
+import com.example.budgetapp.database.AssetAccount;
+import com.example.budgetapp.database.AssetBalance;
+import com.example.budgetapp.database.AssetMovement;
+import com.example.budgetapp.database.Transaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 资产余额台账
+ * 原先各处先读出 AssetAccount、在 Java 里改 amount、再整行 update，
+ * 无障碍服务、快捷记账磁贴和界面同时写入时，后写的一方会覆盖前一方的修改。
+ * 现在余额只通过 SQL 增量更新（amount = amount + delta），同时在 asset_movements 追加一行流水，
+ * 两者在同一事务中完成；每次写入 O(1)，互不覆盖。
+ * 流水之和应等于当前余额：reconcileIfDue 每天核对一次，
+ * 对仍然整行写入余额的路径（备份恢复、旧版导入等）造成的差额补一条 reconcile 流水并记录日志。
+ */
+public final class AssetLedger {
+
+    private static final String TAG = "AssetLedger";
+
+    public static final String REASON_OPENING = "opening";          // 新建资产时的初始余额
+    public static final String REASON_TRANSACTION = "transaction";  // 账单入账
+    public static final String REASON_REVERT = "revert";            // 撤回/修改账单时冲回
+    public static final String REASON_COUNTERPARTY = "counterparty"; // 负债/借出对象的欠款变化
+    public static final String REASON_TRANSFER = "transfer";        // 资产互转
+    public static final String REASON_RENEWAL = "renewal";          // 自动续费扣款
+    public static final String REASON_INTEREST = "interest";        // 活期理财利息
+    public static final String REASON_MANUAL = "manual";            // 手动修改余额
+    public static final String REASON_RECONCILE = "reconcile";      // 核对时补记的差额
+
+    private static final String PREFS = "app_prefs";
+    private static final String KEY_LAST_RECONCILE = "asset_ledger_last_reconcile";
+    private static final long RECONCILE_INTERVAL_MS = 24L * 60 * 60 * 1000;
+    // 金额只保留两位小数，差额在半分以内视为一致
+    private static final double EPSILON = 0.005;
+
+    private AssetLedger() {
+    }
+
+    /**
+     * 余额核对结果：余额与流水之和不一致的资产
+     */
+    public static class Mismatch {
+        public final int assetId;
+        public final double balance;
+        public final double ledger;
+
+        Mismatch(int assetId, double balance, double ledger) {
+            this.assetId = assetId;
+            this.balance = balance;
+            this.ledger = ledger;
+        }
+    }
+
+    // ================= 写入 =================
+
+    /**
+     * 按变化量调整余额并记一行流水（后台线程调用）
+     */
+    public static void move(AppDatabase db, int assetId, double delta, int txId, String reason) {
+        if (assetId == 0 || delta == 0) return;
+        db.runInTransaction(() -> {
+            db.assetAccountDao().adjustBalance(assetId, delta);
+            record(db, assetId, delta, txId, reason);
+        });
+    }
+
+    /**
+     * 按变化量调整余额，结果不低于 0（负债还清、借出收回），流水记实际变化量
+     * @return 调整后的余额；资产不存在时为 null
+     */
+    public static Double moveAtLeastZero(AppDatabase db, int assetId, double delta, int txId, String reason) {
+        return db.runInTransaction(() -> {
+            Double before = db.assetAccountDao().getBalanceSync(assetId);
+            if (before == null) return null;
+            double after = Math.max(0, before + delta);
+            if (after != before) {
+                db.assetAccountDao().adjustBalanceAtLeastZero(assetId, delta);
+                record(db, assetId, after - before, txId, reason);
+            }
+            return after;
+        });
+    }
+
+    /**
+     * 余额足够时扣减（普通资产的自动续费）
+     * @return 是否已扣减
+     */
+    public static boolean deductIfSufficient(AppDatabase db, int assetId, double amount, String reason) {
+        return db.runInTransaction(() -> {
+            if (db.assetAccountDao().deductIfSufficient(assetId, amount) == 0) return false;
+            record(db, assetId, -amount, 0, reason);
+            return true;
+        });
+    }
+
+    /**
+     * 新建资产，初始余额记为期初流水（asset.id 应为 0）
+     * 新 id 只通过返回值给出，不回写 asset：合并事务回滚后重放时传入的对象仍是原样
+     * @return 新资产的 id
+     */
+    public static int open(AppDatabase db, AssetAccount asset) {
+        return db.runInTransaction(() -> {
+            int id = (int) db.assetAccountDao().insertAndGetId(asset);
+            record(db, id, asset.amount, 0, REASON_OPENING);
+            return id;
+        });
+    }
+
+    /**
+     * 保存编辑后的资产（名称、颜色、理财/分期参数等）
+     * 只写余额以外的列；余额按用户改动的差额（asset.amount - loadedAmount）记一条手动流水，
+     * 界面读出资产之后其他路径已提交的余额变化不会被覆盖
+     * @param loadedAmount 界面开始编辑时读到的余额
+     */
+    public static void save(AppDatabase db, AssetAccount asset, double loadedAmount) {
+        db.runInTransaction(() -> {
+            db.assetAccountDao().updateDetails(asset.id, asset.name, asset.type, asset.updateTime, asset.currencySymbol,
+                    asset.isIncludedInTotal, asset.colorType, asset.customColorHex, asset.svgIcon,
+                    asset.assetCategory, asset.isFixedTerm, asset.durationMonths, asset.interestRate,
+                    asset.expectedReturn, asset.depositDate, asset.isCompoundInterest,
+                    asset.totalInstallments, asset.installmentAmount, asset.paidInstallments);
+            move(db, asset.id, asset.amount - loadedAmount, 0, REASON_MANUAL);
+        });
+    }
+
+    /**
+     * 删除资产及其流水
+     */
+    public static void delete(AppDatabase db, AssetAccount asset) {
+        db.runInTransaction(() -> {
+            db.assetAccountDao().delete(asset);
+            db.assetMovementDao().deleteByAsset(asset.id);
+        });
+    }
+
+    /**
+     * 整体替换全部资产（从 WebDAV 恢复时以远端为准），保留原 id（账单按 id 引用资产）；
+     * 旧资产的流水一并清除，每个新资产的余额记为期初流水，替换后余额与流水仍然一致
+     */
+    public static void replaceAll(AppDatabase db, List<AssetAccount> assets) {
+        db.runInTransaction(() -> {
+            for (AssetAccount old : db.assetAccountDao().getAllAssetsSync()) {
+                delete(db, old);
+            }
+            db.assetMovementDao().deleteOrphans();
+            if (assets == null) return;
+            for (AssetAccount asset : assets) {
+                int id = (int) db.assetAccountDao().insertAndGetId(asset);
+                record(db, id, asset.amount, 0, REASON_OPENING);
+            }
+        });
+    }
+
+    private static void record(AppDatabase db, int assetId, double delta, int txId, String reason) {
+        if (Math.abs(delta) < 1e-9) return;
+        AssetMovement movement = new AssetMovement();
+        movement.assetId = assetId;
+        movement.delta = delta;
+        movement.txId = txId;
+        movement.reason = reason;
+        movement.createdAt = System.currentTimeMillis();
+        db.assetMovementDao().insert(movement);
+    }
+
+    // ================= 账单对余额的影响 =================
+
+    /**
+     * 一笔账单对己方资产余额的变化量 (兼容 0支出, 1收入, 3负债, 4借出)；撤回时取相反数
+     */
+    public static double balanceDelta(int assetType, Transaction tx) {
+        if (assetType == 0) {
+            // 普通资产账户：支出(0)和借出(4)余额减少，收入(1)和负债借入(3)余额增加
+            if (tx.type == 0 || tx.type == 4) return -tx.amount;
+            else if (tx.type == 1 || tx.type == 3) return tx.amount;
+        } else if (assetType == 1) {
+            // 负债账户(信用卡)：支出(0)和借出(4)负债增加，收入(1)和负债借入(3)负债减少（还债）
+            if (tx.type == 0 || tx.type == 4) return tx.amount;
+            else if (tx.type == 1 || tx.type == 3) return -tx.amount;
+        } else if (assetType == 2) {
+            // 借出账户：支出(0)和借出(4)借出增加，收入(1)和负债借入(3)借出减少（对方还钱）
+            if (tx.type == 0 || tx.type == 4) return tx.amount;
+            else if (tx.type == 1 || tx.type == 3) return -tx.amount;
+        }
+        return 0;
+    }
+
+    // ================= 核对 =================
+
+    /**
+     * 找出余额与流水之和不一致的资产（后台线程调用）
+     */
+    public static List<Mismatch> verify(AppDatabase db) {
+        Map<Integer, Double> ledger = new HashMap<>();
+        for (AssetBalance b : db.assetMovementDao().getLedgerBalancesSync()) {
+            ledger.put(b.assetId, b.amount);
+        }
+        List<Mismatch> mismatches = new ArrayList<>();
+        for (AssetAccount asset : db.assetAccountDao().getAllAssetsSync()) {
+            Double sum = ledger.get(asset.id);
+            double ledgerBalance = sum != null ? sum : 0;
+            if (Math.abs(asset.amount - ledgerBalance) > EPSILON) {
+                mismatches.add(new Mismatch(asset.id, asset.amount, ledgerBalance));
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * 核对并补记差额：以当前余额为准，清理已删除资产的流水
+     * @return 补记差额的资产个数
+     */
+    public static int reconcile(AppDatabase db) {
+        return db.runInTransaction(() -> {
+            int orphans = db.assetMovementDao().deleteOrphans();
+            if (orphans > 0) Log.i(TAG, "清理已删除资产的流水 " + orphans + " 条");
+            List<Mismatch> mismatches = verify(db);
+            for (Mismatch m : mismatches) {
+                Log.w(TAG, "资产 " + m.assetId + " 余额 " + m.balance + " 与流水之和 " + m.ledger + " 不一致，补记差额");
+                record(db, m.assetId, m.balance - m.ledger, 0, REASON_RECONCILE);
+            }
+            return mismatches.size();
+        });
+    }
+
+    /**
+     * 距上次核对超过一天时在后台核对一次（应用启动时调用）
+     */
+    public static void reconcileIfDue(Context context) {
+        Context app = context.getApplicationContext();
+        SharedPreferences prefs = app.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(KEY_LAST_RECONCILE, 0) < RECONCILE_INTERVAL_MS) return;
+        AppDatabase.databaseWriteExecutor.execute(() -> {
+            try {
+                reconcile(AppDatabase.getDatabase(app));
+                prefs.edit().putLong(KEY_LAST_RECONCILE, now).apply();
+            } catch (Exception e) {
+                Log.e(TAG, "资产余额核对失败", e);
+            }
+        });
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.budgetapp.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.example.budgetapp.database.AppDatabase;
+import com.example.budgetapp.database.AssetAccount;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 自动记账的关键字 / 资产匹配缓存
+ * 无障碍扫描时每个节点都要判断“是否包含支出/收入关键字”和“对应哪个资产”，
+ * 原先每个节点都要读一次 SharedPreferences、逐个 contains，资产模糊匹配还要阻塞等待数据库查询。
+ * 现在把配置按包名编译成 Aho–Corasick 自动机并缓存在内存中：
+ * - 关键字或资产规则变化时（SharedPreferences 监听）在后台重建
+ * - 资产表变化时（Room InvalidationTracker）只在后台重读资产名称，名称或 id 有变化才换上新快照，余额变动不会引起重建
+ * - 扫描线程只读取当前快照，不做磁盘 I/O；只有第一次使用时会等待第一份快照构建完成
+ */
+public class AutoTrackMatcher {
+
+    private static final String TAG = "AutoTrackMatcher";
+
+    private static final String KEYWORD_PREFS = "app_specific_keywords_prefs";
+    private static final String AUTO_ASSET_PREFS = "auto_asset_prefs";
+    private static final String KEY_PREFIX = "keywords_";
+
+    // 关键字自动机里用位标记区分支出和收入
+    private static final int FLAG_EXPENSE = 1;
+    private static final int FLAG_INCOME = 2;
+
+    private static final ExecutorService REBUILD_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private static volatile Snapshot snapshot;
+    private static Context appContext;
+    private static boolean initialized = false;
+    // 每次失效加一，排队的重建任务据此跳过已被后续请求覆盖的那一次
+    private static long version = 0;
+    // 最近一次排队的完整重建，快照就绪前的第一次匹配等待它完成
+    private static volatile Future<?> latestBuild;
+
+    // SharedPreferences 只弱引用监听器，必须用静态字段持有
+    private static final SharedPreferences.OnSharedPreferenceChangeListener PREFS_LISTENER =
+            (prefs, key) -> invalidate();
+
+    /**
+     * 某一时刻配置的只读快照
+     */
+    private static class Snapshot {
+        final Map<String, KeywordAutomaton> keywordAutomata;
+        final Map<String, KeywordAutomaton> ruleAutomata;
+        final boolean autoAssetEnabled;
+        // 已按“普通资产在前、负债在后，各自按更新时间倒序”排好，与原数据库查询顺序一致
+        final List<AssetName> assets;
+
+        Snapshot(Map<String, KeywordAutomaton> keywordAutomata, Map<String, KeywordAutomaton> ruleAutomata,
+                 boolean autoAssetEnabled, List<AssetName> assets) {
+            this.keywordAutomata = keywordAutomata;
+            this.ruleAutomata = ruleAutomata;
+            this.autoAssetEnabled = autoAssetEnabled;
+            this.assets = assets;
+        }
+    }
+
+    private static class AssetName {
+        final int id;
+        final String name;
+
+        AssetName(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        boolean sameAs(AssetName other) {
+            return id == other.id && name.equals(other.name);
+        }
+    }
+
+    /**
+     * 注册配置监听并在后台构建第一份快照，重复调用无副作用
+     */
+    public static void init(Context context) {
+        synchronized (AutoTrackMatcher.class) {
+            if (initialized) return;
+            initialized = true;
+            appContext = context.getApplicationContext();
+        }
+        appContext.getSharedPreferences(KEYWORD_PREFS, Context.MODE_PRIVATE)
+                .registerOnSharedPreferenceChangeListener(PREFS_LISTENER);
+        appContext.getSharedPreferences(AUTO_ASSET_PREFS, Context.MODE_PRIVATE)
+                .registerOnSharedPreferenceChangeListener(PREFS_LISTENER);
+        AppDatabase.getDatabase(appContext).getInvalidationTracker()
+                .addObserver(new InvalidationTracker.Observer("asset_accounts") {
+                    @Override
+                    public void onInvalidated(@NonNull Set<String> tables) {
+                        invalidateAssets();
+                    }
+                });
+        invalidate();
+    }
+
+    /**
+     * 标记配置已变化，在后台线程重新构建快照；旧快照在新快照就绪前继续可用
+     */
+    public static void invalidate() {
+        final long target;
+        synchronized (AutoTrackMatcher.class) {
+            if (appContext == null) return;
+            target = ++version;
+        }
+        latestBuild = REBUILD_EXECUTOR.submit(() -> {
+            synchronized (AutoTrackMatcher.class) {
+                if (target != version) return; // 后面还有更新的请求，交给它来重建
+            }
+            try {
+                snapshot = buildSnapshot(appContext);
+            } catch (Exception e) {
+                Log.e(TAG, "构建关键字匹配缓存失败", e);
+            }
+        });
+    }
+
+    /**
+     * 资产表有写入（多数是余额变化）：在后台重读资产名称，与当前快照不同时才替换，关键字和规则自动机沿用
+     */
+    private static void invalidateAssets() {
+        REBUILD_EXECUTOR.execute(() -> {
+            Snapshot current = snapshot;
+            if (current == null || !current.autoAssetEnabled) return;
+            try {
+                List<AssetName> assets = loadAssetNames(appContext);
+                if (sameAssets(assets, current.assets)) return;
+                synchronized (AutoTrackMatcher.class) {
+                    // 期间完成了完整重建时，新快照里的资产名称已是最新
+                    if (snapshot != current) return;
+                    snapshot = new Snapshot(current.keywordAutomata, current.ruleAutomata, true,
+                            Collections.unmodifiableList(assets));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "刷新资产名称缓存失败", e);
+            }
+        });
+    }
+
+    private static boolean sameAssets(List<AssetName> a, List<AssetName> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).sameAs(b.get(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 判断文本命中的关键字类型
+     * @return KeywordManager.TYPE_EXPENSE / TYPE_INCOME；未命中返回 -1（同时命中时支出优先，与原逻辑一致）
+     */
+    public static int matchKeywordType(Context context, String packageName, String text) {
+        Snapshot current = currentSnapshot(context);
+        if (current == null || packageName == null || text == null) return -1;
+        KeywordAutomaton automaton = current.keywordAutomata.get(packageName);
+        if (automaton == null) return -1;
+        int flags = automaton.matchFlags(text);
+        if ((flags & FLAG_EXPENSE) != 0) return KeywordManager.TYPE_EXPENSE;
+        if ((flags & FLAG_INCOME) != 0) return KeywordManager.TYPE_INCOME;
+        return -1;
+    }
+
+    /**
+     * 根据包名和屏幕文字匹配资产ID，规则与 AutoAssetManager.matchAsset 的说明一致
+     * @return 命中的资产ID；未启用或未命中时返回 -1
+     */
+    public static int matchAsset(Context context, String packageName, String text) {
+        Snapshot current = currentSnapshot(context);
+        if (current == null || !current.autoAssetEnabled) return -1;
+        if (text == null || packageName == null || text.trim().isEmpty()) return -1;
+
+        // 1. 用户自定义的精确规则
+        KeywordAutomaton rules = current.ruleAutomata.get(packageName);
+        if (rules != null) {
+            int assetId = rules.firstValue(text);
+            if (assetId != -1) return assetId;
+        }
+
+        // 2. 资产名称双向模糊匹配（名称已在构建快照时过滤掉过短的和“不关联资产”）
+        for (AssetName asset : current.assets) {
+            if (text.contains(asset.name) || asset.name.contains(text)) {
+                return asset.id;
+            }
+        }
+        return -1;
+    }
+
+    private static Snapshot currentSnapshot(Context context) {
+        Snapshot current = snapshot;
+        if (current != null || context == null) return current;
+        init(context); // 第一次使用时才注册，并等待第一份快照，避免刚启动时的匹配一律落空
+        Future<?> build = latestBuild;
+        while (snapshot == null && build != null) {
+            try {
+                build.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                break;
+            }
+            // 等待期间又有新的失效时，被跳过的那次不会产出快照，继续等最新的一次
+            Future<?> next = latestBuild;
+            if (next == build) break;
+            build = next;
+        }
+        return snapshot;
+    }
+
+    private static Snapshot buildSnapshot(Context context) {
+        // 1. 各应用的支出/收入关键字
+        Map<String, KeywordAutomaton> keywordAutomata = new HashMap<>();
+        SharedPreferences keywordPrefs = context.getSharedPreferences(KEYWORD_PREFS, Context.MODE_PRIVATE);
+        for (Map.Entry<String, ?> entry : keywordPrefs.getAll().entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(KEY_PREFIX) || !(entry.getValue() instanceof Set)) continue;
+            int split = key.lastIndexOf('_');
+            if (split <= KEY_PREFIX.length()) continue;
+            String pkg = key.substring(KEY_PREFIX.length(), split);
+            int flag;
+            String typePart = key.substring(split + 1);
+            if (typePart.equals(String.valueOf(KeywordManager.TYPE_EXPENSE))) {
+                flag = FLAG_EXPENSE;
+            } else if (typePart.equals(String.valueOf(KeywordManager.TYPE_INCOME))) {
+                flag = FLAG_INCOME;
+            } else {
+                continue;
+            }
+            KeywordAutomaton automaton = keywordAutomata.get(pkg);
+            if (automaton == null) {
+                automaton = new KeywordAutomaton();
+                keywordAutomata.put(pkg, automaton);
+            }
+            for (Object kw : (Set<?>) entry.getValue()) {
+                if (kw instanceof String) automaton.add((String) kw, flag);
+            }
+        }
+        for (KeywordAutomaton automaton : keywordAutomata.values()) {
+            automaton.build();
+        }
+
+        // 2. 资产精确规则
+        boolean enabled = AutoAssetManager.isEnabled(context);
+        Map<String, KeywordAutomaton> ruleAutomata = new HashMap<>();
+        List<AssetName> assets = new ArrayList<>();
+        if (enabled) {
+            for (AutoAssetManager.AssetRule rule : AutoAssetManager.getRules(context)) {
+                KeywordAutomaton automaton = ruleAutomata.get(rule.packageName);
+                if (automaton == null) {
+                    automaton = new KeywordAutomaton();
+                    ruleAutomata.put(rule.packageName, automaton);
+                }
+                automaton.add(rule.keyword, rule.assetId);
+            }
+            for (KeywordAutomaton automaton : ruleAutomata.values()) {
+                automaton.build();
+            }
+
+            // 3. 资产名称（普通资产和负债账户）
+            assets = loadAssetNames(context);
+        }
+        return new Snapshot(keywordAutomata, ruleAutomata, enabled, Collections.unmodifiableList(assets));
+    }
+
+    private static List<AssetName> loadAssetNames(Context context) {
+        List<AssetName> assets = new ArrayList<>();
+        AppDatabase db = AppDatabase.getDatabase(context);
+        addAssetNames(assets, db.assetAccountDao().getAssetsByTypeSync(0));
+        addAssetNames(assets, db.assetAccountDao().getAssetsByTypeSync(1));
+        return assets;
+    }
+
+    private static void addAssetNames(List<AssetName> target, List<AssetAccount> source) {
+        if (source == null) return;
+        for (AssetAccount asset : source) {
+            // 忽略“不关联资产”(id=0)和名字太短(少于2个字)的资产，防止发生诸如 "宝" 匹配上 "支付宝" 的低级误命中
+            if (asset.id == 0 || asset.name == null || asset.name.length() < 2) continue;
+            target.add(new AssetName(asset.id, asset.name));
+        }
+    }
+}
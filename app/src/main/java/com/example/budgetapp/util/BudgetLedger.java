@@ -0,0 +1,534 @@
+package com.example.budgetapp.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.budgetapp.database.AppDatabase;
+import com.example.budgetapp.database.Budget;
+import com.example.budgetapp.database.BudgetCheckpoint;
+import com.example.budgetapp.database.BudgetCheckpointDao;
+import com.example.budgetapp.database.DailySummaryDao;
+import com.example.budgetapp.database.DayAmount;
+import com.example.budgetapp.database.Goal;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预算结余台账
+ * 每天的结余 = 当月预算 / 当月天数 - 当天支出，台账记录从起算月 1 号开始的累计结余 C(d)。
+ * - 每天的支出直接读按天汇总表，不再逐天扫描全部账单
+ * - 已结束的月份把“月末累计结余”和“月内累计结余最大值”存为检查点（budget_checkpoints），
+ *   账单变化时由触发器删除该月及之后的检查点，下次只需从最早失效的月份往后重算
+ * - 存储目标资金池、预算历史都只需对累计结余做区间最大值 / 首次达到某值的查询，
+ *   整月可以直接用检查点跳过，只有边界月份才需要读取逐日数据
+ * 所有方法都会访问数据库，必须在后台线程调用。
+ */
+public class BudgetLedger {
+
+    // 存储目标资金池：只统计计入预算的支出（排除资产互转和不计入预算的账单）
+    public static final int KIND_GOALS = 0;
+    // 预算历史：统计全部支出，开启详细预算时以各分类预算之和作为月预算
+    public static final int KIND_HISTORY = 1;
+
+    private static final String[] LEDGER_NAMES = {"goals", "history"};
+
+    /**
+     * 某个月的预算与支出合计
+     */
+    public static class MonthTotal {
+        public final YearMonth month;
+        public final double budget;
+        public final double expense;
+        // 该月是否已经结束（预算历史只展示已结束的月份）
+        public final boolean complete;
+
+        MonthTotal(YearMonth month, double budget, double expense, boolean complete) {
+            this.month = month;
+            this.budget = budget;
+            this.expense = expense;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * 预算历史中的一次目标达成
+     */
+    public static class GoalAchievement {
+        public final Goal goal;
+        public final LocalDate date;
+
+        GoalAchievement(Goal goal, LocalDate date) {
+            this.goal = goal;
+            this.date = date;
+        }
+    }
+
+    public static class History {
+        public final List<MonthTotal> months;
+        public final List<GoalAchievement> achievements;
+
+        History(List<MonthTotal> months, List<GoalAchievement> achievements) {
+            this.months = months;
+            this.achievements = achievements;
+        }
+    }
+
+    private static class MonthSpan {
+        final LocalDate start;
+        // 台账覆盖的天数（最后一个月可能不完整）
+        final int days;
+        final boolean complete;
+        double budget;
+        double expense;
+        // 上个月末的累计结余
+        double cumulativeStart;
+        double cumulativeEnd;
+        double maxCumulative;
+        // 逐日累计结余，只在需要时从按天汇总表加载
+        double[] cumulative;
+
+        MonthSpan(LocalDate start, int days, boolean complete) {
+            this.start = start;
+            this.days = days;
+            this.complete = complete;
+        }
+
+        LocalDate end() {
+            return start.plusDays(days - 1);
+        }
+    }
+
+    private final int kind;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final LocalDate origin;
+    private final LocalDate lastDay;
+    private final List<MonthSpan> months = new ArrayList<>();
+    private final DailySummaryDao summaryDao;
+
+    private final boolean detailedEnabled;
+    private final float detailedTotalBudget;
+    // 通用月预算与区间内单独设置的月预算（一次查询读出）
+    private float monthlyBudget = 0f;
+    private final Map<Long, Float> singleMonthBudgets = new HashMap<>();
+
+    private BudgetLedger(Context context, int kind, LocalDate origin, LocalDate lastDay) {
+        this.kind = kind;
+        this.origin = origin.withDayOfMonth(1);
+        this.lastDay = lastDay;
+        this.summaryDao = AppDatabase.getDatabase(context).dailySummaryDao();
+
+        SharedPreferences prefs = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
+        detailedEnabled = kind == KIND_HISTORY && prefs.getBoolean("is_detailed_budget_enabled", false);
+        detailedTotalBudget = detailedEnabled ? BudgetStore.getDetailedTotal(context) : 0f;
+    }
+
+    /**
+     * 构建 [origin 所在月 1 号, lastDay] 的台账，复用仍然有效的检查点并补写重算出的检查点
+     */
+    public static BudgetLedger load(Context context, int kind, LocalDate origin, LocalDate lastDay) {
+        BudgetStore.ensureLoaded(context);
+        BudgetLedger ledger = new BudgetLedger(context, kind, origin, lastDay);
+        AppDatabase db = AppDatabase.getDatabase(context);
+        if (!ledger.detailedEnabled) {
+            List<Budget> budgets = db.budgetDao().getTotalBudgetsInRangeSync(
+                    Budget.monthKey(ledger.origin.getYear(), ledger.origin.getMonthValue()),
+                    Budget.monthKey(lastDay.getYear(), lastDay.getMonthValue()));
+            for (Budget b : budgets) {
+                if (b.period == Budget.PERIOD_SINGLE_MONTH) {
+                    ledger.singleMonthBudgets.put(b.effectiveFrom, (float) b.amount);
+                } else {
+                    ledger.monthlyBudget = (float) b.amount;
+                }
+            }
+        }
+        // 在同一个事务里读汇总、写检查点，避免期间有账单写入导致写回过期的检查点
+        db.runInTransaction(() -> ledger.build(db.budgetCheckpointDao()));
+        return ledger;
+    }
+
+    private void build(BudgetCheckpointDao checkpointDao) {
+        if (lastDay.isBefore(origin)) return;
+        String ledgerName = LEDGER_NAMES[kind];
+        long originMillis = toMillis(origin);
+        LocalDate today = LocalDate.now();
+
+        Map<Long, BudgetCheckpoint> saved = new HashMap<>();
+        for (BudgetCheckpoint cp : checkpointDao.getCheckpointsSync(ledgerName)) {
+            if (cp.origin != originMillis) {
+                // 起算月变了，累计值全部需要重算
+                checkpointDao.deleteLedger(ledgerName);
+                saved.clear();
+                break;
+            }
+            saved.put(cp.monthStart, cp);
+        }
+
+        List<BudgetCheckpoint> toSave = new ArrayList<>();
+        Map<Long, Double> dayExpenses = null;
+        long dirtyFrom = -1;
+        double cumulative = 0;
+        for (LocalDate m = origin; !m.isAfter(lastDay); m = m.plusMonths(1)) {
+            LocalDate monthEnd = m.withDayOfMonth(m.lengthOfMonth());
+            boolean complete = monthEnd.isBefore(today) && !monthEnd.isAfter(lastDay);
+            int days = monthEnd.isAfter(lastDay) ? lastDay.getDayOfMonth() : m.lengthOfMonth();
+            MonthSpan span = new MonthSpan(m, days, complete);
+            span.budget = monthBudget(m);
+            span.cumulativeStart = cumulative;
+
+            long monthMillis = toMillis(m);
+            BudgetCheckpoint cp = dirtyFrom < 0 && complete ? saved.get(monthMillis) : null;
+            if (cp != null && Double.compare(cp.budget, span.budget) == 0) {
+                span.expense = cp.expense;
+                span.cumulativeEnd = cp.cumulativeEnd;
+                span.maxCumulative = cp.maxCumulative;
+            } else {
+                if (dirtyFrom < 0) {
+                    dirtyFrom = monthMillis;
+                    // 从这个月到最后一天的逐日支出一次读出
+                    dayExpenses = loadDayExpenses(m, lastDay);
+                }
+                fillFromDays(span, dayExpenses);
+                if (complete) {
+                    BudgetCheckpoint fresh = new BudgetCheckpoint();
+                    fresh.monthStart = monthMillis;
+                    fresh.ledger = ledgerName;
+                    fresh.origin = originMillis;
+                    fresh.budget = span.budget;
+                    fresh.expense = span.expense;
+                    fresh.cumulativeEnd = span.cumulativeEnd;
+                    fresh.maxCumulative = span.maxCumulative;
+                    toSave.add(fresh);
+                }
+            }
+            cumulative = span.cumulativeEnd;
+            months.add(span);
+        }
+
+        if (dirtyFrom >= 0) {
+            checkpointDao.deleteFrom(ledgerName, dirtyFrom);
+            if (!toSave.isEmpty()) checkpointDao.upsertAll(toSave);
+        }
+    }
+
+    private float monthBudget(LocalDate month) {
+        if (detailedEnabled) return detailedTotalBudget;
+        Float single = singleMonthBudgets.get(Budget.monthKey(month.getYear(), month.getMonthValue()));
+        return single != null ? single : monthlyBudget;
+    }
+
+    private Map<Long, Double> loadDayExpenses(LocalDate from, LocalDate to) {
+        long start = toMillis(from);
+        long end = toMillis(to);
+        List<DayAmount> rows = kind == KIND_GOALS
+                ? summaryDao.getBudgetExpenseByDaySync(start, end)
+                : summaryDao.getExpenseByDaySync(start, end);
+        Map<Long, Double> result = new HashMap<>();
+        for (DayAmount row : rows) result.put(row.dayStart, row.amount);
+        return result;
+    }
+
+    private void fillFromDays(MonthSpan span, Map<Long, Double> dayExpenses) {
+        double dailyBudget = span.budget > 0 ? span.budget / span.start.lengthOfMonth() : 0;
+        double[] values = new double[span.days];
+        double cumulative = span.cumulativeStart;
+        double max = -Double.MAX_VALUE;
+        double expense = 0;
+        LocalDate d = span.start;
+        for (int i = 0; i < span.days; i++, d = d.plusDays(1)) {
+            Double spent = dayExpenses.get(toMillis(d));
+            double expenseToday = spent != null ? spent : 0;
+            expense += expenseToday;
+            cumulative += dailyBudget - expenseToday;
+            values[i] = cumulative;
+            if (cumulative > max) max = cumulative;
+        }
+        span.expense = expense;
+        span.cumulativeEnd = cumulative;
+        span.maxCumulative = max;
+        span.cumulative = values;
+    }
+
+    private double[] dailyCumulative(MonthSpan span) {
+        if (span.cumulative == null) {
+            fillFromDays(span, loadDayExpenses(span.start, span.end()));
+        }
+        return span.cumulative;
+    }
+
+    private long toMillis(LocalDate date) {
+        return date.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private MonthSpan spanOf(LocalDate d) {
+        int index = (d.getYear() - origin.getYear()) * 12 + d.getMonthValue() - origin.getMonthValue();
+        return months.get(index);
+    }
+
+    /**
+     * 截至 d 当天（含）的累计结余；起算日之前为 0
+     */
+    public double cumulative(LocalDate d) {
+        if (d.isBefore(origin) || months.isEmpty()) return 0;
+        if (d.isAfter(lastDay)) d = lastDay;
+        MonthSpan span = spanOf(d);
+        if (d.getDayOfMonth() == span.days) return span.cumulativeEnd;
+        return dailyCumulative(span)[d.getDayOfMonth() - 1];
+    }
+
+    /**
+     * 当天的结余（每日预算 - 当日支出）
+     */
+    public double dailySurplus(LocalDate d) {
+        return cumulative(d) - cumulative(d.minusDays(1));
+    }
+
+    /**
+     * [from, to] 内累计结余的最大值；区间为空时返回负无穷
+     */
+    public double maxCumulative(LocalDate from, LocalDate to) {
+        if (from.isBefore(origin)) from = origin;
+        if (to.isAfter(lastDay)) to = lastDay;
+        double max = Double.NEGATIVE_INFINITY;
+        if (from.isAfter(to)) return max;
+        for (LocalDate m = from.withDayOfMonth(1); !m.isAfter(to); m = m.plusMonths(1)) {
+            MonthSpan span = spanOf(m);
+            LocalDate a = from.isAfter(span.start) ? from : span.start;
+            LocalDate b = to.isBefore(span.end()) ? to : span.end();
+            if (a.equals(span.start) && b.equals(span.end())) {
+                max = Math.max(max, span.maxCumulative);
+            } else {
+                double[] values = dailyCumulative(span);
+                for (int i = a.getDayOfMonth() - 1; i < b.getDayOfMonth(); i++) {
+                    max = Math.max(max, values[i]);
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * [from, to] 内累计结余第一次达到 threshold 的日期；始终达不到返回 null
+     */
+    public LocalDate firstReach(LocalDate from, LocalDate to, double threshold) {
+        if (from.isBefore(origin)) from = origin;
+        if (to.isAfter(lastDay)) to = lastDay;
+        if (from.isAfter(to)) return null;
+        for (LocalDate m = from.withDayOfMonth(1); !m.isAfter(to); m = m.plusMonths(1)) {
+            MonthSpan span = spanOf(m);
+            boolean fullMonth = !from.isAfter(span.start) && !to.isBefore(span.end());
+            if (fullMonth && span.maxCumulative < threshold) continue; // 整月都达不到，直接跳过
+            LocalDate a = from.isAfter(span.start) ? from : span.start;
+            LocalDate b = to.isBefore(span.end()) ? to : span.end();
+            double[] values = dailyCumulative(span);
+            for (int i = a.getDayOfMonth() - 1; i < b.getDayOfMonth(); i++) {
+                if (values[i] >= threshold) return span.start.plusDays(i);
+            }
+        }
+        return null;
+    }
+
+    public List<MonthTotal> getMonthTotals() {
+        List<MonthTotal> result = new ArrayList<>();
+        for (MonthSpan span : months) {
+            result.add(new MonthTotal(YearMonth.from(span.start), span.budget, span.expense, span.complete));
+        }
+        return result;
+    }
+
+    // ================= 存储目标资金池 =================
+
+    /**
+     * 把预算起算以来（不含今天）的每日结余按优先级分配给未完成的存储目标
+     * 规则与原先逐天推演一致：只有存在已创建的目标时结余才进入资金池，资金池为正时按顺序填补各目标的缺口。
+     * 目标集合只在某个目标创建当天发生变化，两次变化之间资金池被“填到 0 为止”，
+     * 该区间内流入目标的总额 = min(剩余缺口, max(0, 区间内累计结余最大值 - (区间前累计结余 - 资金池)))，
+     * 因此只需要对每个区间做一次最大值查询。
+     *
+     * @param activeGoals 未完成的目标
+     * @return 目标 id -> 分配到的结余
+     */
+    public static Map<Integer, Double> allocateGoalSurplus(Context context, List<Goal> activeGoals) {
+        Map<Integer, Double> allocation = new HashMap<>();
+        if (activeGoals.isEmpty()) return allocation;
+        for (Goal g : activeGoals) allocation.put(g.id, 0.0);
+
+        List<Goal> sortedGoals = sortByPriority(activeGoals);
+        SharedPreferences prefs = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
+        long earliestGoal = Long.MAX_VALUE;
+        for (Goal g : activeGoals) {
+            if (g.createdAt < earliestGoal) earliestGoal = g.createdAt;
+        }
+        long startTs = prefs.getLong("budget_start_time", earliestGoal);
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate start = Instant.ofEpochMilli(startTs).atZone(zone).toLocalDate().withDayOfMonth(1);
+        LocalDate today = LocalDate.now();
+        if (!start.isBefore(today)) return allocation;
+        LocalDate lastDay = today.minusDays(1);
+
+        // 每个目标从哪天开始参与分配
+        Map<Integer, LocalDate> eligibleFrom = new HashMap<>();
+        List<LocalDate> boundaries = new ArrayList<>();
+        for (Goal g : sortedGoals) {
+            LocalDate createDate = Instant.ofEpochMilli(g.createdAt).atZone(zone).toLocalDate();
+            LocalDate from = createDate.isBefore(start) ? start : createDate;
+            eligibleFrom.put(g.id, from);
+            if (!from.isAfter(lastDay) && !boundaries.contains(from)) boundaries.add(from);
+        }
+        if (boundaries.isEmpty()) return allocation;
+        boundaries.sort(null);
+
+        BudgetLedger ledger = load(context, KIND_GOALS, start, lastDay);
+        double pool = 0;
+        for (int i = 0; i < boundaries.size(); i++) {
+            LocalDate a = boundaries.get(i);
+            LocalDate b = i + 1 < boundaries.size() ? boundaries.get(i + 1).minusDays(1) : lastDay;
+
+            double remaining = 0;
+            for (Goal g : sortedGoals) {
+                if (eligibleFrom.get(g.id).isAfter(a)) continue;
+                double needed = g.targetAmount - g.savedAmount - allocation.get(g.id);
+                if (needed > 0) remaining += needed;
+            }
+
+            double before = ledger.cumulative(a.minusDays(1));
+            double level = before - pool;
+            double drained = Math.min(remaining, Math.max(0, ledger.maxCumulative(a, b) - level));
+            pool = pool + ledger.cumulative(b) - before - drained;
+
+            for (Goal g : sortedGoals) {
+                if (drained <= 0) break;
+                if (eligibleFrom.get(g.id).isAfter(a)) continue;
+                double allocated = allocation.get(g.id);
+                double needed = g.targetAmount - g.savedAmount - allocated;
+                if (needed > 0) {
+                    double take = Math.min(drained, needed);
+                    allocation.put(g.id, allocated + take);
+                    drained -= take;
+                }
+            }
+        }
+        return allocation;
+    }
+
+    // ================= 预算历史 =================
+
+    /**
+     * 推演预算历史：每个已结束月份的结余，以及每个目标的达成日期
+     * 规则与原先逐天推演一致：按优先级排在最前的已创建目标在资金池足够时整体扣除并达成，否则当天停止；
+     * 手动完成的目标在完成当天记入且不消耗资金池。
+     * 只有目标创建日、手动完成日以及资金池首次够用的那天会改变状态，其余日子通过累计结余直接跳过。
+     *
+     * @param origin 预算起算日（按所在月 1 号开始）
+     */
+    public static History buildHistory(Context context, List<Goal> goals, LocalDate origin) {
+        LocalDate start = origin.withDayOfMonth(1);
+        LocalDate today = LocalDate.now();
+        List<GoalAchievement> achievements = new ArrayList<>();
+        if (start.isAfter(today)) return new History(new ArrayList<>(), achievements);
+
+        BudgetLedger ledger = load(context, KIND_HISTORY, start, today);
+        ZoneId zone = ZoneId.systemDefault();
+        List<Goal> pending = sortByPriority(goals);
+        Map<Integer, LocalDate> createDates = new HashMap<>();
+        for (Goal g : pending) {
+            createDates.put(g.id, Instant.ofEpochMilli(g.createdAt).atZone(zone).toLocalDate());
+        }
+
+        double poolBefore = 0; // 前一天结束时的资金池
+        LocalDate d = start;
+        while (!d.isAfter(today)) {
+            // 1. 按原规则处理这一天
+            boolean hasActiveGoal = false;
+            for (Goal g : pending) {
+                if (!d.isBefore(createDates.get(g.id))) {
+                    hasActiveGoal = true;
+                    break;
+                }
+            }
+            double pool = hasActiveGoal ? poolBefore + ledger.dailySurplus(d) : 0;
+
+            Goal blocking = null;
+            Iterator<Goal> it = pending.iterator();
+            while (it.hasNext()) {
+                Goal g = it.next();
+                if (d.isBefore(createDates.get(g.id))) continue;
+
+                // 手动完成的目标在完成当天记入，不消耗资金池
+                if (g.isFinished) {
+                    LocalDate finishDate = Instant.ofEpochMilli(g.finishedDate).atZone(zone).toLocalDate();
+                    if (!d.isBefore(finishDate)) {
+                        achievements.add(new GoalAchievement(g, d));
+                        it.remove();
+                        continue;
+                    }
+                }
+
+                double needed = Math.max(0, g.targetAmount - g.savedAmount);
+                if (needed <= 0) {
+                    achievements.add(new GoalAchievement(g, d));
+                    it.remove();
+                } else if (pool >= needed) {
+                    pool -= needed;
+                    achievements.add(new GoalAchievement(g, d));
+                    it.remove();
+                } else {
+                    blocking = g;
+                    break;
+                }
+            }
+
+            // 2. 下一个可能改变状态的日子：目标创建日、手动完成日
+            LocalDate next = null;
+            for (Goal g : pending) {
+                LocalDate createDate = createDates.get(g.id);
+                if (createDate.isAfter(d) && (next == null || createDate.isBefore(next))) next = createDate;
+                if (g.isFinished) {
+                    LocalDate finishDate = Instant.ofEpochMilli(g.finishedDate).atZone(zone).toLocalDate();
+                    if (finishDate.isAfter(d) && (next == null || finishDate.isBefore(next))) next = finishDate;
+                }
+            }
+            if (next == null || next.isAfter(today)) next = today.plusDays(1);
+
+            // 以及被卡住的目标在资金池首次够用的那天：pool + C(k) - C(d) >= needed
+            if (blocking != null) {
+                double needed = Math.max(0, blocking.targetAmount - blocking.savedAmount);
+                LocalDate reach = ledger.firstReach(d.plusDays(1), next.minusDays(1),
+                        needed - pool + ledger.cumulative(d));
+                if (reach != null) next = reach;
+            }
+
+            // 3. 跳到 next 的前一天：有目标卡住时结余持续流入资金池，否则资金池每天清零
+            LocalDate skipEnd = next.minusDays(1);
+            if (skipEnd.isAfter(d)) {
+                poolBefore = blocking != null ? pool + ledger.cumulative(skipEnd) - ledger.cumulative(d) : 0;
+            } else {
+                poolBefore = pool;
+            }
+            d = next;
+        }
+
+        List<MonthTotal> completedMonths = new ArrayList<>();
+        for (MonthTotal month : ledger.getMonthTotals()) {
+            if (month.complete) completedMonths.add(month);
+        }
+        return new History(completedMonths, achievements);
+    }
+
+    private static List<Goal> sortByPriority(List<Goal> goals) {
+        List<Goal> sorted = new ArrayList<>(goals);
+        sorted.sort((g1, g2) -> {
+            if (g1.isPriority && !g2.isPriority) return -1;
+            if (!g1.isPriority && g2.isPriority) return 1;
+            return Long.compare(g1.createdAt, g2.createdAt);
+        });
+        return sorted;
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.budgetapp.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.example.budgetapp.database.AppDatabase;
+import com.example.budgetapp.database.Budget;
+import com.example.budgetapp.database.BudgetDao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 预算配置的统一入口（budgets 表 + 内存缓存）
+ * 原先预算散落在 app_prefs 的 monthly_budget / budget_年_月 / budget_cat_分类 等键里，各页面逐个读取。
+ * 现在以 budgets 表为准，整张表常驻内存，读取不做任何 I/O：
+ * - 表有变化时（Room InvalidationTracker）在后台重新加载
+ * - 写入时立即更新缓存，再在后台写库
+ * - 仍然同步写一份旧的 SharedPreferences 键，只为兼容备份文件和 WebDAV 同步；
+ *   恢复备份后调用 onLegacyPrefsRestored 以备份里的旧键重建预算表
+ */
+public class BudgetStore {
+
+    private static final String TAG = "BudgetStore";
+
+    private static final String PREFS = "app_prefs";
+    private static final String KEY_MONTHLY = "monthly_budget";
+    private static final String KEY_CATEGORY_PREFIX = "budget_cat_";
+    private static final Pattern MONTH_KEY_PATTERN = Pattern.compile("^budget_(\\d{4})_(\\d{1,2})$");
+
+    private static volatile Snapshot snapshot;
+    private static final Snapshot EMPTY = toSnapshot(new ArrayList<>());
+    private static Context appContext;
+    private static boolean observing = false;
+    // 每次失效加一，排队的重新加载据此跳过已被后续请求覆盖的那一次
+    private static long version = 0;
+
+    /**
+     * 某一时刻预算表的只读快照
+     */
+    private static class Snapshot {
+        final float monthly;
+        // 年*100+月 -> 当月单独设置的总预算
+        final Map<Long, Float> singleMonths;
+        final Map<String, Float> categories;
+
+        Snapshot(float monthly, Map<Long, Float> singleMonths, Map<String, Float> categories) {
+            this.monthly = monthly;
+            this.singleMonths = singleMonths;
+            this.categories = categories;
+        }
+    }
+
+    /**
+     * 在后台预先加载缓存（例如 ViewModel 创建时），之后的读取不会再等待数据库
+     */
+    public static void preload(Context context) {
+        init(context);
+        AppDatabase.databaseReadExecutor.execute(() -> current(context));
+    }
+
+    /**
+     * 确保旧配置已导入预算表，供直接查询 budgets 表的调用方使用（后台线程）
+     */
+    static void ensureLoaded(Context context) {
+        current(context);
+    }
+
+    // ================= 读取 =================
+
+    /**
+     * 每月通用总预算
+     */
+    public static float getMonthlyBudget(Context context) {
+        return current(context).monthly;
+    }
+
+    /**
+     * 指定月份的总预算：单独设置过的优先，否则为通用预算
+     */
+    public static float getMonthBudget(Context context, int year, int month) {
+        Snapshot s = current(context);
+        Float single = s.singleMonths.get(Budget.monthKey(year, month));
+        return single != null ? single : s.monthly;
+    }
+
+    public static float getCategoryBudget(Context context, String category) {
+        Float value = current(context).categories.get(category);
+        return value != null ? value : 0f;
+    }
+
+    /**
+     * 当前有效的各支出分类预算之和（详细预算模式下的月总预算）
+     */
+    public static float getDetailedTotal(Context context) {
+        Snapshot s = current(context);
+        float total = 0f;
+        for (String cat : CategoryManager.getExpenseCategories(context)) {
+            Float value = s.categories.get(cat);
+            if (value != null) total += value;
+        }
+        return total;
+    }
+
+    /**
+     * 页面展示用的月总预算：详细模式为分类预算之和，否则为该月总预算
+     */
+    public static float getEffectiveMonthBudget(Context context, int year, int month, boolean detailedEnabled) {
+        return detailedEnabled ? getDetailedTotal(context) : getMonthBudget(context, year, month);
+    }
+
+    // ================= 写入 =================
+
+    public static void setMonthlyBudget(Context context, float amount) {
+        Snapshot s = current(context);
+        snapshot = new Snapshot(amount, s.singleMonths, s.categories);
+        legacyPrefs(context).edit().putFloat(KEY_MONTHLY, amount).apply();
+        write(context, Budget.PERIOD_MONTHLY, "", 0, amount);
+    }
+
+    public static void setMonthBudget(Context context, int year, int month, float amount) {
+        Snapshot s = current(context);
+        Map<Long, Float> singleMonths = new HashMap<>(s.singleMonths);
+        singleMonths.put(Budget.monthKey(year, month), amount);
+        snapshot = new Snapshot(s.monthly, Collections.unmodifiableMap(singleMonths), s.categories);
+        legacyPrefs(context).edit().putFloat("budget_" + year + "_" + month, amount).apply();
+        write(context, Budget.PERIOD_SINGLE_MONTH, "", Budget.monthKey(year, month), amount);
+    }
+
+    public static void setCategoryBudget(Context context, String category, float amount) {
+        Snapshot s = current(context);
+        Map<String, Float> categories = new HashMap<>(s.categories);
+        categories.put(category, amount);
+        snapshot = new Snapshot(s.monthly, s.singleMonths, Collections.unmodifiableMap(categories));
+        legacyPrefs(context).edit().putFloat(KEY_CATEGORY_PREFIX + category, amount).apply();
+        write(context, Budget.PERIOD_MONTHLY, category, 0, amount);
+    }
+
+    /**
+     * 分类改名后同步缓存和旧键；表里的预算已由 TransactionDao.updateCategoryName 在同一事务中改名
+     */
+    public static void onCategoryRenamed(Context context, String oldCategory, String newCategory) {
+        SharedPreferences prefs = legacyPrefs(context);
+        if (prefs.contains(KEY_CATEGORY_PREFIX + oldCategory)) {
+            float amount = prefs.getFloat(KEY_CATEGORY_PREFIX + oldCategory, 0f);
+            prefs.edit()
+                    .remove(KEY_CATEGORY_PREFIX + oldCategory)
+                    .putFloat(KEY_CATEGORY_PREFIX + newCategory, amount)
+                    .apply();
+        }
+        invalidate();
+    }
+
+    private static void write(Context context, int period, String category, long effectiveFrom, float amount) {
+        Budget budget = new Budget();
+        budget.period = period;
+        budget.category = category;
+        budget.effectiveFrom = effectiveFrom;
+        budget.amount = amount;
+        BudgetDao dao = AppDatabase.getDatabase(context).budgetDao();
+        AppDatabase.databaseWriteExecutor.execute(() -> dao.upsert(budget));
+    }
+
+    // ================= 旧配置导入 =================
+
+    /**
+     * 备份恢复写回了 SharedPreferences 里的旧预算键，在后台以它们重建预算表
+     */
+    public static void onLegacyPrefsRestored(Context context) {
+        Context app = context.getApplicationContext();
+        AppDatabase.databaseWriteExecutor.execute(() -> importLegacyPrefs(app));
+    }
+
+    /**
+     * 用 SharedPreferences 里的旧预算键整体重建预算表（首次升级、恢复备份后调用），必须在后台线程调用
+     */
+    public static void importLegacyPrefs(Context context) {
+        SharedPreferences prefs = legacyPrefs(context);
+        List<Budget> budgets = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (!(entry.getValue() instanceof Float)) continue;
+            String key = entry.getKey();
+            float amount = (Float) entry.getValue();
+            Budget budget = new Budget();
+            budget.amount = amount;
+            if (KEY_MONTHLY.equals(key)) {
+                budget.period = Budget.PERIOD_MONTHLY;
+            } else if (key.startsWith(KEY_CATEGORY_PREFIX)) {
+                budget.period = Budget.PERIOD_MONTHLY;
+                budget.category = key.substring(KEY_CATEGORY_PREFIX.length());
+            } else {
+                Matcher m = MONTH_KEY_PATTERN.matcher(key);
+                if (!m.matches()) continue;
+                budget.period = Budget.PERIOD_SINGLE_MONTH;
+                budget.effectiveFrom = Budget.monthKey(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)));
+            }
+            budgets.add(budget);
+        }
+
+        AppDatabase db = AppDatabase.getDatabase(context);
+        db.runInTransaction(() -> {
+            db.budgetDao().deleteAll();
+            db.budgetDao().upsertAll(budgets);
+        });
+        snapshot = toSnapshot(budgets);
+    }
+
+    // ================= 缓存维护 =================
+
+    private static void init(Context context) {
+        synchronized (BudgetStore.class) {
+            if (observing) return;
+            observing = true;
+            appContext = context.getApplicationContext();
+        }
+        AppDatabase.getDatabase(appContext).getInvalidationTracker()
+                .addObserver(new InvalidationTracker.Observer("budgets") {
+                    @Override
+                    public void onInvalidated(@NonNull Set<String> tables) {
+                        invalidate();
+                    }
+                });
+    }
+
+    /**
+     * 预算表已变化，在后台重新加载；旧快照在新快照就绪前继续可用
+     */
+    private static void invalidate() {
+        final long target;
+        synchronized (BudgetStore.class) {
+            if (appContext == null) return;
+            target = ++version;
+        }
+        AppDatabase.databaseReadExecutor.execute(() -> {
+            synchronized (BudgetStore.class) {
+                if (target != version) return;
+            }
+            try {
+                snapshot = load(appContext);
+            } catch (Exception e) {
+                Log.e(TAG, "加载预算失败", e);
+            }
+        });
+    }
+
+    private static Snapshot current(Context context) {
+        Snapshot s = snapshot;
+        if (s != null) return s;
+        init(context);
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            // 还没预加载就在主线程读取：不等待数据库，本次按空预算返回，并在后台加载
+            invalidate();
+            return EMPTY;
+        }
+        synchronized (BudgetStore.class) {
+            if (snapshot == null) {
+                snapshot = load(appContext);
+            }
+            return snapshot;
+        }
+    }
+
+    // 预算表为空（首次升级、破坏性迁移重建后）而旧键里有预算时，以旧键重建预算表
+    private static Snapshot load(Context context) {
+        List<Budget> budgets = AppDatabase.getDatabase(context).budgetDao().getAllSync();
+        if (budgets.isEmpty() && hasLegacyBudgets(context)) {
+            importLegacyPrefs(context);
+            budgets = AppDatabase.getDatabase(context).budgetDao().getAllSync();
+        }
+        return toSnapshot(budgets);
+    }
+
+    private static boolean hasLegacyBudgets(Context context) {
+        for (Map.Entry<String, ?> entry : legacyPrefs(context).getAll().entrySet()) {
+            if (!(entry.getValue() instanceof Float)) continue;
+            String key = entry.getKey();
+            if (KEY_MONTHLY.equals(key) || key.startsWith(KEY_CATEGORY_PREFIX) || MONTH_KEY_PATTERN.matcher(key).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Snapshot toSnapshot(List<Budget> budgets) {
+        float monthly = 0f;
+        Map<Long, Float> singleMonths = new HashMap<>();
+        Map<String, Float> categories = new HashMap<>();
+        for (Budget b : budgets) {
+            if (b.period == Budget.PERIOD_SINGLE_MONTH) {
+                if (b.category.isEmpty()) singleMonths.put(b.effectiveFrom, (float) b.amount);
+            } else if (b.category.isEmpty()) {
+                monthly = (float) b.amount;
+            } else {
+                categories.put(b.category, (float) b.amount);
+            }
+        }
+        return new Snapshot(monthly, Collections.unmodifiableMap(singleMonths), Collections.unmodifiableMap(categories));
+    }
+
+    private static SharedPreferences legacyPrefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
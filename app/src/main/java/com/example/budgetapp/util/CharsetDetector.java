@@ -0,0 +1,72 @@
+package com.example.budgetapp.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 第三方账单 CSV 的编码识别
+ * 原先先按 GBK 整个解析一遍，没有结果再按 UTF-8 重新读一遍文件。
+ * 现在只看文件开头一段：有 BOM 按 BOM，能按 UTF-8 严格解码就是 UTF-8，否则按 GBK，
+ * 样本从缓冲区里回放，整个文件只读一次。
+ */
+public final class CharsetDetector {
+
+    public static final Charset GBK = Charset.forName("GBK");
+
+    // 样本大小：足够覆盖各家账单的说明行和表头
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    private CharsetDetector() {
+    }
+
+    /**
+     * 识别编码，读取位置保持在流的开头
+     */
+    public static Charset detect(BufferedInputStream in) throws IOException {
+        in.mark(SAMPLE_SIZE);
+        byte[] sample = new byte[SAMPLE_SIZE];
+        int length = 0;
+        int n;
+        while (length < SAMPLE_SIZE && (n = in.read(sample, length, SAMPLE_SIZE - length)) != -1) {
+            length += n;
+        }
+        in.reset();
+        return detect(sample, length, length < SAMPLE_SIZE);
+    }
+
+    static Charset detect(byte[] sample, int length, boolean endOfInput) {
+        if (length >= 3 && (sample[0] & 0xFF) == 0xEF && (sample[1] & 0xFF) == 0xBB && (sample[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && (sample[0] & 0xFF) == 0xFF && (sample[1] & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        if (length >= 2 && (sample[0] & 0xFF) == 0xFE && (sample[1] & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // 样本在多字节字符中间截断时，末尾不完整的字节不算错误
+        boolean valid = !decoder.decode(ByteBuffer.wrap(sample, 0, length),
+                CharBuffer.allocate(length), endOfInput).isError();
+        return valid ? StandardCharsets.UTF_8 : GBK;
+    }
+
+    /**
+     * 按识别出的编码打开文本流（BOM 仍保留在第一行，由调用方过滤）
+     */
+    public static BufferedReader openReader(InputStream inputStream) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(inputStream, SAMPLE_SIZE);
+        return new BufferedReader(new InputStreamReader(in, detect(in)));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.budgetapp.util;
+
+import com.example.budgetapp.database.Transaction;
+import com.example.budgetapp.database.TransactionDao;
+import com.example.budgetapp.database.TransactionFingerprint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 导入查重
+ * 原先每条导入账单都要和内存里的全部账单逐字段比较，3 万条账本导入一年的账单要比较上亿次。
+ * 现在按内容指纹（TransactionFingerprint）每批做一次 IN 查询，只比较指纹相同的候选；
+ * 指纹为空的旧行（分类改名后）按日期查候选。
+ * 只和导入开始前已有的账单比较（id 不大于导入前的最大 id）：文件里本来就有的相同账单（同一时间两笔同样的消费）
+ * 和前面几批刚写入的账单都不算重复，全部照常导入。
+ */
+public final class ImportDeduplicator {
+
+    // SQLite 单条语句参数上限为 999
+    private static final int LOOKUP_BATCH = 500;
+
+    private ImportDeduplicator() {
+    }
+
+    /**
+     * 返回 batch 中需要插入的账单，与库中 id 不大于 maxExistingId 的账单内容相同的被过滤掉（后台线程调用）
+     * @param maxExistingId 导入开始前库中最大的账单 id（TransactionDao.getMaxIdSync）
+     */
+    public static List<Transaction> filter(TransactionDao dao, List<Transaction> batch, int maxExistingId) {
+        List<Transaction> kept = new ArrayList<>(batch.size());
+        if (maxExistingId <= 0) {
+            kept.addAll(batch);
+            return kept;
+        }
+        for (int i = 0; i < batch.size(); i += LOOKUP_BATCH) {
+            List<Transaction> part = batch.subList(i, Math.min(i + LOOKUP_BATCH, batch.size()));
+            Map<Long, List<Transaction>> known = lookup(dao, part, maxExistingId);
+            for (Transaction t : part) {
+                List<Transaction> candidates = known.get(TransactionFingerprint.of(t));
+                if (candidates != null && containsSame(candidates, t)) continue;
+                kept.add(t);
+            }
+        }
+        return kept;
+    }
+
+    // 指纹 -> 库中内容相同的候选账单
+    private static Map<Long, List<Transaction>> lookup(TransactionDao dao, List<Transaction> part, int maxExistingId) {
+        Set<Long> fingerprints = new LinkedHashSet<>();
+        Set<Long> dates = new LinkedHashSet<>();
+        for (Transaction t : part) {
+            fingerprints.add(TransactionFingerprint.of(t));
+            dates.add(t.date);
+        }
+        Map<Long, List<Transaction>> known = new HashMap<>();
+        index(known, dao.getByFingerprintsSync(new ArrayList<>(fingerprints), maxExistingId));
+        index(known, dao.getUnfingerprintedByDatesSync(new ArrayList<>(dates), maxExistingId));
+        return known;
+    }
+
+    private static void index(Map<Long, List<Transaction>> known, List<Transaction> rows) {
+        if (rows == null) return;
+        for (Transaction row : rows) {
+            long fp = TransactionFingerprint.of(row);
+            List<Transaction> list = known.get(fp);
+            if (list == null) {
+                list = new ArrayList<>();
+                known.put(fp, list);
+            }
+            list.add(row);
+        }
+    }
+
+    private static boolean containsSame(List<Transaction> candidates, Transaction t) {
+        for (Transaction c : candidates) {
+            if (TransactionFingerprint.sameContent(c, t)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.budgetapp.util;
+
+import com.example.budgetapp.database.AssetAccount;
+import com.example.budgetapp.database.Transaction;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 流式导入的数据来源（备份 ZIP、第三方账单）
+ * 解析线程把账单逐条放进 RowPipeline 的有界队列，FinanceViewModel.bulkImport 在写线程边取边分批写入，
+ * 内存中最多缓存一个队列和一批账单，与文件大小无关。
+ * 导入中新出现的资产（备份里的资产、第三方账单里未匹配到的账户）先于引用它的账单登记，
+ * 写线程每批写入前通过 takeNewAssets 取出并创建，账单中的临时 assetId 随后改写为真实 id。
+ */
+public interface ImportStream extends AutoCloseable {
+
+    /**
+     * 解析线程的输出端
+     */
+    interface Emitter {
+        // 登记需要新建的资产，须先于引用它的账单调用
+        void asset(AssetAccount asset);
+
+        void record(Transaction record) throws Exception;
+    }
+
+    /**
+     * 在解析线程中读取文件
+     */
+    interface Producer {
+        void produce(Emitter emitter) throws Exception;
+    }
+
+    /**
+     * 取下一条账单，读完返回 null；解析出错时在这里抛出
+     */
+    Transaction next() throws Exception;
+
+    /**
+     * 取出到目前为止登记、尚未取走的新资产
+     */
+    List<AssetAccount> takeNewAssets();
+
+    /**
+     * 预计的账单总数，未知时为 0
+     */
+    int total();
+
+    @Override
+    void close();
+
+    /**
+     * 在独立的解析线程中运行 producer
+     */
+    static ImportStream start(String name, Producer producer) {
+        List<AssetAccount> pending = new ArrayList<>();
+        RowPipeline<Transaction> rows = RowPipeline.start(name, sink -> producer.produce(new Emitter() {
+            @Override
+            public void asset(AssetAccount asset) {
+                synchronized (pending) {
+                    pending.add(asset);
+                }
+            }
+
+            @Override
+            public void record(Transaction record) throws Exception {
+                sink.accept(record);
+            }
+        }));
+        return new ImportStream() {
+            @Override
+            public Transaction next() throws Exception {
+                return rows.next();
+            }
+
+            @Override
+            public List<AssetAccount> takeNewAssets() {
+                synchronized (pending) {
+                    List<AssetAccount> taken = new ArrayList<>(pending);
+                    pending.clear();
+                    return taken;
+                }
+            }
+
+            @Override
+            public int total() {
+                return 0;
+            }
+
+            @Override
+            public void close() {
+                rows.close();
+            }
+        };
+    }
+
+    /**
+     * 已经整体解析在内存中的数据（外部 JSON、飞鸭等小文件导入）
+     */
+    static ImportStream of(List<AssetAccount> assets, List<Transaction> records) {
+        List<AssetAccount> pending = assets != null ? new ArrayList<>(assets) : new ArrayList<>();
+        List<Transaction> txs = records != null ? records : new ArrayList<>();
+        Iterator<Transaction> it = txs.iterator();
+        return new ImportStream() {
+            @Override
+            public Transaction next() {
+                return it.hasNext() ? it.next() : null;
+            }
+
+            @Override
+            public List<AssetAccount> takeNewAssets() {
+                List<AssetAccount> taken = new ArrayList<>(pending);
+                pending.clear();
+                return taken;
+            }
+
+            @Override
+            public int total() {
+                return txs.size();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.budgetapp.util;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aho–Corasick 多关键字匹配自动机
+ * 构建完成后只读，可在多个线程间共享；一次匹配只需线性扫描一遍文本，
+ * 无论关键字有多少个，都不再需要对每个关键字单独调用 String.contains。
+ * 每个关键字带一个整数值：
+ * - matchFlags 返回文本中命中的所有关键字的值按位或的结果（适合“支出/收入”这种分类标记）
+ * - firstValue 返回文本中最先出现的关键字的值（适合“关键字 -> 资产ID”这种映射）
+ */
+public class KeywordAutomaton {
+
+    private static class State {
+        final Map<Character, State> next = new HashMap<>();
+        State fail;
+        // 以该状态结尾的关键字（含 fail 链上继承来的）中，按位或后的值
+        int flags;
+        // 以该状态结尾的最长关键字的值；没有关键字在此结尾时为 -1
+        int value = -1;
+        // 沿 fail 链能找到的第一个有值的状态，用于 firstValue 快速取值
+        State output;
+    }
+
+    private final State root = new State();
+    private boolean built = false;
+    private int size = 0;
+
+    /**
+     * 添加关键字；同一关键字重复添加时，matchFlags 合并两者的值，firstValue 以先添加的为准
+     */
+    public void add(String keyword, int value) {
+        if (built) throw new IllegalStateException("自动机已构建，不能再添加关键字");
+        if (keyword == null || keyword.isEmpty()) return;
+        State state = root;
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            State child = state.next.get(c);
+            if (child == null) {
+                child = new State();
+                state.next.put(c, child);
+            }
+            state = child;
+        }
+        state.flags |= value;
+        if (state.value == -1) {
+            state.value = value;
+            size++;
+        }
+    }
+
+    /**
+     * 按广度优先计算 fail 指针，之后自动机只读
+     */
+    public KeywordAutomaton build() {
+        if (built) return this;
+        ArrayDeque<State> queue = new ArrayDeque<>();
+        root.fail = root;
+        for (State child : root.next.values()) {
+            child.fail = root;
+            child.output = child.value != -1 ? child : null;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            State state = queue.poll();
+            for (Map.Entry<Character, State> entry : state.next.entrySet()) {
+                char c = entry.getKey();
+                State child = entry.getValue();
+                State f = state.fail;
+                while (f != root && !f.next.containsKey(c)) {
+                    f = f.fail;
+                }
+                State target = f.next.get(c);
+                child.fail = (target != null && target != child) ? target : root;
+                child.flags |= child.fail.flags;
+                child.output = child.value != -1 ? child : child.fail.output;
+                queue.add(child);
+            }
+        }
+        built = true;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 返回文本中命中的所有关键字的值按位或的结果，未命中返回 0
+     */
+    public int matchFlags(String text) {
+        if (size == 0 || text == null) return 0;
+        int result = 0;
+        State state = root;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            result |= state.flags;
+        }
+        return result;
+    }
+
+    /**
+     * 返回文本中最先结束的关键字的值（同一位置以最长的为准），未命中返回 -1
+     */
+    public int firstValue(String text) {
+        if (size == 0 || text == null) return -1;
+        State state = root;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            if (state.output != null) {
+                return state.output.value;
+            }
+        }
+        return -1;
+    }
+
+    private State step(State state, char c) {
+        while (true) {
+            State next = state.next.get(c);
+            if (next != null) return next;
+            if (state == root) return root;
+            state = state.fail;
+        }
+    }
+}
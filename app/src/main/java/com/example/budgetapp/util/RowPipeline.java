@@ -0,0 +1,97 @@
+package com.example.budgetapp.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 导入用的行流水线：解析线程逐行读文件放进有界队列，调用方一边取一边转换成账单
+ * 文件解析（解压、XML/字符解码）和账单映射（日期解析、分类/资产匹配）并行进行；
+ * 队列满时解析线程等待，内存中最多缓存 CAPACITY 行，与文件大小无关。
+ * 用法与 BufferedReader.readLine 类似：
+ * <pre>
+ * try (RowPipeline&lt;String&gt; lines = RowPipeline.start("csv", sink -> ...)) {
+ *     String line;
+ *     while ((line = lines.next()) != null) { ... }
+ * }
+ * </pre>
+ */
+public final class RowPipeline<T> implements AutoCloseable {
+
+    /**
+     * 接收解析出的一行
+     */
+    public interface Sink<T> {
+        void accept(T row) throws Exception;
+    }
+
+    /**
+     * 在解析线程中读取文件，把每一行交给 sink
+     */
+    public interface Source<T> {
+        void produce(Sink<T> sink) throws Exception;
+    }
+
+    private static final int CAPACITY = 1024;
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread producer;
+    private volatile Exception failure;
+    private volatile boolean closed;
+    private boolean finished;
+
+    private RowPipeline(String name, Source<T> source) {
+        producer = new Thread(() -> {
+            try {
+                source.produce(row -> {
+                    if (closed) throw new CancellationException();
+                    queue.put(row);
+                });
+            } catch (Exception e) {
+                if (!closed) failure = e;
+            } finally {
+                try {
+                    if (!closed) queue.put(END);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, "import-" + name);
+    }
+
+    /**
+     * 启动解析线程
+     */
+    public static <T> RowPipeline<T> start(String name, Source<T> source) {
+        RowPipeline<T> pipeline = new RowPipeline<>(name, source);
+        pipeline.producer.start();
+        return pipeline;
+    }
+
+    /**
+     * 取下一行，读完返回 null；解析线程出错时在这里抛出
+     */
+    @SuppressWarnings("unchecked")
+    public T next() throws Exception {
+        if (finished) return null;
+        Object item = queue.take();
+        if (item == END) {
+            finished = true;
+            if (failure != null) throw failure;
+            return null;
+        }
+        return (T) item;
+    }
+
+    /**
+     * 提前结束（读到结尾标记或出错）时停止解析线程
+     */
+    @Override
+    public void close() {
+        if (finished) return;
+        finished = true;
+        closed = true;
+        producer.interrupt();
+        queue.clear();
+    }
+}
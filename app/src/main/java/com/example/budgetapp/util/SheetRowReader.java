@@ -0,0 +1,188 @@
+package com.example.budgetapp.util;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 逐行读取 Excel 账单第一个工作表，每行是按列号对齐的单元格文本（空单元格为 ""）
+ * xlsx 用 POI 的 SAX 事件接口边解析边输出，不再像 WorkbookFactory 那样把整个表格建成对象树，
+ * 内存占用与行数无关；旧版 xls 文件仍交给 WorkbookFactory 读取。
+ * 单元格文本与原 getCellText 一致：日期格式的单元格为 "yyyy-MM-dd HH:mm:ss"，数字不带千分位。
+ */
+public final class SheetRowReader {
+
+    private SheetRowReader() {
+    }
+
+    /**
+     * 读取第一个工作表的所有行（在解析线程中调用）
+     * 不是 Excel 文件时抛出 IOException，调用方可据此改按 CSV 解析
+     */
+    public static void read(Context context, Uri uri, RowPipeline.Sink<List<String>> sink) throws Exception {
+        // 先落到缓存目录：OPCPackage 从文件按需读取压缩条目，直接给输入流会把所有条目解压到内存
+        File tmp = File.createTempFile("import_", ".tmp", context.getCacheDir());
+        try {
+            try (InputStream in = context.getContentResolver().openInputStream(uri);
+                 OutputStream out = new FileOutputStream(tmp)) {
+                if (in == null) throw new IOException("无法打开文件");
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            }
+
+            FileMagic magic = FileMagic.valueOf(tmp);
+            if (magic == FileMagic.OOXML) {
+                readXlsx(tmp, sink);
+            } else if (magic == FileMagic.OLE2) {
+                readWorkbook(tmp, sink);
+            } else {
+                throw new IOException("不是 Excel 文件: " + magic);
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+    }
+
+    private static void readXlsx(File file, RowPipeline.Sink<List<String>> sink) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            if (!sheets.hasNext()) return;
+
+            RowCollector collector = new RowCollector(sink);
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings, collector, new CellTextFormatter(), false));
+                parser.parse(new InputSource(sheet));
+            } catch (SAXException | RuntimeException e) {
+                // 下游取消或出错时，抛出从 SAX 回调里带出来的原始异常
+                if (collector.error != null) throw collector.error;
+                throw e;
+            }
+        }
+    }
+
+    // 旧版 xls（OLE2）没有流式接口，沿用 WorkbookFactory
+    private static void readWorkbook(File file, RowPipeline.Sink<List<String>> sink) throws Exception {
+        try (Workbook workbook = WorkbookFactory.create(file, null, true)) {
+            Sheet sheet = workbook.getSheetAt(0);
+            for (Row row : sheet) {
+                if (row == null) continue;
+                List<String> cells = new ArrayList<>();
+                for (int i = 0; i < row.getLastCellNum(); i++) {
+                    cells.add(getCellText(row.getCell(i)));
+                }
+                sink.accept(cells);
+            }
+        }
+    }
+
+    private static String getCellText(Cell cell) {
+        if (cell == null) return "";
+        switch (cell.getCellType()) {
+            case STRING:
+                return cell.getStringCellValue().trim();
+            case NUMERIC:
+                if (DateUtil.isCellDateFormatted(cell)) {
+                    return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(cell.getDateCellValue());
+                }
+                // 返回纯数字，避免科学计数法导致的解析问题
+                return String.valueOf(cell.getNumericCellValue());
+            case BOOLEAN:
+                return String.valueOf(cell.getBooleanCellValue());
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * 把 SAX 回调的单元格按列号拼成一行，行结束时交给下游
+     */
+    private static class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowPipeline.Sink<List<String>> sink;
+        private List<String> cells = new ArrayList<>();
+        private int nextCol;
+        Exception error;
+
+        RowCollector(RowPipeline.Sink<List<String>> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells = new ArrayList<>();
+            nextCol = 0;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int col = cellReference != null ? new CellReference(cellReference).getCol() : nextCol;
+            while (cells.size() < col) cells.add("");
+            cells.add(formattedValue != null ? formattedValue.trim() : "");
+            nextCol = col + 1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            try {
+                sink.accept(cells);
+            } catch (Exception e) {
+                // SheetContentsHandler 不能抛受检异常，包一层让 SAX 解析中止
+                error = e;
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * 数字单元格：日期格式输出 "yyyy-MM-dd HH:mm:ss"，其他输出纯数字（不按单元格格式加千分位、货币符号）
+     */
+    private static class CellTextFormatter extends DataFormatter {
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                return dateFormat.format(DateUtil.getJavaDate(value));
+            }
+            return String.valueOf(value);
+        }
+    }
+}
@@ -6,6 +6,8 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
@@ -16,23 +18,43 @@ import androidx.lifecycle.Transformations;
 import com.example.budgetapp.database.AppDatabase;
 import com.example.budgetapp.database.AssetAccount;
 import com.example.budgetapp.database.AssetAccountDao;
+import com.example.budgetapp.database.BucketAmount;
+import com.example.budgetapp.database.CategoryAmount;
+import com.example.budgetapp.database.DailySummaryDao;
+import com.example.budgetapp.database.DataChange;
+import com.example.budgetapp.database.DataChangeFeed;
 import com.example.budgetapp.database.Goal;
 import com.example.budgetapp.database.GoalDao;
+import com.example.budgetapp.database.OvertimeTotals;
 import com.example.budgetapp.database.RenewalItem;
 import com.example.budgetapp.database.Transaction;
 import com.example.budgetapp.database.TransactionDao;
+import com.example.budgetapp.database.TransactionSearchIndex;
+import com.example.budgetapp.util.AssetLedger;
+import com.example.budgetapp.util.BudgetLedger;
+import com.example.budgetapp.util.BudgetStore;
+import com.example.budgetapp.util.ImportDeduplicator;
+import com.example.budgetapp.util.ImportStream;
 import com.example.budgetapp.widget.MonthSummaryWidget;
 import com.example.budgetapp.widget.TodaySummaryWidget;
 
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 核心 ViewModel：管理所有财务数据，包括账单、资产和预算存储目标。
  */
 public class FinanceViewModel extends AndroidViewModel {
+    // 首页日历缓存的月份数：当前月、前后相邻月，再留几个来回切换过的月份
+    private static final int RANGE_CACHE_MONTHS = 6;
+
     private final TransactionDao transactionDao;
     private final AssetAccountDao assetDao;
     private final GoalDao goalDao; // 新增 GoalDao
+    private final DailySummaryDao dailySummaryDao; // 按天预聚合汇总
     private final AppDatabase database; // 显式持有数据库引用以供 DAO 访问
 
     private final LiveData<List<Transaction>> allTransactions;
@@ -45,6 +67,15 @@ public class FinanceViewModel extends AndroidViewModel {
 
     // 动态观察该时间段内的账单
     private final LiveData<List<Transaction>> rangeTransactions;
+    // 【新增】按月份范围缓存上面的查询结果，切换月份时先从内存显示
+    private final RangeCache<List<Transaction>> rangeTransactionCache = new RangeCache<>(RANGE_CACHE_MONTHS);
+
+    // 【新增】变更通知：写入提交后发布它影响的账单日期、资产和分类，页面据此判断是否需要刷新
+    private final MutableLiveData<DataChange> dataChanges = new MutableLiveData<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 尚未交给主线程的变化（由 dataChanges 加锁保护），主线程来不及处理时多次变化合并成一次
+    private DataChange pendingChange;
+    private final DataChangeFeed.Listener changeListener = this::onDataChanged;
     public FinanceViewModel(@NonNull Application application) {
         super(application);
         // 1. 获取数据库实例
@@ -54,6 +85,7 @@ public class FinanceViewModel extends AndroidViewModel {
         transactionDao = database.transactionDao();
         assetDao = database.assetAccountDao();
         goalDao = database.goalDao(); // 初始化新 DAO
+        dailySummaryDao = database.dailySummaryDao();
 
         // 3. 初始化 LiveData (观察者模式)
         allTransactions = transactionDao.getAllTransactions();
@@ -61,75 +93,119 @@ public class FinanceViewModel extends AndroidViewModel {
         allGoals = goalDao.getAllGoals(); // 获取所有目标
 
         // 新增：利用 Transformations.switchMap 实现只要 currentRangeFilter 变化，就自动去数据库查新范围的数据
+        // 范围内的数据只在变更通知与该范围相交时重新查询（RangeLiveData），其他月份的写入不会引起刷新
         rangeTransactions = Transformations.switchMap(currentRangeFilter, range -> {
             if (range == null || range.length != 2) {
                 return new MutableLiveData<>();
             }
-            return transactionDao.getTransactionsByRangeLive(range[0], range[1]);
+            return new RangeLiveData<>(range[0], range[1],
+                    () -> transactionDao.getTransactionsByRangeDescSync(range[0], range[1]), rangeTransactionCache);
         });
+        // 缓存先于 RangeLiveData 订阅，同一次变化总是先作废缓存
+        DataChangeFeed.addListener(rangeTransactionCache);
+        DataChangeFeed.addListener(changeListener);
+
+        // 升级数据库或批量导入后，全文索引的待更新队列可能积压较多，启动时在后台处理掉
+        TransactionSearchIndex.catchUpIfPending(database);
+        // 预算配置常驻内存，提前加载，页面读取时不再等待数据库
+        BudgetStore.preload(application);
+        // 每天核对一次资产余额与流水
+        AssetLedger.reconcileIfDue(application);
     }
 
     /**
      * 【新增】同步增加账单及对应的双边资产余额（用于 AI 记账和正常入账）
+     * 余额一律经 AssetLedger 做 SQL 增量更新并记流水，不再读出整行修改后写回
      */
     public void addTransactionWithAssetSync(Transaction transaction) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
-            database.runInTransaction(() -> {
-                // 1. 处理己方支付账户（如微信、支付宝）的资产变更
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
+            DataChangeFeed.write(database, DataChange.builder(), () -> {
+                // 1. 先插入账单记录，流水里记下对应的账单 id
+                int txId = (int) transactionDao.insert(transaction);
+
+                // 2. 处理己方支付账户（如微信、支付宝）的资产变更
                 if (transaction.assetId != 0) {
                     AssetAccount asset = assetDao.getAssetByIdSync(transaction.assetId);
                     if (asset != null) {
-                        applyAssetBalance(asset, transaction); // 调用已有的加减逻辑
-                        assetDao.update(asset);
+                        AssetLedger.move(database, asset.id, AssetLedger.balanceDelta(asset.type, transaction),
+                                txId, AssetLedger.REASON_TRANSACTION);
                     }
                 }
 
-                // 2. 处理对方资产（负债/借出对象）的变更
-                if (transaction.type == 3 || transaction.type == 4) {
-                    // 类型3（负债借入）或类型4（借出）：增加对应的负债/借出账户金额
-                    if (transaction.targetObject != null && !transaction.targetObject.isEmpty()) {
-                        int targetType = (transaction.type == 3) ? 1 : 2;
-                        AssetAccount targetAccount = assetDao.getAssetByNameAndType(transaction.targetObject, targetType);
-                        if (targetAccount == null) {
-                            // 如果是新对象，直接创建这个资产
-                            targetAccount = new AssetAccount(transaction.targetObject, transaction.amount, targetType);
-                            assetDao.insert(targetAccount);
-                        } else {
-                            // 如果已有对象，累加欠款/借出额
-                            targetAccount.amount += transaction.amount;
-                            assetDao.update(targetAccount);
-                        }
-                    }
-                } else if (transaction.type == 0 && transaction.note != null && !transaction.note.isEmpty()) {
-                    // 类型0（支出）：检查备注是否匹配负债账户名称，如果匹配则减少负债
-                    AssetAccount liabilityAccount = assetDao.getAssetByNameAndType(transaction.note, 1);
-                    if (liabilityAccount != null) {
-                        liabilityAccount.amount -= transaction.amount;
-                        // 如果负债已还清，可以选择删除账户或保留为0
-                        if (liabilityAccount.amount <= 0) {
-                            liabilityAccount.amount = 0;
-                        }
-                        assetDao.update(liabilityAccount);
-                    }
-                } else if (transaction.type == 1 && transaction.note != null && !transaction.note.isEmpty()) {
-                    // 类型1（收入）：检查备注是否匹配借出账户名称，如果匹配则减少借出
-                    AssetAccount lentAccount = assetDao.getAssetByNameAndType(transaction.note, 2);
-                    if (lentAccount != null) {
-                        lentAccount.amount -= transaction.amount;
-                        // 如果借出已收回，可以选择删除账户或保留为0
-                        if (lentAccount.amount <= 0) {
-                            lentAccount.amount = 0;
+                // 3. 处理对方资产（负债/借出对象）的变更
+                applyCounterparty(transaction, txId);
+            });
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
+    }
+
+    /**
+     * 应用账单对对方资产（负债/借出对象）的影响（需在事务中调用）
+     */
+    private void applyCounterparty(Transaction tx, int txId) {
+        if (tx.type == 3 || tx.type == 4) {
+            // 类型3（负债借入）或类型4（借出）：增加对应的负债/借出账户金额
+            if (tx.targetObject != null && !tx.targetObject.isEmpty()) {
+                int targetType = (tx.type == 3) ? 1 : 2;
+                AssetAccount targetAccount = assetDao.getAssetByNameAndType(tx.targetObject, targetType);
+                if (targetAccount == null) {
+                    // 如果是新对象，直接创建这个资产
+                    AssetLedger.open(database, new AssetAccount(tx.targetObject, tx.amount, targetType));
+                } else {
+                    // 如果已有对象，累加欠款/借出额
+                    AssetLedger.move(database, targetAccount.id, tx.amount, txId, AssetLedger.REASON_COUNTERPARTY);
+                }
+            }
+        } else if (tx.type == 0 && tx.note != null && !tx.note.isEmpty()) {
+            // 类型0（支出）：检查备注是否匹配负债账户名称，如果匹配则减少负债（还清后保留为0）
+            AssetAccount liabilityAccount = assetDao.getAssetByNameAndType(tx.note, 1);
+            if (liabilityAccount != null) {
+                AssetLedger.moveAtLeastZero(database, liabilityAccount.id, -tx.amount, txId, AssetLedger.REASON_COUNTERPARTY);
+            }
+        } else if (tx.type == 1 && tx.note != null && !tx.note.isEmpty()) {
+            // 类型1（收入）：检查备注是否匹配借出账户名称，如果匹配则减少借出（收回后保留为0）
+            AssetAccount lentAccount = assetDao.getAssetByNameAndType(tx.note, 2);
+            if (lentAccount != null) {
+                AssetLedger.moveAtLeastZero(database, lentAccount.id, -tx.amount, txId, AssetLedger.REASON_COUNTERPARTY);
+            }
+        }
+    }
+
+    /**
+     * 撤回账单对对方资产（负债/借出对象）的影响（需在事务中调用）
+     * @param deleteWhenCleared 为 true 时（撤回账单），负债/借出对象的金额归零后直接删除该资产
+     */
+    private void revertCounterparty(Transaction tx, boolean deleteWhenCleared) {
+        if (tx.type == 3 || tx.type == 4) {
+            // 撤回负债借入或借出：减少对应账户金额
+            if (tx.targetObject != null && !tx.targetObject.isEmpty()) {
+                int targetType = (tx.type == 3) ? 1 : 2; // 3->负债区(1), 4->借出区(2)
+                AssetAccount targetAccount = assetDao.getAssetByNameAndType(tx.targetObject, targetType);
+                if (targetAccount != null) {
+                    if (deleteWhenCleared) {
+                        AssetLedger.move(database, targetAccount.id, -tx.amount, tx.id, AssetLedger.REASON_REVERT);
+                        // 【预期效果实现】：如果撤回后，该对象欠款/借款金额归零（处理浮点精度 <= 0.01），则直接删除该资产
+                        Double balance = assetDao.getBalanceSync(targetAccount.id);
+                        if (balance != null && balance <= 0.01) {
+                            AssetLedger.delete(database, targetAccount);
                         }
-                        assetDao.update(lentAccount);
+                    } else {
+                        AssetLedger.moveAtLeastZero(database, targetAccount.id, -tx.amount, tx.id, AssetLedger.REASON_REVERT);
                     }
                 }
-
-                // 3. 最终把账单记录插进数据库
-                transactionDao.insert(transaction);
-            });
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-            notifyWidgetUpdate(); // 事务完成后通知桌面小部件刷新
-        });
+            }
+        } else if (tx.type == 0 && tx.note != null && !tx.note.isEmpty()) {
+            // 撤回支出还款：增加负债
+            AssetAccount liabilityAccount = assetDao.getAssetByNameAndType(tx.note, 1);
+            if (liabilityAccount != null) {
+                AssetLedger.move(database, liabilityAccount.id, tx.amount, tx.id, AssetLedger.REASON_REVERT);
+            }
+        } else if (tx.type == 1 && tx.note != null && !tx.note.isEmpty()) {
+            // 撤回收入收款：增加借出
+            AssetAccount lentAccount = assetDao.getAssetByNameAndType(tx.note, 2);
+            if (lentAccount != null) {
+                AssetLedger.move(database, lentAccount.id, tx.amount, tx.id, AssetLedger.REASON_REVERT);
+            }
+        }
     }
 
     // ================= 账单记录 (Transaction) 相关 =================
@@ -139,167 +215,223 @@ public class FinanceViewModel extends AndroidViewModel {
     }
 
     public void addTransaction(Transaction transaction) {
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
+            DataChangeFeed.write(database, DataChange.builder(), () -> transactionDao.insert(transaction));
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
+    }
+
+    // ================= 批量导入 =================
+
+    // 每批插入的账单条数
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+
+    /**
+     * 批量导入进度：finished 为 true 时表示导入结束（error 不为空表示失败且已整体回滚）
+     * duplicates 为查重跳过的账单数，done 包含这部分；流式导入时 total 未知，为 0
+     */
+    public static class ImportProgress {
+        public final int done;
+        public final int total;
+        public final boolean finished;
+        public final String error;
+        public final int duplicates;
+        // 新建的资产数
+        public final int assets;
+
+        ImportProgress(int done, int total, boolean finished, String error) {
+            this(done, total, finished, error, 0, 0);
+        }
+
+        ImportProgress(int done, int total, boolean finished, String error, int duplicates, int assets) {
+            this.done = done;
+            this.total = total;
+            this.finished = finished;
+            this.error = error;
+            this.duplicates = duplicates;
+            this.assets = assets;
+        }
+
+        /**
+         * 实际写入的账单数
+         */
+        public int imported() {
+            return done - duplicates;
+        }
+    }
+
+    /**
+     * 【新增】批量导入资产和账单（已整体解析在内存中的数据）
+     *
+     * @param newAssets 需要新建的资产；其 id 若不为 0，视为导入文件里的临时 id，账单中引用它的 assetId 会改写为真实 id
+     * @param records 需要插入的账单（id 会被重置为 0 由数据库生成）
+     * @param deriveNewAssetBalances 为 true 时，本次新建资产的余额按其名下导入账单汇总后一次性调整（第三方账单导入时新建的账户初始余额为 0）；
+     *                               备份恢复的资产自带余额，应传 false
+     */
+    public LiveData<ImportProgress> bulkImport(List<AssetAccount> newAssets, List<Transaction> records, boolean deriveNewAssetBalances) {
+        return bulkImport(newAssets, records, deriveNewAssetBalances, false);
+    }
+
+    /**
+     * @param skipDuplicates 为 true 时每批插入前经 ImportDeduplicator 查重，与导入前已有账单内容相同的跳过并计入 duplicates
+     */
+    public LiveData<ImportProgress> bulkImport(List<AssetAccount> newAssets, List<Transaction> records,
+                                               boolean deriveNewAssetBalances, boolean skipDuplicates) {
+        return bulkImport(ImportStream.of(newAssets, records), deriveNewAssetBalances, skipDuplicates);
+    }
+
+    /**
+     * 流式批量导入（备份恢复、第三方账单导入共用）
+     * 写线程从 stream 的有界队列中边取边写：每凑满 IMPORT_CHUNK_SIZE 条先创建期间登记的新资产，再查重、insertAll，
+     * 全部写入在一个数据库事务里，失败整体回滚；结束后只刷新一次小组件、只登记一次自动同步，不再逐条触发。
+     * stream 在导入结束后关闭。
+     */
+    public LiveData<ImportProgress> bulkImport(ImportStream stream, boolean deriveNewAssetBalances, boolean skipDuplicates) {
+        MutableLiveData<ImportProgress> progress = new MutableLiveData<>();
+        final int total = stream.total();
+        progress.setValue(new ImportProgress(0, total, false, null));
+
+        // 自行捕获事务异常并报告进度，单独执行，不与其他写操作合并
         AppDatabase.databaseWriteExecutor.execute(() -> {
-            transactionDao.insert(transaction);
+            // 已处理账单数、查重跳过数、新建资产数
+            final int[] counts = new int[3];
+            try {
+                // 导入范围不定，按全部数据变化通知
+                DataChangeFeed.write(database, DataChange.builder().all(), () -> {
+                    // 查重只和导入开始前已有的账单比较
+                    int maxExistingId = skipDuplicates ? transactionDao.getMaxIdSync() : 0;
+                    // 临时 id -> 真实 id 的映射，以及本次新建资产的类型
+                    java.util.Map<Integer, Integer> assetIdMap = new java.util.HashMap<>();
+                    java.util.Map<Integer, Integer> createdAssetTypes = new java.util.HashMap<>();
+                    java.util.Map<Integer, Double> balanceDeltas = new java.util.HashMap<>();
+                    boolean ended = false;
+                    while (!ended) {
+                        // 1. 从队列取一批账单
+                        List<Transaction> batch = new java.util.ArrayList<>(IMPORT_CHUNK_SIZE);
+                        while (batch.size() < IMPORT_CHUNK_SIZE) {
+                            Transaction t = nextRecord(stream);
+                            if (t == null) {
+                                ended = true;
+                                break;
+                            }
+                            batch.add(t);
+                        }
+
+                        // 2. 先创建这批账单可能引用的新资产（资产总是先于引用它的账单登记）
+                        for (AssetAccount asset : stream.takeNewAssets()) {
+                            int importId = asset.id;
+                            asset.id = 0;
+                            int realId = AssetLedger.open(database, asset);
+                            if (importId != 0) assetIdMap.put(importId, realId);
+                            createdAssetTypes.put(realId, asset.type);
+                            counts[2]++;
+                        }
+                        if (batch.isEmpty()) break;
+
+                        // 3. 查重、插入账单，同时按资产汇总余额变化量
+                        List<Transaction> chunk = skipDuplicates ? ImportDeduplicator.filter(transactionDao, batch, maxExistingId) : batch;
+                        counts[1] += batch.size() - chunk.size();
+                        for (Transaction t : chunk) {
+                            t.id = 0;
+                            Integer mapped = assetIdMap.get(t.assetId);
+                            if (mapped != null) t.assetId = mapped;
+                            Integer assetType = createdAssetTypes.get(t.assetId);
+                            if (deriveNewAssetBalances && assetType != null) {
+                                double delta = AssetLedger.balanceDelta(assetType, t);
+                                if (delta != 0) balanceDeltas.merge(t.assetId, delta, Double::sum);
+                            }
+                        }
+                        transactionDao.insertAll(chunk);
+                        counts[0] += batch.size();
+                        progress.postValue(new ImportProgress(counts[0], total, false, null, counts[1], counts[2]));
+                    }
+
+                    // 4. 每个资产只更新一次余额
+                    for (java.util.Map.Entry<Integer, Double> entry : balanceDeltas.entrySet()) {
+                        AssetLedger.move(database, entry.getKey(), Math.round(entry.getValue() * 100.0) / 100.0,
+                                0, AssetLedger.REASON_TRANSACTION);
+                    }
+                });
+                progress.postValue(new ImportProgress(counts[0], counts[0], true, null, counts[1], counts[2]));
+            } catch (Exception e) {
+                progress.postValue(new ImportProgress(0, total, true, e.getMessage() != null ? e.getMessage() : e.toString()));
+                return;
+            } finally {
+                stream.close();
+            }
             com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-            notifyWidgetUpdate(); // 【新增】
         });
+        return progress;
+    }
+
+    // 解析错误包装为非受检异常抛出，使导入事务回滚
+    private static Transaction nextRecord(ImportStream stream) {
+        try {
+            return stream.next();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage() != null ? e.getMessage() : e.toString(), e);
+        }
     }
 
     public void deleteTransaction(Transaction transaction) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
-            transactionDao.delete(transaction);
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-            notifyWidgetUpdate(); // 【新增】
-        });
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
+            DataChangeFeed.write(database, DataChange.builder().transaction(transaction),
+                    () -> transactionDao.delete(transaction));
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
     }
 
     public void updateTransaction(Transaction transaction) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
-            transactionDao.update(transaction);
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-            notifyWidgetUpdate(); // 【新增】
-        });
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
+            DataChange.Builder change = DataChange.builder();
+            DataChangeFeed.write(database, change, () -> {
+                // 修改前所在的日期 / 分类也需要刷新
+                for (Transaction old : transactionDao.getTransactionsByIdsSync(Collections.singletonList(transaction.id))) {
+                    change.transaction(old);
+                }
+                transactionDao.update(transaction);
+            });
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
     }
 
     /**
      * 【增强】同步修改历史账单及对应的双边资产余额
      */
     public void updateTransactionWithAssetSync(Transaction oldTx, Transaction newTx) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
-            database.runInTransaction(() -> {
-                // 1. 处理己方支付账户（如微信、支付宝）的资产变更
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
+            DataChangeFeed.write(database, DataChange.builder().transaction(oldTx), () -> {
+                // 1. 处理己方支付账户（如微信、支付宝）的资产变更：先撤回旧金额，再应用新金额
                 if (oldTx.assetId == newTx.assetId && oldTx.assetId != 0) {
                     AssetAccount asset = assetDao.getAssetByIdSync(oldTx.assetId);
                     if (asset != null) {
-                        revertAssetBalance(asset, oldTx); // 先撤回旧金额
-                        applyAssetBalance(asset, newTx);  // 再应用新金额
-                        assetDao.update(asset);
+                        double delta = AssetLedger.balanceDelta(asset.type, newTx) - AssetLedger.balanceDelta(asset.type, oldTx);
+                        AssetLedger.move(database, asset.id, delta, newTx.id, AssetLedger.REASON_TRANSACTION);
                     }
                 } else {
                     if (oldTx.assetId != 0) {
                         AssetAccount oldAsset = assetDao.getAssetByIdSync(oldTx.assetId);
                         if (oldAsset != null) {
-                            revertAssetBalance(oldAsset, oldTx);
-                            assetDao.update(oldAsset);
+                            AssetLedger.move(database, oldAsset.id, -AssetLedger.balanceDelta(oldAsset.type, oldTx),
+                                    oldTx.id, AssetLedger.REASON_REVERT);
                         }
                     }
                     if (newTx.assetId != 0) {
                         AssetAccount newAsset = assetDao.getAssetByIdSync(newTx.assetId);
                         if (newAsset != null) {
-                            applyAssetBalance(newAsset, newTx);
-                            assetDao.update(newAsset);
+                            AssetLedger.move(database, newAsset.id, AssetLedger.balanceDelta(newAsset.type, newTx),
+                                    newTx.id, AssetLedger.REASON_TRANSACTION);
                         }
                     }
                 }
 
-                // 2. 处理对方资产（负债/借出对象）的变更
-                // a) 撤回旧交易对负债/借出账户的影响
-                if (oldTx.type == 3 || oldTx.type == 4) {
-                    // 旧交易是负债借入或借出：减少对应账户金额
-                    if (oldTx.targetObject != null && !oldTx.targetObject.isEmpty()) {
-                        int oldTargetType = (oldTx.type == 3) ? 1 : 2;
-                        AssetAccount oldTargetAccount = assetDao.getAssetByNameAndType(oldTx.targetObject, oldTargetType);
-                        if (oldTargetAccount != null) {
-                            oldTargetAccount.amount -= oldTx.amount;
-                            if (oldTargetAccount.amount <= 0) {
-                                oldTargetAccount.amount = 0;
-                            }
-                            assetDao.update(oldTargetAccount);
-                        }
-                    }
-                } else if (oldTx.type == 0 && oldTx.note != null && !oldTx.note.isEmpty()) {
-                    // 旧交易是支出还款：撤回时增加负债
-                    AssetAccount liabilityAccount = assetDao.getAssetByNameAndType(oldTx.note, 1);
-                    if (liabilityAccount != null) {
-                        liabilityAccount.amount += oldTx.amount;
-                        assetDao.update(liabilityAccount);
-                    }
-                } else if (oldTx.type == 1 && oldTx.note != null && !oldTx.note.isEmpty()) {
-                    // 旧交易是收入收款：撤回时增加借出
-                    AssetAccount lentAccount = assetDao.getAssetByNameAndType(oldTx.note, 2);
-                    if (lentAccount != null) {
-                        lentAccount.amount += oldTx.amount;
-                        assetDao.update(lentAccount);
-                    }
-                }
-                
-                // b) 应用新交易对负债/借出账户的影响
-                if (newTx.type == 3 || newTx.type == 4) {
-                    // 新交易是负债借入或借出：增加对应账户金额
-                    if (newTx.targetObject != null && !newTx.targetObject.isEmpty()) {
-                        int newTargetType = (newTx.type == 3) ? 1 : 2;
-                        AssetAccount newTargetAccount = assetDao.getAssetByNameAndType(newTx.targetObject, newTargetType);
-                        if (newTargetAccount == null) {
-                            newTargetAccount = new AssetAccount(newTx.targetObject, newTx.amount, newTargetType);
-                            assetDao.insert(newTargetAccount);
-                        } else {
-                            newTargetAccount.amount += newTx.amount;
-                            assetDao.update(newTargetAccount);
-                        }
-                    }
-                } else if (newTx.type == 0 && newTx.note != null && !newTx.note.isEmpty()) {
-                    // 新交易是支出还款：减少负债
-                    AssetAccount liabilityAccount = assetDao.getAssetByNameAndType(newTx.note, 1);
-                    if (liabilityAccount != null) {
-                        liabilityAccount.amount -= newTx.amount;
-                        if (liabilityAccount.amount <= 0) {
-                            liabilityAccount.amount = 0;
-                        }
-                        assetDao.update(liabilityAccount);
-                    }
-                } else if (newTx.type == 1 && newTx.note != null && !newTx.note.isEmpty()) {
-                    // 新交易是收入收款：减少借出
-                    AssetAccount lentAccount = assetDao.getAssetByNameAndType(newTx.note, 2);
-                    if (lentAccount != null) {
-                        lentAccount.amount -= newTx.amount;
-                        if (lentAccount.amount <= 0) {
-                            lentAccount.amount = 0;
-                        }
-                        assetDao.update(lentAccount);
-                    }
-                }
+                // 2. 处理对方资产（负债/借出对象）的变更：撤回旧交易的影响，再应用新交易的影响
+                revertCounterparty(oldTx, false);
+                applyCounterparty(newTx, newTx.id);
 
                 // 3. 最终更新数据库中的账单记录
                 transactionDao.update(newTx);
             });
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-            notifyWidgetUpdate(); // 【新增】事务完成后通知刷新
-        });
-    }
-
-    // 【增强】撤回账单对己方资产的影响 (兼容 0支出, 1收入, 3负债, 4借出)
-    private void revertAssetBalance(AssetAccount asset, Transaction tx) {
-        if (asset.type == 0) {
-            // 普通资产账户：撤回支出(0)和借出(4)余额增加，撤回收入(1)和负债借入(3)余额减少
-            if (tx.type == 0 || tx.type == 4) asset.amount += tx.amount;
-            else if (tx.type == 1 || tx.type == 3) asset.amount -= tx.amount;
-        } else if (asset.type == 1) {
-            // 负债账户(信用卡)：撤回支出(0)和借出(4)负债减少，撤回收入(1)和负债借入(3)负债增加
-            if (tx.type == 0 || tx.type == 4) asset.amount -= tx.amount;
-            else if (tx.type == 1 || tx.type == 3) asset.amount += tx.amount;
-        } else if (asset.type == 2) {
-            // 借出账户：撤回支出(0)和借出(4)借出减少，撤回收入(1)和负债借入(3)借出增加（撤回还款）
-            if (tx.type == 0 || tx.type == 4) asset.amount -= tx.amount;
-            else if (tx.type == 1 || tx.type == 3) asset.amount += tx.amount;
-        }
-    }
-
-    // 【增强】应用账单对己方资产的影响 (兼容 0支出, 1收入, 3负债, 4借出)
-    private void applyAssetBalance(AssetAccount asset, Transaction tx) {
-        if (asset.type == 0) {
-            // 普通资产账户：支出(0)和借出(4)余额减少，收入(1)和负债借入(3)余额增加
-            if (tx.type == 0 || tx.type == 4) asset.amount -= tx.amount;
-            else if (tx.type == 1 || tx.type == 3) asset.amount += tx.amount;
-        } else if (asset.type == 1) {
-            // 负债账户(信用卡)：支出(0)和借出(4)负债增加，收入(1)和负债借入(3)负债减少（还债）
-            if (tx.type == 0 || tx.type == 4) asset.amount += tx.amount;
-            else if (tx.type == 1 || tx.type == 3) asset.amount -= tx.amount;
-        } else if (asset.type == 2) {
-            // 借出账户：支出(0)和借出(4)借出增加，收入(1)和负债借入(3)借出减少（对方还钱）
-            if (tx.type == 0 || tx.type == 4) asset.amount += tx.amount;
-            else if (tx.type == 1 || tx.type == 3) asset.amount -= tx.amount;
-        }
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
     }
 
     // ================= 资产账户 (Asset) 相关 =================
@@ -309,24 +441,22 @@ public class FinanceViewModel extends AndroidViewModel {
     }
 
     public void addAsset(AssetAccount asset) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
-            assetDao.insert(asset);
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-        });
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
+            DataChangeFeed.write(database, DataChange.builder(), () -> AssetLedger.open(database, asset));
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
     }
 
-    public void updateAsset(AssetAccount asset) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
-            assetDao.update(asset);
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-        });
+    // loadedAmount：界面开始编辑时读到的余额，余额只按与它的差额调整
+    public void updateAsset(AssetAccount asset, double loadedAmount) {
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
+            DataChangeFeed.write(database, DataChange.builder(), () -> AssetLedger.save(database, asset, loadedAmount));
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
     }
 
     public void deleteAsset(AssetAccount asset) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
-            assetDao.delete(asset);
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-        });
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
+            DataChangeFeed.write(database, DataChange.builder(), () -> AssetLedger.delete(database, asset));
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
     }
 
     // ================= 预算目标 (Goal) 相关 =================
@@ -336,17 +466,15 @@ public class FinanceViewModel extends AndroidViewModel {
     }
 
     public void insertGoal(Goal goal) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
             goalDao.insert(goal);
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-        });
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
     }
 
     public void deleteGoal(Goal goal) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
             goalDao.delete(goal);
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-        });
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
     }
 
     /**
@@ -354,12 +482,11 @@ public class FinanceViewModel extends AndroidViewModel {
      * 逻辑：清空之前所有的优先标记，将当前目标设为优先
      */
     public void setPriorityGoal(Goal goal) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
+        goal.isPriority = true;
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
             goalDao.clearPriorities(); // 先将所有目标的 isPriority 设为 0
-            goal.isPriority = true;
             goalDao.update(goal); // 更新当前目标的优先状态
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-        });
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
     }
 
     // ================= 业务逻辑：撤回与自动续费 =================
@@ -370,8 +497,8 @@ public class FinanceViewModel extends AndroidViewModel {
      * @param targetAssetId 关联要恢复余额的己方资产ID
      */
     public void revokeTransaction(Transaction transaction, int targetAssetId) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
-            database.runInTransaction(() -> {
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
+            DataChangeFeed.write(database, DataChange.builder().transaction(transaction), () -> {
                 // 1. 删除交易流水
                 transactionDao.delete(transaction);
 
@@ -379,98 +506,57 @@ public class FinanceViewModel extends AndroidViewModel {
                 if (targetAssetId != 0) {
                     AssetAccount asset = assetDao.getAssetByIdSync(targetAssetId);
                     if (asset != null) {
-                        if (asset.type == 0) {
-                            // 普通资产账户：撤回支出(0)或借出(4)余额增加，撤回收入(1)或负债借入(3)余额减少
-                            if (transaction.type == 0 || transaction.type == 4) asset.amount += transaction.amount;
-                            else if (transaction.type == 1 || transaction.type == 3) asset.amount -= transaction.amount;
-                        } else if (asset.type == 1) {
-                            // 负债账户(信用卡)：撤回支出(0)/借出(4)负债减少，撤回收入(1)/借入(3)负债增加
-                            if (transaction.type == 0 || transaction.type == 4) asset.amount -= transaction.amount;
-                            else if (transaction.type == 1 || transaction.type == 3) asset.amount += transaction.amount;
-                        } else if (asset.type == 2) {
-                            // 借出账户：撤回支出(0)/借出(4)借出减少，撤回收入(1)/借入(3)借出增加（撤回还款）
-                            if (transaction.type == 0 || transaction.type == 4) asset.amount -= transaction.amount;
-                            else if (transaction.type == 1 || transaction.type == 3) asset.amount += transaction.amount;
-                        }
-                        assetDao.update(asset);
+                        AssetLedger.move(database, asset.id, -AssetLedger.balanceDelta(asset.type, transaction),
+                                transaction.id, AssetLedger.REASON_REVERT);
                     }
                 }
 
                 // 3. 撤回对方资产 (负债/借出对象) 并自动删除归零账户
-                if (transaction.type == 3 || transaction.type == 4) {
-                    // 撤回负债借入或借出：减少对应账户金额
-                    if (transaction.targetObject != null && !transaction.targetObject.isEmpty()) {
-                        int targetAssetType = (transaction.type == 3) ? 1 : 2; // 3->负债区(1), 4->借出区(2)
-                        AssetAccount targetAccount = assetDao.getAssetByNameAndType(transaction.targetObject, targetAssetType);
-                        if (targetAccount != null) {
-                            // 撤回时，扣除这笔交易带来的欠款/借出金额
-                            targetAccount.amount -= transaction.amount;
-
-                            // 【预期效果实现】：如果撤回后，该对象欠款/借款金额归零（处理浮点精度 <= 0.01），则直接删除该资产
-                            if (targetAccount.amount <= 0.01) {
-                                assetDao.delete(targetAccount);
-                            } else {
-                                assetDao.update(targetAccount);
-                            }
-                        }
-                    }
-                } else if (transaction.type == 0 && transaction.note != null && !transaction.note.isEmpty()) {
-                    // 撤回支出还款：增加负债
-                    AssetAccount liabilityAccount = assetDao.getAssetByNameAndType(transaction.note, 1);
-                    if (liabilityAccount != null) {
-                        liabilityAccount.amount += transaction.amount;
-                        assetDao.update(liabilityAccount);
-                    }
-                } else if (transaction.type == 1 && transaction.note != null && !transaction.note.isEmpty()) {
-                    // 撤回收入收款：增加借出
-                    AssetAccount lentAccount = assetDao.getAssetByNameAndType(transaction.note, 2);
-                    if (lentAccount != null) {
-                        lentAccount.amount += transaction.amount;
-                        assetDao.update(lentAccount);
-                    }
-                }
+                revertCounterparty(transaction, true);
             });
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-            notifyWidgetUpdate(); // 【新增】撤回完成后通知刷新
-        });
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
     }
 
     public void updateGoal(Goal goal) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
             goalDao.update(goal);
-            com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-        });
+        }, () -> com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication()));
     }
     /**
      * 处理自动续费扣款逻辑
      */
     public void processAutoRenewal(RenewalItem renewal, int assetId) {
         AppDatabase.databaseWriteExecutor.execute(() -> {
-            AssetAccount asset = assetDao.getAssetByIdSync(assetId);
-            boolean canProcess = false;
-            if (asset != null) {
-                if (asset.type == 0 && asset.amount >= renewal.amount) {
-                    asset.amount -= renewal.amount;
-                    canProcess = true;
-                } else if (asset.type == 1 || asset.type == 2) { // 【修改这里】兼容借出
-                    asset.amount += renewal.amount;
-                    canProcess = true;
+            final boolean[] canProcess = {false};
+            DataChangeFeed.write(database, DataChange.builder(), () -> {
+                AssetAccount asset = assetDao.getAssetByIdSync(assetId);
+                boolean processed = false;
+                if (asset != null) {
+                    if (asset.type == 0) {
+                        // 普通资产：余额足够才扣款（判断和扣减在同一条 SQL 中完成）
+                        processed = AssetLedger.deductIfSufficient(database, assetId, renewal.amount, AssetLedger.REASON_RENEWAL);
+                    } else if (asset.type == 1 || asset.type == 2) { // 【修改这里】兼容借出
+                        AssetLedger.move(database, assetId, renewal.amount, 0, AssetLedger.REASON_RENEWAL);
+                        processed = true;
+                    }
                 }
-            }
 
-            if (canProcess) {
-                assetDao.update(asset);
-                // 生成对应的账单明细
-                Transaction transaction = new Transaction();
-                transaction.amount = renewal.amount;
-                transaction.type = 0;
-                transaction.category = "自动续费";
-                transaction.note = "项目: " + renewal.object;
-                transaction.date = System.currentTimeMillis();
-                transaction.assetId = assetId;
-                transactionDao.insert(transaction);
+                if (processed) {
+                    // 生成对应的账单明细
+                    Transaction transaction = new Transaction();
+                    transaction.amount = renewal.amount;
+                    transaction.type = 0;
+                    transaction.category = "自动续费";
+                    transaction.note = "项目: " + renewal.object;
+                    transaction.date = System.currentTimeMillis();
+                    transaction.assetId = assetId;
+                    transactionDao.insert(transaction);
+                }
+                canProcess[0] = processed;
+            });
+
+            if (canProcess[0]) {
                 com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-                notifyWidgetUpdate(); // 【新增】
             }
         });
     }
@@ -515,25 +601,7 @@ public class FinanceViewModel extends AndroidViewModel {
                     double convertedDiscount = convertAmountSync(rateManager, discount, fromCurrencyCode, toCurrencyCode);
                     double convertedActualDeduct = convertedAmount - convertedDiscount;
                     
-                    // 1. 处理转出账户余额 (以转出币种的实际扣款金额计算)
-                    if (fromAccount.type == 1) {
-                        fromAccount.amount += actualDeduct;
-                    } else {
-                        fromAccount.amount -= actualDeduct;
-                    }
-
-                    // 2. 处理转入账户余额 (以转入币种的转换后金额计算)
-                    if (toAccount.type == 1) {
-                        toAccount.amount -= convertedAmount;
-                    } else {
-                        toAccount.amount += convertedAmount;
-                    }
-
-                    // 更新数据库中的资产信息
-                    assetDao.update(fromAccount);
-                    assetDao.update(toAccount);
-
-                    // 3. 生成对应的账单明细
+                    // 生成对应的账单明细（余额变化与账单一起写入）
                     Transaction transaction = new Transaction();
                     transaction.amount = actualDeduct; // 账单记录实际支出的金额（转出币种）
                     transaction.type = 2; // 转账
@@ -548,37 +616,15 @@ public class FinanceViewModel extends AndroidViewModel {
                     transaction.date = System.currentTimeMillis();
                     transaction.assetId = fromAccount.id;
 
-                    transactionDao.insert(transaction);
+                    // 转出账户按转出币种的实际扣款金额，转入账户按转入币种的转换后金额
+                    recordTransfer(fromAccount, toAccount, actualDeduct, convertedAmount, transaction);
                     com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-                    notifyWidgetUpdate();
                     return;
                 }
             }
             
             // 【原有逻辑】：相同货币或未启用货币转换
-            // 1. 处理转出账户余额 (以实际扣款金额计算)
-            if (fromAccount.type == 1) {
-                // 从负债账户转出（例如用信用卡取现借出），意味着负债增加
-                fromAccount.amount += actualDeduct;
-            } else {
-                // 从资产(0)、借出(2)、理财(3)转出，余额减少
-                fromAccount.amount -= actualDeduct;
-            }
-
-            // 2. 处理转入账户余额 (目标账户全额入账或全额抵扣负债)
-            if (toAccount.type == 1) {
-                // 转入负债账户（例如还信用卡），负债减少目标全额
-                toAccount.amount -= amount;
-            } else {
-                // 转入资产(0)、借出(2)、理财(3)，余额增加全额
-                toAccount.amount += amount;
-            }
-
-            // 更新数据库中的资产信息
-            assetDao.update(fromAccount);
-            assetDao.update(toAccount);
-
-            // 3. 生成对应的账单明细
+            // 生成对应的账单明细（余额变化与账单一起写入）
             Transaction transaction = new Transaction();
             transaction.amount = actualDeduct; // 账单记录实际支出的金额
             transaction.type = 2; // 转账
@@ -593,12 +639,29 @@ public class FinanceViewModel extends AndroidViewModel {
             transaction.date = System.currentTimeMillis();
             transaction.assetId = fromAccount.id; // 关联转出账户
 
-            transactionDao.insert(transaction);
+            // 转出账户按实际扣款金额，转入账户全额入账或全额抵扣负债
+            recordTransfer(fromAccount, toAccount, actualDeduct, amount, transaction);
             com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplication());
-            notifyWidgetUpdate();
         });
     }
     
+    /**
+     * 在一个事务中写入转账账单和双方余额变化
+     * 余额只按账户 id 做增量更新，不使用界面传入对象上可能已过期的余额
+     */
+    private void recordTransfer(AssetAccount fromAccount, AssetAccount toAccount,
+                                double deduct, double credit, Transaction transaction) {
+        DataChangeFeed.write(database, DataChange.builder(), () -> {
+            int txId = (int) transactionDao.insert(transaction);
+            // 从负债账户转出（例如用信用卡取现借出）负债增加；从资产(0)、借出(2)、理财(3)转出余额减少
+            double fromDelta = (fromAccount.type == 1) ? deduct : -deduct;
+            // 转入负债账户（例如还信用卡）负债减少；转入资产(0)、借出(2)、理财(3)余额增加
+            double toDelta = (toAccount.type == 1) ? -credit : credit;
+            AssetLedger.move(database, fromAccount.id, fromDelta, txId, AssetLedger.REASON_TRANSFER);
+            AssetLedger.move(database, toAccount.id, toDelta, txId, AssetLedger.REASON_TRANSFER);
+        });
+    }
+
     /**
      * 同步获取汇率并转换金额（从缓存）
      */
@@ -681,6 +744,14 @@ public class FinanceViewModel extends AndroidViewModel {
         currentRangeFilter.setValue(new long[]{startMillis, endMillis});
     }
 
+    /**
+     * 【新增】在后台预取某个时间范围（首页日历的前后相邻月份），切换过去时直接从缓存显示
+     */
+    public void prefetchDateRange(long startMillis, long endMillis) {
+        rangeTransactionCache.prefetch(startMillis, endMillis,
+                () -> transactionDao.getTransactionsByRangeDescSync(startMillis, endMillis));
+    }
+
     /**
      * Fragment 观察此 LiveData 获取按需加载的账单数据
      */
@@ -689,17 +760,91 @@ public class FinanceViewModel extends AndroidViewModel {
     }
 
     /**
-     * 直接获取指定时间段的总收支（用于顶部面板统计）
+     * 获取任意时间段的账单流（统计页、预算页、明细弹窗按可见范围各自订阅，避免观察整张表）
+     */
+    public LiveData<List<Transaction>> getTransactionsByRange(long start, long end) {
+        return new RangeLiveData<>(start, end, () -> transactionDao.getTransactionsByRangeDescSync(start, end));
+    }
+
+    public LiveData<Integer> getTransactionCount() {
+        return transactionDao.getTransactionCountLive();
+    }
+
+    public LiveData<Long> getEarliestTransactionDate() {
+        return transactionDao.getEarliestTransactionDateLive();
+    }
+
+    /**
+     * 直接获取指定时间段的总收支（用于顶部面板统计，读取按天汇总表）
      */
     public LiveData<Double> getTotalAmountByType(long start, long end, int type) {
-        return transactionDao.getTotalAmountByTypeLive(start, end, type);
+        return dailySummaryDao.getTotalAmountByTypeLive(start, end, type);
     }
 
     /**
-     * 获取指定时间段的加班总金额
+     * 获取指定时间段的加班总金额（读取按天汇总表）
      */
     public LiveData<Double> getOvertimeTotalAmount(long start, long end) {
-        return transactionDao.getOvertimeTotalAmountLive(start, end);
+        return dailySummaryDao.getOvertimeTotalAmountLive(start, end);
+    }
+
+    /**
+     * 统计页图表数据：趋势图按时间桶、饼图按分类的收支合计（收入已排除加班）
+     */
+    public static class StatsChartData {
+        public final Map<Integer, Double> incomeByBucket = new HashMap<>();
+        public final Map<Integer, Double> expenseByBucket = new HashMap<>();
+        public final Map<String, Double> incomeByCategory = new HashMap<>();
+        public final Map<String, Double> expenseByCategory = new HashMap<>();
+        // 加班：按 TransactionOvertime.KIND_* 分组的笔数、时长与加班费
+        public final Map<Integer, OvertimeTotals> overtimeByKind = new HashMap<>();
+    }
+
+    /**
+     * 【新增】在后台线程用 SQL GROUP BY 对按天汇总表做聚合，主线程只负责绘图
+     * @param bucketFormat strftime 格式：'%m' 按月、'%d' 按日、'%w' 按星期（结果中周一到周日为 1~7）
+     */
+    public LiveData<StatsChartData> loadStatsChartData(long start, long end, String bucketFormat) {
+        MutableLiveData<StatsChartData> result = new MutableLiveData<>();
+        AppDatabase.databaseReadExecutor.execute(() -> {
+            StatsChartData data = new StatsChartData();
+            boolean weekday = "%w".equals(bucketFormat);
+            for (BucketAmount row : dailySummaryDao.getBucketAmountsSync(start, end, bucketFormat)) {
+                int bucket = (weekday && row.bucket == 0) ? 7 : row.bucket;
+                if (row.type == 1) data.incomeByBucket.put(bucket, row.amount);
+                else data.expenseByBucket.put(bucket, row.amount);
+            }
+            for (CategoryAmount row : dailySummaryDao.getCategoryAmountsSync(start, end)) {
+                if (row.type == 1) data.incomeByCategory.put(row.category, row.amount);
+                else data.expenseByCategory.put(row.category, row.amount);
+            }
+            for (OvertimeTotals row : transactionDao.getOvertimeTotalsByKindSync(start, end)) {
+                data.overtimeByKind.put(row.kind, row);
+            }
+            result.postValue(data);
+        });
+        return result;
+    }
+
+    /**
+     * 【新增】存储目标资金池：在后台用预算台账把历史结余分配给未完成的目标
+     * @return 目标 id -> 分配到的结余
+     */
+    public LiveData<Map<Integer, Double>> loadGoalSurplus(List<Goal> activeGoals) {
+        MutableLiveData<Map<Integer, Double>> result = new MutableLiveData<>();
+        AppDatabase.databaseWriteExecutor.execute(() ->
+                result.postValue(BudgetLedger.allocateGoalSurplus(getApplication(), activeGoals)));
+        return result;
+    }
+
+    /**
+     * 【新增】预算历史：在后台推演每月结余与目标达成日期
+     */
+    public LiveData<BudgetLedger.History> loadBudgetHistory(List<Goal> goals, LocalDate origin) {
+        MutableLiveData<BudgetLedger.History> result = new MutableLiveData<>();
+        AppDatabase.databaseWriteExecutor.execute(() ->
+                result.postValue(BudgetLedger.buildHistory(getApplication(), goals, origin)));
+        return result;
     }
 
     /**
@@ -707,13 +852,53 @@ public class FinanceViewModel extends AndroidViewModel {
      */
     // 修改方法签名，增加 Float minAmount, Float maxAmount 参数
     public LiveData<List<Transaction>> getFilteredTransactions(long start, long end, Integer type, Float minAmount, Float maxAmount, String keyword, String assetName) {
-        // 如果你的 ViewModel 直接调用了 dao：
-        return transactionDao.getFilteredTransactions(start, end, type, minAmount, maxAmount, keyword, assetName);
+        // 只有空白的关键字按未填写处理，不生成 MATCH 条件
+        String keywordText = TransactionSearchIndex.normalizeKeyword(keyword);
+        String assetText = TransactionSearchIndex.normalizeKeyword(assetName);
+        if (keywordText != null || assetText != null) {
+            // 顺手在后台把全文索引追上最新数据，之后的检索不再需要回退到 LIKE
+            TransactionSearchIndex.catchUpIfPending(database);
+        }
+        String keywordMatch = TransactionSearchIndex.toMatchQuery(keywordText);
+        String assetMatch = TransactionSearchIndex.toMatchQuery(assetText);
+        return new RangeLiveData<>(start, end, () -> transactionDao.getFilteredTransactionsSync(start, end, type, minAmount, maxAmount,
+                keywordText, keywordMatch, assetText, assetMatch));
+    }
+
+    // ================= 数据变更通知 =================
+
+    /**
+     * 【新增】数据变更通知（主线程）：每次写入提交后发布它影响的账单日期范围、资产 id 和分类，
+     * 页面可据此只在与自己显示的范围相交时刷新；主线程来不及处理的多次变化会合并成一次。
+     * 小组件由 WidgetDataCache 直接订阅 DataChangeFeed，不再由写入方逐次通知。
+     */
+    public LiveData<DataChange> getDataChanges() {
+        return dataChanges;
+    }
+
+    private void onDataChanged(DataChange change) {
+        synchronized (dataChanges) {
+            if (pendingChange != null) {
+                pendingChange = pendingChange.merge(change);
+                return;
+            }
+            pendingChange = change;
+        }
+        mainHandler.post(() -> {
+            DataChange merged;
+            synchronized (dataChanges) {
+                merged = pendingChange;
+                pendingChange = null;
+            }
+            dataChanges.setValue(merged);
+        });
     }
 
-    // ================= 通知桌面小组件刷新 =================
-    private void notifyWidgetUpdate() {
-        com.example.budgetapp.widget.WidgetUtils.updateAllWidgets(getApplication());
+    @Override
+    protected void onCleared() {
+        DataChangeFeed.removeListener(changeListener);
+        DataChangeFeed.removeListener(rangeTransactionCache);
+        super.onCleared();
     }
 
 }
\ No newline at end of file
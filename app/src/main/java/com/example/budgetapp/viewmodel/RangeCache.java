@@ -0,0 +1,108 @@
+package com.example.budgetapp.viewmodel;
+
+import com.example.budgetapp.database.AppDatabase;
+import com.example.budgetapp.database.DataChange;
+import com.example.budgetapp.database.DataChangeFeed;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按时间范围缓存查询结果的 LRU（首页日历按月切换用）
+ * 来回切换月份时直接从内存取结果，不再重新查询；相邻月份可提前在读线程池预取。
+ * 变更通知与某个范围相交时丢弃该范围的缓存；查询期间如有写入（版本号变化），结果不放入缓存。
+ */
+final class RangeCache<T> implements DataChangeFeed.Listener {
+
+    private final int capacity;
+    private final LinkedHashMap<Range, T> entries;
+    // 正在预取的范围，避免重复排队
+    private final Set<Range> prefetching = new HashSet<>();
+    // 每丢弃一次缓存加一
+    private long version = 0;
+
+    RangeCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Range, T>(capacity + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Range, T> eldest) {
+                return size() > RangeCache.this.capacity;
+            }
+        };
+    }
+
+    synchronized T get(long start, long end) {
+        return entries.get(new Range(start, end));
+    }
+
+    synchronized long version() {
+        return version;
+    }
+
+    /**
+     * 放入查询结果；loadVersion 为开始查询时的 version()，期间有过写入则丢弃
+     */
+    synchronized void put(long start, long end, T value, long loadVersion) {
+        if (value == null || loadVersion != version) return;
+        entries.put(new Range(start, end), value);
+    }
+
+    /**
+     * 缓存中没有该范围时在读线程池查询一次放入缓存
+     */
+    void prefetch(long start, long end, RangeLiveData.Loader<T> loader) {
+        Range range = new Range(start, end);
+        final long loadVersion;
+        synchronized (this) {
+            if (entries.containsKey(range) || !prefetching.add(range)) return;
+            loadVersion = version;
+        }
+        AppDatabase.databaseReadExecutor.execute(() -> {
+            try {
+                put(start, end, loader.load(), loadVersion);
+            } finally {
+                synchronized (this) {
+                    prefetching.remove(range);
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void onDataChanged(DataChange change) {
+        if (!change.touchesTransactions()) return;
+        Iterator<Range> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            Range range = it.next();
+            if (change.intersects(range.start, range.end)) it.remove();
+        }
+        // 正在进行的查询可能读到的是写入前的数据，让它们的结果不进缓存
+        version++;
+    }
+
+    private static final class Range {
+        final long start;
+        final long end;
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Range)) return false;
+            Range other = (Range) o;
+            return start == other.start && end == other.end;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(start) * 31 + Long.hashCode(end);
+        }
+    }
+}
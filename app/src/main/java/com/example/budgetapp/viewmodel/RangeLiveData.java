@@ -0,0 +1,81 @@
+package com.example.budgetapp.viewmodel;
+
+import androidx.lifecycle.LiveData;
+
+import com.example.budgetapp.database.AppDatabase;
+import com.example.budgetapp.database.DataChange;
+import com.example.budgetapp.database.DataChangeFeed;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按时间范围加载的 LiveData
+ * 与 Room 的 LiveData 不同，它只在变更通知与 [start, end] 相交时才在读线程池重新查询，
+ * 其他月份、其他页面的写入不会引起重新加载。没有观察者期间如有过任何变更，重新激活时补查一次。
+ * 传入 RangeCache 时先从缓存取结果（缓存随变更通知作废，命中即为最新），查询结果也放回缓存。
+ */
+class RangeLiveData<T> extends LiveData<T> implements DataChangeFeed.Listener {
+
+    interface Loader<T> {
+        T load();
+    }
+
+    private final long start;
+    private final long end;
+    private final Loader<T> loader;
+    private final RangeCache<T> cache;
+    // 每次发起查询加一，只有最新一次查询的结果会被发布
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile boolean loaded = false;
+    // 停止订阅时变更通知的版本
+    private long inactiveVersion;
+
+    RangeLiveData(long start, long end, Loader<T> loader) {
+        this(start, end, loader, null);
+    }
+
+    /**
+     * @param cache 以 [start, end] 为键缓存结果，可为 null
+     */
+    RangeLiveData(long start, long end, Loader<T> loader, RangeCache<T> cache) {
+        this.start = start;
+        this.end = end;
+        this.loader = loader;
+        this.cache = cache;
+    }
+
+    @Override
+    protected void onActive() {
+        DataChangeFeed.addListener(this);
+        if (loaded && DataChangeFeed.version() == inactiveVersion) return;
+        T cached = cache != null ? cache.get(start, end) : null;
+        if (cached != null) {
+            loaded = true;
+            if (getValue() != cached) setValue(cached);
+            return;
+        }
+        reload();
+    }
+
+    @Override
+    protected void onInactive() {
+        DataChangeFeed.removeListener(this);
+        inactiveVersion = DataChangeFeed.version();
+    }
+
+    @Override
+    public void onDataChanged(DataChange change) {
+        if (change.intersects(start, end)) reload();
+    }
+
+    private void reload() {
+        loaded = true;
+        int current = generation.incrementAndGet();
+        long cacheVersion = cache != null ? cache.version() : 0;
+        AppDatabase.databaseReadExecutor.execute(() -> {
+            T value = loader.load();
+            if (cache != null) cache.put(start, end, value, cacheVersion);
+            if (current == generation.get()) postValue(value);
+        });
+    }
+}
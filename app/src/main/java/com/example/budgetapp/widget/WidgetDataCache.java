@@ -0,0 +1,211 @@
+package com.example.budgetapp.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.example.budgetapp.database.AppDatabase;
+import com.example.budgetapp.database.DataChangeFeed;
+import com.example.budgetapp.database.WidgetTotals;
+import com.example.budgetapp.util.BudgetStore;
+
+import java.util.Calendar;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 桌面小组件的数据层
+ * 原先每次记账后向五个小组件各发一次广播，每个小组件各建一个线程、各自查询一遍 SUM。
+ * 现在由这里在共享的数据库线程池上用一条聚合查询算出 WidgetSnapshot 并缓存：
+ * - 账单变化落在本月（DataChangeFeed）或预算表变化（Room InvalidationTracker）时缓存作废并刷新，跨天也会作废；
+ *   其他月份的账单变化不会引起刷新
+ * - 短时间内多次请求刷新只会排队一次，执行时直接渲染所有已放置的小组件，不再经过广播
+ * - 系统定时触发的 onUpdate 也从缓存取数，五个小组件同时更新时只查询一次
+ */
+public final class WidgetDataCache {
+
+    private static final String TAG = "WidgetDataCache";
+
+    /**
+     * 把快照渲染到某一种小组件的所有实例上
+     */
+    interface Renderer {
+        void render(Context context, AppWidgetManager manager, int[] appWidgetIds, WidgetSnapshot snapshot);
+    }
+
+    private static volatile WidgetSnapshot snapshot;
+    // 数据版本，每次失效加一；缓存记录自己对应的版本
+    private static final AtomicLong version = new AtomicLong();
+    private static long snapshotVersion = -1;
+    // 多个小组件同时取数时只让一个去查询，其余等它的结果
+    private static final Object loadLock = new Object();
+    private static boolean observing = false;
+
+    // 已有一次刷新在排队时，新的刷新请求直接合并进去
+    private static final AtomicBoolean refreshQueued = new AtomicBoolean(false);
+
+    private WidgetDataCache() {
+    }
+
+    /**
+     * 开始订阅数据变化（Application 启动时调用），写入方不必再逐次通知小组件
+     */
+    public static void start(Context context) {
+        init(context.getApplicationContext());
+    }
+
+    /**
+     * 数据已变化：作废缓存，并合并排队一次全部小组件的刷新
+     */
+    public static void requestRefresh(Context context) {
+        Context app = context.getApplicationContext();
+        // 在合并写事务中调用时推迟到事务提交后，否则读线程可能把提交前的数据当成新快照缓存下来
+        AppDatabase.databaseWriteExecutor.afterCommit(() -> {
+            init(app);
+            invalidate();
+            if (!refreshQueued.compareAndSet(false, true)) return;
+            AppDatabase.databaseReadExecutor.execute(() -> {
+                // 先清除标记再取数：取数期间到来的请求会再排一次，不会漏掉最新数据
+                refreshQueued.set(false);
+                try {
+                    renderAll(app, get(app));
+                } catch (Exception e) {
+                    Log.e(TAG, "刷新小组件失败", e);
+                }
+            });
+        });
+    }
+
+    /**
+     * 供 AppWidgetProvider.onUpdate 使用：在数据库读线程池上取快照并渲染，完成后结束广播
+     */
+    static void renderAsync(Context context, BroadcastReceiver.PendingResult pendingResult,
+                            AppWidgetManager manager, int[] appWidgetIds, Renderer renderer) {
+        Context app = context.getApplicationContext();
+        init(app);
+        AppDatabase.databaseReadExecutor.execute(() -> {
+            try {
+                renderer.render(app, manager, appWidgetIds, get(app));
+            } catch (Exception e) {
+                Log.e(TAG, "小组件更新失败", e);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+
+    /**
+     * 当前快照：缓存有效时直接返回，否则查询一次（后台线程调用）
+     */
+    static WidgetSnapshot get(Context context) {
+        long todayStart = startOfToday();
+        synchronized (loadLock) {
+            WidgetSnapshot s = snapshot;
+            if (s != null && snapshotVersion == version.get() && s.todayStart == todayStart) {
+                return s;
+            }
+            long loadingVersion = version.get();
+            s = load(context);
+            snapshot = s;
+            snapshotVersion = loadingVersion;
+            return s;
+        }
+    }
+
+    private static WidgetSnapshot load(Context context) {
+        Calendar cal = Calendar.getInstance();
+        int year = cal.get(Calendar.YEAR);
+        int month = cal.get(Calendar.MONTH) + 1;
+        int daysInMonth = cal.getActualMaximum(Calendar.DAY_OF_MONTH);
+
+        cal.set(Calendar.HOUR_OF_DAY, 0); cal.set(Calendar.MINUTE, 0); cal.set(Calendar.SECOND, 0); cal.set(Calendar.MILLISECOND, 0);
+        long todayStart = cal.getTimeInMillis();
+        cal.set(Calendar.HOUR_OF_DAY, 23); cal.set(Calendar.MINUTE, 59); cal.set(Calendar.SECOND, 59); cal.set(Calendar.MILLISECOND, 999);
+        long todayEnd = cal.getTimeInMillis();
+
+        cal.set(Calendar.DAY_OF_MONTH, 1);
+        cal.set(Calendar.HOUR_OF_DAY, 0); cal.set(Calendar.MINUTE, 0); cal.set(Calendar.SECOND, 0); cal.set(Calendar.MILLISECOND, 0);
+        long monthStart = cal.getTimeInMillis();
+        cal.set(Calendar.DAY_OF_MONTH, daysInMonth);
+        cal.set(Calendar.HOUR_OF_DAY, 23); cal.set(Calendar.MINUTE, 59); cal.set(Calendar.SECOND, 59); cal.set(Calendar.MILLISECOND, 999);
+        long monthEnd = cal.getTimeInMillis();
+
+        WidgetTotals totals = AppDatabase.getDatabase(context).dailySummaryDao()
+                .getWidgetTotalsSync(monthStart, monthEnd, todayStart, todayEnd);
+        if (totals == null) totals = new WidgetTotals();
+
+        // 与应用内的预算汇总逻辑一致（详细模式只统计当前有效的分类预算）
+        SharedPreferences prefs = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
+        boolean isDetailedEnabled = prefs.getBoolean("is_detailed_budget_enabled", false);
+        float monthBudget = BudgetStore.getEffectiveMonthBudget(context, year, month, isDetailedEnabled);
+
+        return new WidgetSnapshot(todayStart, totals, monthBudget, daysInMonth);
+    }
+
+    private static void renderAll(Context context, WidgetSnapshot s) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        renderPlaced(context, manager, TodaySummaryWidget.class, TodaySummaryWidget::render, s);
+        renderPlaced(context, manager, MonthSummaryWidget.class, MonthSummaryWidget::render, s);
+        renderPlaced(context, manager, CombinedSummaryWidget.class, CombinedSummaryWidget::render, s);
+        renderPlaced(context, manager, OvertimeSummaryWidget.class, OvertimeSummaryWidget::render, s);
+        renderPlaced(context, manager, TodayBudgetWidget.class, TodayBudgetWidget::render, s);
+    }
+
+    // 桌面上没有放置的小组件直接跳过
+    private static void renderPlaced(Context context, AppWidgetManager manager, Class<?> cls,
+                                     Renderer renderer, WidgetSnapshot s) {
+        int[] ids = manager.getAppWidgetIds(new ComponentName(context, cls));
+        if (ids == null || ids.length == 0) return;
+        try {
+            renderer.render(context, manager, ids, s);
+        } catch (Exception e) {
+            Log.e(TAG, cls.getSimpleName() + " 更新失败", e);
+        }
+    }
+
+    private static void init(Context app) {
+        synchronized (WidgetDataCache.class) {
+            if (observing) return;
+            observing = true;
+        }
+        // 小组件只显示本月和今天的数据，与本月不相交的账单变化直接忽略
+        DataChangeFeed.addListener(change -> {
+            long[] month = currentMonthRange();
+            if (change.intersects(month[0], month[1])) requestRefresh(app);
+        });
+        AppDatabase.getDatabase(app).getInvalidationTracker()
+                .addObserver(new InvalidationTracker.Observer("budgets") {
+                    @Override
+                    public void onInvalidated(@NonNull Set<String> tables) {
+                        // 预算变化影响今日预算小组件的显示，作废缓存并重新渲染（requestRefresh 内已先作废）
+                        requestRefresh(app);
+                    }
+                });
+    }
+
+    private static void invalidate() {
+        version.incrementAndGet();
+    }
+
+    private static long[] currentMonthRange() {
+        Calendar cal = Calendar.getInstance();
+        cal.set(Calendar.DAY_OF_MONTH, 1);
+        cal.set(Calendar.HOUR_OF_DAY, 0); cal.set(Calendar.MINUTE, 0); cal.set(Calendar.SECOND, 0); cal.set(Calendar.MILLISECOND, 0);
+        long start = cal.getTimeInMillis();
+        cal.add(Calendar.MONTH, 1);
+        return new long[]{start, cal.getTimeInMillis() - 1};
+    }
+
+    private static long startOfToday() {
+        Calendar cal = Calendar.getInstance();
+        cal.set(Calendar.HOUR_OF_DAY, 0); cal.set(Calendar.MINUTE, 0); cal.set(Calendar.SECOND, 0); cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+}
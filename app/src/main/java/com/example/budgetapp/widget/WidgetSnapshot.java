@@ -0,0 +1,47 @@
+package com.example.budgetapp.widget;
+
+import com.example.budgetapp.database.WidgetTotals;
+
+/**
+ * 所有桌面小组件共用的只读数据快照（某一时刻的今日/本月收支、本月加班和预算）
+ * 由 WidgetDataCache 在后台一次算好，各小组件只负责把它渲染成 RemoteViews。
+ */
+public final class WidgetSnapshot {
+    // 快照对应的“今天”（本地时间 00:00），跨天后快照自动失效
+    public final long todayStart;
+
+    public final double todayIncome;
+    public final double todayExpense;
+    public final double monthIncome;
+    public final double monthExpense;
+
+    public final double overtimeAmount;
+    public final double overtimeHours;
+
+    // 页面展示用的本月总预算（详细模式为分类预算之和）
+    public final float monthBudget;
+    public final int daysInMonth;
+
+    WidgetSnapshot(long todayStart, WidgetTotals totals, float monthBudget, int daysInMonth) {
+        this.todayStart = todayStart;
+        this.todayIncome = totals.todayIncome;
+        this.todayExpense = totals.todayExpense;
+        this.monthIncome = totals.monthIncome;
+        this.monthExpense = totals.monthExpense;
+        this.overtimeAmount = totals.overtimeAmount;
+        this.overtimeHours = totals.overtimeHours;
+        this.monthBudget = monthBudget;
+        this.daysInMonth = daysInMonth;
+    }
+
+    /**
+     * 今日预算限额 = 本月总预算 / 本月天数
+     */
+    public double dailyBudgetLimit() {
+        return daysInMonth > 0 ? monthBudget / daysInMonth : 0;
+    }
+
+    static String money(double value) {
+        return "¥" + String.format("%.2f", value);
+    }
+}
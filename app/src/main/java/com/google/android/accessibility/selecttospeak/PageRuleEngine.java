@@ -0,0 +1,187 @@
+package com.google.android.accessibility.selecttospeak;
+
+import android.os.SystemClock;
+
+import com.example.budgetapp.util.KeywordAutomaton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 支付页面识别规则引擎
+ * 每条规则是一份数据：所属应用、锚点文字（页面上必须出现的特征词）、提取方法（金额/商户/时间等）。
+ * 同一应用的所有锚点在构建时编译成一个 Aho–Corasick 自动机，对一份快照只需扫描一遍，
+ * 就能知道哪些规则的锚点齐全；锚点不全的规则直接跳过，不再执行其提取逻辑。
+ * 规则按注册顺序（即优先级）依次尝试，第一条返回 true 的规则即为命中。
+ * 每条规则都记录尝试次数、命中次数和耗时，方便在日志页面查看哪些识别器最耗时。
+ */
+final class PageRuleEngine {
+
+    /**
+     * 页面提取逻辑：识别成功并已处理（弹窗/去重）时返回 true
+     */
+    interface Extractor {
+        boolean extract(ScreenSnapshot snapshot);
+    }
+
+    static final class PageRule {
+        final String name;
+        final String[][] anchorGroups;
+        final Extractor extractor;
+        // 每个锚点组在所属应用内占一位，全部置位才会执行提取
+        int requiredMask;
+
+        long evaluated;
+        long skipped;
+        long hits;
+        long totalNanos;
+        long maxNanos;
+
+        PageRule(String name, String[][] anchorGroups, Extractor extractor) {
+            this.name = name;
+            this.anchorGroups = anchorGroups;
+            this.extractor = extractor;
+        }
+    }
+
+    private static final class PackageRules {
+        final String packageKey;
+        final boolean containsMatch;
+        final List<PageRule> rules = new ArrayList<>();
+        KeywordAutomaton anchors;
+
+        PackageRules(String packageKey, boolean containsMatch) {
+            this.packageKey = packageKey;
+            this.containsMatch = containsMatch;
+        }
+
+        boolean matches(String packageName) {
+            return containsMatch ? packageName.contains(packageKey) : packageName.equals(packageKey);
+        }
+    }
+
+    // 一个 int 位图最多容纳的锚点组数量
+    private static final int MAX_GROUPS_PER_PACKAGE = 31;
+
+    private final List<PackageRules> packages = new ArrayList<>();
+    private PackageRules current;
+    private boolean built = false;
+
+    /**
+     * 锚点组：组内任意一个词出现即满足
+     */
+    static String[] anyOf(String... keywords) {
+        return keywords;
+    }
+
+    /**
+     * 之后注册的规则属于包名完全相同的应用
+     */
+    PageRuleEngine forPackage(String packageName) {
+        return startPackage(packageName, false);
+    }
+
+    /**
+     * 之后注册的规则属于包名包含该片段的应用（例如美团有多个包名）
+     */
+    PageRuleEngine forPackageContaining(String fragment) {
+        return startPackage(fragment, true);
+    }
+
+    private PageRuleEngine startPackage(String key, boolean containsMatch) {
+        if (built) throw new IllegalStateException("规则已构建");
+        current = new PackageRules(key, containsMatch);
+        packages.add(current);
+        return this;
+    }
+
+    /**
+     * 注册一条规则，注册顺序即优先级
+     * @param anchorGroups 所有组都满足才会执行 extractor；不传表示总是执行
+     */
+    PageRuleEngine rule(String name, Extractor extractor, String[]... anchorGroups) {
+        if (built) throw new IllegalStateException("规则已构建");
+        if (current == null) throw new IllegalStateException("请先调用 forPackage");
+        current.rules.add(new PageRule(name, anchorGroups, extractor));
+        return this;
+    }
+
+    /**
+     * 把每个应用的锚点编译成自动机，之后只读
+     */
+    PageRuleEngine build() {
+        for (PackageRules pkg : packages) {
+            KeywordAutomaton automaton = new KeywordAutomaton();
+            int bit = 0;
+            for (PageRule rule : pkg.rules) {
+                int mask = 0;
+                for (String[] group : rule.anchorGroups) {
+                    if (bit >= MAX_GROUPS_PER_PACKAGE) {
+                        throw new IllegalStateException(pkg.packageKey + " 的锚点组超过 " + MAX_GROUPS_PER_PACKAGE + " 个");
+                    }
+                    int flag = 1 << bit++;
+                    for (String keyword : group) {
+                        automaton.add(keyword, flag);
+                    }
+                    mask |= flag;
+                }
+                rule.requiredMask = mask;
+            }
+            pkg.anchors = automaton.build();
+        }
+        built = true;
+        return this;
+    }
+
+    /**
+     * 按优先级在快照上执行该应用的规则
+     * @return 命中的规则；没有规则命中返回 null
+     */
+    synchronized PageRule evaluate(ScreenSnapshot snapshot) {
+        String packageName = snapshot.getPackageName();
+        for (PackageRules pkg : packages) {
+            if (!pkg.matches(packageName)) continue;
+
+            int present = pkg.anchors.matchFlags(snapshot.getSearchText());
+            for (PageRule rule : pkg.rules) {
+                if ((present & rule.requiredMask) != rule.requiredMask) {
+                    rule.skipped++;
+                    continue;
+                }
+                long start = SystemClock.elapsedRealtimeNanos();
+                boolean hit = rule.extractor.extract(snapshot);
+                long cost = SystemClock.elapsedRealtimeNanos() - start;
+                rule.evaluated++;
+                rule.totalNanos += cost;
+                if (cost > rule.maxNanos) rule.maxNanos = cost;
+                if (hit) {
+                    rule.hits++;
+                    return rule;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 各规则的统计信息，按累计耗时从高到低排列
+     */
+    synchronized List<String> dumpStats() {
+        List<PageRule> all = new ArrayList<>();
+        for (PackageRules pkg : packages) {
+            all.addAll(pkg.rules);
+        }
+        all.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        List<String> lines = new ArrayList<>();
+        for (PageRule rule : all) {
+            if (rule.evaluated == 0 && rule.skipped == 0) continue;
+            double avgMs = rule.evaluated > 0 ? rule.totalNanos / 1e6 / rule.evaluated : 0;
+            lines.add(String.format(Locale.getDefault(),
+                    "%s: 执行%d次 跳过%d次 命中%d次 平均%.2fms 最长%.2fms 累计%.1fms",
+                    rule.name, rule.evaluated, rule.skipped, rule.hits,
+                    avgMs, rule.maxNanos / 1e6, rule.totalNanos / 1e6));
+        }
+        return lines;
+    }
+}
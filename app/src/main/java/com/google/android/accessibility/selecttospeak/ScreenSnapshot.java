@@ -0,0 +1,176 @@
+package com.google.android.accessibility.selecttospeak;
+
+import android.graphics.Rect;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 当前窗口节点树的只读快照
+ * AccessibilityNodeInfo 的每次 getText/getChild 都是跨进程调用，微信这类页面节点很多，
+ * 原先每个页面适配方法都要各自展平一遍整棵树。现在每次防抖后的事件只遍历一次真实节点树，
+ * 把需要的字段（文字、描述、ID、类名、层级、位置）拷贝出来后立即回收节点，
+ * 之后所有页面识别都在后台线程基于这份快照进行，可以安全地跨线程共享。
+ */
+final class ScreenSnapshot {
+
+    // 遍历上限：防止异常页面（超长列表、嵌套过深）拖慢扫描
+    static final int MAX_NODES = 3000;
+    static final int MAX_DEPTH = 64;
+
+    /**
+     * 单个节点的只读拷贝，方法名与 AccessibilityNodeInfo 保持一致，方便页面适配代码直接沿用
+     */
+    static final class Node {
+        private final String text;
+        private final String desc;
+        private final String viewId;
+        private final String className;
+        final int depth;
+        final int left, top, right, bottom;
+
+        Node(String text, String desc, String viewId, String className, int depth, Rect bounds) {
+            this.text = text;
+            this.desc = desc;
+            this.viewId = viewId;
+            this.className = className;
+            this.depth = depth;
+            this.left = bounds.left;
+            this.top = bounds.top;
+            this.right = bounds.right;
+            this.bottom = bounds.bottom;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        String getContentDescription() {
+            return desc;
+        }
+
+        String getViewIdResourceName() {
+            return viewId;
+        }
+
+        String getClassName() {
+            return className;
+        }
+
+        // 优先取文字，没有时取描述，都没有返回 null
+        String getTextOrDescription() {
+            return text != null ? text : desc;
+        }
+    }
+
+    private final String packageName;
+    private final List<Node> nodes;
+    private final boolean truncated;
+    private String fullText;
+    private String searchText;
+
+    private ScreenSnapshot(String packageName, List<Node> nodes, boolean truncated) {
+        this.packageName = packageName;
+        this.nodes = nodes;
+        this.truncated = truncated;
+    }
+
+    /**
+     * 以先序遍历（与原 flattenNodes 顺序一致）拷贝整棵树，并回收包括 root 在内的所有节点
+     */
+    static ScreenSnapshot capture(AccessibilityNodeInfo root) {
+        String packageName = root.getPackageName() != null ? root.getPackageName().toString() : "";
+        List<Node> nodes = new ArrayList<>();
+        boolean truncated = false;
+        Rect bounds = new Rect();
+
+        ArrayDeque<AccessibilityNodeInfo> stack = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        stack.push(root);
+        depths.push(0);
+        while (!stack.isEmpty()) {
+            AccessibilityNodeInfo node = stack.pop();
+            int depth = depths.pop();
+            if (nodes.size() >= MAX_NODES) {
+                truncated = true;
+                node.recycle();
+                continue;
+            }
+
+            node.getBoundsInScreen(bounds);
+            nodes.add(new Node(
+                    node.getText() != null ? node.getText().toString() : null,
+                    node.getContentDescription() != null ? node.getContentDescription().toString() : null,
+                    node.getViewIdResourceName(),
+                    node.getClassName() != null ? node.getClassName().toString() : null,
+                    depth, bounds));
+
+            int count = node.getChildCount();
+            if (count > 0 && depth + 1 > MAX_DEPTH) {
+                truncated = true;
+            } else {
+                // 逆序压栈，保证出栈顺序与递归先序遍历一致
+                for (int i = count - 1; i >= 0; i--) {
+                    AccessibilityNodeInfo child = node.getChild(i);
+                    if (child != null) {
+                        stack.push(child);
+                        depths.push(depth + 1);
+                    }
+                }
+            }
+            node.recycle();
+        }
+        return new ScreenSnapshot(packageName, Collections.unmodifiableList(nodes), truncated);
+    }
+
+    String getPackageName() {
+        return packageName;
+    }
+
+    List<Node> getNodes() {
+        return nodes;
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * 全部节点文字去除首尾空格后按顺序无缝拼接（解决整数和小数被拆分到不同节点的问题）
+     */
+    String getFullText() {
+        String result = fullText;
+        if (result == null) {
+            StringBuilder sb = new StringBuilder();
+            for (Node node : nodes) {
+                String content = node.getTextOrDescription();
+                if (content != null && !content.isEmpty()) {
+                    sb.append(content.trim());
+                }
+            }
+            result = sb.toString();
+            fullText = result;
+        }
+        return result;
+    }
+
+    /**
+     * 全部节点的文字和描述（两者都保留）逐个换行拼接，供页面识别规则做锚点预筛选
+     */
+    String getSearchText() {
+        String result = searchText;
+        if (result == null) {
+            StringBuilder sb = new StringBuilder();
+            for (Node node : nodes) {
+                if (node.text != null && !node.text.isEmpty()) sb.append(node.text).append('\n');
+                if (node.desc != null && !node.desc.isEmpty()) sb.append(node.desc).append('\n');
+            }
+            result = sb.toString();
+            searchText = result;
+        }
+        return result;
+    }
+}
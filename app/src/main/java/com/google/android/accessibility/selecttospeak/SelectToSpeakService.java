@@ -17,6 +17,7 @@ import android.graphics.drawable.ColorDrawable;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.ResultReceiver;
 import android.provider.Settings;
@@ -45,12 +46,16 @@ import com.example.budgetapp.MainActivity;
 import com.example.budgetapp.R;
 import com.example.budgetapp.database.AppDatabase;
 import com.example.budgetapp.database.AssetAccount;
+import com.example.budgetapp.database.DataChange;
+import com.example.budgetapp.database.DataChangeFeed;
 import com.example.budgetapp.database.Transaction;
 import com.example.budgetapp.database.TransactionDao;
 import com.example.budgetapp.ui.CategoryAdapter;
 import com.example.budgetapp.ui.PhotoActionActivity;
+import com.example.budgetapp.util.AssetLedger;
 import com.example.budgetapp.util.AssistantConfig;
 import com.example.budgetapp.util.AutoAssetManager;
+import com.example.budgetapp.util.AutoTrackMatcher;
 import com.example.budgetapp.util.CategoryManager;
 import com.example.budgetapp.util.KeywordManager;
 import com.google.android.material.chip.Chip;
@@ -67,6 +72,8 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static com.google.android.accessibility.selecttospeak.PageRuleEngine.anyOf;
+
 public class SelectToSpeakService extends AccessibilityService {
 
     private static final String TAG = "AutoTrackService";
@@ -77,13 +84,17 @@ public class SelectToSpeakService extends AccessibilityService {
     private AssistantConfig config;
 
     private final Handler handler = new Handler(Looper.getMainLooper());
-    private boolean isWindowShowing = false;
+    // 页面扫描与识别专用的后台线程：防抖、抓取节点快照、页面适配都在这里进行，不占用主线程
+    private HandlerThread scanThread;
+    private Handler scanHandler;
+    // 以下状态会在扫描线程读写、在主线程（悬浮窗）更新
+    private volatile boolean isWindowShowing = false;
     private View windowRootView;
     private View keepAliveView;
-    private long lastRecordTime = 0;
-    private String lastContentSignature = "";
+    private volatile long lastRecordTime = 0;
+    private volatile String lastContentSignature = "";
 
-    private long lastWindowDismissTime = 0;
+    private volatile long lastWindowDismissTime = 0;
 
     private String selectedSubCategory = null;
 
@@ -107,6 +118,26 @@ public class SelectToSpeakService extends AccessibilityService {
             "com.ss.android.ugc.lifeservices"    // 抖省省
     ));
 
+    // 页面识别中反复使用的正则，统一预编译
+    private static final Pattern TIME_OF_DAY_PATTERN = Pattern.compile("\\d{1,2}:\\d{2}(:\\d{2})?");
+    private static final Pattern YUAN_AMOUNT_PATTERN = Pattern.compile("^[+-]?\\d+(\\.\\d+)?元$");
+    private static final Pattern SIGNED_AMOUNT_PATTERN = Pattern.compile("^[-+]?\\d+(\\.\\d{1,2})?$");
+    private static final Pattern SIGNED_AMOUNT_2DP_PATTERN = Pattern.compile("^[-+]?\\d+\\.\\d{2}$");
+    private static final Pattern PLAIN_AMOUNT_PATTERN = Pattern.compile("^\\d+(\\.\\d{1,2})?$");
+    private static final Pattern PLAIN_AMOUNT_2DP_PATTERN = Pattern.compile("^\\d+\\.\\d{2}$");
+    private static final Pattern UNIONPAY_AMOUNT_PATTERN = Pattern.compile("^[-+]?¥?\\d+\\.\\d{2}$");
+    private static final Pattern JD_PAY_AMOUNT_PATTERN = Pattern.compile("(.*?)(?:付款|支付)[¥￥](\\d+(?:\\.\\d{1,2})?)");
+    private static final Pattern YEN_AMOUNT_PATTERN = Pattern.compile("[¥￥](\\d+(?:\\.\\d{1,2})?)");
+    private static final Pattern PDD_PAID_AMOUNT_PATTERN = Pattern.compile("实付.*?(\\d+(?:\\.\\d{1,2})?)\\s*元");
+    private static final Pattern PDD_UNIT_PRICE_SPLIT_PATTERN = Pattern.compile("[,，]单价");
+    private static final Pattern QWEN_PAY_AMOUNT_PATTERN = Pattern.compile("支付金额(\\d+(?:\\.\\d{1,2})?)元");
+
+    // 每扫描多少次在 Logcat 输出一次规则统计
+    private static final int STATS_LOG_INTERVAL = 50;
+    private int scanCount = 0;
+
+    private final PageRuleEngine pageRules = buildPageRules();
+
     // 内部类，用于同时记录数值和识别到的符号
     private final Runnable scanRunnable = new Runnable() {
         @Override
@@ -117,7 +148,9 @@ public class SelectToSpeakService extends AccessibilityService {
                 AccessibilityNodeInfo rootNode = getRootInActiveWindow();
                 if (rootNode == null) return;
 
-                String packageName = rootNode.getPackageName() != null ? rootNode.getPackageName().toString() : "";
+                // 一次性拷贝整棵节点树并回收原生节点，后续所有识别都基于这份快照
+                ScreenSnapshot snapshot = ScreenSnapshot.capture(rootNode);
+                String packageName = snapshot.getPackageName();
 
 
                 // ======= 全局无差别节点树日志捕获 =======
@@ -127,7 +160,7 @@ public class SelectToSpeakService extends AccessibilityService {
                     if (com.example.budgetapp.util.AutoTrackLogManager.isLogEnabled(SelectToSpeakService.this)) {
                         String appName = getAppNameReadable(packageName);
                         com.example.budgetapp.util.AutoTrackLogManager.addLog(packageName, "►►► 捕获到 [" + appName + "] 页面刷新 ◄◄◄");
-                        printNodeToManager(rootNode, 0, packageName);
+                        printNodeToManager(snapshot, packageName);
 
                         if (packageName != null && !packageName.isEmpty() && !packageName.equals("com.example.budgetapp")) {
                             if (com.example.budgetapp.util.AutoTrackLogManager.isLogEnabled(SelectToSpeakService.this)) {
@@ -136,7 +169,12 @@ public class SelectToSpeakService extends AccessibilityService {
 
                                 String logAppName = getAppNameReadable(packageName);
                                 com.example.budgetapp.util.AutoTrackLogManager.addLog(packageName, "►►► 捕获到 [" + logAppName + "] 页面刷新 ◄◄◄");
-                                printNodeToManager(rootNode, 0, packageName);
+                                printNodeToManager(snapshot, packageName);
+
+                                // 附上各页面识别规则的累计耗时，方便排查哪个识别器最慢
+                                for (String line : pageRules.dumpStats()) {
+                                    com.example.budgetapp.util.AutoTrackLogManager.addLog(packageName, "[规则统计] " + line);
+                                }
 
                                 // 【新增】：整棵节点树扫描并记录完毕后，统一打包保存到本地存储
                                 com.example.budgetapp.util.AutoTrackLogManager.saveLogsToDisk(SelectToSpeakService.this);
@@ -149,112 +187,27 @@ public class SelectToSpeakService extends AccessibilityService {
 //                // ==========================================
 //                // 【测试阶段临时添加】如果是微信，则打印整棵节点树
 //                if ("com.tencent.mm".equals(packageName)) {
-//                    debugWeChatNodeTree(rootNode);
+//                    debugWeChatNodeTree(getRootInActiveWindow());
 //                }
 //                // ==========================================
 //
 //                // ======= 支付宝调试入口 =======
 //                if ("com.eg.android.AlipayGphone".equals(packageName)) {
-//                    debugAlipayNodeTree(rootNode);
+//                    debugAlipayNodeTree(getRootInActiveWindow());
 //                    // 如果已经写好了支付宝的特定适配方法，也可以在这里调用
-//                    // if (handleAlipaySpecificPage(rootNode)) return;
+//                    // if (handleAlipaySpecificPage(snapshot)) return;
 //                }
 //                // ============================
 
-                // ======= 支付宝专属逻辑 =======
-                if ("com.eg.android.AlipayGphone".equals(packageName)) {
-                    // 0. 新增：【专版专杀】支付宝个人转账账单详情页 (优先级最高)
-                    if (handleAlipayTransferBillDetailPage(rootNode)) return;
-
-                    // 1. 新增：优先适配支付宝历史账单详情页面 / 免密支付页面（支持同步历史时间）
-                    if (handleAlipayBillDetailPage(rootNode)) return;
-
-                    // 2. 尝试适配支付宝刚支付成功的页面
-                    if (handleAlipayPaySuccessPage(rootNode)) return;
-                }
-                // ============================
-
-                // ======= 微信专属页面拦截 =======
-                if ("com.tencent.mm".equals(packageName)) {
-                    // 0. 专门适配微信红包/支付特殊页面
-                    if (handleWeChatRedPacketSpecialPage(rootNode)) return;
-
-                    //    【新增】微信个人转账“已收款”页面适配
-                    if (handleWeChatTransferReceivedPage(rootNode)) return;
-
-                    // 1. 【防误杀：必须排在绝对第一位】待确认收款页面适配
-                    if (handleWeChatTransferPendingPage(rootNode)) return;
-
-                    // 2. 微信扫二维码付款 / 个人转账账单详情
-                    if (handleWeChatQRCodeTransferPage(rootNode)) return;
-
-                    // 3. 适配微信内第三方小程序/服务商的支付成功页 (全 Desc 结构)
-                    if (handleWeChatMerchantAppPaySuccessPage(rootNode)) return;
-
-                    // 4. 优先尝试适配红包页面
-                    if (handleWeChatRedPacketPage(rootNode)) return;
-
-                    // 5. 尝试适配常规支付成功页面
-                    if (handleWeChatPaySuccessPage(rootNode)) return;
-
-                    // 6. 微信商家转账 / 提现 / 退款页面
-                    if (handleWeChatMerchantTransferPage(rootNode)) return;
-
-                    // 7. 普通历史账单详情页
-                    if (handleWeChatBillDetailPage(rootNode)) return;
+                // ======= 各应用专属页面识别（规则见 buildPageRules，按优先级依次尝试） =======
+                PageRuleEngine.PageRule hitRule = pageRules.evaluate(snapshot);
+                if (++scanCount % STATS_LOG_INTERVAL == 0) {
+                    for (String line : pageRules.dumpStats()) Log.d(TAG, line);
                 }
+                if (hitRule != null) return;
                 // ==============================
 
-                // ======= 拼多多专属逻辑 =======
-                if ("com.xunmeng.pinduoduo".equals(packageName)) {
-                    // 1. 【新增】适配拼多多订单详情/支付成功页
-                    if (handlePinduoduoOrderDetailPage(rootNode)) return;
-
-                    // 2. 适配拼多多多多钱包支付弹窗页面
-                    if (handlePinduoduoPaymentPage(rootNode)) return;
-                }
-                // ============================
-
-                // ======= 抖音专属逻辑 =======
-                if ("com.ss.android.ugc.aweme".equals(packageName)) {
-                    if (handleDouyinPaymentPage(rootNode)) return;
-                }
-                // ============================
-
-                // ======= 美团专属逻辑 =======
-                if (packageName != null && packageName.contains("meituan")) {
-                    if (handleMeituanPaySuccessPage(rootNode)) return;
-                }
-                // ============================
-
-                // ======= 京东专属逻辑 =======
-                if ("com.jingdong.app.mall".equals(packageName)) {
-                    if (handleJDPaySuccessPage(rootNode)) return;
-                }
-                // ============================
-
-                // ======= 通义千问 / AI充值专属逻辑 =======
-                if ("com.aliyun.tongyi".equals(packageName)) {
-                    // 1. 【新增】适配千问代下单“确认付款”页面
-                    if (handleQwenPaymentConfirmPage(rootNode)) return;
-                }
-
-                // ======= 云闪付专属逻辑 =======
-                if ("com.unionpay".equals(packageName)) {
-                    // 1. 适配刚支付成功的页面
-                    if (handleUnionPayPaySuccessPage(rootNode)) return;
-
-                    // 2. 适配历史交易详情页面
-                    if (handleUnionPayBillDetailPage(rootNode)) return;
-                }
-
-                // ======= 抖省省专属逻辑 =======
-                if ("com.ss.android.ugc.lifeservices".equals(packageName)) {
-                    if (handleDouShengShengPaymentPage(rootNode)) return;
-                }
-                // ============================
-
-                scanAndAnalyze(rootNode, packageName);
+                scanAndAnalyze(snapshot, packageName);
             } catch (Exception e) {
                 Log.e(TAG, "Scan error", e);
             }
@@ -262,25 +215,24 @@ public class SelectToSpeakService extends AccessibilityService {
     };
 
     // 新增：向界面输出Logcat同款节点树日志 (去除视觉噪音版)
-    private void printNodeToManager(AccessibilityNodeInfo node, int depth, String packageName) {
-        if (node == null) return;
+    private void printNodeToManager(ScreenSnapshot snapshot, String packageName) {
+        for (ScreenSnapshot.Node node : snapshot.getNodes()) {
+            String text = node.getText() != null ? node.getText() : "null";
+            String desc = node.getContentDescription() != null ? node.getContentDescription() : "null";
+            String className = node.getClassName() != null ? node.getClassName() : "null";
+            String viewId = node.getViewIdResourceName() != null ? node.getViewIdResourceName() : "null";
 
-        StringBuilder indent = new StringBuilder();
-        for (int i = 0; i < depth; i++) {
-            indent.append("    "); // 使用纯空格替代圆点，保持等宽对齐
-        }
+            // 过滤无意义空节点
+            if ("null".equals(text) && "null".equals(desc) && "null".equals(viewId)) continue;
 
-        String text = node.getText() != null ? node.getText().toString() : "null";
-        String desc = node.getContentDescription() != null ? node.getContentDescription().toString() : "null";
-        String className = node.getClassName() != null ? node.getClassName().toString() : "null";
-        String viewId = node.getViewIdResourceName() != null ? node.getViewIdResourceName() : "null";
-
-        // 过滤无意义空节点
-        if (!"null".equals(text) || !"null".equals(desc) || !"null".equals(viewId)) {
+            StringBuilder indent = new StringBuilder();
+            for (int i = 0; i < node.depth; i++) {
+                indent.append("    "); // 使用纯空格替代圆点，保持等宽对齐
+            }
             String shortClass = className.contains(".") ? className.substring(className.lastIndexOf('.') + 1) : className;
 
             // 非根节点加一个小巧的折线箭头，视觉更清晰
-            String prefix = depth == 0 ? "" : "↳ ";
+            String prefix = node.depth == 0 ? "" : "↳ ";
 
             StringBuilder logMsg = new StringBuilder(indent.toString() + prefix + shortClass);
             if (!"null".equals(text)) logMsg.append(" | Text: [").append(text).append("]");
@@ -292,10 +244,8 @@ public class SelectToSpeakService extends AccessibilityService {
 
             com.example.budgetapp.util.AutoTrackLogManager.addLog(packageName, logMsg.toString());
         }
-
-        int count = node.getChildCount();
-        for (int i = 0; i < count; i++) {
-            printNodeToManager(node.getChild(i), depth + 1, packageName);
+        if (snapshot.isTruncated()) {
+            com.example.budgetapp.util.AutoTrackLogManager.addLog(packageName, "(节点过多或层级过深，超出部分已省略)");
         }
     }
 
@@ -304,6 +254,14 @@ public class SelectToSpeakService extends AccessibilityService {
         super.onServiceConnected();
         config = new AssistantConfig(this);
         KeywordManager.initDefaults(this);
+        // 预先在后台编译关键字与资产匹配缓存，扫描时不再读配置和数据库
+        AutoTrackMatcher.init(this);
+
+        if (scanThread == null) {
+            scanThread = new HandlerThread("AutoTrackScanner");
+            scanThread.start();
+            scanHandler = new Handler(scanThread.getLooper());
+        }
 
         try {
             AppDatabase db = AppDatabase.getDatabase(getApplicationContext());
@@ -350,39 +308,100 @@ public class SelectToSpeakService extends AccessibilityService {
         if (config == null) config = new AssistantConfig(this);
         if (!config.isEnabled()) return;
 
-        handler.removeCallbacks(scanRunnable);
+        if (scanHandler == null) return;
+        scanHandler.removeCallbacks(scanRunnable);
         if (isWindowShowing) return;
 
-        handler.postDelayed(scanRunnable, 300);
+        scanHandler.postDelayed(scanRunnable, 300);
     }
 
-    private void scanAndAnalyze(AccessibilityNodeInfo node, String currentPackageName) {
-        if (node == null) return;
-        String text = getTextOrDescription(node);
-        if (text != null && !text.isEmpty()) {
-            Set<String> expenseKeywords = KeywordManager.getKeywords(this, currentPackageName, KeywordManager.TYPE_EXPENSE);
-            Set<String> incomeKeywords = KeywordManager.getKeywords(this, currentPackageName, KeywordManager.TYPE_INCOME);
-            int autoAssetId = AutoAssetManager.matchAsset(this, currentPackageName, text);
-            AccessibilityNodeInfo root = getRootInActiveWindow();
-            if (root != null) {
-                for (String kw : expenseKeywords) {
-                    if (text.contains(kw)) {
-                        findAmountRecursive(root, 0, getAppNameReadable(currentPackageName), autoAssetId);
-                        return;
-                    }
-                }
-                for (String kw : incomeKeywords) {
-                    if (text.contains(kw)) {
-                        findAmountRecursive(root, 1, getAppNameReadable(currentPackageName), autoAssetId);
-                        return;
-                    }
-                }
+    @Override
+    public void onDestroy() {
+        if (scanThread != null) {
+            scanHandler.removeCallbacksAndMessages(null);
+            scanThread.quitSafely();
+            scanThread = null;
+            scanHandler = null;
+        }
+        super.onDestroy();
+    }
+
+    private void scanAndAnalyze(ScreenSnapshot snapshot, String currentPackageName) {
+        for (ScreenSnapshot.Node node : snapshot.getNodes()) {
+            String text = node.getTextOrDescription();
+            if (text == null || text.isEmpty()) continue;
+            // 关键字已预编译为自动机，一次线性扫描即可判断支出/收入（支出优先）
+            int type = AutoTrackMatcher.matchKeywordType(this, currentPackageName, text);
+            if (type != -1) {
+                int autoAssetId = AutoAssetManager.matchAsset(this, currentPackageName, text);
+                findAmountRecursive(snapshot, type, getAppNameReadable(currentPackageName), autoAssetId);
+                return;
             }
         }
-        int count = node.getChildCount();
-        for (int i = 0; i < count; i++) {
-            scanAndAnalyze(node.getChild(i), currentPackageName);
-        }
+    }
+
+    /**
+     * 页面识别规则表：应用 -> 按优先级排列的页面规则
+     * 锚点是页面上必定出现的特征词（文字或描述包含即可），锚点不全的规则不会执行提取方法
+     */
+    private PageRuleEngine buildPageRules() {
+        return new PageRuleEngine()
+                // ======= 支付宝 =======
+                .forPackage("com.eg.android.AlipayGphone")
+                // 个人转账账单详情页 (优先级最高)
+                .rule("支付宝转账账单详情", this::handleAlipayTransferBillDetailPage,
+                        anyOf("账单详情", "交易详情"), anyOf("对方账户"))
+                // 历史账单详情 / 免密支付页面（支持同步历史时间）
+                .rule("支付宝账单详情", this::handleAlipayBillDetailPage,
+                        anyOf("账单详情", "商家订单号", "订单号", "交易详情", "交易订单号"))
+                .rule("支付宝支付成功", this::handleAlipayPaySuccessPage, anyOf("支付成功"))
+
+                // ======= 微信 =======
+                .forPackage("com.tencent.mm")
+                .rule("微信发红包", this::handleWeChatRedPacketSpecialPage,
+                        anyOf("付款方式"), anyOf("微信红包"))
+                .rule("微信转账已收款", this::handleWeChatTransferReceivedPage,
+                        anyOf("你已收款"), anyOf("已存入零钱"))
+                // 【防误杀】待确认收款页面必须排在普通支付页之前
+                .rule("微信转账待收款", this::handleWeChatTransferPendingPage,
+                        anyOf("待"), anyOf("确认收款"))
+                .rule("微信扫码/转账详情", this::handleWeChatQRCodeTransferPage, anyOf("转账单号"))
+                .rule("微信第三方支付成功", this::handleWeChatMerchantAppPaySuccessPage, anyOf("支付成功"))
+                .rule("微信红包领取", this::handleWeChatRedPacketPage, anyOf("已存入零钱"))
+                .rule("微信支付成功", this::handleWeChatPaySuccessPage, anyOf("支付成功"))
+                .rule("微信商家转账", this::handleWeChatMerchantTransferPage, anyOf("付款单号", "商家单号"))
+                .rule("微信账单详情", this::handleWeChatBillDetailPage, anyOf("交易单号", "商户单号"))
+
+                // ======= 拼多多 =======
+                .forPackage("com.xunmeng.pinduoduo")
+                .rule("拼多多订单详情", this::handlePinduoduoOrderDetailPage, anyOf("订单编号"))
+                .rule("拼多多钱包支付", this::handlePinduoduoPaymentPage, anyOf("多多钱包密码", "密码输入框"))
+
+                // ======= 抖音 =======
+                .forPackage("com.ss.android.ugc.aweme")
+                .rule("抖音支付", this::handleDouyinPaymentPage, anyOf("输入支付密码", "免密支付协议"))
+
+                // ======= 美团 =======
+                .forPackageContaining("meituan")
+                .rule("美团支付成功", this::handleMeituanPaySuccessPage, anyOf("支付成功"))
+
+                // ======= 京东 =======
+                .forPackage("com.jingdong.app.mall")
+                .rule("京东支付成功", this::handleJDPaySuccessPage, anyOf("支付成功"))
+
+                // ======= 通义千问 / AI充值 =======
+                .forPackage("com.aliyun.tongyi")
+                .rule("千问确认付款", this::handleQwenPaymentConfirmPage, anyOf("确认付款"))
+
+                // ======= 云闪付 =======
+                .forPackage("com.unionpay")
+                .rule("云闪付支付成功", this::handleUnionPayPaySuccessPage, anyOf("支付成功"))
+                .rule("云闪付交易详情", this::handleUnionPayBillDetailPage, anyOf("云闪付交易详情", "云闪付APP"))
+
+                // ======= 抖省省 =======
+                .forPackage("com.ss.android.ugc.lifeservices")
+                .rule("抖省省支付成功", this::handleDouShengShengPaymentPage, anyOf("支付成功"))
+                .build();
     }
 
     private String getAppNameReadable(String packageName) {
@@ -401,16 +420,16 @@ public class SelectToSpeakService extends AccessibilityService {
         return "自动记账";
     }
 
-    private void findAmountRecursive(AccessibilityNodeInfo root, int type, String defaultCategory, int matchedAssetId) {
-        if (root == null) return;
+    private void findAmountRecursive(ScreenSnapshot snapshot, int type, String defaultCategory, int matchedAssetId) {
+        if (snapshot == null) return;
         List<AmountResult> candidates = new ArrayList<>();
 
         // 1. 获取全屏拼接文本（解决整数和小数被拆分到不同节点的问题）
-        String fullText = getAllTextFromNode(root);
+        String fullText = snapshot.getFullText();
 
         if (fullText != null && !fullText.isEmpty()) {
             // 2. 预处理：去掉常见的时间格式(如 12:34 或 12:34:56)，防止其被误认为金额
-            fullText = fullText.replaceAll("\\d{1,2}:\\d{2}(:\\d{2})?", "");
+            fullText = TIME_OF_DAY_PATTERN.matcher(fullText).replaceAll("");
             // 去掉件数/笔数等干扰
             String cleanText = quantityPattern.matcher(fullText).replaceAll("");
 
@@ -484,21 +503,6 @@ public class SelectToSpeakService extends AccessibilityService {
         }
     }
 
-    // 新增：递归遍历节点树，并将所有文本无缝拼接成一整句话
-    private String getAllTextFromNode(AccessibilityNodeInfo node) {
-        if (node == null) return "";
-        StringBuilder sb = new StringBuilder();
-        String text = getTextOrDescription(node);
-        if (text != null && !text.isEmpty()) {
-            // 去除头尾空格后拼接，确保 "12" 和 ".34" 拼装成 "12.34"
-            sb.append(text.trim());
-        }
-        int count = node.getChildCount();
-        for (int i = 0; i < count; i++) {
-            sb.append(getAllTextFromNode(node.getChild(i)));
-        }
-        return sb.toString();
-    }
     private void collectAllNumbers(AccessibilityNodeInfo node, List<AmountResult> list) {
         if (node == null) return;
         String text = getTextOrDescription(node);
@@ -778,7 +782,8 @@ public class SelectToSpeakService extends AccessibilityService {
                 spAsset.setAdapter(adapter);
                 com.example.budgetapp.util.AssetSpinnerAdapter.limitDropDownHeight(spAsset);
 
-                AppDatabase.databaseWriteExecutor.execute(() -> {
+                // 只读查询，放在读线程池，不占用写队列
+                AppDatabase.databaseReadExecutor.execute(() -> {
                     // 【修改】同时加载资产(0)和负债(1)
                     List<AssetAccount> assets = AppDatabase.getDatabase(this).assetAccountDao().getAssetsByTypeSync(0);
                     List<AssetAccount> liabilities = AppDatabase.getDatabase(this).assetAccountDao().getAssetsByTypeSync(1);
@@ -1064,7 +1069,8 @@ public class SelectToSpeakService extends AccessibilityService {
     // 2. 修改现有的 saveToDatabase 方法（增加 long transactionTime 参数）
     // 核心入库方法
     private void saveToDatabase(double amount, int type, String category, String subCategory, String note, String remark, int assetId, String currencySymbol, String photoPath, long transactionTime, String targetObject, int liabilityLoanType, boolean excludeFromBudget) {
-        AppDatabase.databaseWriteExecutor.execute(() -> {
+        // 纯数据库写入，可与其他记账写操作合并进同一事务；自动同步在提交后触发
+        AppDatabase.databaseWriteExecutor.executeMergeable(() -> {
             AppDatabase db = AppDatabase.getDatabase(getApplicationContext());
 
             Transaction t = new Transaction();
@@ -1079,84 +1085,61 @@ public class SelectToSpeakService extends AccessibilityService {
             t.currencySymbol = currencySymbol;
             t.photoPath = photoPath;
             t.targetObject = targetObject;
-            dao.insert(t);
-
-            // 1. 同步目标资产(如存在)
-            if (targetObject != null && !targetObject.isEmpty() && liabilityLoanType != -1) {
-                // 负债借入或借出：增加对应账户金额
-                List<AssetAccount> targets = db.assetAccountDao().getAssetsByTypeSync(liabilityLoanType);
-                AssetAccount existingTarget = null;
-                if (targets != null) {
-                    for (AssetAccount a : targets) {
-                        if (a.name.equals(targetObject)) {
-                            existingTarget = a;
-                            break;
+            // 账单与双方资产余额在同一事务中写入，余额只做增量更新；提交后经变更通知刷新小组件和页面
+            DataChangeFeed.write(db, DataChange.builder(), () -> {
+                int txId = (int) db.transactionDao().insert(t);
+
+                // 1. 同步目标资产(如存在)
+                if (targetObject != null && !targetObject.isEmpty() && liabilityLoanType != -1) {
+                    // 负债借入或借出：增加对应账户金额
+                    AssetAccount existingTarget = db.assetAccountDao().getAssetByNameAndType(targetObject, liabilityLoanType);
+                    if (existingTarget != null) {
+                        AssetLedger.move(db, existingTarget.id, amount, txId, AssetLedger.REASON_COUNTERPARTY);
+                    } else {
+                        AssetLedger.open(db, new AssetAccount(targetObject, amount, liabilityLoanType));
+                    }
+                } else if (type == 0 && remark != null && !remark.isEmpty()) {
+                    // 支出还款：检查备注是否匹配负债账户名称（还清后保留为0）
+                    AssetAccount liabilityAccount = db.assetAccountDao().getAssetByNameAndType(remark, 1);
+                    if (liabilityAccount != null) {
+                        AssetLedger.moveAtLeastZero(db, liabilityAccount.id, -amount, txId, AssetLedger.REASON_COUNTERPARTY);
+                    }
+                } else if (type == 1 && remark != null && !remark.isEmpty()) {
+                    // 收入收款：检查备注是否匹配借出账户名称（收回后保留为0）
+                    AssetAccount lentAccount = db.assetAccountDao().getAssetByNameAndType(remark, 2);
+                    if (lentAccount != null) {
+                        AssetLedger.moveAtLeastZero(db, lentAccount.id, -amount, txId, AssetLedger.REASON_COUNTERPARTY);
+                    }
+                }
+
+                // 2. 同步己方资产
+                if (assetId != 0) {
+                    AssetAccount asset = db.assetAccountDao().getAssetByIdSync(assetId);
+                    if (asset != null) {
+                        double delta = 0;
+                        if (asset.type == 0) {
+                            delta = (type == 1) ? amount : -amount;
+                        } else if (asset.type == 1 || asset.type == 2) {
+                            delta = (type == 1) ? -amount : amount;
                         }
+                        AssetLedger.move(db, asset.id, delta, txId, AssetLedger.REASON_TRANSACTION);
                     }
                 }
-                if (existingTarget != null) {
-                    existingTarget.amount += amount;
-                    db.assetAccountDao().update(existingTarget);
-                } else {
-                    AssetAccount newTarget = new AssetAccount(targetObject, 0, liabilityLoanType);
-                    newTarget.amount = amount;
-                    db.assetAccountDao().insert(newTarget);
-                }
-            } else if (type == 0 && remark != null && !remark.isEmpty()) {
-                // 支出还款：检查备注是否匹配负债账户名称
-                AssetAccount liabilityAccount = db.assetAccountDao().getAssetByNameAndType(remark, 1);
-                if (liabilityAccount != null) {
-                    liabilityAccount.amount -= amount;
-                    if (liabilityAccount.amount <= 0) {
-                        liabilityAccount.amount = 0;
-                    }
-                    db.assetAccountDao().update(liabilityAccount);
-                }
-            } else if (type == 1 && remark != null && !remark.isEmpty()) {
-                // 收入收款：检查备注是否匹配借出账户名称
-                AssetAccount lentAccount = db.assetAccountDao().getAssetByNameAndType(remark, 2);
-                if (lentAccount != null) {
-                    lentAccount.amount -= amount;
-                    if (lentAccount.amount <= 0) {
-                        lentAccount.amount = 0;
-                    }
-                    db.assetAccountDao().update(lentAccount);
-                }
-            }
-
-            // 2. 同步己方资产
-            if (assetId != 0) {
-                AssetAccount asset = db.assetAccountDao().getAssetByIdSync(assetId);
-                if (asset != null) {
-                    if (asset.type == 0) {
-                        if (type == 1) asset.amount += amount;
-                        else asset.amount -= amount;
-                    } else if (asset.type == 1 || asset.type == 2) {
-                        if (type == 1) asset.amount -= amount;
-                        else asset.amount += amount;
-                    }
-                    db.assetAccountDao().update(asset);
-                }
-            }
-
-            // 👇👇👇 一键刷新所有桌面小组件 👇👇👇
-            com.example.budgetapp.widget.WidgetUtils.updateAllWidgets(getApplicationContext());
-            
+            });
+        }, () -> {
             // 触发 WebDAV 自动同步
             com.example.budgetapp.BackupManager.triggerAutoUploadIfEnabled(getApplicationContext());
-
-        }); // 这里是 execute 的结尾大括号
+        }); // 这里是 executeMergeable 的结尾大括号
     }
 
     /**
      * 专门适配支付宝“账单详情”页面 (包含常规账单与免密支付/外卖账单/二手交易收款/淘宝订单)
      * 提取实际的交易时间、商品说明/收款方、付款方式(资产)，并自动识别支出/收入，将账单记录在实际发生的时间
      */
-    private boolean handleAlipayBillDetailPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleAlipayBillDetailPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isBillDetail = false;
         String merchantInfo = "";
@@ -1167,7 +1150,7 @@ public class SelectToSpeakService extends AccessibilityService {
         int type = 0; // 默认 0 为支出，1 为收入
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -1193,7 +1176,7 @@ public class SelectToSpeakService extends AccessibilityService {
                     type = 1;
                     amountFoundThisTurn = true;
                 } catch (Exception e) {}
-            } else if (content.matches("^[+-]?\\d+(\\.\\d+)?元$") && amount == -1) {
+            } else if (YUAN_AMOUNT_PATTERN.matcher(content).matches() && amount == -1) {
                 try {
                     String cleanAmount = content.replace("元", "").replace("+", "").trim();
                     amount = Double.parseDouble(cleanAmount);
@@ -1204,7 +1187,7 @@ public class SelectToSpeakService extends AccessibilityService {
                     }
                     amountFoundThisTurn = true;
                 } catch (Exception e) {}
-            } else if (content.matches("^[-+]?\\d+(\\.\\d{1,2})?$") && amount == -1 && !content.equals("1") && !content.equals("0")) {
+            } else if (SIGNED_AMOUNT_PATTERN.matcher(content).matches() && amount == -1 && !content.equals("1") && !content.equals("0")) {
                 if (content.startsWith("+") || content.startsWith("-") || content.contains(".")) {
                     try {
                         String cleanAmount = content.replace("+", "").replace("-", "").replace(",", "").trim();
@@ -1217,7 +1200,7 @@ public class SelectToSpeakService extends AccessibilityService {
 
             // 【核心补丁 1】：抓取金额正上方的节点作为兜底标题 (如 "裕华**店")
             if (amountFoundThisTurn && i > 0 && fallbackTitle.isEmpty()) {
-                AccessibilityNodeInfo prevNode = allNodes.get(i - 1);
+                ScreenSnapshot.Node prevNode = allNodes.get(i - 1);
                 String prevText = prevNode.getText() != null ? prevNode.getText().toString().trim() : "";
                 String prevDesc = prevNode.getContentDescription() != null ? prevNode.getContentDescription().toString().trim() : "";
                 String prevContent = !prevText.isEmpty() ? prevText : prevDesc;
@@ -1229,7 +1212,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 3. 提取支付方式 (用于模糊匹配资产)
             if ("付款方式".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -1244,7 +1227,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 【核心补丁 2】：添加对 "交易详情" 标签的识别，并过滤淘宝图片乱码
             if ("商品说明".equals(content) || "收款方全称".equals(content) || "管理自动扣款".equals(content) || "交易说明".equals(content) || "交易详情".equals(content)) {
                 for (int j = i + 1; j < Math.min(allNodes.size(), i + 5); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -1265,7 +1248,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 5. 提取支付时间
             if ("支付时间".equals(content) || "创建时间".equals(content) || "收款时间".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -1395,32 +1378,21 @@ public class SelectToSpeakService extends AccessibilityService {
     }
     // ================= 微信适配测试代码 结束 =================
 
-    // 展平节点树，方便我们通过前后节点关系寻找数据（例如找 "元" 前面的数字）
-    private void flattenNodes(AccessibilityNodeInfo node, List<AccessibilityNodeInfo> list) {
-        if (node == null) return;
-        list.add(node);
-        int count = node.getChildCount();
-        for (int i = 0; i < count; i++) {
-            flattenNodes(node.getChild(i), list);
-        }
-    }
-
     /**
      * 专门适配微信红包领取详情页
      * 识别“已存入零钱”特征并自动记账，分类自动设为“红包”
      */
-    private boolean handleWeChatRedPacketPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleWeChatRedPacketPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isRedPacketPage = false;
         String redPacketName = "微信红包";
         double amount = -1;
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString() : "";
 
@@ -1436,7 +1408,7 @@ public class SelectToSpeakService extends AccessibilityService {
 
             // 3. 提取金额（寻找“元”字前面的数字节点）
             if ("元".equals(text) && i > 0) {
-                AccessibilityNodeInfo prevNode = allNodes.get(i - 1);
+                ScreenSnapshot.Node prevNode = allNodes.get(i - 1);
                 if (prevNode.getText() != null) {
                     try {
                         amount = Double.parseDouble(prevNode.getText().toString());
@@ -1483,18 +1455,17 @@ public class SelectToSpeakService extends AccessibilityService {
      * 专门适配微信支付成功页面
      * 提取商户/收款人信息作为记录标识
      */
-    private boolean handleWeChatPaySuccessPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleWeChatPaySuccessPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPaySuccessPage = false;
         String merchantInfo = "";
         double amount = -1;
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
 
@@ -1506,7 +1477,7 @@ public class SelectToSpeakService extends AccessibilityService {
                 // 向后搜索第一个符合条件的文本节点
                 if (merchantInfo.isEmpty()) {
                     for (int j = i + 1; j < allNodes.size(); j++) {
-                        AccessibilityNodeInfo nextNode = allNodes.get(j);
+                        ScreenSnapshot.Node nextNode = allNodes.get(j);
                         String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
 
                         // 排除空节点、重复的"支付成功"，以及带金钱符号的金额节点
@@ -1571,18 +1542,17 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配微信“待确认收款”页面
      * 提取“待xxx确认收款”作为记录标识，并自动匹配微信资产
      */
-    private boolean handleWeChatTransferPendingPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleWeChatTransferPendingPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPendingPage = false;
         String pendingInfo = "";
         double amount = -1;
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -1642,11 +1612,10 @@ public class SelectToSpeakService extends AccessibilityService {
      * 专门适配微信“普通历史账单详情页”及“各种交易详情变体页”
      * 增加对金额正下方商户名（如拼多多平台商户）的向下嗅探捕获，并过滤无效商品标签
      */
-    private boolean handleWeChatBillDetailPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleWeChatBillDetailPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isBillDetailPage = false;
         String note = "";
@@ -1660,7 +1629,7 @@ public class SelectToSpeakService extends AccessibilityService {
         int type = 0; // 0代表支出, 1代表收入
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -1671,7 +1640,7 @@ public class SelectToSpeakService extends AccessibilityService {
             }
 
             // 2. 提取真实金额与收支状态
-            if (content.matches("^[-+]?\\d+\\.\\d{2}$") && amount == -1) {
+            if (SIGNED_AMOUNT_2DP_PATTERN.matcher(content).matches() && amount == -1) {
                 try {
                     double parsedAmount = Double.parseDouble(content);
                     if (parsedAmount < 0) {
@@ -1684,7 +1653,7 @@ public class SelectToSpeakService extends AccessibilityService {
 
                     // A. 向上寻找兜底备注 (跨越空节点)
                     for (int j = i - 1; j >= 0; j--) {
-                        AccessibilityNodeInfo prevNode = allNodes.get(j);
+                        ScreenSnapshot.Node prevNode = allNodes.get(j);
                         String prevText = prevNode.getText() != null ? prevNode.getText().toString().trim() : "";
                         String prevDesc = prevNode.getContentDescription() != null ? prevNode.getContentDescription().toString().trim() : "";
                         String prevContent = !prevText.isEmpty() ? prevText : prevDesc;
@@ -1697,7 +1666,7 @@ public class SelectToSpeakService extends AccessibilityService {
 
                     // B. 【核心修复】：向下寻找紧跟在金额后面的备注 (如：拼多多平台商户)
                     for (int j = i + 1; j < allNodes.size(); j++) {
-                        AccessibilityNodeInfo nextNode = allNodes.get(j);
+                        ScreenSnapshot.Node nextNode = allNodes.get(j);
                         String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                         String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                         String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -1716,7 +1685,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 3. 定向提取 [商品] 后面的明细
             if ("商品".equals(content) || "商品名称".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -1730,7 +1699,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 4. 定向提取 [商户全称]
             if ("商户全称".equals(content) || "收款方".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -1744,7 +1713,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 5. 提取支付方式
             if ("支付方式".equals(content) || "收款方式".equals(content) || "退款方式".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -1758,7 +1727,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 6. 提取支付时间
             if ("支付时间".equals(content) || "交易时间".equals(content) || "退款时间".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -1850,11 +1819,10 @@ public class SelectToSpeakService extends AccessibilityService {
      * 专门适配微信“支付确认”弹窗（输入密码前）
      * 提取商户名、金额，并将“付款方式”（如：零钱）作为关联资产的模糊搜索关键词
      */
-    private boolean handleWeChatPaymentConfirmPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleWeChatPaymentConfirmPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPaymentConfirm = false;
         String merchantInfo = "";
@@ -1862,7 +1830,7 @@ public class SelectToSpeakService extends AccessibilityService {
         double amount = -1;
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
 
             // 1. 识别页面特征：包含“付款方式”文本
@@ -1873,7 +1841,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 2. 提取付款方式（资产名称），规律：紧跟在“更改”节点之后
             if ("更改".equals(text)) {
                 if (i + 1 < allNodes.size()) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(i + 1);
+                    ScreenSnapshot.Node nextNode = allNodes.get(i + 1);
                     if (nextNode.getText() != null) {
                         paymentMethod = nextNode.getText().toString().trim();
                     }
@@ -1892,7 +1860,7 @@ public class SelectToSpeakService extends AccessibilityService {
 
                         // 4. 商户名（或交易标题）通常在金额的上一个节点
                         if (i > 0) {
-                            AccessibilityNodeInfo prevNode = allNodes.get(i - 1);
+                            ScreenSnapshot.Node prevNode = allNodes.get(i - 1);
                             if (prevNode.getText() != null) {
                                 merchantInfo = prevNode.getText().toString().trim();
                             }
@@ -1943,11 +1911,10 @@ public class SelectToSpeakService extends AccessibilityService {
      * 专门适配微信发红包时的“支付确认”弹窗页面
      * 稳健版：锁定 "付款方式" 和 "微信红包"，全局提取金额，并通过 Desc 提取精准资产
      */
-    private boolean handleWeChatRedPacketSpecialPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleWeChatRedPacketSpecialPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean hasWeChatRedPacket = false;
         boolean hasPaymentMethod = false;   // 核心页面特征锁
@@ -1955,7 +1922,7 @@ public class SelectToSpeakService extends AccessibilityService {
         String assetName = "";
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
 
@@ -1999,7 +1966,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 方案 B：降级方案，寻找 "更改" 节点后面的文本
             if (("更改".equals(text) || "更改".equals(desc)) && assetName.isEmpty()) {
                 if (i + 1 < allNodes.size()) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(i + 1);
+                    ScreenSnapshot.Node nextNode = allNodes.get(i + 1);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     if (!nextText.isEmpty()) {
                         assetName = nextText; // 抓取到 "零钱"
@@ -2087,11 +2054,10 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配支付宝“转账账单详情”页面 (如：转账给个人)
      * 提取实际的交易时间、对方账户、付款方式(资产)
      */
-    private boolean handleAlipayTransferBillDetailPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleAlipayTransferBillDetailPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isBillDetail = false;
         boolean isTransferPage = false; // 专属页面锁：必须含有"对方账户"
@@ -2102,7 +2068,7 @@ public class SelectToSpeakService extends AccessibilityService {
         int type = 0; // 默认 0 为支出，1 为收入
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -2116,7 +2082,7 @@ public class SelectToSpeakService extends AccessibilityService {
             if ("对方账户".equals(content)) {
                 isTransferPage = true;
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2145,7 +2111,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 4. 提取支付方式
             if ("付款方式".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2159,7 +2125,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 5. 提取交易时间 (如：2026-03-30 00:13:28)
             if ("创建时间".equals(content) || "支付时间".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2232,11 +2198,10 @@ public class SelectToSpeakService extends AccessibilityService {
      * 提取实际支付金额、收款方（作为记录标识），以及付款方式（模糊匹配资产）
      * 【升级版】：修复无“收款方”标签时抓取失败的问题，直接从金额下方拦截商户名
      */
-    private boolean handleAlipayPaySuccessPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleAlipayPaySuccessPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPaySuccess = false;
         String payeeName = "";
@@ -2244,7 +2209,7 @@ public class SelectToSpeakService extends AccessibilityService {
         double amount = -1;
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
 
@@ -2258,13 +2223,13 @@ public class SelectToSpeakService extends AccessibilityService {
             // 2. 提取金额（在“支付成功”后出现的纯数字或带小数的数字，如 "4.83"）
             if (isPaySuccess && amount == -1) {
                 // 正则匹配：纯数字，可带1到2位小数
-                if (content.matches("^\\d+(\\.\\d{1,2})?$")) {
+                if (PLAIN_AMOUNT_PATTERN.matcher(content).matches()) {
                     try {
                         amount = Double.parseDouble(content);
 
                         // 【核心修复】：没有“收款方”标签时，商户名紧跟在纯数字金额的后面
                         for (int j = i + 1; j < allNodes.size(); j++) {
-                            AccessibilityNodeInfo nextNode = allNodes.get(j);
+                            ScreenSnapshot.Node nextNode = allNodes.get(j);
                             String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                             String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                             String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2285,7 +2250,7 @@ public class SelectToSpeakService extends AccessibilityService {
             if ("付款方式".equals(content)) {
                 // 向下遍历，跨过不可见的排版空节点，寻找第一个带有文字的真实节点
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2299,7 +2264,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 4. 兼容老版本提取收款方 (如果页面有明确的“收款方”标签)
             if ("收款方".equals(content) && payeeName.isEmpty()) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2355,18 +2320,17 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配拼多多“多多钱包”支付密码弹窗页面
      * 提取实际支付金额、付款方式(将拆分的银行卡和尾号拼接)
      */
-    private boolean handlePinduoduoPaymentPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handlePinduoduoPaymentPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPddPayment = false;
         String paymentMethod = "";
         double amount = -1;
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -2383,7 +2347,7 @@ public class SelectToSpeakService extends AccessibilityService {
                     double parsed = Double.parseDouble(cleanAmount);
                     if (parsed > 0 && amount == -1) amount = parsed;
                 } catch (Exception e) {}
-            } else if (text.matches("^\\d+\\.\\d{2}$") && amount == -1) {
+            } else if (PLAIN_AMOUNT_2DP_PATTERN.matcher(text).matches() && amount == -1) {
                 try {
                     amount = Double.parseDouble(text);
                 } catch (Exception e) {}
@@ -2393,7 +2357,7 @@ public class SelectToSpeakService extends AccessibilityService {
             if ("支付方式".equals(content)) {
                 StringBuilder pmBuilder = new StringBuilder();
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2451,11 +2415,10 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配微信“扫二维码付款”或“个人转账”的账单详情页
      * 核心特征为含有“转账单号”、“收款方备注”等标签
      */
-    private boolean handleWeChatQRCodeTransferPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleWeChatQRCodeTransferPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isTargetPage = false;
         String targetAccount = "";
@@ -2465,7 +2428,7 @@ public class SelectToSpeakService extends AccessibilityService {
         int type = 0; // 默认 0 为支出，1 为收入
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -2476,7 +2439,7 @@ public class SelectToSpeakService extends AccessibilityService {
             }
 
             // 2. 提取金额和收支类型 (精准锁定格式如 "-2.00")
-            if (content.matches("^[-+]?\\d+\\.\\d{2}$") && amount == -1) {
+            if (SIGNED_AMOUNT_2DP_PATTERN.matcher(content).matches() && amount == -1) {
                 try {
                     double parsedAmount = Double.parseDouble(content);
                     if (parsedAmount < 0) {
@@ -2489,12 +2452,12 @@ public class SelectToSpeakService extends AccessibilityService {
 
                     // 3. 提取交易对象 (就在金额节点的正上方，例如 "扫二维码付款-给郭宝生")
                     if (i > 0) {
-                        AccessibilityNodeInfo prevNode = allNodes.get(i - 1);
+                        ScreenSnapshot.Node prevNode = allNodes.get(i - 1);
                         String prevText = prevNode.getText() != null ? prevNode.getText().toString().trim() : "";
                         String prevDesc = prevNode.getContentDescription() != null ? prevNode.getContentDescription().toString().trim() : "";
                         String prevContent = !prevText.isEmpty() ? prevText : prevDesc;
 
-                        if (!prevContent.isEmpty() && !prevContent.matches("^[-+]?\\d+\\.\\d{2}$")) {
+                        if (!prevContent.isEmpty() && !SIGNED_AMOUNT_2DP_PATTERN.matcher(prevContent).matches()) {
                             targetAccount = prevContent;
                         }
                     }
@@ -2504,7 +2467,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 4. 提取支付方式 (例如：零钱、某某银行卡)
             if ("支付方式".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2518,7 +2481,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 5. 提取转账时间 (格式如：2026年3月29日 11:12:16)
             if ("转账时间".equals(content) || "支付时间".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2592,11 +2555,10 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配微信“商家转账/提现”账单详情页 (如：QQ音乐金币提现)
      * 核心特征为含有“付款单号”、“收款方式”和“付款备注”等标签
      */
-    private boolean handleWeChatMerchantTransferPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleWeChatMerchantTransferPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isTargetPage = false;
         String note = "";
@@ -2607,7 +2569,7 @@ public class SelectToSpeakService extends AccessibilityService {
         int type = 1; // 通常这种页面是提现/收入，默认设为1
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -2618,7 +2580,7 @@ public class SelectToSpeakService extends AccessibilityService {
             }
 
             // 2. 提取金额和收支类型 (精准锁定格式如 "+0.50" 或 "-0.50")
-            if (content.matches("^[-+]?\\d+\\.\\d{2}$") && amount == -1) {
+            if (SIGNED_AMOUNT_2DP_PATTERN.matcher(content).matches() && amount == -1) {
                 try {
                     double parsedAmount = Double.parseDouble(content);
                     if (parsedAmount < 0) {
@@ -2631,11 +2593,11 @@ public class SelectToSpeakService extends AccessibilityService {
 
                     // 顺便抓一下金额上方的标题作为兜底备注 (例如："商家转账-来自QQ音乐")
                     if (i > 0) {
-                        AccessibilityNodeInfo prevNode = allNodes.get(i - 1);
+                        ScreenSnapshot.Node prevNode = allNodes.get(i - 1);
                         String prevText = prevNode.getText() != null ? prevNode.getText().toString().trim() : "";
                         String prevDesc = prevNode.getContentDescription() != null ? prevNode.getContentDescription().toString().trim() : "";
                         String prevContent = !prevText.isEmpty() ? prevText : prevDesc;
-                        if (!prevContent.isEmpty() && !prevContent.matches("^[-+]?\\d+\\.\\d{2}$")) {
+                        if (!prevContent.isEmpty() && !SIGNED_AMOUNT_2DP_PATTERN.matcher(prevContent).matches()) {
                             fallbackTitle = prevContent;
                         }
                     }
@@ -2645,7 +2607,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 3. 提取收款/付款方式 (作为资产名，如："零钱")
             if ("收款方式".equals(content) || "退款方式".equals(content) || "支付方式".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2659,7 +2621,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 4. 提取转账/到账时间 (格式如：2026年3月27日 12:56:00)
             if ("转账时间".equals(content) || "到账时间".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2673,7 +2635,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 5. 提取最高优先级的详细备注 (如："QQ音乐金币提现")
             if ("付款备注".equals(content) || "退款原因".equals(content) || "收款理由".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2750,11 +2712,10 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配云闪付的“交易详情”页面
      * 提取金额(如 -¥10.02)、商户名、付款方式以及准确的交易时间
      */
-    private boolean handleUnionPayBillDetailPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleUnionPayBillDetailPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isTargetPage = false;
         String note = "";
@@ -2764,7 +2725,7 @@ public class SelectToSpeakService extends AccessibilityService {
         int type = 0; // 0代表支出, 1代表收入
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -2775,7 +2736,7 @@ public class SelectToSpeakService extends AccessibilityService {
             }
 
             // 2. 提取金额和收支类型 (精准锁定格式，如 "-¥10.02" 或 "+¥10.02")
-            if (content.matches("^[-+]?¥?\\d+\\.\\d{2}$") && amount == -1) {
+            if (UNIONPAY_AMOUNT_PATTERN.matcher(content).matches() && amount == -1) {
                 try {
                     // 去除可能的 ¥ 符号
                     String cleanAmount = content.replace("¥", "").trim();
@@ -2790,12 +2751,12 @@ public class SelectToSpeakService extends AccessibilityService {
 
                     // 3. 提取交易商户 (云闪付的商户名正好就在大字金额的正上方一个节点)
                     if (i > 0) {
-                        AccessibilityNodeInfo prevNode = allNodes.get(i - 1);
+                        ScreenSnapshot.Node prevNode = allNodes.get(i - 1);
                         String prevText = prevNode.getText() != null ? prevNode.getText().toString().trim() : "";
                         String prevDesc = prevNode.getContentDescription() != null ? prevNode.getContentDescription().toString().trim() : "";
                         String prevContent = !prevText.isEmpty() ? prevText : prevDesc;
 
-                        if (!prevContent.isEmpty() && !prevContent.matches("^[-+]?¥?\\d+\\.\\d{2}$")) {
+                        if (!prevContent.isEmpty() && !UNIONPAY_AMOUNT_PATTERN.matcher(prevContent).matches()) {
                             note = prevContent;
                         }
                     }
@@ -2805,7 +2766,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 4. 提取付款方式 (如：广发银行银联信用卡[9620])
             if ("付款方式".equals(content) || "支付方式".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2819,7 +2780,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 5. 提取订单时间 (如：2026年3月29日 00:27:21)
             if ("订单时间".equals(content) || "交易时间".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -2891,18 +2852,17 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配第三方应用/小程序调用微信支付后的“支付成功”页面
      * 针对该页面信息全在 ContentDescription (Desc) 中，且带有“原价/优惠”干扰项的特征进行抓取
      */
-    private boolean handleWeChatMerchantAppPaySuccessPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleWeChatMerchantAppPaySuccessPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPaySuccessPage = false;
         String merchantName = "";
         double amount = -1;
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
 
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
@@ -2927,7 +2887,7 @@ public class SelectToSpeakService extends AccessibilityService {
                         // 3. 提取商户名（中国移动）
                         // 【核心修复】：向上倒序遍历，跨过所有不可见的排版空节点，寻找真正的商户名称
                         for (int j = i - 1; j >= 0; j--) {
-                            AccessibilityNodeInfo prevNode = allNodes.get(j);
+                            ScreenSnapshot.Node prevNode = allNodes.get(j);
                             String prevDesc = prevNode.getContentDescription() != null ? prevNode.getContentDescription().toString().trim() : "";
                             String prevText = prevNode.getText() != null ? prevNode.getText().toString().trim() : "";
                             String prevContent = !prevDesc.isEmpty() ? prevDesc : prevText;
@@ -2989,18 +2949,17 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配京东“支付成功”页面
      * 从合并节点 (如 "京东白条付款¥7.7") 中同时剥离出付款方式和金额
      */
-    private boolean handleJDPaySuccessPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleJDPaySuccessPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPaySuccess = false;
         double amount = -1;
         String paymentMethod = "";
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -3014,7 +2973,7 @@ public class SelectToSpeakService extends AccessibilityService {
             if ((content.contains("付款¥") || content.contains("付款￥") || content.contains("支付¥") || content.contains("支付￥")) && amount == -1) {
                 try {
                     // 正则手术刀：匹配前面任意字符(组1) + 付款/支付 + ¥/￥ + 数字或小数(组2)
-                    java.util.regex.Matcher m = java.util.regex.Pattern.compile("(.*?)(?:付款|支付)[¥￥](\\d+(?:\\.\\d{1,2})?)").matcher(content);
+                    java.util.regex.Matcher m = JD_PAY_AMOUNT_PATTERN.matcher(content);
                     if (m.find()) {
                         paymentMethod = m.group(1).trim(); // 剥离出 "京东白条"
                         amount = Double.parseDouble(m.group(2)); // 剥离出 "7.7"
@@ -3062,18 +3021,17 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配抖音支付确认弹窗页面 (如: 输入支付密码)
      * 精准提取金额，并将“付款方式”传递给底层资产引擎
      */
-    private boolean handleDouyinPaymentPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleDouyinPaymentPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPaymentPage = false;
         String paymentMethod = "";
         double amount = -1;
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -3084,7 +3042,7 @@ public class SelectToSpeakService extends AccessibilityService {
             }
 
             // 2. 提取金额：精准锁定带有两位小数的纯数字格式 (如 "16.90")
-            if (content.matches("^\\d+\\.\\d{2}$") && amount == -1) {
+            if (PLAIN_AMOUNT_2DP_PATTERN.matcher(content).matches() && amount == -1) {
                 try {
                     amount = Double.parseDouble(content);
                 } catch (Exception e) {}
@@ -3093,7 +3051,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 3. 提取支付方式：寻找 "支付方式" 节点，紧接着的下一个有效节点就是银行卡信息
             if ("支付方式".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -3142,18 +3100,17 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配美团“支付成功”页面
      * 解决金额与标题合并 (如 "支付成功 ¥25.38") 的问题，并精准提取支付方式
      */
-    private boolean handleMeituanPaySuccessPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleMeituanPaySuccessPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPaySuccess = false;
         double amount = -1;
         String paymentMethod = "";
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -3166,7 +3123,7 @@ public class SelectToSpeakService extends AccessibilityService {
                 // 尝试从该节点直接剥离金额
                 if (content.contains("¥") || content.contains("￥")) {
                     try {
-                        java.util.regex.Matcher m = java.util.regex.Pattern.compile("[¥￥](\\d+(?:\\.\\d{1,2})?)").matcher(content);
+                        java.util.regex.Matcher m = YEN_AMOUNT_PATTERN.matcher(content);
                         if (m.find()) {
                             amount = Double.parseDouble(m.group(1));
                         }
@@ -3177,7 +3134,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 2. 提取支付方式：寻找 "支付方式" 节点，紧接着的下一个节点就是资产名
             if ("支付方式".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -3228,18 +3185,17 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配拼多多“订单详情 / 支付完成”页面
      * 从长段落中精准剥离商品名称和最终实付金额，避开优惠券干扰
      */
-    private boolean handlePinduoduoOrderDetailPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handlePinduoduoOrderDetailPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPddOrderPage = false;
         String note = "";
         double amount = -1;
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -3253,7 +3209,7 @@ public class SelectToSpeakService extends AccessibilityService {
             if (content.contains("实付") && content.contains("元") && amount == -1) {
                 try {
                     // 正则寻找 "实付" 后面跟着的金额
-                    java.util.regex.Matcher m = java.util.regex.Pattern.compile("实付.*?(\\d+(?:\\.\\d{1,2})?)\\s*元").matcher(content);
+                    java.util.regex.Matcher m = PDD_PAID_AMOUNT_PATTERN.matcher(content);
                     // 【核心逻辑】：使用 while 循环获取最后一次匹配的结果，完美避开前面的抵扣/减免金额
                     while (m.find()) {
                         amount = Double.parseDouble(m.group(1));
@@ -3265,7 +3221,7 @@ public class SelectToSpeakService extends AccessibilityService {
             if (content.contains("商品名称：")) {
                 try {
                     // 以“单价”作为切分点，把前面的商品名称完整切下来
-                    String[] parts = content.split("[,，]单价");
+                    String[] parts = PDD_UNIT_PRICE_SPLIT_PATTERN.split(content);
                     if (parts.length > 0) {
                         String namePart = parts[0].replace("商品名称：", "").trim();
                         // 名字太长会让记账界面不美观，做个截断
@@ -3317,11 +3273,10 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配微信“个人转账已收款”页面
      * 提取存入零钱的金额(收入)、转账说明以及真实的收款时间
      */
-    private boolean handleWeChatTransferReceivedPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleWeChatTransferReceivedPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isTransferReceived = false;
         double amount = -1;
@@ -3329,7 +3284,7 @@ public class SelectToSpeakService extends AccessibilityService {
         String note = "";
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -3350,7 +3305,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 3. 提取转账说明 (如：捐赠支持)
             if ("转账说明".equals(content) || "收款备注".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -3364,7 +3319,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 4. 提取收款时间 (如：2026年04月08日 20:42:01)
             if ("收款时间".equals(content) || "转账时间".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -3434,11 +3389,10 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配云闪付“支付成功”页面
      * 锁定首个带 ¥ 的有效金额，向上抓取商户名，向下跳过原价/优惠等干扰项
      */
-    private boolean handleUnionPayPaySuccessPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleUnionPayPaySuccessPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPaySuccess = false;
         String merchantName = "";
@@ -3446,7 +3400,7 @@ public class SelectToSpeakService extends AccessibilityService {
         double amount = -1;
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -3464,7 +3418,7 @@ public class SelectToSpeakService extends AccessibilityService {
 
                     // 3. 顺藤摸瓜提取商户名 (商户名通常紧挨在金额的上方一个节点)
                     if (i > 0) {
-                        AccessibilityNodeInfo prevNode = allNodes.get(i - 1);
+                        ScreenSnapshot.Node prevNode = allNodes.get(i - 1);
                         String prevText = prevNode.getText() != null ? prevNode.getText().toString().trim() : "";
                         String prevDesc = prevNode.getContentDescription() != null ? prevNode.getContentDescription().toString().trim() : "";
                         String prevContent = !prevText.isEmpty() ? prevText : prevDesc;
@@ -3482,7 +3436,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 4. 提取支付方式 (例如：广发银行银联信用卡 [9620])
             if ("付款方式".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -3544,18 +3498,17 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配抖省省支付成功页面
      * 捕获金额及紧跟在“支付方式”后的资产名称
      */
-    private boolean handleDouShengShengPaymentPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleDouShengShengPaymentPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isPaySuccess = false;
         double amount = -1;
         String paymentMethod = "";
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             String content = !text.isEmpty() ? text : desc;
@@ -3566,7 +3519,7 @@ public class SelectToSpeakService extends AccessibilityService {
             }
 
             // 2. 提取金额：锁定带两位小数的纯数字格式 (如 "4.30")
-            if (content.matches("^\\d+\\.\\d{2}$") && amount == -1) {
+            if (PLAIN_AMOUNT_2DP_PATTERN.matcher(content).matches() && amount == -1) {
                 try {
                     amount = Double.parseDouble(content);
                 } catch (Exception e) {}
@@ -3575,7 +3528,7 @@ public class SelectToSpeakService extends AccessibilityService {
             // 3. 提取支付方式：寻找 "支付方式" 节点，紧接着的下一个有效节点就是资产名
             if ("支付方式".equals(content)) {
                 for (int j = i + 1; j < allNodes.size(); j++) {
-                    AccessibilityNodeInfo nextNode = allNodes.get(j);
+                    ScreenSnapshot.Node nextNode = allNodes.get(j);
                     String nextText = nextNode.getText() != null ? nextNode.getText().toString().trim() : "";
                     String nextDesc = nextNode.getContentDescription() != null ? nextNode.getContentDescription().toString().trim() : "";
                     String nextContent = !nextText.isEmpty() ? nextText : nextDesc;
@@ -3624,18 +3577,17 @@ public class SelectToSpeakService extends AccessibilityService {
      * 【专版专杀】专门适配通义千问“确认付款”代下单页面
      * 从 Desc 提取 [支付金额5.20元]，并自动剥离代下单商户名作为备注
      */
-    private boolean handleQwenPaymentConfirmPage(AccessibilityNodeInfo root) {
-        if (root == null) return false;
+    private boolean handleQwenPaymentConfirmPage(ScreenSnapshot snapshot) {
+        if (snapshot == null) return false;
 
-        List<AccessibilityNodeInfo> allNodes = new ArrayList<>();
-        flattenNodes(root, allNodes); // 展平节点树
+        List<ScreenSnapshot.Node> allNodes = snapshot.getNodes(); // 快照已按先序展平
 
         boolean isQwenConfirm = false;
         double amount = -1;
         String note = "千问代下单";
 
         for (int i = 0; i < allNodes.size(); i++) {
-            AccessibilityNodeInfo node = allNodes.get(i);
+            ScreenSnapshot.Node node = allNodes.get(i);
             String text = node.getText() != null ? node.getText().toString().trim() : "";
             String desc = node.getContentDescription() != null ? node.getContentDescription().toString().trim() : "";
             // 优先检查 text，如果为空再检查 desc
@@ -3650,7 +3602,7 @@ public class SelectToSpeakService extends AccessibilityService {
             if (desc.contains("支付金额") && desc.contains("元") && amount == -1) {
                 try {
                     // 正则提取：匹配“支付金额”和“元”中间的数字
-                    java.util.regex.Matcher m = java.util.regex.Pattern.compile("支付金额(\\d+(?:\\.\\d{1,2})?)元").matcher(desc);
+                    java.util.regex.Matcher m = QWEN_PAY_AMOUNT_PATTERN.matcher(desc);
                     if (m.find()) {
                         amount = Double.parseDouble(m.group(1)); // 完美抓出 5.20
                     }
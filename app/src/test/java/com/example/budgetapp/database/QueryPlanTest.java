@@ -0,0 +1,372 @@
+package com.example.budgetapp.database;
+
+import android.app.Application;
+import android.database.Cursor;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * DAO 查询的执行计划检查
+ * 在内存数据库上调用真实的 DAO 方法，通过 Room 的 QueryCallback 取到实际执行的 SQL 和参数，
+ * 再对它执行 EXPLAIN QUERY PLAN；某条查询退化为全表扫描（索引被删或查询条件被改动）时测试失败。
+ * 每个 DAO 的抽象方法都必须登记在 CHECKS（检查执行计划）或 EXCLUDED（注明不检查的理由）中，
+ * 新增的查询没有登记时 everyDaoMethodIsCovered 失败。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34, application = Application.class)
+public class QueryPlanTest {
+
+    private static final long START = 1_690_000_000_000L;
+    private static final long END = 1_700_000_000_000L;
+
+    private interface DaoCall {
+        void run(AppDatabase db);
+    }
+
+    private static final class Check {
+        // 语句访问的表，用来从捕获的语句中找出被检查的那一条
+        final String table;
+        // 执行计划中不能全表扫描的名字（表名或查询里的别名）
+        final String[] planNames;
+        final DaoCall call;
+
+        Check(String table, String[] planNames, DaoCall call) {
+            this.table = table;
+            this.planNames = planNames;
+            this.call = call;
+        }
+    }
+
+    private static final String ENTITY_WRITE = "@Insert / @Update / @Delete，按主键写入";
+    private static final String WHOLE_TABLE = "按设计读取或清空整张表";
+    private static final String SMALL_TABLE = "表只有几十行（资产、目标、预算配置），直接扫表";
+
+    // DAO 方法（"Dao 类名.方法名"）-> 需要检查的调用，同一方法可有多条（不同分支）
+    private static final Map<String, List<Check>> CHECKS = new LinkedHashMap<>();
+    // DAO 方法 -> 不检查执行计划的理由
+    private static final Map<String, String> EXCLUDED = new LinkedHashMap<>();
+
+    static {
+        // ---------- TransactionDao ----------
+        exclude("TransactionDao.insertRow", ENTITY_WRITE);
+        exclude("TransactionDao.updateRow", ENTITY_WRITE);
+        exclude("TransactionDao.insertRows", ENTITY_WRITE);
+        exclude("TransactionDao.updateRows", ENTITY_WRITE);
+        exclude("TransactionDao.delete", ENTITY_WRITE);
+        exclude("TransactionDao.getAllTransactions", WHOLE_TABLE);
+        exclude("TransactionDao.getAllTransactionsSync", WHOLE_TABLE);
+        exclude("TransactionDao.deleteAll", WHOLE_TABLE);
+        exclude("TransactionDao.updateBudgetCategoryName", SMALL_TABLE);
+        check("TransactionDao.getTransactionsPageSync", "transactions",
+                db -> db.transactionDao().getTransactionsPageSync(END, 100, 50));
+        check("TransactionDao.getByFingerprintsSync", "transactions",
+                db -> db.transactionDao().getByFingerprintsSync(Arrays.asList(1L, 2L, 3L), Integer.MAX_VALUE));
+        check("TransactionDao.getUnfingerprintedByDatesSync", "transactions",
+                db -> db.transactionDao().getUnfingerprintedByDatesSync(Arrays.asList(START, END), Integer.MAX_VALUE));
+        check("TransactionDao.getMaxIdSync", "transactions", db -> db.transactionDao().getMaxIdSync());
+        check("TransactionDao.getTransactionCountLive", "transactions",
+                db -> observe(db.transactionDao().getTransactionCountLive()));
+        check("TransactionDao.getEarliestTransactionDateLive", "transactions",
+                db -> observe(db.transactionDao().getEarliestTransactionDateLive()));
+        check("TransactionDao.getTransactionsByIdsSync", "transactions",
+                db -> db.transactionDao().getTransactionsByIdsSync(Arrays.asList(1, 2, 3)));
+        check("TransactionDao.deleteByIds", "transactions", db -> db.transactionDao().deleteByIds(Arrays.asList(1, 2, 3)));
+        check("TransactionDao.getOvertimeTotalAmountSync", "transactions",
+                db -> db.transactionDao().getOvertimeTotalAmountSync(START, END));
+        check("TransactionDao.getOvertimeTotalAmountLive", "transactions",
+                db -> observe(db.transactionDao().getOvertimeTotalAmountLive(START, END)));
+        check("TransactionDao.getOvertimeTotalsByKindSync", "transactions",
+                db -> db.transactionDao().getOvertimeTotalsByKindSync(START, END));
+        check("TransactionDao.getTransactionsByRange", "transactions",
+                db -> db.transactionDao().getTransactionsByRange(START, END));
+        check("TransactionDao.getTransactionsByRangeDescSync", "transactions",
+                db -> db.transactionDao().getTransactionsByRangeDescSync(START, END));
+        check("TransactionDao.getTotalAmountByTypeSync", "transactions",
+                db -> db.transactionDao().getTotalAmountByTypeSync(START, END, 0));
+        check("TransactionDao.getTotalAmountByTypeLive", "transactions",
+                db -> observe(db.transactionDao().getTotalAmountByTypeLive(START, END, 0)));
+        check("TransactionDao.updateTransactionCategoryName", "transactions",
+                db -> db.transactionDao().updateTransactionCategoryName("a", "b"));
+        check("TransactionDao.updateSubCategoryName", "transactions",
+                db -> db.transactionDao().updateSubCategoryName("p", "a", "b"));
+        // 不带关键字：只按日期范围
+        check("TransactionDao.getFilteredTransactionsSync", "transactions", new String[]{"t"},
+                db -> db.transactionDao().getFilteredTransactionsSync(START, END, 0, null, null,
+                        null, null, null, null));
+        // 关键字 / 备注走全文索引：各个 MATCH 子查询都不能退化为扫描整个 FTS 表
+        check("TransactionDao.getFilteredTransactionsSync", "transactions", new String[]{"t", "transactions_fts"},
+                db -> db.transactionDao().getFilteredTransactionsSync(START, END, null, null, null,
+                        "早餐", "早餐", "微信", "微信"));
+
+        // ---------- DailySummaryDao ----------
+        exclude("DailySummaryDao.deleteAll", WHOLE_TABLE);
+        check("DailySummaryDao.getSummariesByRangeSync", "daily_summary",
+                db -> db.dailySummaryDao().getSummariesByRangeSync(START, END));
+        check("DailySummaryDao.getTotalAmountByTypeSync", "daily_summary",
+                db -> db.dailySummaryDao().getTotalAmountByTypeSync(START, END, 0));
+        check("DailySummaryDao.getTotalAmountByTypeLive", "daily_summary",
+                db -> observe(db.dailySummaryDao().getTotalAmountByTypeLive(START, END, 0)));
+        check("DailySummaryDao.getOvertimeTotalAmountSync", "daily_summary",
+                db -> db.dailySummaryDao().getOvertimeTotalAmountSync(START, END));
+        check("DailySummaryDao.getOvertimeTotalAmountLive", "daily_summary",
+                db -> observe(db.dailySummaryDao().getOvertimeTotalAmountLive(START, END)));
+        check("DailySummaryDao.getOvertimeHoursSync", "daily_summary",
+                db -> db.dailySummaryDao().getOvertimeHoursSync(START, END));
+        check("DailySummaryDao.getBucketAmountsSync", "daily_summary",
+                db -> db.dailySummaryDao().getBucketAmountsSync(START, END, "%m"));
+        check("DailySummaryDao.getCategoryAmountsSync", "daily_summary",
+                db -> db.dailySummaryDao().getCategoryAmountsSync(START, END));
+        check("DailySummaryDao.getBudgetExpenseByDaySync", "daily_summary",
+                db -> db.dailySummaryDao().getBudgetExpenseByDaySync(START, END));
+        check("DailySummaryDao.getExpenseByDaySync", "daily_summary",
+                db -> db.dailySummaryDao().getExpenseByDaySync(START, END));
+        check("DailySummaryDao.getNetAmountByDaySync", "daily_summary",
+                db -> db.dailySummaryDao().getNetAmountByDaySync(START, END));
+        check("DailySummaryDao.getWidgetTotalsSync", "daily_summary",
+                db -> db.dailySummaryDao().getWidgetTotalsSync(START, END, START, START + 86_400_000L));
+
+        // ---------- AssetAccountDao ----------
+        exclude("AssetAccountDao.insert", ENTITY_WRITE);
+        exclude("AssetAccountDao.insertAndGetId", ENTITY_WRITE);
+        exclude("AssetAccountDao.delete", ENTITY_WRITE);
+        exclude("AssetAccountDao.getAllAssets", WHOLE_TABLE);
+        exclude("AssetAccountDao.getAllAssetsSync", WHOLE_TABLE);
+        exclude("AssetAccountDao.getAssetsByTypeSync", SMALL_TABLE);
+        exclude("AssetAccountDao.getAssetByNameAndType", SMALL_TABLE);
+        exclude("AssetAccountDao.getCurrentDepositAssetsSync", SMALL_TABLE);
+        exclude("AssetAccountDao.updateAssetCategoryName", SMALL_TABLE);
+        exclude("AssetAccountDao.clearAssetCategory", SMALL_TABLE);
+        check("AssetAccountDao.adjustBalance", "asset_accounts", db -> db.assetAccountDao().adjustBalance(1, 1.0));
+        check("AssetAccountDao.adjustBalanceAtLeastZero", "asset_accounts",
+                db -> db.assetAccountDao().adjustBalanceAtLeastZero(1, -1.0));
+        check("AssetAccountDao.deductIfSufficient", "asset_accounts", db -> db.assetAccountDao().deductIfSufficient(1, 1.0));
+        check("AssetAccountDao.decreaseBalanceSafe", "asset_accounts", db -> db.assetAccountDao().decreaseBalanceSafe(1, 1f));
+        check("AssetAccountDao.getBalanceSync", "asset_accounts", db -> db.assetAccountDao().getBalanceSync(1));
+        check("AssetAccountDao.getAssetByIdSync", "asset_accounts", db -> db.assetAccountDao().getAssetByIdSync(1));
+        check("AssetAccountDao.touch", "asset_accounts", db -> db.assetAccountDao().touch(1, END));
+        check("AssetAccountDao.updateDetails", "asset_accounts",
+                db -> db.assetAccountDao().updateDetails(1, "a", 0, END, "¥", true, 0, "", "", "",
+                        false, 0, 0, 0, 0, false, 0, 0, "[]"));
+
+        // ---------- AssetMovementDao ----------
+        exclude("AssetMovementDao.insert", ENTITY_WRITE);
+        exclude("AssetMovementDao.getLedgerBalancesSync", "余额核对按设计汇总全部流水");
+        exclude("AssetMovementDao.deleteOrphans", "余额核对时清理已删除资产的流水，按设计扫描全部流水");
+        check("AssetMovementDao.getMovementsSync", "asset_movements", db -> db.assetMovementDao().getMovementsSync(1));
+        check("AssetMovementDao.deleteByAsset", "asset_movements", db -> db.assetMovementDao().deleteByAsset(1));
+
+        // ---------- BudgetDao ----------
+        exclude("BudgetDao.getAllSync", "BudgetStore 启动时整表载入内存");
+        exclude("BudgetDao.upsert", ENTITY_WRITE);
+        exclude("BudgetDao.upsertAll", ENTITY_WRITE);
+        exclude("BudgetDao.deleteAll", WHOLE_TABLE);
+        check("BudgetDao.getTotalBudgetsInRangeSync", "budgets", db -> db.budgetDao().getTotalBudgetsInRangeSync(START, END));
+
+        // ---------- BudgetCheckpointDao ----------
+        exclude("BudgetCheckpointDao.upsertAll", ENTITY_WRITE);
+        exclude("BudgetCheckpointDao.getCheckpointsSync", "每个台账每月一行，整表只有几百行，按台账读出全部检查点");
+        exclude("BudgetCheckpointDao.deleteLedger", "每个台账每月一行，整表只有几百行，按台账清空");
+        check("BudgetCheckpointDao.deleteFrom", "budget_checkpoints", db -> db.budgetCheckpointDao().deleteFrom("total", START));
+
+        // ---------- GoalDao ----------
+        exclude("GoalDao.getAllGoals", WHOLE_TABLE);
+        exclude("GoalDao.getAllGoalsSync", WHOLE_TABLE);
+        exclude("GoalDao.clearPriorities", WHOLE_TABLE);
+        exclude("GoalDao.deleteAll", WHOLE_TABLE);
+        exclude("GoalDao.insert", ENTITY_WRITE);
+        exclude("GoalDao.insertAll", ENTITY_WRITE);
+        exclude("GoalDao.update", ENTITY_WRITE);
+        exclude("GoalDao.delete", ENTITY_WRITE);
+
+        // ---------- SyncJournalDao ----------
+        check("SyncJournalDao.getMaxSeqSync", "sync_journal", db -> db.syncJournalDao().getMaxSeqSync());
+        check("SyncJournalDao.countChangesSync", "sync_journal", db -> db.syncJournalDao().countChangesSync(0, 100));
+        check("SyncJournalDao.getChangedRowIdsSync", "sync_journal",
+                db -> db.syncJournalDao().getChangedRowIdsSync("transactions", 0, 100));
+        check("SyncJournalDao.getChangesSync", "sync_journal", db -> db.syncJournalDao().getChangesSync(0, 100, 50));
+        check("SyncJournalDao.pruneUpTo", "sync_journal", db -> db.syncJournalDao().pruneUpTo(100));
+
+        // ---------- TransactionFtsDao ----------
+        exclude("TransactionFtsDao.hasPendingSync", "EXISTS 读到第一行即返回");
+        exclude("TransactionFtsDao.getPendingIdsSync", "按 LIMIT 取队列头部，读到足够行数即返回");
+        exclude("TransactionFtsDao.insertIndexRows", ENTITY_WRITE);
+        check("TransactionFtsDao.deletePending", "transactions_fts_pending",
+                db -> db.transactionFtsDao().deletePending(Arrays.asList(1, 2, 3)));
+        check("TransactionFtsDao.deleteIndexRows", "transactions_fts",
+                db -> db.transactionFtsDao().deleteIndexRows(Arrays.asList(1, 2, 3)));
+    }
+
+    private static void check(String method, String table, DaoCall call) {
+        check(method, table, new String[]{table}, call);
+    }
+
+    private static void check(String method, String table, String[] planNames, DaoCall call) {
+        CHECKS.computeIfAbsent(method, k -> new ArrayList<>()).add(new Check(table, planNames, call));
+    }
+
+    private static void exclude(String method, String reason) {
+        EXCLUDED.put(method, reason);
+    }
+
+    private static class Statement {
+        final String sql;
+        final List<Object> args;
+
+        Statement(String sql, List<?> args) {
+            this.sql = sql;
+            this.args = new ArrayList<>(args);
+        }
+    }
+
+    private final List<Statement> captured = new ArrayList<>();
+    private AppDatabase db;
+
+    @Before
+    public void setUp() {
+        db = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(), AppDatabase.class)
+                .allowMainThreadQueries()
+                // LiveData 查询在激活时同步执行，便于捕获
+                .setQueryExecutor(Runnable::run)
+                .setQueryCallback((sql, args) -> {
+                    synchronized (captured) {
+                        captured.add(new Statement(sql, args));
+                    }
+                }, Runnable::run)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void everyDaoMethodIsCovered() {
+        Set<String> missing = new TreeSet<>();
+        Set<String> unknown = new TreeSet<>(CHECKS.keySet());
+        unknown.addAll(EXCLUDED.keySet());
+        for (String method : daoMethods()) {
+            unknown.remove(method);
+            boolean checked = CHECKS.containsKey(method);
+            boolean excluded = EXCLUDED.containsKey(method);
+            assertTrue(method + " 同时登记在 CHECKS 和 EXCLUDED 中", !(checked && excluded));
+            if (!checked && !excluded) missing.add(method);
+        }
+        assertTrue("以下 DAO 方法既没有检查执行计划，也没有注明不检查的理由: " + missing, missing.isEmpty());
+        assertTrue("以下登记项已没有对应的 DAO 方法: " + unknown, unknown.isEmpty());
+    }
+
+    @Test
+    public void checkedQueriesUseIndex() {
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, List<Check>> entry : CHECKS.entrySet()) {
+            for (Check check : entry.getValue()) {
+                String failure = verify(check);
+                if (failure != null) failures.add(entry.getKey() + ": " + failure);
+            }
+        }
+        assertTrue(String.join("\n", failures), failures.isEmpty());
+    }
+
+    // AppDatabase 暴露的各个 DAO 上由 Room 生成实现的方法（默认方法只是组合调用，不单独执行 SQL）
+    private static List<String> daoMethods() {
+        List<String> methods = new ArrayList<>();
+        for (Method accessor : AppDatabase.class.getDeclaredMethods()) {
+            Class<?> dao = accessor.getReturnType();
+            if (!Modifier.isAbstract(accessor.getModifiers()) || accessor.getParameterCount() != 0
+                    || !dao.isInterface() || !dao.getSimpleName().endsWith("Dao")) {
+                continue;
+            }
+            for (Method m : dao.getDeclaredMethods()) {
+                if (m.isDefault() || m.isSynthetic() || Modifier.isStatic(m.getModifiers())) continue;
+                methods.add(dao.getSimpleName() + "." + m.getName());
+            }
+        }
+        Collections.sort(methods);
+        return methods;
+    }
+
+    // 调用 DAO 方法，取第一条访问 check.table 的语句检查执行计划；通过时返回 null
+    private String verify(Check check) {
+        List<Statement> statements;
+        synchronized (captured) {
+            captured.clear();
+        }
+        check.call.run(db);
+        synchronized (captured) {
+            statements = new ArrayList<>(captured);
+        }
+        Pattern touches = Pattern.compile("(?i)(FROM|UPDATE)\\s+`?" + Pattern.quote(check.table) + "`?(\\s|$)");
+        Statement statement = null;
+        for (Statement s : statements) {
+            if (touches.matcher(s.sql).find()) {
+                statement = s;
+                break;
+            }
+        }
+        if (statement == null) return "没有捕获到访问 " + check.table + " 的语句";
+        String plan = explain(statement);
+        for (String name : check.planNames) {
+            if (isFullScan(plan, name)) return "查询未使用索引: " + statement.sql + " -> " + plan;
+        }
+        return null;
+    }
+
+    private String explain(Statement statement) {
+        StringBuilder sb = new StringBuilder();
+        try (Cursor cursor = db.query(new SimpleSQLiteQuery("EXPLAIN QUERY PLAN " + statement.sql, statement.args.toArray()))) {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                if (sb.length() > 0) sb.append(" | ");
+                sb.append(cursor.getString(detailIndex));
+            }
+        }
+        return sb.toString();
+    }
+
+    // 形如 "SCAN transactions" / "SCAN TABLE transactions" 且没有 USING INDEX 的步骤即为全表扫描；
+    // 全文索引表的 "VIRTUAL TABLE INDEX 0:" 表示没有用上 MATCH / rowid 条件，同样是扫描全表
+    private static boolean isFullScan(String plan, String table) {
+        Pattern scan = Pattern.compile("^SCAN (TABLE )?" + Pattern.quote(table) + "( |$)");
+        for (String step : plan.split(" \\| ")) {
+            String s = step.trim();
+            if (scan.matcher(s).find() && (!s.contains("INDEX") || s.contains("VIRTUAL TABLE INDEX 0:"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 激活一次 LiveData，让 Room 在查询线程（测试中为当前线程）执行它的查询
+    private static <T> void observe(LiveData<T> live) {
+        Observer<T> observer = value -> {
+        };
+        live.observeForever(observer);
+        live.removeObserver(observer);
+    }
+}